@@ -47,6 +47,12 @@ public class Composite<T, S, R extends Serializable> implements ISketch<T, R> {
         return this.sketch.add(left, right);
     }
 
+    @Nullable
+    @Override
+    public R addInto(@Nullable R left, @Nullable R right) {
+        return this.sketch.addInto(left, right);
+    }
+
     @Override
     public R create(@Nullable T data) {
         S first = this.map.apply(data);
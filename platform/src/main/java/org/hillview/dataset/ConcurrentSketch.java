@@ -52,6 +52,17 @@ public class ConcurrentSketch<T, R1 extends Serializable, R2 extends Serializabl
         return new Pair<R1, R2>(first, second);
     }
 
+    @Nullable
+    @Override
+    public Pair<R1, R2> addInto(@Nullable Pair<R1, R2> left, @Nullable Pair<R1, R2> right) {
+        assert left != null;
+        assert right != null;
+        // The components of a pair returned by add are owned as well.
+        R1 first = this.first.addInto(left.first, right.first);
+        R2 second = this.second.addInto(left.second, right.second);
+        return new Pair<R1, R2>(first, second);
+    }
+
     @Override
     public Pair<R1, R2> create(@Nullable T data) {
         R1 first = this.first.create(data);
@@ -18,6 +18,7 @@
 package org.hillview.dataset;
 
 import org.hillview.dataset.api.*;
+import org.hillview.table.api.ITable;
 import org.hillview.utils.Converters;
 import org.hillview.utils.ExecutorUtils;
 import org.hillview.utils.HillviewLogger;
@@ -63,6 +64,50 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
         workScheduler = Schedulers.from(executor);
     }
 
+    /**
+     * Number of row ranges in which a table is split when running a sketch.
+     * If this is 1 (the default) each sketch runs on a single thread.
+     */
+    private static volatile int sketchParallelism = 1;
+    /**
+     * Tables are not split in ranges smaller than this.
+     */
+    private static volatile int minRowsPerRange = 1 << 17;
+    /**
+     * Incremental sketches produce a partial result after processing
+     * approximately this many rows.  If this is 0 (the default) all sketches
+     * produce a single result.
+     */
+    private static volatile int incrementalChunkSize = 0;
+
+    /**
+     * Allow the sketches on a single table to run on several threads.
+     * The rows of the table are split in ranges, the sketch runs on each range
+     * separately, and each range produces a partial result.
+     * @param ranges           Maximum number of ranges; 1 disables splitting.
+     * @param minimumRangeSize Minimum number of rows in a range.
+     */
+    public static void setSketchParallelism(int ranges, int minimumRangeSize) {
+        if (ranges < 1 || minimumRangeSize < 1)
+            throw new IllegalArgumentException("Parallelism and range size must be positive");
+        HillviewLogger.instance.info("Sketch parallelism", "{0} ranges of at least {1} rows",
+                ranges, minimumRangeSize);
+        sketchParallelism = ranges;
+        minRowsPerRange = minimumRangeSize;
+    }
+
+    /**
+     * Set the number of rows processed by an incremental sketch between two
+     * partial results.
+     * @param rows  Number of rows in a chunk; 0 disables incremental sketches.
+     */
+    public static void setIncrementalChunkSize(int rows) {
+        if (rows < 0)
+            throw new IllegalArgumentException("Chunk size must not be negative");
+        HillviewLogger.instance.info("Incremental sketch chunk size", "{0}", rows);
+        incrementalChunkSize = rows;
+    }
+
     /**
      * Create a LocalDataSet, processing the data on a separate thread by default.
      * @param data: Data to store in the LocalDataSet.
@@ -189,6 +234,17 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
 
     @Override
     public <R extends Serializable> Observable<PartialResult<R>> sketch(final ISketch<T, R> sketch) {
+        if (this.separateThread && sketchParallelism > 1 && this.data instanceof ITable) {
+            ITable table = (ITable)this.data;
+            int ranges = Math.min(sketchParallelism, table.getNumOfRows() / minRowsPerRange);
+            if (ranges > 1)
+                return this.sketchRanges(table, sketch, ranges);
+        }
+        if (this.separateThread && incrementalChunkSize > 0 && sketch instanceof IIncrementalSketch) {
+            IIncrementalSketch<T, R> incremental = (IIncrementalSketch<T, R>)sketch;
+            if (incremental.isIncremental())
+                return this.sketchIncrementally(incremental);
+        }
         // Immediately return a zero partial result
         // final Observable<PartialResult<R>> zero = this.zero(sketch::zero);
         final Callable<R> callable = () -> {
@@ -211,6 +267,70 @@ public class LocalDataSet<T> extends BaseDataSet<T> {
         return this.schedule(pro);
     }
 
+    /**
+     * Run a sketch in parallel on several row ranges of a table.  Each range
+     * is sketched on a separate compute thread, and its result is emitted as a
+     * partial result as soon as it is available; the partial results are added
+     * using the sketch (e.g., by the enclosing ParallelDataSet).
+     */
+    @SuppressWarnings("unchecked")
+    private <R extends Serializable> Observable<PartialResult<R>> sketchRanges(
+            final ITable table, final ISketch<T, R> sketch, final int ranges) {
+        // T is ITable when this is called.
+        final ISketch<ITable, R> tableSketch = (ISketch<ITable, R>)sketch;
+        final Observable<PartialResult<R>> result = Observable.defer(() -> {
+            HillviewLogger.instance.info("Starting split sketch", "{0}:{1} in {2} ranges",
+                    this, sketch.asString(), ranges);
+            final double rows = table.getNumOfRows();
+            final List<Observable<PartialResult<R>>> obs = new ArrayList<Observable<PartialResult<R>>>();
+            for (ITable part : table.splitRows(ranges)) {
+                final double done = part.getNumOfRows() / rows;
+                final Callable<R> callable = () -> {
+                    try {
+                        return tableSketch.create(part);
+                    } catch (final Throwable t) {
+                        throw new Exception(t);
+                    }
+                };
+                obs.add(Observable.fromCallable(callable)
+                        .map(r -> new PartialResult<R>(done, r))
+                        .subscribeOn(LocalDataSet.workScheduler));
+            }
+            return Observable.merge(obs)
+                    .doOnCompleted(() -> HillviewLogger.instance.info(
+                            "Completed split sketch", "{0}:{1}", this, sketch.asString()));
+        });
+        return this.schedule(result);
+    }
+
+    /**
+     * Run an incremental sketch, emitting each of its partial results as soon as
+     * it is produced.  The computation stops if the consumer unsubscribes.
+     */
+    private <R extends Serializable> Observable<PartialResult<R>> sketchIncrementally(
+            final IIncrementalSketch<T, R> sketch) {
+        final int chunkSize = incrementalChunkSize;
+        final Observable<PartialResult<R>> result = Observable.unsafeCreate(subscriber -> {
+            try {
+                HillviewLogger.instance.info("Starting incremental sketch", "{0}:{1}",
+                        this, sketch.asString());
+                sketch.createIncrementally(this.data, chunkSize, pr -> {
+                    if (subscriber.isUnsubscribed())
+                        return false;
+                    subscriber.onNext(pr);
+                    return true;
+                });
+                HillviewLogger.instance.info("Completed incremental sketch", "{0}:{1}",
+                        this, sketch.asString());
+                if (!subscriber.isUnsubscribed())
+                    subscriber.onCompleted();
+            } catch (final Throwable t) {
+                subscriber.onError(t);
+            }
+        });
+        return this.schedule(result);
+    }
+
     @Override
     public String toString() {
         return super.toString() + ":" + this.data;
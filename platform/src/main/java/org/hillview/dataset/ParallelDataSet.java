@@ -101,7 +101,8 @@ public class ParallelDataSet<T> extends BaseDataSet<T> {
 
     /**
      * This function groups R values that come too close in time (within a 'bundleInterval'
-     * time interval) and "adds" them up emitting a single value.
+     * time interval) and "adds" them up emitting a single value.  The values of an interval
+     * are added as they arrive, in a balanced tree; see TreeCombiner.
      * @param data  A stream of data.
      * @param adder A monoid that knows how to add the data.
      * @return  A shorter stream, in which some of the values in the data stream have been
@@ -109,10 +110,11 @@ public class ParallelDataSet<T> extends BaseDataSet<T> {
      */
     private <R> Observable<R> bundle(final Observable<R> data, IMonoid<R> adder) {
         if (this.bundleInterval > 0) {
-            // If a time interval has no data we don't want to produce a zero.
-            Observable<List<R>> bundled = data.buffer(this.bundleInterval, bundleTimeUnit)
-                       .filter(e -> !e.isEmpty());
-            return bundled.map(adder::reduce);
+            Observable<TreeCombiner<R>> bundled = data.window(this.bundleInterval, bundleTimeUnit)
+                    .flatMap(w -> w.collect(() -> new TreeCombiner<R>(adder), TreeCombiner::add))
+                    // If a time interval has no data we don't want to produce a zero.
+                    .filter(c -> !c.isEmpty());
+            return bundled.map(TreeCombiner::getResult);
         } else {
             return data;
         }
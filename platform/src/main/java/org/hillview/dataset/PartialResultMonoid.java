@@ -52,4 +52,13 @@ public class PartialResultMonoid<T> implements IMonoid<PartialResult<T>> {
         return new PartialResult<T>(left.deltaDone + right.deltaDone,
                 this.monoid.add(left.deltaValue, right.deltaValue));
     }
+
+    @Override @Nullable
+    public PartialResult<T> addInto(@Nullable PartialResult<T> left,
+                                    @Nullable PartialResult<T> right) {
+        assert left != null;
+        assert right != null;
+        return new PartialResult<T>(left.deltaDone + right.deltaDone,
+                this.monoid.addInto(left.deltaValue, right.deltaValue));
+    }
 }
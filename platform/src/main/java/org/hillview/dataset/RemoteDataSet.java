@@ -17,12 +17,9 @@
 
 package org.hillview.dataset;
 
-import com.google.protobuf.ByteString;
-import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
 import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
 import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
 import io.grpc.stub.StreamObserver;
-import org.apache.commons.lang3.SerializationUtils;
 import org.hillview.dataset.api.*;
 import org.hillview.pb.Ack;
 import org.hillview.pb.Command;
@@ -31,7 +28,7 @@ import org.hillview.pb.PartialResponse;
 import org.hillview.dataset.remoting.*;
 import org.hillview.utils.*;
 import rx.Observable;
-import rx.subjects.PublishSubject;
+import rx.subjects.UnicastSubject;
 import rx.subjects.SerializedSubject;
 
 import javax.annotation.Nullable;
@@ -40,6 +37,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -52,7 +50,6 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
     private final static int TIMEOUT = 60000 * 10;  // TODO: import via config file
     private final int remoteHandle;
     private final HostAndPort serverEndpoint;
-    private final HillviewServerGrpc.HillviewServerStub stub;
     /*
      * To avoid epoll CPU utilization problems, we could use PollSelectorProvider().
      * See: https://github.com/netty/netty/issues/327
@@ -65,10 +62,22 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
      */
     private static final ExecutorService executorService =
             ExecutorUtils.newNamedThreadPool("rds-shared-executor", 5, Thread.MAX_PRIORITY);
+    /**
+     * All remote datasets talking to the same server share one channel.
+     */
+    private static final ChannelPool channels = new ChannelPool(workerElg, executorService);
     /**
      * When the service is deployed with a single initial dataset this is the index used.
      */
     public static final int defaultDatasetIndex = -1;
+    /**
+     * Codec used to encode the commands sent to each server.  Commands start
+     * with Java serialization; once a server replies using a better codec
+     * we know that it can also decode that codec.  The codec is forgotten when
+     * a command fails, since the server may have been restarted with an older build.
+     */
+    private static final ConcurrentHashMap<HostAndPort, Integer> commandCodec =
+            new ConcurrentHashMap<HostAndPort, Integer>();
 
     /**
      * Creates a parallel dataset with one representative for each machine in the
@@ -94,17 +103,65 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
     public RemoteDataSet(final HostAndPort serverEndpoint, final int remoteHandle) {
         this.serverEndpoint = serverEndpoint;
         this.remoteHandle = remoteHandle;
-        this.stub = HillviewServerGrpc.newStub(NettyChannelBuilder
-                .forAddress(serverEndpoint.getHost(), serverEndpoint.getPort())
-                .maxInboundMessageSize(HillviewServer.MAX_MESSAGE_SIZE)
-                .executor(executorService)
-                .eventLoopGroup(workerElg)
-                .usePlaintext()   // channel is unencrypted.
-                .build());
     }
 
+    /**
+     * Stub for a new call to the server; stubs are cheap, and the channel comes from the pool.
+     */
+    private HillviewServerGrpc.HillviewServerStub getStub() {
+        return HillviewServerGrpc.newStub(channels.getChannel(this.serverEndpoint))
+                .withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return A description of the channel used to talk to the server of this dataset.
+     */
+    public String getChannelStatistics() {
+        String result = channels.getStatistics(this.serverEndpoint);
+        if (result == null)
+            result = this.serverEndpoint + ": no channel";
+        return result;
+    }
+
+    /**
+     * @return A description of all the channels used by remote datasets in this process.
+     */
+    public static String getChannelPoolStatistics() {
+        return channels.toString();
+    }
+
+    private int getCommandCodec() {
+        return commandCodec.getOrDefault(this.serverEndpoint, WireCodec.JAVA_SERIALIZATION);
+    }
+
+    /**
+     * Called for every response received; records the codec negotiated with the server.
+     * The latest reply wins, so a server that now supports fewer codecs is not sent
+     * commands that it cannot decode.
+     */
+    private void negotiatedCodec(int codec) {
+        commandCodec.put(this.serverEndpoint, codec);
+    }
+
+    private Command createCommand(final Serializable operation, final UUID operationId) {
+        int codec = this.getCommandCodec();
+        return Command.newBuilder()
+                .setIdsIndex(this.remoteHandle)
+                .setSerializedOp(WireCodec.serialize(operation, codec))
+                .setCodec(codec)
+                .setAcceptCodec(WireCodec.LATEST)
+                .setHighId(operationId.getMostSignificantBits())
+                .setLowId(operationId.getLeastSignificantBits())
+                .build();
+    }
+
+    /**
+     * The remote call is started when the result is subscribed to, and its replies
+     * can arrive before the subscriber is attached to the subject; a unicast subject
+     * buffers them until then, so early (e.g., memoized) replies are not lost.
+     */
     private static <T> SerializedSubject<T, T> createSerializedSubject() {
-        return PublishSubject.<T>create().toSerialized();
+        return UnicastSubject.<T>create().toSerialized();
     }
 
     public String toString() {
@@ -124,14 +181,8 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         StreamObserver<PartialResponse> responseObserver;
 
         CommandWrapper(RemoteOperation operation) {
-            byte[] serializedOp = SerializationUtils.serialize(operation);
             this.operationId = UUID.randomUUID();
-            this.command = Command.newBuilder()
-                    .setIdsIndex(RemoteDataSet.this.remoteHandle)
-                    .setSerializedOp(ByteString.copyFrom(serializedOp))
-                    .setHighId(operationId.getMostSignificantBits())
-                    .setLowId(operationId.getLeastSignificantBits())
-                    .build();
+            this.command = RemoteDataSet.this.createCommand(operation, this.operationId);
             this.subject = RemoteDataSet.createSerializedSubject();
             this.responseObserver = null;
         }
@@ -157,7 +208,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final MapOperation<T, S> mapOp = new MapOperation<T, S>(mapper);
         DatasetCommandWrapper<S> wrap = new DatasetCommandWrapper<S>(mapOp);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.getStub()
                         .map(wrap.command, wrap.responseObserver))
                 .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
     }
@@ -171,7 +222,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final PruneOperation<T> pruneOp = new PruneOperation<T>(isEmpty);
         DatasetCommandWrapper<T> wrap = new DatasetCommandWrapper<T>(pruneOp);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.getStub()
                         .prune(wrap.command, wrap.responseObserver))
                 .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
     }
@@ -181,7 +232,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final FlatMapOperation<T, S> mapOp = new FlatMapOperation<T, S>(mapper);
         DatasetCommandWrapper<S> wrap = new DatasetCommandWrapper<S>(mapOp);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.getStub()
                         .flatMap(wrap.command, wrap.responseObserver))
                 .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
     }
@@ -195,7 +246,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         CommandWrapper<R> wrap = new CommandWrapper<R>(sketchOp);
         StreamObserver<PartialResponse> responseObserver = new SketchObserver<R>(wrap.subject);
         return wrap.subject
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.getStub()
                         .sketch(wrap.command, responseObserver))
                 .unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
                 .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
@@ -223,7 +274,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final ZipOperation zip = new ZipOperation(rds.remoteHandle);
         DatasetCommandWrapper<Pair<T, S>> wrap = new DatasetCommandWrapper<Pair<T, S>>(zip);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.getStub()
                         .zip(wrap.command, wrap.responseObserver))
                 .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
     }
@@ -235,7 +286,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         final StreamObserver<PartialResponse> responseObserver =
                 new ManageObserver(wrap.subject, message, this);
         return wrap.subject.unsubscribeOn(ExecutorUtils.getUnsubscribeScheduler())
-                .doOnSubscribe(() -> this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+                .doOnSubscribe(() -> this.getStub()
                         .manage(wrap.command, responseObserver))
                 .doOnUnsubscribe(() -> this.unsubscribe(wrap.operationId));
     }
@@ -247,14 +298,8 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
     private void unsubscribe(final UUID id) {
         HillviewLogger.instance.info("Unsubscribe called", "{0}", id);
         final UnsubscribeOperation op = new UnsubscribeOperation(id);
-        final byte[] serializedOp = SerializationUtils.serialize(op);
-        final Command command = Command.newBuilder()
-                                       .setIdsIndex(this.remoteHandle)
-                                       .setSerializedOp(ByteString.copyFrom(serializedOp))
-                                       .setHighId(id.getMostSignificantBits())
-                                       .setLowId(id.getLeastSignificantBits())
-                                       .build();
-        this.stub.withDeadlineAfter(TIMEOUT, TimeUnit.MILLISECONDS)
+        final Command command = this.createCommand(op, id);
+        this.getStub()
                  .unsubscribe(command, new StreamObserver<Ack>() {
             @Override
             public void onNext(final Ack ack) {}
@@ -281,6 +326,7 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         @Override
         public void onNext(final PartialResponse response) {
             HillviewLogger.instance.info("OperationObserver onNext");
+            RemoteDataSet.this.negotiatedCodec(response.getCodec());
             S result = this.processResponse(response);
             this.subject.onNext(result);
         }
@@ -290,6 +336,8 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
             HillviewLogger.instance.error("RemoteDataSet Observer received exception",
                     "{0}:{1}", RemoteDataSet.this.toString(),
                     Utilities.throwableToString(throwable));
+            // Negotiate the codec again with the next command.
+            commandCodec.remove(RemoteDataSet.this.serverEndpoint);
             this.subject.onError(throwable);
         }
 
@@ -314,8 +362,8 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         @Override
         @SuppressWarnings("unchecked")
         public PartialResult<IDataSet<S>> processResponse(final PartialResponse response) {
-            final OperationResponse<?> op = SerializationUtils.deserialize(response
-                    .getSerializedOp().toByteArray());
+            final OperationResponse<?> op = WireCodec.deserialize(
+                    response.getSerializedOp(), response.getCodec());
             PartialResult<Integer> pr = Converters.checkNull((PartialResult<Integer>)op.result);
             final IDataSet<S> ids = (pr.deltaValue == null) ? null :
                     new RemoteDataSet<S>(RemoteDataSet.this.serverEndpoint, pr.deltaValue);
@@ -335,8 +383,8 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         @Override
         @SuppressWarnings("unchecked")
         public PartialResult<S> processResponse(final PartialResponse response) {
-            final OperationResponse<?> op = SerializationUtils.deserialize(response
-                    .getSerializedOp().toByteArray());
+            final OperationResponse<?> op = WireCodec.deserialize(
+                    response.getSerializedOp(), response.getCodec());
             assert op.result != null;
             HillviewLogger.instance.info("Receiving partial sketch result", "{0}", op.result);
             return (PartialResult<S>)op.result;
@@ -363,8 +411,8 @@ public class RemoteDataSet<T> extends BaseDataSet<T> {
         @SuppressWarnings("unchecked")
         public PartialResult<ControlMessage.StatusList> processResponse(
                 final PartialResponse response) {
-            final OperationResponse<?> op = SerializationUtils.deserialize(response
-                    .getSerializedOp().toByteArray());
+            final OperationResponse<?> op = WireCodec.deserialize(
+                    response.getSerializedOp(), response.getCodec());
             return (PartialResult<ControlMessage.StatusList>)Converters.checkNull(op.result);
         }
 
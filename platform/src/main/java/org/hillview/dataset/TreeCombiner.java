@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset;
+
+import org.hillview.dataset.api.IMonoid;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+
+/**
+ * Adds a sequence of values as they arrive, combining them in a balanced tree.
+ * The combiner works like a binary counter: level i holds the sum of 2^i values,
+ * and two sums of the same level are added together as soon as both exist.
+ * Each value therefore takes part in a logarithmic number of additions, which
+ * matters for monoids whose values grow when added, such as lists or sets.
+ * All sums except the ones of single values are owned by the combiner, so they
+ * are combined with IMonoid.addInto, which can work in place.
+ * The order of the values is preserved.  This class is not thread-safe.
+ * @param <R> Type of values.
+ */
+public class TreeCombiner<R> {
+    private final IMonoid<R> monoid;
+    /**
+     * Element i is the sum of 2^i values, or null if there is no such sum.
+     * Higher levels hold older values.
+     */
+    private final ArrayList<R> levels;
+    private int count;
+
+    public TreeCombiner(IMonoid<R> monoid) {
+        this.monoid = monoid;
+        this.levels = new ArrayList<R>();
+        this.count = 0;
+    }
+
+    /**
+     * Sum of two values; left precedes right in the sequence.
+     * @param owned  True if left is a sum owned by the combiner.
+     */
+    @Nullable
+    private R sum(@Nullable R left, @Nullable R right, boolean owned) {
+        return owned ? this.monoid.addInto(left, right) : this.monoid.add(left, right);
+    }
+
+    public void add(@Nullable R value) {
+        R carry = value;
+        int level = 0;
+        while (level < this.levels.size() && this.levels.get(level) != null) {
+            // Level 0 holds a single value, which is not owned.
+            carry = this.sum(this.levels.get(level), carry, level > 0);
+            this.levels.set(level, null);
+            level++;
+        }
+        if (level == this.levels.size())
+            this.levels.add(carry);
+        else
+            this.levels.set(level, carry);
+        this.count++;
+    }
+
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * The sum of all values added; zero if there are none.
+     * This may modify the partial sums, so it must be called only once,
+     * after all values have been added.
+     */
+    @Nullable
+    public R getResult() {
+        if (this.count == 0)
+            return this.monoid.zero();
+        R result = null;
+        boolean owned = false;
+        boolean first = true;
+        for (int level = this.levels.size() - 1; level >= 0; level--) {
+            R value = this.levels.get(level);
+            if (value == null)
+                continue;
+            if (first) {
+                result = value;
+                owned = level > 0;
+                first = false;
+            } else {
+                result = this.sum(result, value, owned);
+                owned = true;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset.api;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+
+/**
+ * A sketch that can produce its result in several steps.  A long computation
+ * reports after each step a partial result; the partial results are deltas,
+ * which are combined using the add method of the sketch, like the partial results
+ * produced by different datasets.  This allows the user to see progressively
+ * refined results while the data is being processed.
+ * @param <T> Input data type.
+ * @param <R> Output data type.
+ */
+public interface IIncrementalSketch<T, R extends Serializable> extends ISketch<T, R> {
+    /**
+     * Receives the partial results of an incremental computation.
+     */
+    @FunctionalInterface
+    interface ISink<R> {
+        /**
+         * Called after each step of the computation.
+         * @param result  Partial result of the step; the deltaDone field indicates the
+         *                fraction of the data processed in this step.
+         * @return  False if the results are no longer needed; in this case the
+         *          computation should stop.
+         */
+        boolean accept(PartialResult<R> result);
+    }
+
+    /**
+     * True if the partial results of createIncrementally add up to the same value
+     * as create(data).  Sketches whose result depends on how the data is split, e.g.,
+     * because they sample the data, return false; they are then computed in one step.
+     */
+    default boolean isIncremental() { return true; }
+
+    /**
+     * Sketch the data incrementally.  If isIncremental is true, adding all the
+     * partial results passed to the sink must produce the same value as create(data);
+     * otherwise the sum is only an approximation of the same quality.
+     * @param data       Data to sketch.
+     * @param chunkSize  Approximate size of the data processed in each step.
+     * @param sink       Receives the partial results.
+     */
+    void createIncrementally(@Nullable T data, int chunkSize, ISink<R> sink);
+}
@@ -30,6 +30,19 @@ public interface IMonoid<R> extends Serializable {
     @Nullable R zero();
     @Nullable R add(@Nullable R left, @Nullable R right);
 
+    /**
+     * Adds right to left, possibly modifying left in place.  This can be used
+     * only when the caller owns left, i.e., left has been returned by a call to add or
+     * addInto made by the caller, and nobody else holds a reference to it.
+     * Monoids that override this method must ensure that add always returns a new
+     * object, which does not share mutable state with its arguments.
+     * @return The sum; this may be left itself.  Right is never modified.
+     */
+    @Nullable
+    default R addInto(@Nullable R left, @Nullable R right) {
+        return this.add(left, right);
+    }
+
     @Nullable
     default R reduce(List<R> data) {
         // This implementation avoids allocating a zero
@@ -38,9 +51,10 @@ public interface IMonoid<R> extends Serializable {
             return this.zero();
 
         R result = data.get(0);
-        // add the rest of the elements
+        // add the rest of the elements; the result of the first
+        // addition is owned by this method, so it can be modified.
         for (int i = 1; i < data.size(); i++)
-            result = this.add(result, data.get(i));
+            result = i == 1 ? this.add(result, data.get(i)) : this.addInto(result, data.get(i));
         return result;
     }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset.remoting;
+
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import org.hillview.utils.HillviewLogger;
+import org.hillview.utils.HostAndPort;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pool of gRPC channels, with one channel for each server endpoint.  All clients
+ * talking to the same server share the channel, and thus a single connection,
+ * instead of opening a new channel for each remote dataset.
+ * A channel closes its connection when it has been idle for a while; channels that
+ * have not been used for a longer time are removed from the pool and shut down.
+ * Callers should not hold on to channels: calls started before a channel is shut
+ * down complete normally, but new calls need a channel from the pool.
+ */
+public final class ChannelPool {
+    /**
+     * Keepalive pings are sent on connections with outstanding calls that have not
+     * received data for this interval; servers must permit pings at this rate.
+     */
+    public static final long KEEPALIVE_SECONDS = 60;
+    private static final long KEEPALIVE_TIMEOUT_SECONDS = 20;
+    /**
+     * Connections without calls are closed after this interval.
+     */
+    private static final long IDLE_TIMEOUT_MINUTES = 5;
+    /**
+     * Channels that have not been used for this interval are removed from the pool.
+     */
+    private static final long EVICT_AFTER_MINUTES = 60;
+
+    /**
+     * Bookkeeping for the channel of one endpoint.
+     */
+    static final class Entry {
+        final HostAndPort endpoint;
+        final ManagedChannel channel;
+        /**
+         * Time when the channel was last requested, in milliseconds.
+         */
+        long lastUsed;
+        long requests;
+
+        Entry(HostAndPort endpoint, ManagedChannel channel) {
+            this.endpoint = endpoint;
+            this.channel = channel;
+            this.lastUsed = System.currentTimeMillis();
+            this.requests = 0;
+        }
+
+        @Override
+        public String toString() {
+            return this.endpoint + ": " + this.channel.getState(false) +
+                    ", " + this.requests + " requests";
+        }
+    }
+
+    private final EventLoopGroup eventLoopGroup;
+    private final Executor executor;
+    private final long evictAfterMillis;
+    private final HashMap<HostAndPort, Entry> channels;
+    private long created;
+    private long evicted;
+    private long lastEviction;
+
+    /**
+     * Create a channel pool.
+     * @param eventLoopGroup  Netty event loop group used by all channels.
+     * @param executor        Executor running the callbacks of all channels.
+     */
+    public ChannelPool(EventLoopGroup eventLoopGroup, Executor executor) {
+        this(eventLoopGroup, executor, TimeUnit.MINUTES.toMillis(EVICT_AFTER_MINUTES));
+    }
+
+    /**
+     * Create a channel pool.
+     * @param eventLoopGroup    Netty event loop group used by all channels.
+     * @param executor          Executor running the callbacks of all channels.
+     * @param evictAfterMillis  Channels unused for this interval are shut down.
+     */
+    public ChannelPool(EventLoopGroup eventLoopGroup, Executor executor, long evictAfterMillis) {
+        this.eventLoopGroup = eventLoopGroup;
+        this.executor = executor;
+        this.evictAfterMillis = evictAfterMillis;
+        this.channels = new HashMap<HostAndPort, Entry>();
+        this.lastEviction = System.currentTimeMillis();
+    }
+
+    private ManagedChannel createChannel(HostAndPort endpoint) {
+        return NettyChannelBuilder
+                .forAddress(endpoint.getHost(), endpoint.getPort())
+                .maxInboundMessageSize(HillviewServer.MAX_MESSAGE_SIZE)
+                .executor(this.executor)
+                .eventLoopGroup(this.eventLoopGroup)
+                .keepAliveTime(KEEPALIVE_SECONDS, TimeUnit.SECONDS)
+                .keepAliveTimeout(KEEPALIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .idleTimeout(IDLE_TIMEOUT_MINUTES, TimeUnit.MINUTES)
+                .usePlaintext()   // channel is unencrypted.
+                .build();
+    }
+
+    /**
+     * Get the channel used to talk to a server, creating it if necessary.
+     */
+    public ManagedChannel getChannel(HostAndPort endpoint) {
+        List<ManagedChannel> toShutdown;
+        ManagedChannel result;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            toShutdown = this.evict(now);
+            Entry entry = this.channels.get(endpoint);
+            if (entry == null || entry.channel.isShutdown()) {
+                entry = new Entry(endpoint, this.createChannel(endpoint));
+                this.channels.put(endpoint, entry);
+                this.created++;
+                HillviewLogger.instance.info("Created channel", "{0}", endpoint);
+            }
+            entry.lastUsed = now;
+            entry.requests++;
+            result = entry.channel;
+        }
+        shutdown(toShutdown);
+        return result;
+    }
+
+    /**
+     * Remove the channels that have not been used recently.  Must be called with
+     * the lock held.  Eviction is checked at most once per eviction interval.
+     * @return  The channels to shut down after releasing the lock.
+     */
+    private List<ManagedChannel> evict(long now) {
+        List<ManagedChannel> result = new ArrayList<ManagedChannel>();
+        if (now - this.lastEviction < this.evictAfterMillis)
+            return result;
+        this.lastEviction = now;
+        Iterator<Map.Entry<HostAndPort, Entry>> it = this.channels.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (now - e.lastUsed >= this.evictAfterMillis) {
+                it.remove();
+                result.add(e.channel);
+                this.evicted++;
+                HillviewLogger.instance.info("Evicting channel", "{0}", e.endpoint);
+            }
+        }
+        return result;
+    }
+
+    private static void shutdown(List<ManagedChannel> channels) {
+        // Calls in progress are allowed to complete.
+        for (ManagedChannel c : channels)
+            c.shutdown();
+    }
+
+    /**
+     * Shut down all channels in the pool.
+     */
+    public void close() {
+        List<ManagedChannel> toShutdown = new ArrayList<ManagedChannel>();
+        synchronized (this) {
+            for (Entry e : this.channels.values())
+                toShutdown.add(e.channel);
+            this.channels.clear();
+        }
+        shutdown(toShutdown);
+    }
+
+    public synchronized int size() {
+        return this.channels.size();
+    }
+
+    public synchronized long getCreated() {
+        return this.created;
+    }
+
+    public synchronized long getEvicted() {
+        return this.evicted;
+    }
+
+    /**
+     * @return  A description of the channel used for an endpoint, or null if the pool
+     * has no channel for this endpoint.
+     */
+    @Nullable
+    public synchronized String getStatistics(HostAndPort endpoint) {
+        Entry entry = this.channels.get(endpoint);
+        if (entry == null)
+            return null;
+        return entry.toString();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("channel pool: ").append(this.channels.size()).append(" channels, ")
+                .append(this.created).append(" created, ")
+                .append(this.evicted).append(" evicted");
+        for (Entry e : this.channels.values())
+            builder.append("\n").append(e.toString());
+        return builder.toString();
+    }
+}
@@ -20,7 +20,6 @@ package org.hillview.dataset.remoting;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
-import com.google.protobuf.ByteString;
 import io.grpc.Server;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
@@ -28,7 +27,6 @@ import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
 import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
 import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
 import io.grpc.stub.StreamObserver;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.hillview.dataset.api.*;
 import org.hillview.pb.Ack;
@@ -42,11 +40,14 @@ import rx.Subscription;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.InetSocketAddress;
 import java.util.HashMap;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Server that transfers map(), sketch(), zip(), manage(), and unsubscribe() RPCs from a
@@ -62,6 +63,10 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     private final ExecutorService executorService =
             ExecutorUtils.newNamedThreadPool("server", NUM_THREADS, Thread.MAX_PRIORITY);
     private static final int EXPIRE_TIME_IN_HOURS = 2;
+    /**
+     * Fraction of the heap that can be used by memoized results.
+     */
+    private static final int MEMOIZATION_HEAP_FRACTION = 16;
     private boolean MEMOIZE = true;
 
     // Using PollSelectorProvider() to avoid epoll CPU utilization problems.
@@ -109,12 +114,22 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     private final HostAndPort listenAddress;
 
     private final MemoizedResults memoizedCommands;
+    /**
+     * Sketch result streams that are still sending data.
+     */
+    private final Set<SketchResultStream<?>> activeStreams = ConcurrentHashMap.newKeySet();
+    private final AtomicLong closedStreams = new AtomicLong();
+    private final AtomicLong receivedResults = new AtomicLong();
+    private final AtomicLong sentResults = new AtomicLong();
+    private final AtomicLong conflatedResults = new AtomicLong();
 
     public HillviewServer(final HostAndPort listenAddress, final IDataSet<?> initialDataset) throws IOException {
         this.initialDatasets = new HashMap<Integer, IDataSet<?>>();
         this.addInitialDataset(initialDataset);
         this.listenAddress = listenAddress;
-        this.memoizedCommands = new MemoizedResults();
+        this.memoizedCommands = new MemoizedResults(
+                Runtime.getRuntime().maxMemory() / MEMOIZATION_HEAP_FRACTION,
+                TimeUnit.HOURS.toMillis(EXPIRE_TIME_IN_HOURS));
         this.server = NettyServerBuilder.forAddress(new InetSocketAddress(listenAddress.getHost(),
                                                                      listenAddress.getPort()))
                                         .executor(executorService)
@@ -122,14 +137,20 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                                         .bossEventLoopGroup(bossElg)
                                         .addService(this)
                                         .maxInboundMessageSize(MAX_MESSAGE_SIZE)
+                                        .permitKeepAliveTime(ChannelPool.KEEPALIVE_SECONDS,
+                                                             TimeUnit.SECONDS)
                                         .build()
                                         .start();
         this.dataSets = CacheBuilder.newBuilder()
                 .expireAfterAccess(EXPIRE_TIME_IN_HOURS, TimeUnit.HOURS)
                 .removalListener(
-                        (RemovalListener<Integer, IDataSet<?>>) removalNotification ->
-                                HillviewLogger.instance.info("Removing reference to dataset", "{0}: {1}",
-                                    removalNotification.getKey(), removalNotification.getValue().toString()))
+                        (RemovalListener<Integer, IDataSet<?>>) removalNotification -> {
+                            HillviewLogger.instance.info("Removing reference to dataset", "{0}: {1}",
+                                    removalNotification.getKey(), removalNotification.getValue().toString());
+                            // Memoized results that use this dataset are no longer valid
+                            this.memoizedCommands.invalidateDataset(
+                                    Converters.checkNull(removalNotification.getKey()));
+                        })
                 .build();
         this.toUnsubscribe = CacheBuilder.newBuilder()
                 .expireAfterAccess(EXPIRE_TIME_IN_HOURS, TimeUnit.HOURS)
@@ -226,6 +247,47 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
         this.memoizedCommands.clear();
     }
 
+    /**
+     * @return A description of the state of the memoization cache, including its hit rate.
+     */
+    public String getMemoizationStatistics() {
+        return this.memoizedCommands.toString();
+    }
+
+    /**
+     * @return A description of the sketch result streams: for each active stream the
+     * number of partial results that are waiting to be sent, and totals for the
+     * streams that have terminated.  Conflated results are the ones that have been
+     * added into another result because the client was not keeping up.
+     */
+    public String getStreamStatistics() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("closed streams: ").append(this.closedStreams.get())
+                .append(", results received: ").append(this.receivedResults.get())
+                .append(", results sent: ").append(this.sentResults.get())
+                .append(", results conflated: ").append(this.conflatedResults.get());
+        for (SketchResultStream<?> s : this.activeStreams)
+            builder.append("\n").append(s.toString());
+        return builder.toString();
+    }
+
+    /**
+     * Invoked when a sketch result stream terminates.
+     */
+    private void streamClosed(SketchResultStream<?> stream, UUID commandId) {
+        this.activeStreams.remove(stream);
+        this.closedStreams.incrementAndGet();
+        this.receivedResults.addAndGet(stream.getReceived());
+        this.sentResults.addAndGet(stream.getSent());
+        this.conflatedResults.addAndGet(stream.getConflated());
+        if (stream.isCancelled()) {
+            // Nobody is listening anymore; stop the computation.
+            Subscription sub = this.removeSubscription(commandId, "sketch cancelled");
+            if (sub != null)
+                sub.unsubscribe();
+        }
+    }
+
     /**
      * Change memoization policy.
      */
@@ -277,9 +339,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                     final OperationResponse<PartialResult<Integer>> res = new
                             OperationResponse<PartialResult<Integer>>(new
                             PartialResult<Integer>(pr.deltaDone, idsIndex));
-                    final byte[] bytes = SerializationUtils.serialize(res);
-                    final PartialResponse result = PartialResponse.newBuilder()
-                            .setSerializedOp(ByteString.copyFrom(bytes)).build();
+                    final PartialResponse result = createResponse(command, res);
                     if (MEMOIZE) {
                         this.memoizedResult = result;
                         this.memoizedDatasetIndex = idsIndex;
@@ -297,14 +357,14 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
-            final byte[] bytes = command.getSerializedOp().toByteArray();
             if (this.respondIfReplyIsMemoized(command, responseObserver, true)) {
                 HillviewLogger.instance.info(
                         "Found memoized prune", "on IDataSet#{0}", command.getIdsIndex());
                 return;
             }
 
-            final PruneOperation mapOp = SerializationUtils.deserialize(bytes);
+            final PruneOperation mapOp = WireCodec.deserialize(
+                    command.getSerializedOp(), command.getCodec());
             final Observable<PartialResult<IDataSet<?>>> observable = dataset.prune(mapOp.isEmpty);
 
             final UUID commandId = this.getId(command);
@@ -333,14 +393,14 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
-            final byte[] bytes = command.getSerializedOp().toByteArray();
             if (this.respondIfReplyIsMemoized(command, responseObserver, true)) {
                 HillviewLogger.instance.info(
                         "Found memoized map", "on IDataSet#{0}", command.getIdsIndex());
                 return;
             }
 
-            final MapOperation mapOp = SerializationUtils.deserialize(bytes);
+            final MapOperation mapOp = WireCodec.deserialize(
+                    command.getSerializedOp(), command.getCodec());
             final Observable<PartialResult<IDataSet<?>>> observable = dataset.map(mapOp.mapper);
             final UUID commandId = this.getId(command);
             Subscriber subscriber = this.createSubscriber(
@@ -369,7 +429,6 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
-            final byte[] bytes = command.getSerializedOp().toByteArray();
 
             if (this.respondIfReplyIsMemoized(command, responseObserver, true)) {
                 HillviewLogger.instance.info(
@@ -377,7 +436,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                 return;
             }
 
-            final FlatMapOperation mapOp = SerializationUtils.deserialize(bytes);
+            final FlatMapOperation mapOp = WireCodec.deserialize(
+                    command.getSerializedOp(), command.getCodec());
             final Observable<PartialResult<IDataSet<?>>> observable = dataset.flatMap(mapOp.mapper);
             final UUID commandId = this.getId(command);
             Subscriber subscriber = this.createSubscriber(
@@ -412,67 +472,56 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                 return;
             }
 
-            final byte[] bytes = command.getSerializedOp().toByteArray();
-            final SketchOperation sketchOp = SerializationUtils.deserialize(bytes);
+            final SketchOperation sketchOp = WireCodec.deserialize(
+                    command.getSerializedOp(), command.getCodec());
             final Observable<PartialResult<?>> observable = dataset.sketch(sketchOp.sketch);
             final UUID commandId = this.getId(command);
-            Subscriber subscriber = new Subscriber<PartialResult<?>>() {
+            final IMonoid<Object> sketch = (IMonoid<Object>)(IMonoid<?>)sketchOp.sketch;
+            // Partial results which cannot be sent yet are added together by the stream.
+            final SketchResultStream<Object> stream = new SketchResultStream<Object>(
+                    "sketch " + commandId, responseObserver, sketch,
+                    pr -> createResponse(command, new OperationResponse<PartialResult<?>>(pr)),
+                    this.executorService, st -> this.streamClosed(st, commandId));
+            this.activeStreams.add(stream);
+            Subscriber subscriber = new Subscriber<PartialResult<Object>>() {
                 @Nullable private Object sketchResultAccumulator =
                         memoize ? sketchOp.sketch.getZero(): null;
-                CompletableFuture<?> queue = CompletableFuture.completedFuture(null);
 
                 @Override
                 public void onCompleted() {
                     HillviewServer.this.removeSubscription(commandId, "sketch completed");
-                    queue = queue.thenRunAsync(() -> {
-                        try {
-                            responseObserver.onCompleted();
-                            if (memoize && this.sketchResultAccumulator != null) {
-                                final OperationResponse<PartialResult<?>> res =
-                                        new OperationResponse<PartialResult<?>>(
-                                                new PartialResult<Object>(1.0, this.sketchResultAccumulator));
-                                final byte[] bytes = SerializationUtils.serialize(res);
-                                final PartialResponse memoizedResult = PartialResponse.newBuilder()
-                                        .setSerializedOp(ByteString.copyFrom(bytes))
-                                        .build();
-                                HillviewServer.this.memoizedCommands.insert(command, memoizedResult, 0);
-                            }
-                        } catch (Throwable ex) {
-                            HillviewLogger.instance.error("Async exception", ex);
-                            this.onError(ex);
-                        }
-                    }, executorService);
+                    if (memoize && this.sketchResultAccumulator != null) {
+                        final OperationResponse<PartialResult<?>> res =
+                                new OperationResponse<PartialResult<?>>(
+                                        new PartialResult<Object>(1.0, this.sketchResultAccumulator));
+                        final PartialResponse memoizedResult = createResponse(command, res);
+                        HillviewServer.this.memoizedCommands.insert(command, memoizedResult, 0);
+                    }
+                    stream.onCompleted();
                 }
 
                 @Override
                 public void onError(final Throwable e) {
                     HillviewLogger.instance.error("Exception in sketch", e);
                     e.printStackTrace();
-                    queue = queue.thenRunAsync(() -> {
-                        responseObserver.onError(asStatusRuntimeException(e));
-                        HillviewServer.this.removeSubscription(commandId, "sketch onError");
-                    }, executorService);
+                    HillviewServer.this.removeSubscription(commandId, "sketch onError");
+                    stream.onError(asStatusRuntimeException(e));
                 }
 
                 @Override
-                public void onNext(final PartialResult<?> pr) {
+                public void onNext(final PartialResult<Object> pr) {
                     HillviewLogger.instance.info("Partial sketch result");
-                    queue = queue.thenRunAsync(() -> {
-                        try {
-                            if (memoize && this.sketchResultAccumulator != null)
-                                this.sketchResultAccumulator = sketchOp.sketch.add(this
-                                        .sketchResultAccumulator, pr.deltaValue);
-                            final OperationResponse<PartialResult<?>> res =
-                                    new OperationResponse<PartialResult<?>>(pr);
-                            final byte[] bytes = SerializationUtils.serialize(res);
-                            responseObserver.onNext(PartialResponse.newBuilder()
-                                    .setSerializedOp(ByteString.copyFrom(bytes))
-                                    .build());
-                        } catch (Exception ex) {
-                            HillviewLogger.instance.error("Async exception", ex);
-                            this.onError(ex);
-                        }
-                    }, executorService);
+                    try {
+                        // The accumulator starts from a fresh zero, so it is owned here.
+                        if (memoize && this.sketchResultAccumulator != null)
+                            this.sketchResultAccumulator = sketch.addInto(
+                                    this.sketchResultAccumulator, pr.deltaValue);
+                        stream.onNext(pr);
+                    } catch (Exception ex) {
+                        HillviewLogger.instance.error("Exception in sketch", ex);
+                        this.onError(ex);
+                        this.unsubscribe();
+                    }
                 }
             };
             final Subscription sub = observable
@@ -500,8 +549,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
             final IDataSet<?> dataset = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (dataset == null)
                 return;
-            final byte[] bytes = command.getSerializedOp().toByteArray();
-            final ManageOperation manage = SerializationUtils.deserialize(bytes);
+            final ManageOperation manage = WireCodec.deserialize(
+                    command.getSerializedOp(), command.getCodec());
             Observable<PartialResult<ControlMessage.StatusList>> observable = dataset.manage(manage
                     .message);
             final Callable<ControlMessage.StatusList> callable = () -> {
@@ -540,10 +589,7 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
                 public void onNext(final PartialResult pr) {
                     final OperationResponse<PartialResult> res =
                             new OperationResponse<PartialResult>(pr);
-                    final byte[] bytes = SerializationUtils.serialize(res);
-                    responseObserver.onNext(PartialResponse.newBuilder()
-                            .setSerializedOp(ByteString.copyFrom(bytes))
-                            .build());
+                    responseObserver.onNext(createResponse(command, res));
                 }
             };
             // Results of management commands are never memoized.
@@ -567,8 +613,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     public void zip(final Command command, final StreamObserver<PartialResponse> responseObserver) {
         try {
             final UUID commandId = this.getId(command);
-            final byte[] bytes = command.getSerializedOp().toByteArray();
-            final ZipOperation zipOp = SerializationUtils.deserialize(bytes);
+            final ZipOperation zipOp = WireCodec.deserialize(
+                    command.getSerializedOp(), command.getCodec());
             final IDataSet left = this.getIfValid(command.getIdsIndex(), responseObserver);
             if (left == null)
                 return;
@@ -604,8 +650,8 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
     @Override
     public void unsubscribe(final Command command, final StreamObserver<Ack> responseObserver) {
         try {
-            final byte[] bytes = command.getSerializedOp().toByteArray();
-            final UnsubscribeOperation unsubscribeOp = SerializationUtils.deserialize(bytes);
+            final UnsubscribeOperation unsubscribeOp = WireCodec.deserialize(
+                    command.getSerializedOp(), command.getCodec());
             HillviewLogger.instance.info("Unsubscribing", "{0}", unsubscribeOp.id);
             @Nullable
             final Subscription subscription = this.removeSubscription(unsubscribeOp.id,
@@ -649,6 +695,9 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
         MemoizedResults.ResponseAndId memoized = this.memoizedCommands.get(command);
         if (memoized == null)
             return false;
+        if (memoized.response.getCodec() > command.getAcceptCodec())
+            // The client cannot decode the memoized response.
+            return false;
         if (checkResult) {
             int index = memoized.localDatasetIndex;
             assert index != 0;
@@ -665,6 +714,17 @@ public class HillviewServer extends HillviewServerGrpc.HillviewServerImplBase {
         return true;
     }
 
+    /**
+     * Encode a response to a command using the best codec that the client accepts.
+     */
+    private static PartialResponse createResponse(final Command command, final Serializable response) {
+        int codec = WireCodec.negotiate(command.getAcceptCodec());
+        return PartialResponse.newBuilder()
+                .setSerializedOp(WireCodec.serialize(response, codec))
+                .setCodec(codec)
+                .build();
+    }
+
     /**
      * Helper method to propagate exceptions via gRPC
      */
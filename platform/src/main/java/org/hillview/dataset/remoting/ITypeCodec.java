@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset.remoting;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A hand-written binary encoder for the objects of exactly one class.
+ * Codecs are registered with the WireCodec, which uses them instead of
+ * Java serialization when sending values between RemoteDataSet and HillviewServer.
+ * @param <T>  Class of the encoded objects.
+ */
+public interface ITypeCodec<T> {
+    /**
+     * The class whose objects are encoded.  Subclasses are not handled by this codec.
+     */
+    Class<T> getEncodedClass();
+
+    /**
+     * True if this particular value can be encoded by this codec.  If this
+     * returns false the value is encoded using Java serialization.
+     */
+    default boolean canEncode(T value) { return true; }
+
+    /**
+     * Write the value to the output stream.
+     * @param value  Value to write.
+     * @param out    Stream to write to.
+     * @param codec  Codec that can be used to write nested objects.
+     */
+    void encode(T value, DataOutputStream out, WireCodec codec) throws IOException;
+
+    /**
+     * Read a value that was written by encode.
+     * @param in     Stream to read from.
+     * @param codec  Codec that can be used to read nested objects.
+     */
+    T decode(DataInputStream in, WireCodec codec) throws IOException;
+}
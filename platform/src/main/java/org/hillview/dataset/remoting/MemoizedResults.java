@@ -18,15 +18,22 @@
 package org.hillview.dataset.remoting;
 
 import com.google.protobuf.ByteString;
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.pb.Command;
 import org.hillview.pb.PartialResponse;
 
 import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class is used to hold memoized results from remote commands.
+ * The cache has a memory budget: when the memoized responses exceed it the least
+ * recently used ones are discarded.  Responses also expire after a fixed time.
+ * Commands are identified by a hash of the serialized operation, so the cache
+ * does not hold on to the operations themselves.
  */
 public class MemoizedResults {
     /**
@@ -49,43 +56,215 @@ public class MemoizedResults {
         }
     }
 
+    private static final LongHashFunction hash0 = LongHashFunction.xx(0);
+    private static final LongHashFunction hash1 = LongHashFunction.xx(0x5eed);
+    /**
+     * Estimated memory used by the bookkeeping of one entry.
+     */
+    private static final long entryOverhead = 128;
+
+    /**
+     * Identifies a command: the 128-bit hash of the serialized operation and
+     * the index of the dataset that it is applied to.
+     */
+    static final class Key {
+        final long hash0;
+        final long hash1;
+        final int length;
+        final int datasetIndex;
+
+        Key(final Command command) {
+            ByteString op = command.getSerializedOp();
+            ByteBuffer buffer = op.asReadOnlyByteBuffer();
+            this.hash0 = MemoizedResults.hash0.hashBytes(buffer);
+            this.hash1 = MemoizedResults.hash1.hashBytes(buffer);
+            this.length = op.size();
+            this.datasetIndex = command.getIdsIndex();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return this.hash0 == key.hash0 && this.hash1 == key.hash1 &&
+                    this.length == key.length && this.datasetIndex == key.datasetIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(this.hash0) * 31 + this.datasetIndex;
+        }
+    }
+
+    static final class Entry {
+        final ResponseAndId value;
+        final long bytes;
+        final long insertedAt;
+
+        Entry(ResponseAndId value, long bytes, long insertedAt) {
+            this.value = value;
+            this.bytes = bytes;
+            this.insertedAt = insertedAt;
+        }
+    }
+
     /**
      * Map each (command, dataset index) to a partial response obtained by
-     * running the command on that respective dataset.
+     * running the command on that respective dataset.  In access order:
+     * the least recently used entry is first.
      */
-    private final ConcurrentHashMap<ByteString, Map<Integer, ResponseAndId>> memoizedCommands;
+    private final LinkedHashMap<Key, Entry> memoizedCommands;
+    private long budget;
+    private final long timeToLiveMillis;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
 
-    MemoizedResults() {
-        this.memoizedCommands = new ConcurrentHashMap<ByteString, Map<Integer, ResponseAndId>>();
+    /**
+     * Create a cache for memoized results.
+     * @param budget            Maximum estimated size in bytes of the memoized responses.
+     * @param timeToLiveMillis  Time after which a memoized response is discarded.
+     */
+    public MemoizedResults(long budget, long timeToLiveMillis) {
+        this.memoizedCommands = new LinkedHashMap<Key, Entry>(16, .75f, true);
+        this.budget = budget;
+        this.timeToLiveMillis = timeToLiveMillis;
     }
 
     /**
      * Purges all memoized results
      */
-    public void clear() {
+    public synchronized void clear() {
         this.memoizedCommands.clear();
+        this.usedBytes = 0;
+    }
+
+    /**
+     * Change the budget of the cache; discards results if necessary.
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        this.evict(0);
     }
 
     @Nullable
-    public ResponseAndId get(final Command command) {
-        ByteString ser = command.getSerializedOp();
-        if (!this.memoizedCommands.containsKey(ser))
+    public synchronized ResponseAndId get(final Command command) {
+        Key key = new Key(command);
+        Entry entry = this.memoizedCommands.get(key);
+        if (entry == null) {
+            this.misses++;
             return null;
-        Map<Integer, ResponseAndId> map = this.memoizedCommands.get(ser);
-        int index = command.getIdsIndex();
-        if (!map.containsKey(index))
+        }
+        if (System.currentTimeMillis() - entry.insertedAt > this.timeToLiveMillis) {
+            this.removeEntry(key);
+            this.expirations++;
+            this.misses++;
             return null;
-        return map.get(index);
+        }
+        this.hits++;
+        return entry.value;
     }
 
-    public void insert(final Command command, final PartialResponse response, Integer index) {
+    public synchronized void insert(final Command command, final PartialResponse response, Integer index) {
         ResponseAndId rid = new ResponseAndId(response, index);
-        this.memoizedCommands.computeIfAbsent(command.getSerializedOp(),
-                (k) -> new ConcurrentHashMap<Integer, ResponseAndId>()).put(command.getIdsIndex(), rid);
+        long bytes = response.getSerializedSize() + entryOverhead;
+        Key key = new Key(command);
+        this.removeEntry(key);
+        if (bytes > this.budget)
+            return;
+        this.evict(bytes);
+        this.memoizedCommands.put(key, new Entry(rid, bytes, System.currentTimeMillis()));
+        this.usedBytes += bytes;
+    }
+
+    public synchronized void remove(final Command command, final ResponseAndId resp) {
+        Key key = new Key(command);
+        Entry entry = this.memoizedCommands.get(key);
+        if (entry != null && entry.value == resp) {
+            this.removeEntry(key);
+            this.invalidations++;
+        }
+    }
+
+    /**
+     * Discard the results of commands applied to a dataset and the
+     * results that refer to this dataset.  Called when the dataset is
+     * no longer available.
+     * @param datasetIndex  Index of the dataset.
+     */
+    public synchronized void invalidateDataset(int datasetIndex) {
+        Iterator<Map.Entry<Key, Entry>> it = this.memoizedCommands.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().datasetIndex == datasetIndex ||
+                    e.getValue().value.localDatasetIndex == datasetIndex) {
+                it.remove();
+                this.usedBytes -= e.getValue().bytes;
+                this.invalidations++;
+            }
+        }
+    }
+
+    private void removeEntry(Key key) {
+        Entry previous = this.memoizedCommands.remove(key);
+        if (previous != null)
+            this.usedBytes -= previous.bytes;
+    }
+
+    /**
+     * Remove the least recently used entries until there is room for the
+     * specified number of bytes.  Must be called with the lock held.
+     */
+    private void evict(long bytes) {
+        Iterator<Entry> it = this.memoizedCommands.values().iterator();
+        while (it.hasNext() && this.usedBytes + bytes > this.budget) {
+            Entry e = it.next();
+            it.remove();
+            this.usedBytes -= e.bytes;
+            this.evictions++;
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    public synchronized int size() {
+        return this.memoizedCommands.size();
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * @return The fraction of lookups that found a result; 0 if there were no lookups.
+     */
+    public synchronized double getHitRate() {
+        long lookups = this.hits + this.misses;
+        if (lookups == 0)
+            return 0;
+        return (double)this.hits / lookups;
     }
 
-    public void remove(final Command command, final ResponseAndId resp) {
-        Map<Integer, ResponseAndId> map = this.memoizedCommands.get(command.getSerializedOp());
-        map.remove(command.getIdsIndex());
+    @Override
+    public synchronized String toString() {
+        return "memoization: " + this.usedBytes + "/" + this.budget + " bytes, " +
+                this.memoizedCommands.size() + " results, " + this.hits + " hits, " +
+                this.misses + " misses, " + String.format("%.1f", 100 * this.getHitRate()) +
+                "% hit rate, " + this.evictions + " evictions, " + this.expirations +
+                " expirations, " + this.invalidations + " invalidations";
     }
 }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset.remoting;
+
+import org.hillview.dataset.api.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact codecs for the operations and wrappers in the remoting package.
+ * The payload of an operation (a sketch, a map, a control message) is
+ * user-defined code, so it is nested as an object; it usually ends up
+ * using Java serialization.
+ */
+final class OperationCodecs {
+    private OperationCodecs() {}
+
+    /**
+     * Tags 2 to 12 belong to these codecs.
+     */
+    static void register(WireCodec codec) {
+        codec.register(2, WireCodec.COMPACT, new PartialResultCodec());
+        codec.register(3, WireCodec.COMPACT, new OperationResponseCodec());
+        codec.register(4, WireCodec.COMPACT, new IntegerCodec());
+        codec.register(5, WireCodec.COMPACT, new PairCodec());
+        codec.register(6, WireCodec.COMPACT, new SketchOperationCodec());
+        codec.register(7, WireCodec.COMPACT, new MapOperationCodec());
+        codec.register(8, WireCodec.COMPACT, new FlatMapOperationCodec());
+        codec.register(9, WireCodec.COMPACT, new PruneOperationCodec());
+        codec.register(10, WireCodec.COMPACT, new ManageOperationCodec());
+        codec.register(11, WireCodec.COMPACT, new ZipOperationCodec());
+        codec.register(12, WireCodec.COMPACT, new UnsubscribeOperationCodec());
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class PartialResultCodec implements ITypeCodec<PartialResult> {
+        @Override
+        public Class<PartialResult> getEncodedClass() { return PartialResult.class; }
+
+        @Override
+        public void encode(PartialResult value, DataOutputStream out, WireCodec codec) throws IOException {
+            out.writeDouble(value.deltaDone);
+            codec.writeObject(out, value.deltaValue);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public PartialResult decode(DataInputStream in, WireCodec codec) throws IOException {
+            double done = in.readDouble();
+            return new PartialResult(done, codec.readObject(in));
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class OperationResponseCodec implements ITypeCodec<OperationResponse> {
+        @Override
+        public Class<OperationResponse> getEncodedClass() { return OperationResponse.class; }
+
+        @Override
+        public void encode(OperationResponse value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.result);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public OperationResponse decode(DataInputStream in, WireCodec codec) throws IOException {
+            return new OperationResponse(codec.readObject(in));
+        }
+    }
+
+    static class IntegerCodec implements ITypeCodec<Integer> {
+        @Override
+        public Class<Integer> getEncodedClass() { return Integer.class; }
+
+        @Override
+        public void encode(Integer value, DataOutputStream out, WireCodec codec) throws IOException {
+            out.writeInt(value);
+        }
+
+        @Override
+        public Integer decode(DataInputStream in, WireCodec codec) throws IOException {
+            return in.readInt();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class PairCodec implements ITypeCodec<Pair> {
+        @Override
+        public Class<Pair> getEncodedClass() { return Pair.class; }
+
+        @Override
+        public void encode(Pair value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.first);
+            codec.writeObject(out, value.second);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Pair decode(DataInputStream in, WireCodec codec) throws IOException {
+            Object first = codec.readObject(in);
+            return new Pair(first, codec.readObject(in));
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class SketchOperationCodec implements ITypeCodec<SketchOperation> {
+        @Override
+        public Class<SketchOperation> getEncodedClass() { return SketchOperation.class; }
+
+        @Override
+        public void encode(SketchOperation value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.sketch);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public SketchOperation decode(DataInputStream in, WireCodec codec) throws IOException {
+            return new SketchOperation((ISketch<?, ? extends Serializable>)codec.readObject(in));
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class MapOperationCodec implements ITypeCodec<MapOperation> {
+        @Override
+        public Class<MapOperation> getEncodedClass() { return MapOperation.class; }
+
+        @Override
+        public void encode(MapOperation value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.mapper);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public MapOperation decode(DataInputStream in, WireCodec codec) throws IOException {
+            return new MapOperation((IMap<?, ?>)codec.readObject(in));
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class FlatMapOperationCodec implements ITypeCodec<FlatMapOperation> {
+        @Override
+        public Class<FlatMapOperation> getEncodedClass() { return FlatMapOperation.class; }
+
+        @Override
+        public void encode(FlatMapOperation value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.mapper);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public FlatMapOperation decode(DataInputStream in, WireCodec codec) throws IOException {
+            return new FlatMapOperation((IMap<?, List<?>>)codec.readObject(in));
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    static class PruneOperationCodec implements ITypeCodec<PruneOperation> {
+        @Override
+        public Class<PruneOperation> getEncodedClass() { return PruneOperation.class; }
+
+        @Override
+        public void encode(PruneOperation value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.isEmpty);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public PruneOperation decode(DataInputStream in, WireCodec codec) throws IOException {
+            return new PruneOperation((IMap<?, Boolean>)codec.readObject(in));
+        }
+    }
+
+    static class ManageOperationCodec implements ITypeCodec<ManageOperation> {
+        @Override
+        public Class<ManageOperation> getEncodedClass() { return ManageOperation.class; }
+
+        @Override
+        public void encode(ManageOperation value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.message);
+        }
+
+        @Override
+        public ManageOperation decode(DataInputStream in, WireCodec codec) throws IOException {
+            return new ManageOperation((ControlMessage)codec.readObject(in));
+        }
+    }
+
+    static class ZipOperationCodec implements ITypeCodec<ZipOperation> {
+        @Override
+        public Class<ZipOperation> getEncodedClass() { return ZipOperation.class; }
+
+        @Override
+        public void encode(ZipOperation value, DataOutputStream out, WireCodec codec) throws IOException {
+            out.writeInt(value.datasetIndex);
+        }
+
+        @Override
+        public ZipOperation decode(DataInputStream in, WireCodec codec) throws IOException {
+            return new ZipOperation(in.readInt());
+        }
+    }
+
+    static class UnsubscribeOperationCodec implements ITypeCodec<UnsubscribeOperation> {
+        @Override
+        public Class<UnsubscribeOperation> getEncodedClass() { return UnsubscribeOperation.class; }
+
+        @Override
+        public void encode(UnsubscribeOperation value, DataOutputStream out, WireCodec codec) throws IOException {
+            out.writeLong(value.id.getMostSignificantBits());
+            out.writeLong(value.id.getLeastSignificantBits());
+        }
+
+        @Override
+        public UnsubscribeOperation decode(DataInputStream in, WireCodec codec) throws IOException {
+            long high = in.readLong();
+            return new UnsubscribeOperation(new UUID(high, in.readLong()));
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset.remoting;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.hillview.dataset.PartialResultMonoid;
+import org.hillview.dataset.api.IMonoid;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.pb.PartialResponse;
+import org.hillview.utils.HillviewLogger;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Sends the partial results of a sketch on a gRPC stream, respecting the flow control
+ * of the stream: messages are only sent while the stream is ready, and sending resumes
+ * when gRPC signals that the stream has become ready again.  At most MAX_QUEUED partial
+ * results wait to be sent; further results are added with the sketch monoid into the
+ * last one.  A slow client thus receives fewer, larger partial results, and the memory
+ * used by a stream is bounded.  Messages are sent from the executor, one at a time.
+ * @param <R>  Type of sketch result.
+ */
+public final class SketchResultStream<R> {
+    /**
+     * Maximum number of partial results waiting to be sent.
+     */
+    static final int MAX_QUEUED = 4;
+
+    private final StreamObserver<PartialResponse> observer;
+    @Nullable
+    private final ServerCallStreamObserver<PartialResponse> flow;
+    private final PartialResultMonoid<R> monoid;
+    private final Function<PartialResult<R>, PartialResponse> encoder;
+    private final Executor executor;
+    /**
+     * Invoked once when the stream terminates, successfully or not.
+     */
+    private final Consumer<SketchResultStream<R>> onClosed;
+    private final String name;
+
+    // All following fields are guarded by this.
+    /**
+     * Partial results not yet sent.
+     */
+    private final ArrayDeque<PartialResult<R>> queue;
+    /**
+     * True if the last element of the queue is owned by this stream,
+     * and thus can be modified.
+     */
+    private boolean lastOwned;
+    private int maxDepth;
+    private long received;
+    private long sent;
+    /**
+     * Number of partial results that have been added into another one.
+     */
+    private long conflated;
+    private boolean completed;
+    @Nullable
+    private Throwable error;
+    private boolean draining;
+    private boolean terminated;
+    private boolean cancelled;
+
+    /**
+     * Create a stream.  This must be called from the gRPC method which
+     * receives the observer, since it registers handlers with it.
+     * @param name         Name used for logging.
+     * @param observer     gRPC stream where results are sent.
+     * @param sketch       Monoid used to add results that cannot be sent yet.
+     * @param encoder      Converts a result into a message.
+     * @param executor     Executor used to send the messages.
+     * @param onClosed     Invoked once when the stream terminates: completed, failed,
+     *                     or cancelled by the client.
+     */
+    public SketchResultStream(String name, StreamObserver<PartialResponse> observer, IMonoid<R> sketch,
+                              Function<PartialResult<R>, PartialResponse> encoder,
+                              Executor executor, Consumer<SketchResultStream<R>> onClosed) {
+        this.name = name;
+        this.observer = observer;
+        this.monoid = new PartialResultMonoid<R>(sketch);
+        this.encoder = encoder;
+        this.executor = executor;
+        this.onClosed = onClosed;
+        this.queue = new ArrayDeque<PartialResult<R>>();
+        if (observer instanceof ServerCallStreamObserver) {
+            this.flow = (ServerCallStreamObserver<PartialResponse>)observer;
+            this.flow.setOnReadyHandler(this::schedule);
+            this.flow.setOnCancelHandler(this::cancelled);
+        } else {
+            this.flow = null;
+        }
+    }
+
+    /**
+     * The client has cancelled the call; pending results are dropped.
+     */
+    private void cancelled() {
+        synchronized (this) {
+            if (this.terminated)
+                return;
+            this.terminated = true;
+            this.cancelled = true;
+            this.queue.clear();
+        }
+        HillviewLogger.instance.info("Sketch stream cancelled", "{0}", this);
+        this.onClosed.accept(this);
+    }
+
+    private boolean isReady() {
+        return this.flow == null || this.flow.isReady();
+    }
+
+    /**
+     * Add a partial result to the stream.
+     */
+    public void onNext(PartialResult<R> result) {
+        synchronized (this) {
+            this.received++;
+            if (this.terminated)
+                return;
+            if (this.queue.size() < MAX_QUEUED) {
+                this.queue.addLast(result);
+                this.lastOwned = false;
+                this.maxDepth = Math.max(this.maxDepth, this.queue.size());
+            } else {
+                PartialResult<R> last = this.queue.removeLast();
+                if (this.lastOwned)
+                    last = this.monoid.addInto(last, result);
+                else
+                    last = this.monoid.add(last, result);
+                this.queue.addLast(last);
+                this.lastOwned = true;
+                this.conflated++;
+            }
+        }
+        this.schedule();
+    }
+
+    public void onCompleted() {
+        synchronized (this) {
+            this.completed = true;
+        }
+        this.schedule();
+    }
+
+    public void onError(Throwable t) {
+        synchronized (this) {
+            if (this.error == null)
+                this.error = t;
+        }
+        this.schedule();
+    }
+
+    /**
+     * Start sending pending messages, unless this is already in progress.
+     */
+    private void schedule() {
+        synchronized (this) {
+            if (this.draining || this.terminated)
+                return;
+            this.draining = true;
+        }
+        this.executor.execute(this::drain);
+    }
+
+    private void drain() {
+        while (true) {
+            @Nullable PartialResult<R> toSend = null;
+            @Nullable Throwable failure = null;
+            synchronized (this) {
+                if (this.terminated) {
+                    return;
+                } else if (this.error != null) {
+                    failure = this.error;
+                    this.queue.clear();
+                    this.terminated = true;
+                } else if (!this.queue.isEmpty() && this.isReady()) {
+                    toSend = this.queue.removeFirst();
+                    if (this.queue.isEmpty())
+                        this.lastOwned = false;
+                    this.sent++;
+                } else if (this.queue.isEmpty() && this.completed) {
+                    this.terminated = true;
+                } else {
+                    // Nothing to send, or the stream is not ready: the next
+                    // result or the ready handler will resume sending.
+                    this.draining = false;
+                    return;
+                }
+            }
+            try {
+                if (toSend != null) {
+                    this.observer.onNext(this.encoder.apply(toSend));
+                    continue;
+                }
+                if (failure != null) {
+                    this.observer.onError(failure);
+                } else {
+                    this.observer.onCompleted();
+                    HillviewLogger.instance.info("Sketch stream completed", "{0}", this);
+                }
+            } catch (Throwable t) {
+                HillviewLogger.instance.error("Error sending sketch result", t);
+                if (toSend != null) {
+                    synchronized (this) {
+                        if (this.error == null)
+                            this.error = t;
+                    }
+                    continue;
+                }
+            }
+            this.onClosed.accept(this);
+            return;
+        }
+    }
+
+    public synchronized boolean isTerminated() {
+        return this.terminated;
+    }
+
+    public synchronized boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    public synchronized long getReceived() {
+        return this.received;
+    }
+
+    public synchronized long getSent() {
+        return this.sent;
+    }
+
+    public synchronized long getConflated() {
+        return this.conflated;
+    }
+
+    /**
+     * Number of partial results waiting to be sent.
+     */
+    public synchronized int getDepth() {
+        return this.queue.size();
+    }
+
+    public synchronized int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return this.name + ": received " + this.received + ", sent " + this.sent +
+                ", conflated " + this.conflated + ", pending " + this.queue.size() +
+                ", max pending " + this.maxDepth +
+                (this.cancelled ? ", cancelled" : "");
+    }
+}
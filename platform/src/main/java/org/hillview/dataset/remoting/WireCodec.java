@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.dataset.remoting;
+
+import com.google.protobuf.ByteString;
+import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.sketches.results.ResultCodecs;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Encodes the operations and the results exchanged between a RemoteDataSet and
+ * a HillviewServer.  Two encodings are supported:
+ * - JAVA_SERIALIZATION: the whole object graph is serialized using Java serialization.
+ * - COMPACT: objects whose class has a registered ITypeCodec are written using the
+ *   codec; all other objects are embedded as Java-serialized blobs.
+ * The encoding is negotiated per connection: each Command carries the highest codec
+ * that the client can decode, and the server answers using the best codec that both
+ * sides understand.  Java serialization is always understood, so it is the fallback.
+ *
+ * Every ITypeCodec is registered with a fixed tag and with the version of the COMPACT
+ * encoding that introduced it.  Tags must never be reused or changed; adding a codec
+ * or changing the format of an existing one requires a new version, and LATEST must be
+ * incremented.  When writing for an older version the newer codecs are not used, so the
+ * peer only sees tags that it knows about.
+ */
+public final class WireCodec {
+    public static final int JAVA_SERIALIZATION = 0;
+    public static final int COMPACT = 1;
+    /**
+     * Best codec understood by this implementation.
+     */
+    public static final int LATEST = COMPACT;
+
+    // Tags preceding each object in the COMPACT encoding.
+    private static final int NULL_TAG = 0;
+    private static final int JAVA_TAG = 1;
+    private static final int FIRST_CODEC_TAG = 2;
+    private static final int MAX_TAG = 255;
+
+    public static final WireCodec instance = new WireCodec(LATEST);
+    static {
+        OperationCodecs.register(instance);
+        ResultCodecs.register(instance);
+    }
+
+    /**
+     * A codec together with its tag and the version that introduced it.
+     */
+    private static final class Registration {
+        final int tag;
+        final int version;
+        final ITypeCodec<?> codec;
+
+        Registration(int tag, int version, ITypeCodec<?> codec) {
+            this.tag = tag;
+            this.version = version;
+            this.codec = codec;
+        }
+    }
+
+    private final HashMap<Class<?>, Registration> byClass;
+    private final Registration[] byTag;
+    /**
+     * Version of the COMPACT encoding written and read by this object.
+     */
+    private final int version;
+
+    /**
+     * Create a codec without any registered type codecs.
+     * @param version  Version of the COMPACT encoding used, at least COMPACT.
+     */
+    public WireCodec(int version) {
+        this(version, new HashMap<Class<?>, Registration>(), new Registration[MAX_TAG + 1]);
+    }
+
+    private WireCodec(int version, HashMap<Class<?>, Registration> byClass, Registration[] byTag) {
+        if (version < COMPACT)
+            throw new RuntimeException("Not a compact codec version " + version);
+        this.version = version;
+        this.byClass = byClass;
+        this.byTag = byTag;
+    }
+
+    /**
+     * Register a type codec; this must be done before the codec is used.
+     * @param tag      Tag written before the encoded objects; it must never change.
+     * @param version  First version of the encoding that uses this codec.
+     * @param codec    Codec to register.
+     */
+    public void register(int tag, int version, ITypeCodec<?> codec) {
+        if (tag < FIRST_CODEC_TAG || tag > MAX_TAG)
+            throw new RuntimeException("Invalid codec tag " + tag);
+        if (version < COMPACT)
+            throw new RuntimeException("Invalid codec version " + version);
+        if (this.byTag[tag] != null)
+            throw new RuntimeException("Codec tag " + tag + " already used for " +
+                    this.byTag[tag].codec.getEncodedClass());
+        if (this.byClass.containsKey(codec.getEncodedClass()))
+            throw new RuntimeException("Codec already registered for " + codec.getEncodedClass());
+        Registration reg = new Registration(tag, version, codec);
+        this.byTag[tag] = reg;
+        this.byClass.put(codec.getEncodedClass(), reg);
+    }
+
+    /**
+     * A codec that shares the registered type codecs of this one, but
+     * writes and reads the specified version of the encoding.
+     */
+    public WireCodec forVersion(int version) {
+        if (version == this.version)
+            return this;
+        return new WireCodec(version, this.byClass, this.byTag);
+    }
+
+    /**
+     * The codec to use when replying to a peer that accepts codecs up to 'accepted'.
+     */
+    public static int negotiate(int accepted) {
+        return Math.max(JAVA_SERIALIZATION, Math.min(accepted, LATEST));
+    }
+
+    /**
+     * Encode an object using the specified codec.
+     */
+    public static ByteString serialize(@Nullable Serializable object, int codec) {
+        if (codec == JAVA_SERIALIZATION)
+            return ByteString.copyFrom(SerializationUtils.serialize(object));
+        if (codec < COMPACT || codec > LATEST)
+            throw new RuntimeException("Unsupported codec " + codec);
+        try {
+            ByteString.Output stream = ByteString.newOutput();
+            DataOutputStream out = new DataOutputStream(stream);
+            instance.forVersion(codec).writeObject(out, object);
+            out.flush();
+            return stream.toByteString();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Decode an object that was encoded with serialize.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <T> T deserialize(ByteString data, int codec) {
+        if (codec == JAVA_SERIALIZATION)
+            return SerializationUtils.deserialize(data.toByteArray());
+        if (codec < COMPACT || codec > LATEST)
+            throw new RuntimeException("Unsupported codec " + codec);
+        try {
+            DataInputStream in = new DataInputStream(data.newInput());
+            return (T)instance.forVersion(codec).readObject(in);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void writeObject(DataOutputStream out, @Nullable Object object) throws IOException {
+        if (object == null) {
+            out.writeByte(NULL_TAG);
+            return;
+        }
+        Registration reg = this.byClass.get(object.getClass());
+        if (reg != null && reg.version <= this.version) {
+            ITypeCodec<Object> codec = (ITypeCodec<Object>)reg.codec;
+            if (codec.canEncode(object)) {
+                out.writeByte(reg.tag);
+                codec.encode(object, out, this);
+                return;
+            }
+        }
+        out.writeByte(JAVA_TAG);
+        writeBytes(out, SerializationUtils.serialize((Serializable)object));
+    }
+
+    @Nullable
+    public Object readObject(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        if (tag == NULL_TAG)
+            return null;
+        if (tag == JAVA_TAG)
+            return SerializationUtils.deserialize(readBytes(in));
+        Registration reg = this.byTag[tag];
+        if (reg == null || reg.version > this.version)
+            throw new IOException("Unknown codec tag " + tag + " in version " + this.version);
+        return reg.codec.decode(in, this);
+    }
+
+    // Helpers for writing and reading common data types.
+
+    public static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    public static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /**
+     * Unlike DataOutputStream.writeUTF this does not limit the string length.
+     */
+    public static void writeString(DataOutputStream out, String s) throws IOException {
+        writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a long using a variable-length zig-zag encoding; small values
+     * such as most bucket counts take one or two bytes.
+     */
+    public static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int)((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int)v);
+    }
+
+    public static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return (v >>> 1) ^ -(v & 1);
+        }
+        throw new IOException("Malformed variable-length long");
+    }
+
+    public static void writeLongs(DataOutputStream out, long[] data) throws IOException {
+        out.writeInt(data.length);
+        for (long l : data)
+            writeVarLong(out, l);
+    }
+
+    public static long[] readLongs(DataInputStream in) throws IOException {
+        long[] result = new long[in.readInt()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = readVarLong(in);
+        return result;
+    }
+
+    /**
+     * Writes an int array that may be null.
+     */
+    public static void writeInts(DataOutputStream out, @Nullable int[] data) throws IOException {
+        if (data == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(data.length);
+        for (int i : data)
+            out.writeInt(i);
+    }
+
+    @Nullable
+    public static int[] readInts(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        int[] result = new int[length];
+        for (int i = 0; i < result.length; i++)
+            result[i] = in.readInt();
+        return result;
+    }
+}
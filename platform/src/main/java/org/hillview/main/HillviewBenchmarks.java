@@ -17,6 +17,7 @@
 
 package org.hillview.main;
 
+import net.openhft.hashing.LongHashFunction;
 import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
 import org.hillview.dataset.RemoteDataSet;
@@ -34,8 +35,14 @@ import org.hillview.table.ColumnDescription;
 import org.hillview.table.Table;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.hillview.table.columns.DoubleArrayColumn;
+import org.hillview.table.columns.DoubleListColumn;
+import org.hillview.table.columns.IntArrayColumn;
+import org.hillview.table.columns.IntListColumn;
+import org.hillview.table.columns.StringListColumn;
 import org.hillview.table.membership.FullMembershipSet;
 import org.hillview.utils.*;
 
@@ -106,6 +113,50 @@ public class HillviewBenchmarks extends Benchmarks {
         return new Table(cols, fMap, null, null);
     }
 
+    private static Histogram rowAtATimeHistogram(
+            IColumn col, IMembershipSet members, IHistogramBuckets buckets) {
+        Histogram result = new Histogram(buckets.getBucketCount());
+        IRowIterator it = members.getIterator();
+        int row = it.getNextRow();
+        while (row >= 0) {
+            result.add(col, row, buckets);
+            row = it.getNextRow();
+        }
+        return result;
+    }
+
+    /**
+     * Runs both histogram implementations on several column types.  In a server
+     * the calls made for each row are megamorphic, since many column
+     * implementations are in use; without this warmup the JIT would inline
+     * them all and the row-at-a-time loop would look unrealistically fast.
+     */
+    private static void warmupHistograms(IHistogramBuckets buckets) {
+        final int size = 1024 * 1024;
+        IntArrayColumn ints = new IntArrayColumn(
+                new ColumnDescription("I", ContentsKind.Integer), size);
+        DoubleListColumn doubles = new DoubleListColumn(desc);
+        IntListColumn intList = new IntListColumn(
+                new ColumnDescription("L", ContentsKind.Integer));
+        for (int i = 0; i < size; i++) {
+            ints.set(i, i % 100);
+            doubles.append((double)(i % 100));
+            intList.append(i % 100);
+        }
+        List<IColumn> columns = new ArrayList<IColumn>();
+        columns.add(ints);
+        columns.add(doubles);
+        columns.add(intList);
+        columns.add(generateDoubleArray(size, 100));
+        FullMembershipSet members = new FullMembershipSet(size);
+        for (int i = 0; i < 20; i++) {
+            for (IColumn c : columns) {
+                rowAtATimeHistogram(c, members, buckets);
+                new Histogram(buckets.getBucketCount()).create(c, members, buckets, 1.0, 0, false);
+            }
+        }
+    }
+
     // Testing the performance of histogram computations
     private static void benchmarkHistogram(
             String[] args) throws IOException, InterruptedException {
@@ -132,6 +183,18 @@ public class HillviewBenchmarks extends Benchmarks {
             runNTimes(r, runCount, "Dataset histogram", colSize);
         }
 
+        if (args[0].equals("kernel")) {
+            // Compare the row-at-a-time histogram loop with the batched kernel.
+            final FullMembershipSet members = new FullMembershipSet(colSize);
+            warmupHistograms(buckDes);
+            Runnable r = () -> rowAtATimeHistogram(col, members, buckDes);
+            double rowTime = runNTimes(r, runCount, "Row-at-a-time histogram", colSize);
+            r = () -> new Histogram(buckDes.getBucketCount()).create(
+                    col, members, buckDes, 1.0, 0, false);
+            double batchTime = runNTimes(r, runCount, "Batched histogram", colSize);
+            System.out.println("Batched histogram speedup," + String.format("%.2f", rowTime / batchTime));
+        }
+
         if (args[0].equals("separatethread")) {
             final IDataSet<ITable> lds = new LocalDataSet<ITable>(table);
             Runnable r = () -> lds.blockingSketch(sk);
@@ -215,6 +278,120 @@ public class HillviewBenchmarks extends Benchmarks {
         System.exit(0);
     }
 
+    /**
+     * Computes hyperloglog registers the way HLogLog did before it used sparse
+     * registers and batch hashing: one virtual hash call per row into dense registers.
+     */
+    private static byte[] rowAtATimeHLL(IColumn col, IMembershipSet members, int logRegNum, long seed) {
+        byte[] registers = new byte[1 << logRegNum];
+        LongHashFunction hash = LongHashFunction.xx(seed);
+        IRowIterator it = members.getIterator();
+        int row = it.getNextRow();
+        while (row >= 0) {
+            if (!col.isMissing(row)) {
+                long itemHash = col.hashCode64(row, hash);
+                int index = (int) itemHash >>> (Long.SIZE - logRegNum);
+                byte zeros = (byte) (Long.numberOfTrailingZeros(itemHash) + 1);
+                if (zeros > registers[index])
+                    registers[index] = zeros;
+            }
+            row = it.getNextRow();
+        }
+        return registers;
+    }
+
+    /**
+     * Merges dense registers allocating a new array, as HLogLog.union used to.
+     */
+    private static byte[] denseUnion(byte[] left, byte[] right) {
+        byte[] result = new byte[left.length];
+        for (int i = 0; i < left.length; i++)
+            result[i] = (byte) Integer.max(left[i], right[i]);
+        return result;
+    }
+
+    // Compare the current HLogLog with the row-at-a-time dense implementation
+    private static void benchmarkHLL(String[] args) {
+        final int runCount = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        final int colSize = 10 * 1024 * 1024;
+        final int logRegNum = 12;
+        final long seed = 0;
+        final FullMembershipSet members = new FullMembershipSet(colSize);
+        IntArrayColumn ints = new IntArrayColumn(
+                new ColumnDescription("I", ContentsKind.Integer), colSize);
+        StringListColumn strings = new StringListColumn(
+                new ColumnDescription("S", ContentsKind.String));
+        Randomness random = new Randomness(seed);
+        for (int i = 0; i < colSize; i++) {
+            ints.set(i, random.nextInt(100000));
+            strings.append("s" + random.nextInt(1000));
+        }
+        List<IColumn> columns = new ArrayList<IColumn>();
+        columns.add(ints);
+        columns.add(generateDoubleArray(colSize, 100000));
+        columns.add(strings);
+
+        // Make the per-row calls megamorphic, as they are in a server; see warmupHistograms.
+        List<IColumn> warmup = new ArrayList<IColumn>(columns);
+        IntListColumn intList = new IntListColumn(new ColumnDescription("L", ContentsKind.Integer));
+        DoubleListColumn doubleList = new DoubleListColumn(desc);
+        for (int i = 0; i < 1024 * 1024; i++) {
+            intList.append(i % 1000);
+            doubleList.append((double)(i % 1000));
+        }
+        warmup.add(intList);
+        warmup.add(doubleList);
+        FullMembershipSet warmupMembers = new FullMembershipSet(1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            for (IColumn c : warmup) {
+                rowAtATimeHLL(c, warmupMembers, logRegNum, seed);
+                new HLogLog(logRegNum, seed).createHLL(c, warmupMembers);
+            }
+        }
+
+        System.out.println("Bench,Time (ms),Melems/s,Percent slower");
+        for (IColumn c : columns) {
+            String kind = c.getKind().toString();
+            Runnable r = () -> rowAtATimeHLL(c, members, logRegNum, seed);
+            double rowTime = runNTimes(r, runCount, "Row-at-a-time HLL " + kind, colSize);
+            r = () -> new HLogLog(logRegNum, seed).createHLL(c, members);
+            double batchTime = runNTimes(r, runCount, "Batched HLL " + kind, colSize);
+            System.out.println("Batched HLL " + kind + " speedup," +
+                    String.format("%.2f", rowTime / batchTime));
+        }
+
+        // Merging many sketches of small partitions, as in a ParallelDataSet.
+        final int partitions = 10000;
+        final int partitionSize = 100;
+        final List<HLogLog> sketches = new ArrayList<HLogLog>();
+        final List<byte[]> denseSketches = new ArrayList<byte[]>();
+        for (int i = 0; i < partitions; i++) {
+            FullMembershipSet part = new FullMembershipSet(partitionSize);
+            IntArrayColumn col = new IntArrayColumn(
+                    new ColumnDescription("P", ContentsKind.Integer), partitionSize);
+            for (int j = 0; j < partitionSize; j++)
+                col.set(j, random.nextInt(100000));
+            HLogLog hll = new HLogLog(logRegNum, seed);
+            hll.createHLL(col, part);
+            sketches.add(hll);
+            denseSketches.add(rowAtATimeHLL(col, part, logRegNum, seed));
+        }
+        Runnable r = () -> {
+            byte[] result = new byte[1 << logRegNum];
+            for (byte[] d : denseSketches)
+                result = denseUnion(result, d);
+        };
+        double denseTime = runNTimes(r, runCount, "Dense HLL merge", partitions);
+        r = () -> {
+            HLogLog result = new HLogLog(logRegNum, seed);
+            for (HLogLog h : sketches)
+                result.merge(h);
+            result.distinctItemsEstimator();
+        };
+        double mergeTime = runNTimes(r, runCount, "In-place HLL merge", partitions);
+        System.out.println("In-place HLL merge speedup," + String.format("%.2f", denseTime / mergeTime));
+    }
+
     private static IDataSet<Empty> createInitialDataset(String[] args)
             throws IOException {
         IDataSet<Empty> original;
@@ -381,6 +558,9 @@ public class HillviewBenchmarks extends Benchmarks {
             case "quantilesError":
                 quantilesError(args);
                 break;
+            case "hll":
+                benchmarkHLL(args);
+                break;
             default:
                 throw new RuntimeException("Unexpected benchmark: " + bench);
         }
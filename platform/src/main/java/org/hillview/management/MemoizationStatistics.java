@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.management;
+
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.remoting.HillviewServer;
+
+/**
+ * This control message returns the statistics of the memoization cache
+ * of a HillviewServer: memory used, hits, misses and evictions.
+ */
+public class MemoizationStatistics extends ControlMessage {
+    static final long serialVersionUID = 1;
+
+    @Override
+    public Status remoteServerAction(HillviewServer server) {
+        return new Status(server.getMemoizationStatistics());
+    }
+}
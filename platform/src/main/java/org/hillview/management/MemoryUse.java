@@ -19,11 +19,13 @@ package org.hillview.management;
 
 import org.hillview.dataset.api.ControlMessage;
 import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.table.columns.ColumnCache;
 
 import java.text.NumberFormat;
 
 /**
- * This control message returns the memory used in a specific HillviewServer process JVM.
+ * This control message returns the memory used in a specific HillviewServer process JVM,
+ * together with the statistics of the column cache.
  */
 public class MemoryUse extends ControlMessage {
     static final long serialVersionUID = 1;
@@ -36,6 +38,7 @@ public class MemoryUse extends ControlMessage {
         System.gc();
         Runtime rt = Runtime.getRuntime();
         long usedMemory = rt.totalMemory() - rt.freeMemory();
-        return new Status(NumberFormat.getIntegerInstance().format(usedMemory));
+        return new Status(NumberFormat.getIntegerInstance().format(usedMemory) +
+                "; " + ColumnCache.instance.toString());
     }
 }
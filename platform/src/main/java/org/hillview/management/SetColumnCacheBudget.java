@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.management;
+
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.table.columns.ColumnCache;
+
+/**
+ * This control message changes the memory budget of the lazy column
+ * cache in a HillviewServer process.
+ */
+public class SetColumnCacheBudget extends ControlMessage {
+    static final long serialVersionUID = 1;
+    private final long bytes;
+
+    public SetColumnCacheBudget(long bytes) {
+        this.bytes = bytes;
+    }
+
+    @Override
+    public Status remoteServerAction(HillviewServer server) {
+        ColumnCache.instance.setBudget(this.bytes);
+        return new Status(ColumnCache.instance.toString());
+    }
+}
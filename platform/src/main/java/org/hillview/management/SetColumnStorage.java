@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.management;
+
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.table.columns.ColumnStorage;
+
+import javax.annotation.Nullable;
+
+/**
+ * This control message selects where a HillviewServer process stores
+ * the data of the columns that it loads afterwards.
+ */
+public class SetColumnStorage extends ControlMessage {
+    static final long serialVersionUID = 1;
+    private final ColumnStorage.Tier tier;
+    @Nullable
+    private final String spillDirectory;
+
+    /**
+     * @param tier            Storage tier for new columns.
+     * @param spillDirectory  Folder for the files backing memory-mapped columns;
+     *                        if null the system temporary folder is used.
+     */
+    public SetColumnStorage(ColumnStorage.Tier tier, @Nullable String spillDirectory) {
+        this.tier = tier;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public Status remoteServerAction(HillviewServer server) {
+        ColumnStorage.setTier(this.tier, this.spillDirectory);
+        return new Status("OK");
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.management;
+
+import org.hillview.dataset.api.ControlMessage;
+import org.hillview.dataset.remoting.HillviewServer;
+import org.hillview.storage.ColumnarFileCache;
+
+import javax.annotation.Nullable;
+
+/**
+ * This control message sets the folder where a HillviewServer process
+ * caches the files it loads in the native columnar format.
+ */
+public class SetColumnarFileCache extends ControlMessage {
+    static final long serialVersionUID = 1;
+    @Nullable
+    private final String directory;
+
+    /**
+     * @param directory  Folder for the cached files; if null caching is disabled.
+     */
+    public SetColumnarFileCache(@Nullable String directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Status remoteServerAction(HillviewServer server) {
+        ColumnarFileCache.instance.setDirectory(this.directory);
+        return new Status(ColumnarFileCache.instance.toString());
+    }
+}
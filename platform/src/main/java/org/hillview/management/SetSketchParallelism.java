@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.management;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.api.ControlMessage;
+
+/**
+ * This control message changes the number of threads that the
+ * workers use to run a sketch over a single table.
+ */
+public class SetSketchParallelism extends ControlMessage {
+    static final long serialVersionUID = 1;
+    private final int ranges;
+    private final int minimumRangeSize;
+
+    /**
+     * @param ranges           Maximum number of row ranges that are sketched in parallel;
+     *                         1 disables intra-table parallelism.
+     * @param minimumRangeSize Tables are not split in ranges smaller than this.
+     */
+    public SetSketchParallelism(int ranges, int minimumRangeSize) {
+        this.ranges = ranges;
+        this.minimumRangeSize = minimumRangeSize;
+    }
+
+    @Override
+    public <T> Status localAction(LocalDataSet<T> dataset) {
+        LocalDataSet.setSketchParallelism(this.ranges, this.minimumRangeSize);
+        return new Status("OK");
+    }
+}
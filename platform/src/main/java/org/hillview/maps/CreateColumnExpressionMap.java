@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.maps;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
+import org.hillview.table.api.*;
+import org.hillview.table.columns.BaseColumn;
+import org.hillview.table.expressions.Expression;
+import org.hillview.table.expressions.ExpressionParser;
+import org.hillview.table.expressions.ExpressionType;
+import org.hillview.table.expressions.ValueBatch;
+import org.hillview.table.rows.RowBatch;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+
+/**
+ * This map creates a new column by evaluating an expression
+ * over a set of columns.  The expression is evaluated on blocks of rows.
+ */
+public class CreateColumnExpressionMap extends AppendColumnMap {
+    static final long serialVersionUID = 1;
+    /**
+     * Expression that computes the value in the new column, in the syntax of the ExpressionParser.
+     */
+    private final String expression;
+    /**
+     * Set of columns that the expression can access.
+     */
+    private final Schema inputColumns;
+    /**
+     * Description of the output column to produce.
+     */
+    private final ColumnDescription outputColumn;
+    /**
+     * A map describing columns that have been renamed by the user
+     * mapping the original name to the currently visible name.
+     */
+    @Nullable
+    private final HashMap<String, String> columnRenameMap;
+
+    public CreateColumnExpressionMap(
+            String expression, Schema inputColumns,
+            @Nullable
+            HashMap<String, String> columnRenameMap,
+            ColumnDescription outputColumn) {
+        super(outputColumn.name, -1);
+        this.expression = expression;
+        this.inputColumns = inputColumns;
+        this.outputColumn = outputColumn;
+        this.columnRenameMap = columnRenameMap;
+        checkKinds(this.parse().type, outputColumn.kind);
+    }
+
+    private Expression parse() {
+        return ExpressionParser.parse(this.expression, this.inputColumns, this.columnRenameMap);
+    }
+
+    /**
+     * Checks that the values of an expression can be stored in a column.
+     */
+    private static void checkKinds(ExpressionType type, ContentsKind kind) {
+        boolean valid;
+        switch (kind) {
+            case String:
+            case Json:
+                valid = true;
+                break;
+            case Integer:
+            case Double:
+            case Duration:
+                valid = type == ExpressionType.Number;
+                break;
+            case Date:
+                valid = type.isNumeric();
+                break;
+            case None:
+            default:
+                valid = false;
+                break;
+        }
+        if (!valid)
+            throw new RuntimeException("Cannot store values of type " + type +
+                    " in a column of kind " + kind);
+    }
+
+    @Override
+    IColumn createColumn(ITable table) {
+        Expression compiled = this.parse().bind(table);
+        IMembershipSet set = table.getMembershipSet();
+        IMutableColumn col = BaseColumn.create(this.outputColumn, set.getMax(), set.getSize());
+        ContentsKind kind = this.outputColumn.kind;
+
+        RowBatch batch = new RowBatch(set.getIterator());
+        ValueBatch values = new ValueBatch(compiled.type, batch.capacity());
+        while (batch.next()) {
+            compiled.evaluate(batch.rows, batch.count, values);
+            for (int i = 0; i < batch.count; i++) {
+                int r = batch.rows[i];
+                if (values.missing[i]) {
+                    col.setMissing(r);
+                    continue;
+                }
+                switch (kind) {
+                    case String:
+                    case Json:
+                        col.set(r, toString(values, i));
+                        break;
+                    case Integer:
+                        col.set(r, (int)Converters.checkNull(values.doubles)[i]);
+                        break;
+                    case Double:
+                        col.set(r, Converters.checkNull(values.doubles)[i]);
+                        break;
+                    case Date:
+                        col.set(r, Converters.toDate(Converters.checkNull(values.doubles)[i]));
+                        break;
+                    case Duration:
+                        col.set(r, Converters.toDuration(Converters.checkNull(values.doubles)[i]));
+                        break;
+                    case None:
+                    default:
+                        throw new RuntimeException("Unexpected kind " + kind);
+                }
+            }
+        }
+        return col;
+    }
+
+    private static String toString(ValueBatch values, int index) {
+        switch (values.type) {
+            case Number:
+                return Expression.formatNumber(Converters.checkNull(values.doubles)[index]);
+            case Date:
+                return Converters.toString(Converters.toDate(Converters.checkNull(values.doubles)[index]));
+            case Boolean:
+                return Boolean.toString(Converters.checkNull(values.booleans)[index]);
+            case String:
+            default:
+                return Converters.checkNull(values.strings)[index];
+        }
+    }
+}
@@ -76,6 +76,8 @@ public class CreateColumnJSMap extends AppendColumnMap {
         try {
             ScriptEngineManager factory = new ScriptEngineManager();
             ScriptEngine engine = factory.getEngineByName("nashorn");
+            if (engine == null)
+                throw new RuntimeException("JavaScript is not available in this JVM; use an expression instead");
             // Compiles the JS function
             engine.eval(this.jsFunction);
             Invocable invocable = (Invocable)engine;
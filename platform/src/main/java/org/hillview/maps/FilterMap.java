@@ -18,16 +18,23 @@
 package org.hillview.maps;
 
 import org.hillview.dataset.api.IMap;
+import org.hillview.table.BlockStatistics;
 import org.hillview.table.QuantizationSchema;
 import org.hillview.table.QuantizedTable;
 import org.hillview.table.api.ITableFilterDescription;
 import org.hillview.table.api.ITableFilter;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.ITable;
+import org.hillview.table.api.IMutableMembershipSet;
+import org.hillview.table.membership.MembershipSetFactory;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.utils.Converters;
 import org.hillview.utils.HillviewLogger;
+import org.hillview.utils.Linq;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * A Map which implements table filtering: given a row index it returns true if the
@@ -58,12 +65,94 @@ public class FilterMap implements IMap<ITable, ITable> {
         Converters.checkNull(data);
         if (this.quantization != null)
             data = new QuantizedTable(data, this.quantization);
-        ITableFilter filter = this.rowFilterPredicate.getFilter(data);
-        HillviewLogger.instance.info("Filtering", "{0}", filter);
-        IMembershipSet result = data.getMembershipSet().filter(filter::test);
+        IMembershipSet result = this.filterBlocks(data);
+        if (result == null) {
+            ITableFilter filter = this.rowFilterPredicate.getFilter(data);
+            HillviewLogger.instance.info("Filtering", "{0}", filter);
+            result = filterRows(data.getMembershipSet(), filter);
+        }
         return data.selectRowsFromFullTable(result);
     }
 
+    /**
+     * Uses the statistics stored in the file that the table was loaded from to
+     * decide the filter for whole blocks of rows.  The rows of the remaining
+     * blocks are tested one by one; if there are none the column is not loaded.
+     * @return The filtered set of rows, or null if statistics cannot be used.
+     */
+    @Nullable
+    private IMembershipSet filterBlocks(ITable data) {
+        String column = this.rowFilterPredicate.getStatisticsColumn();
+        if (column == null)
+            return null;
+        List<BlockStatistics> statistics = data.getColumnStatistics(column);
+        if (statistics == null)
+            return null;
+        // Empty blocks would confuse the search for the block of a row.
+        statistics = Linq.where(statistics, b -> b.rowCount > 0);
+        int blocks = statistics.size();
+        int[] starts = new int[blocks];
+        int[] ends = new int[blocks];
+        Boolean[] decisions = new Boolean[blocks];
+        boolean decided = true;
+        int skipped = 0;
+        for (int i = 0; i < blocks; i++) {
+            BlockStatistics block = statistics.get(i);
+            starts[i] = block.firstRow;
+            ends[i] = block.firstRow + block.rowCount;
+            decisions[i] = this.rowFilterPredicate.testBlock(block);
+            if (decisions[i] == null)
+                decided = false;
+            else if (!decisions[i])
+                skipped++;
+        }
+        HillviewLogger.instance.info("Filtering using statistics", "{0}: skipping {1}/{2} blocks",
+                this.rowFilterPredicate, skipped, blocks);
+
+        if (decided) {
+            // Keep only the ranges of the selected blocks.
+            int[] selectedStarts = new int[blocks - skipped];
+            int[] selectedEnds = new int[blocks - skipped];
+            int index = 0;
+            for (int i = 0; i < blocks; i++) {
+                if (decisions[i]) {
+                    selectedStarts[index] = starts[i];
+                    selectedEnds[index] = ends[i];
+                    index++;
+                }
+            }
+            return data.getMembershipSet().selectRanges(selectedStarts, selectedEnds);
+        }
+
+        ITableFilter filter = this.rowFilterPredicate.getFilter(data);
+        return data.getMembershipSet().filter(row -> {
+            int block = Arrays.binarySearch(starts, row);
+            if (block < 0)
+                block = -block - 2;
+            Boolean decision = decisions[block];
+            if (decision != null)
+                return decision;
+            return filter.test(row);
+        });
+    }
+
+    /**
+     * Applies a filter to a set of rows, testing a block of rows at a time.
+     */
+    private static IMembershipSet filterRows(IMembershipSet set, ITableFilter filter) {
+        int estimatedSize = MembershipSetFactory.estimateSize(set, filter::test);
+        IMutableMembershipSet result = MembershipSetFactory.create(set.getMax(), estimatedSize);
+        RowBatch batch = new RowBatch(set.getIterator());
+        boolean[] selected = new boolean[batch.capacity()];
+        while (batch.next()) {
+            filter.test(batch.rows, batch.count, selected);
+            for (int i = 0; i < batch.count; i++)
+                if (selected[i])
+                    result.add(batch.rows[i]);
+        }
+        return result.seal();
+    }
+
     public String asString() {
         return this.rowFilterPredicate.toString();
     }
@@ -1,81 +1,423 @@
 package org.hillview.security;
 
-
+import it.unimi.dsi.fastutil.longs.Long2DoubleOpenHashMap;
 import org.hillview.dataset.api.Pair;
-import org.hillview.utils.Utilities;
+import org.hillview.utils.Converters;
 
-import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.IllegalBlockSizeException;
 import java.security.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hillview.utils.Utilities.INT_SIZE;
-import static org.hillview.utils.Utilities.byteArrayToLong;
 
+/**
+ * Samples Laplace noise using a pseudorandom function of the noise index,
+ * so that the same index always receives the same noise.  An index is a column
+ * index and one or two intervals.
+ * The pseudorandom function is AES used as a CBC-MAC over two blocks: the first block
+ * holds the column index, the number of intervals and the first interval of a
+ * two-dimensional index, the second block holds the last interval.  Noise is computed
+ * in batches of indexes that share the first block: the first block is encrypted once,
+ * and the second blocks of all indexes are encrypted with a single call, using
+ * per-thread buffers.
+ * The noise of each interval is cached, so repeated queries do not recompute it.
+ * This class is thread-safe: each thread uses its own cipher, and the cache is split
+ * in segments, one for each first block, which are locked separately; when the cache
+ * is full the least recently used segments are dropped.
+ *
+ * Repeated queries receive the same noise only as long as the key and this function
+ * are unchanged.  Changing either one gives fresh noise to all queries, which allows
+ * averaging answers obtained before and after the change; this is equivalent to
+ * spending the privacy budget again.  The previous implementation used a random
+ * initialization vector, so its noise already changed on every restart and cannot
+ * be reproduced; switching to this function is such a privacy-budget reset.
+ */
 public class SecureLaplace {
+    private static final int BLOCK_SIZE = 16;
     /**
-     * For sampling Laplace noise on intervals.
-     * For a query on a column with index I and a rectangle <x1, y1, x2, y2>,
-     * scratchBytes is filled with [I, x1, y1, x2, y2].
+     * Number of indexes encrypted in one batch.
      */
-    private Cipher aes;
-
+    private static final int BATCH_SIZE = 4096;
+    /**
+     * Maximum number of cached values; when exceeded the least recently used
+     * segments are evicted.  The noise is a deterministic function of its index,
+     * so evicting cached values never changes the results.
+     */
+    private static final int MAX_CACHED = 1 << 20;
     private static final double NORMALIZER = Math.pow(2, -53);
 
-    public SecureLaplace(KeyLoader keyLoader) {
-        try {
-            Key sk = keyLoader.getOrCreateKey();
-            this.aes = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            this.aes.init(Cipher.ENCRYPT_MODE, sk);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
-            throw new RuntimeException(e);
+    private final Key key;
+
+    /**
+     * The cipher and the scratch buffers used by one thread.
+     */
+    private static final class Generator {
+        final Cipher aes;
+        final byte[] first;
+        final byte[] blocks;
+        final byte[] encrypted;
+
+        Generator(Key key) {
+            try {
+                this.aes = Cipher.getInstance("AES/ECB/NoPadding");
+                this.aes.init(Cipher.ENCRYPT_MODE, key);
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
+                throw new RuntimeException(e);
+            }
+            this.first = new byte[BLOCK_SIZE];
+            this.blocks = new byte[BATCH_SIZE * BLOCK_SIZE];
+            this.encrypted = new byte[BATCH_SIZE * BLOCK_SIZE];
         }
     }
 
+    private final ThreadLocal<Generator> generator;
+
     /**
-     * Securely sample a random double uniformly in [0, 1). This implementation returns
-     * a uniform value that is a multiple of 2^-53 using a pseudorandom function indexed
-     * by index.
+     * Key for the first interval of a two-dimensional index.  For one-dimensional
+     * indexes the first interval is [0, 0].
      */
-    @SafeVarargs
-    private final double sampleUniform(Integer columnIndex, Pair<Integer, Integer>... index) {
-        byte[] scratchBytes = new byte[5*INT_SIZE];
-        if (scratchBytes.length < index.length*INT_SIZE + 1) {
-            throw new RuntimeException("Not enough bytes allocated to sample with " + index.length + " columns");
+    private static final class IntervalKey {
+        final int columnIndex;
+        final int dimensions;
+        final int left;
+        final int right;
+
+        IntervalKey(int columnIndex, int dimensions, int left, int right) {
+            this.columnIndex = columnIndex;
+            this.dimensions = dimensions;
+            this.left = left;
+            this.right = right;
         }
 
-        Utilities.intToByteArray(columnIndex, scratchBytes, 0);
-        for (int i = 0; i < index.length; i++) {
-            Utilities.intPairToByteArray(index[i], scratchBytes, INT_SIZE*(2*i + 1));
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || this.getClass() != o.getClass()) return false;
+            IntervalKey that = (IntervalKey) o;
+            return this.columnIndex == that.columnIndex &&
+                    this.dimensions == that.dimensions &&
+                    this.left == that.left &&
+                    this.right == that.right;
         }
 
-        try {
-            byte[] bytes = this.aes.doFinal(scratchBytes);
-            long val = byteArrayToLong(bytes);
-            return (double)val * NORMALIZER;
-        } catch (IllegalBlockSizeException | BadPaddingException e) {
-            throw new RuntimeException(e);
+        @Override
+        public int hashCode() {
+            int result = this.columnIndex;
+            result = 31 * result + this.dimensions;
+            result = 31 * result + this.left;
+            result = 31 * result + this.right;
+            return result;
+        }
+    }
+
+    /**
+     * Cached noise for Laplace(0, 1) of the indexes with the same first interval,
+     * indexed by the last interval encoded as a long.  Noise for Laplace(0, scale)
+     * is obtained by multiplying with the scale.  Guarded by the segment lock.
+     */
+    private static final class Segment {
+        final Long2DoubleOpenHashMap values;
+        /**
+         * Set when the segment is evicted; values are no longer added to it.
+         */
+        boolean evicted;
+
+        Segment() {
+            this.values = new Long2DoubleOpenHashMap();
+            this.values.defaultReturnValue(Double.NaN);
+            this.evicted = false;
         }
     }
 
-    private double uniformToLaplace(double scale, double unif) {
+    /**
+     * Segments in access order: the least recently used is first.
+     * Guarded by the lock on the map itself, which is only held while
+     * looking up or evicting segments.
+     */
+    private final LinkedHashMap<IntervalKey, Segment> cache;
+    /**
+     * Number of values in all segments of the cache.
+     */
+    private final AtomicInteger cachedCount;
+
+    public SecureLaplace(KeyLoader keyLoader) {
+        this.key = keyLoader.getOrCreateKey();
+        this.generator = ThreadLocal.withInitial(() -> new Generator(this.key));
+        // Reports an invalid key immediately.
+        this.generator.get();
+        this.cache = new LinkedHashMap<IntervalKey, Segment>(16, .75f, true);
+        this.cachedCount = new AtomicInteger(0);
+    }
+
+    private static void putInt(int value, byte[] array, int offset) {
+        for (int i = 0; i < INT_SIZE; i++)
+            array[offset + i] = (byte)(value >> (8 * (INT_SIZE - 1 - i)));
+    }
+
+    private static long encode(int left, int right) {
+        return ((long)left << 32) | (right & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Converts a value uniform in [0, 1) into a sample from Laplace(0, 1).
+     */
+    private static double uniformToLaplace(double unif) {
         double r = 0.5 - unif;
         if ( r < 0 ) {
-            return -1 * scale * Math.log(1 - 2*(-1 * r));
+            return -1 * Math.log(1 - 2*(-1 * r));
         } else {
-            return scale * Math.log(1 - 2*r);
+            return Math.log(1 - 2*r);
+        }
+    }
+
+    /**
+     * Compute the noise for a set of indexes, all with the same first interval,
+     * using the generator of the current thread.
+     * @param key     Column index, dimensions and first interval of all indexes.
+     * @param y       Last intervals, encoded with encode.
+     * @param count   Number of valid elements in y.
+     * @param result  Noise from Laplace(0, 1) for each index.
+     */
+    private void generate(IntervalKey key, long[] y, int count, double[] result) {
+        Generator gen = this.generator.get();
+        try {
+            putInt(key.columnIndex, gen.first, 0);
+            putInt(key.dimensions, gen.first, INT_SIZE);
+            putInt(key.left, gen.first, 2 * INT_SIZE);
+            putInt(key.right, gen.first, 3 * INT_SIZE);
+            byte[] chain = gen.aes.doFinal(gen.first);
+            for (int start = 0; start < count; start += BATCH_SIZE) {
+                int n = Math.min(BATCH_SIZE, count - start);
+                int bytes = n * BLOCK_SIZE;
+                for (int k = 0; k < n; k++) {
+                    int offset = k * BLOCK_SIZE;
+                    long yk = y[start + k];
+                    putInt((int)(yk >>> 32), gen.blocks, offset);
+                    putInt((int)yk, gen.blocks, offset + INT_SIZE);
+                    putInt(0, gen.blocks, offset + 2 * INT_SIZE);
+                    putInt(0, gen.blocks, offset + 3 * INT_SIZE);
+                    for (int i = 0; i < BLOCK_SIZE; i++)
+                        gen.blocks[offset + i] ^= chain[i];
+                }
+                gen.aes.doFinal(gen.blocks, 0, bytes, gen.encrypted, 0);
+                for (int k = 0; k < n; k++) {
+                    int offset = k * BLOCK_SIZE;
+                    long val = 0;
+                    for (int i = 0; i < 8; i++)
+                        val |= ((long)gen.encrypted[offset + i] & 0xFFL) << (8 * i);
+                    val &= (1L << 53) - 1;
+                    result[start + k] = uniformToLaplace((double)val * NORMALIZER);
+                }
+            }
+        } catch (IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Find the segment of the cache for a first interval, creating it if necessary.
+     */
+    private Segment getSegment(IntervalKey key) {
+        synchronized (this.cache) {
+            return this.cache.computeIfAbsent(key, k -> new Segment());
+        }
+    }
+
+    /**
+     * Evict the least recently used segments until the cache is within its budget.
+     */
+    private void evict() {
+        synchronized (this.cache) {
+            Iterator<Segment> it = this.cache.values().iterator();
+            while (this.cachedCount.get() > MAX_CACHED && it.hasNext()) {
+                Segment segment = it.next();
+                it.remove();
+                synchronized (segment) {
+                    segment.evicted = true;
+                    this.cachedCount.addAndGet(-segment.values.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the noise from Laplace(0, 1) for a set of indexes with the same first interval,
+     * using the cache when possible.  The missing values are computed without holding
+     * any lock.
+     * @param key     Column index, dimensions and first interval of all indexes.
+     * @param y       Last intervals, encoded with encode.
+     * @param result  Noise for each element of y.
+     */
+    private void unitNoise(IntervalKey key, long[] y, double[] result) {
+        Segment segment = this.getSegment(key);
+        int[] missing = new int[y.length];
+        long[] missingY = new long[y.length];
+        int missingCount = 0;
+        synchronized (segment) {
+            for (int i = 0; i < y.length; i++) {
+                double value = segment.values.get(y[i]);
+                if (Double.isNaN(value)) {
+                    missing[missingCount] = i;
+                    missingY[missingCount] = y[i];
+                    missingCount++;
+                } else {
+                    result[i] = value;
+                }
+            }
+        }
+        if (missingCount == 0)
+            return;
+        double[] generated = new double[missingCount];
+        this.generate(key, missingY, missingCount, generated);
+        for (int i = 0; i < missingCount; i++)
+            result[missing[i]] = generated[i];
+        synchronized (segment) {
+            if (segment.evicted)
+                return;
+            int before = segment.values.size();
+            for (int i = 0; i < missingCount; i++)
+                segment.values.put(missingY[i], generated[i]);
+            this.cachedCount.addAndGet(segment.values.size() - before);
         }
+        if (this.cachedCount.get() > MAX_CACHED)
+            this.evict();
+    }
+
+    private static long[] encodeAll(List<Pair<Integer, Integer>> intervals) {
+        long[] result = new long[intervals.size()];
+        for (int i = 0; i < result.length; i++) {
+            Pair<Integer, Integer> p = intervals.get(i);
+            result[i] = encode(Converters.checkNull(p.first), Converters.checkNull(p.second));
+        }
+        return result;
+    }
+
+    /**
+     * Assigns a number to each distinct interval.
+     * @param buckets    For each bucket a list of intervals.
+     * @param distinct   Output: the distinct intervals.
+     * @return           For each bucket the numbers of its intervals.
+     */
+    private static int[][] enumerate(List<List<Pair<Integer, Integer>>> buckets,
+                                     /*out*/List<Pair<Integer, Integer>> distinct) {
+        HashMap<Pair<Integer, Integer>, Integer> ids = new HashMap<Pair<Integer, Integer>, Integer>();
+        int[][] result = new int[buckets.size()][];
+        for (int i = 0; i < buckets.size(); i++) {
+            List<Pair<Integer, Integer>> intervals = buckets.get(i);
+            result[i] = new int[intervals.size()];
+            for (int j = 0; j < intervals.size(); j++) {
+                Pair<Integer, Integer> p = intervals.get(j);
+                Integer id = ids.get(p);
+                if (id == null) {
+                    id = distinct.size();
+                    ids.put(p, id);
+                    distinct.add(p);
+                }
+                result[i][j] = id;
+            }
+        }
+        return result;
     }
 
     /**
      * Sample a value from Laplace(0, scale) using a pseudorandom function indexed by index.
      * Note that this implementation is vulnerable to the attack described in
      * "On Significance of the Least Significant Bits For Differential Privacy", Mironov, CCS 2012.
+     * @param index  One or two intervals.
      */
     @SafeVarargs
     public final double sampleLaplace(Integer columnIndex, double scale, Pair<Integer, Integer>... index) {
-        double unif = this.sampleUniform(columnIndex, index);
-        return uniformToLaplace(scale, unif);
+        if (index.length < 1 || index.length > 2)
+            throw new RuntimeException("Cannot sample with " + index.length + " intervals");
+        Pair<Integer, Integer> last = index[index.length - 1];
+        long[] y = new long[] { encode(Converters.checkNull(last.first), Converters.checkNull(last.second)) };
+        IntervalKey key;
+        if (index.length == 1)
+            key = new IntervalKey(columnIndex, 1, 0, 0);
+        else
+            key = new IntervalKey(columnIndex, 2,
+                    Converters.checkNull(index[0].first), Converters.checkNull(index[0].second));
+        double[] result = new double[1];
+        this.unitNoise(key, y, result);
+        return scale * result[0];
+    }
+
+    /**
+     * Compute the noise for a set of one-dimensional buckets.  The noise of a bucket is the sum
+     * of the noise of its intervals, where each interval is perturbed by Laplace(0, scale).
+     * The noise of each distinct interval is computed once.
+     * @param columnIndex  Index of the column.
+     * @param scale        Scale of the Laplace distribution.
+     * @param buckets      For each bucket the intervals that compose it.
+     * @return             The noise of each bucket.
+     */
+    public double[] bucketNoise(int columnIndex, double scale,
+                                List<List<Pair<Integer, Integer>>> buckets) {
+        List<Pair<Integer, Integer>> distinct = new ArrayList<Pair<Integer, Integer>>();
+        int[][] ids = enumerate(buckets, distinct);
+        long[] y = encodeAll(distinct);
+        double[] intervalNoise = new double[y.length];
+        this.unitNoise(new IntervalKey(columnIndex, 1, 0, 0), y, intervalNoise);
+        double[] result = new double[buckets.size()];
+        for (int i = 0; i < ids.length; i++) {
+            double sum = 0;
+            for (int id : ids[i])
+                sum += intervalNoise[id];
+            result[i] = scale * sum;
+        }
+        return result;
+    }
+
+    /**
+     * Compute the noise for the cells of a two-dimensional grid of buckets.  The noise
+     * of cell (i, j) is the sum of the noise of all pairs of intervals (x, y) where x is
+     * an interval of xBuckets[i] and y one of yBuckets[j]; each such pair is perturbed by
+     * Laplace(0, scale).  The noise of each distinct pair of intervals is computed once.
+     * @param columnIndex  Index of the pair of columns.
+     * @param scale        Scale of the Laplace distribution.
+     * @param xBuckets     For each bucket on the X axis the intervals that compose it.
+     * @param yBuckets     For each bucket on the Y axis the intervals that compose it.
+     * @return             The noise of each cell.
+     */
+    public double[][] cellNoise(int columnIndex, double scale,
+                                List<List<Pair<Integer, Integer>>> xBuckets,
+                                List<List<Pair<Integer, Integer>>> yBuckets) {
+        List<Pair<Integer, Integer>> xDistinct = new ArrayList<Pair<Integer, Integer>>();
+        int[][] xIds = enumerate(xBuckets, xDistinct);
+        List<Pair<Integer, Integer>> yDistinct = new ArrayList<Pair<Integer, Integer>>();
+        int[][] yIds = enumerate(yBuckets, yDistinct);
+        long[] y = encodeAll(yDistinct);
+
+        // Noise for each distinct pair of intervals.
+        double[][] pairNoise = new double[xDistinct.size()][y.length];
+        for (int i = 0; i < xDistinct.size(); i++) {
+            Pair<Integer, Integer> x = xDistinct.get(i);
+            IntervalKey key = new IntervalKey(columnIndex, 2,
+                    Converters.checkNull(x.first), Converters.checkNull(x.second));
+            this.unitNoise(key, y, pairNoise[i]);
+        }
+
+        double[][] result = new double[xBuckets.size()][yBuckets.size()];
+        for (int i = 0; i < xIds.length; i++) {
+            for (int j = 0; j < yIds.length; j++) {
+                double sum = 0;
+                for (int xi : xIds[i]) {
+                    double[] row = pairNoise[xi];
+                    for (int yi : yIds[j])
+                        sum += row[yi];
+                }
+                result[i][j] = scale * sum;
+            }
+        }
+        return result;
     }
 }
@@ -18,6 +18,7 @@
 package org.hillview.sketches;
 
 import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
@@ -28,6 +29,7 @@ import org.hillview.table.Schema;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
 import org.hillview.table.rows.BaseRowSnapshot;
+import org.hillview.table.rows.PackedRowKeys;
 import org.hillview.table.rows.RowSnapshot;
 import org.hillview.table.rows.VirtualRowSnapshot;
 import org.hillview.utils.Converters;
@@ -83,6 +85,9 @@ public class ExactFreqSketch implements ISketch<ITable, FreqKListExact> {
     @Override
     public FreqKListExact create(@Nullable ITable data) {
         Converters.checkNull(data).getColumns(this.schema);
+        PackedRowKeys keys = PackedRowKeys.create(data, this.schema);
+        if (keys != null)
+            return this.createPacked(data, keys);
         Hash.Strategy<BaseRowSnapshot> hs = new Hash.Strategy<BaseRowSnapshot>() {
             @Override
             public int hashCode(BaseRowSnapshot brs) {
@@ -119,4 +124,31 @@ public class ExactFreqSketch implements ISketch<ITable, FreqKListExact> {
         this.rssList.forEach(rss -> hm.put(rss, hMap.getInt(rss)));
         return new FreqKListExact(data.getNumOfRows(), this.epsilon, hm, this.rssList);
     }
+
+    /**
+     * Count the rows by comparing the packed dictionary codes of the rows
+     * with the codes of the rows in the list.
+     */
+    private FreqKListExact createPacked(ITable data, PackedRowKeys keys) {
+        long[] rssKeys = new long[this.rssList.size()];
+        Long2IntOpenHashMap counts = new Long2IntOpenHashMap(this.rssList.size());
+        for (int j = 0; j < rssKeys.length; j++) {
+            // Rows with values that do not appear in this table have a count of 0.
+            rssKeys[j] = keys.getKey(this.rssList.get(j));
+            if (rssKeys[j] >= 0)
+                counts.put(rssKeys[j], 0);
+        }
+        IRowIterator rowIt = data.getRowIterator();
+        int i = rowIt.getNextRow();
+        while (i != -1) {
+            long key = keys.getKey(i);
+            if (counts.containsKey(key))
+                counts.addTo(key, 1);
+            i = rowIt.getNextRow();
+        }
+        Object2IntOpenHashMap<RowSnapshot> hm = new Object2IntOpenHashMap<RowSnapshot>(this.rssList.size());
+        for (int j = 0; j < rssKeys.length; j++)
+            hm.put(this.rssList.get(j), rssKeys[j] >= 0 ? counts.get(rssKeys[j]) : 0);
+        return new FreqKListExact(data.getNumOfRows(), this.epsilon, hm, this.rssList);
+    }
 }
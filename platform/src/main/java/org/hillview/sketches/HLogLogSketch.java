@@ -70,6 +70,14 @@ public class HLogLogSketch implements ISketch<ITable, HLogLog> {
         return left.union(right);
     }
 
+    @Override
+    public HLogLog addInto(@Nullable final HLogLog left, @Nullable final HLogLog right) {
+        assert left != null;
+        assert right != null;
+        left.merge(right);
+        return left;
+    }
+
     @Override
     public HLogLog zero() {
         return new HLogLog(this.logSpaceSize, this.seed);
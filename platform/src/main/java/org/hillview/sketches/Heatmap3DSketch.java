@@ -16,7 +16,6 @@
  */
 
 package org.hillview.sketches;
-import org.hillview.dataset.api.ISketch;
 import org.hillview.sketches.results.Heatmap3D;
 import org.hillview.sketches.results.IHistogramBuckets;
 import org.hillview.table.api.IColumn;
@@ -27,7 +26,7 @@ import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 
-public class Heatmap3DSketch implements ISketch<ITable, Heatmap3D> {
+public class Heatmap3DSketch implements IIncrementalTableSketch<Heatmap3D> {
     static final long serialVersionUID = 1;
     private final IHistogramBuckets bucketDescD1;
     private final IHistogramBuckets bucketDescD2;
@@ -55,6 +54,11 @@ public class Heatmap3DSketch implements ISketch<ITable, Heatmap3D> {
         this.seed = seed;
     }
 
+    @Override
+    public boolean isIncremental() {
+        return this.rate >= 1;
+    }
+
     @Override
     public Heatmap3D create(@Nullable final ITable data) {
         List<String> colNames = new ArrayList<String>(3);
@@ -82,4 +86,12 @@ public class Heatmap3DSketch implements ISketch<ITable, Heatmap3D> {
         assert right != null;
         return left.union(right);
     }
+
+    @Override
+    public Heatmap3D addInto(@Nullable final Heatmap3D left, @Nullable final Heatmap3D right) {
+        assert left != null;
+        assert right != null;
+        left.merge(right);
+        return left;
+    }
 }
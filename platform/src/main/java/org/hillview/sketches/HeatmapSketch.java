@@ -16,7 +16,6 @@
  */
 
 package org.hillview.sketches;
-import org.hillview.dataset.api.ISketch;
 import org.hillview.sketches.results.Heatmap;
 import org.hillview.sketches.results.IHistogramBuckets;
 import org.hillview.table.api.IColumn;
@@ -27,7 +26,7 @@ import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
 
-public class HeatmapSketch implements ISketch<ITable, Heatmap> {
+public class HeatmapSketch implements IIncrementalTableSketch<Heatmap> {
     static final long serialVersionUID = 1;
     private final IHistogramBuckets bucketsD0;
     private final IHistogramBuckets bucketsD1;
@@ -60,6 +59,11 @@ public class HeatmapSketch implements ISketch<ITable, Heatmap> {
         this(bucketDesc1, bucketDesc2, col0, col1, samplingRate, seed, null, null);
     }
 
+    @Override
+    public boolean isIncremental() {
+        return this.samplingRate >= 1;
+    }
+
     @Override
     public Heatmap create(@Nullable final ITable data) {
         Heatmap result = this.getZero();
@@ -87,4 +91,12 @@ public class HeatmapSketch implements ISketch<ITable, Heatmap> {
         assert right != null;
         return left.union(right);
     }
+
+    @Override
+    public Heatmap addInto(@Nullable final Heatmap left, @Nullable final Heatmap right) {
+        assert left != null;
+        assert right != null;
+        left.merge(right);
+        return left;
+    }
 }
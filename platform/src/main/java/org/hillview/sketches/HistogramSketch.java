@@ -16,7 +16,6 @@
  */
 
 package org.hillview.sketches;
-import org.hillview.dataset.api.ISketch;
 import org.hillview.sketches.results.Histogram;
 import org.hillview.sketches.results.IHistogramBuckets;
 import org.hillview.table.api.IColumn;
@@ -30,7 +29,7 @@ import javax.annotation.Nullable;
 /**
  * One-dimensional histogram
  */
-public class HistogramSketch implements ISketch<ITable, Histogram> {
+public class HistogramSketch implements IIncrementalTableSketch<Histogram> {
     static final long serialVersionUID = 1;
     public final IHistogramBuckets bucketDesc;
     protected final String columnName;
@@ -48,6 +47,14 @@ public class HistogramSketch implements ISketch<ITable, Histogram> {
         this.cpm = cpm;
     }
 
+    /**
+     * Each chunk would be sampled separately, so a sampled histogram is computed in one step.
+     */
+    @Override
+    public boolean isIncremental() {
+        return this.rate >= 1;
+    }
+
     @Override
     public Histogram create(@Nullable final ITable data) {
         Converters.checkNull(data);
@@ -68,6 +75,14 @@ public class HistogramSketch implements ISketch<ITable, Histogram> {
         return left.union(right);
     }
 
+    @Override
+    public Histogram addInto(@Nullable final Histogram left, @Nullable final Histogram right) {
+        assert left != null;
+        assert right != null;
+        left.merge(right);
+        return left;
+    }
+
     @Override
     public Histogram zero() {
         return new Histogram(this.bucketDesc.getBucketCount());
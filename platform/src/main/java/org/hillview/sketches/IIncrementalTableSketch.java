@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches;
+
+import org.hillview.dataset.api.IIncrementalSketch;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+
+/**
+ * A table sketch that is computed incrementally by splitting the rows of the
+ * table into ranges and sketching one range at a time.  This is correct for all
+ * sketches whose result does not depend on how the rows are partitioned.
+ * The ranges have the same number of rows, and splitting does not copy the
+ * rows of large membership sets (see IMembershipSet.splitRanges).
+ * @param <R> Output data type.
+ */
+public interface IIncrementalTableSketch<R extends Serializable> extends IIncrementalSketch<ITable, R> {
+    @Override
+    default void createIncrementally(@Nullable ITable data, int chunkSize, ISink<R> sink) {
+        Converters.checkNull(data);
+        int rows = data.getNumOfRows();
+        int chunks = rows / chunkSize;
+        if (chunks <= 1) {
+            sink.accept(new PartialResult<R>(this.create(data)));
+            return;
+        }
+        for (ITable part : data.splitRows(chunks)) {
+            R result = this.create(part);
+            double done = (double)part.getNumOfRows() / rows;
+            if (!sink.accept(new PartialResult<R>(done, result)))
+                return;
+        }
+    }
+}
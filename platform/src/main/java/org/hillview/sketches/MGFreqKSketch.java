@@ -18,6 +18,9 @@
 package org.hillview.sketches;
 
 import it.unimi.dsi.fastutil.ints.*;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
@@ -29,6 +32,7 @@ import org.hillview.table.QuantizedTable;
 import org.hillview.table.Schema;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
+import org.hillview.table.rows.PackedRowKeys;
 import org.hillview.table.rows.RowSnapshot;
 import org.hillview.table.rows.VirtualRowHashStrategy;
 import org.hillview.utils.Converters;
@@ -131,6 +135,9 @@ public class MGFreqKSketch implements ISketch<ITable, FreqKListMG> {
         Converters.checkNull(data);
         if (this.quantization != null)
             data = new QuantizedTable(data, this.quantization);
+        PackedRowKeys keys = PackedRowKeys.create(data, this.schema);
+        if (keys != null)
+            return this.createPacked(data, keys);
         VirtualRowHashStrategy hashStrategy = new VirtualRowHashStrategy(data, this.schema);
         Int2ObjectOpenCustomHashMap<MutableInteger> hMap = new Int2ObjectOpenCustomHashMap<MutableInteger>(hashStrategy);
         IntSet toRemove = new IntOpenHashSet(this.maxSize);
@@ -173,4 +180,58 @@ public class MGFreqKSketch implements ISketch<ITable, FreqKListMG> {
         Object2IntOpenHashMap<RowSnapshot> hm = hashStrategy.materializeHashMap(hMap);
         return new FreqKListMG(data.getNumOfRows(), this.epsilon, this.maxSize, hm);
     }
+
+    /**
+     * Same algorithm as create, but counting the packed dictionary codes of the rows
+     * in a primitive hash map; only the surviving counters are converted to rows.
+     */
+    private FreqKListMG createPacked(ITable data, PackedRowKeys keys) {
+        Long2IntOpenHashMap hMap = new Long2IntOpenHashMap(this.maxSize);
+        // Counters can be 0, so absent keys are marked with a different value.
+        hMap.defaultReturnValue(Integer.MIN_VALUE);
+        LongArrayList toRemove = new LongArrayList(this.maxSize);
+        IRowIterator rowIt = data.getRowIterator();
+        int i = rowIt.getNextRow();
+        int min = 0;
+        int dec = 0;
+        while (i != -1) {
+            long key = keys.getKey(i);
+            int val = hMap.get(key);
+            if (val != Integer.MIN_VALUE) {
+                hMap.put(key, val + 1);
+                if (val + 1 == min)
+                    min = minValue(hMap);
+            } else if (hMap.size() < this.maxSize) {
+                hMap.put(key, 1);
+                min = 1;
+            } else {
+                dec += 1;
+                if (dec == min) {
+                    toRemove.clear();
+                    for (ObjectIterator<Long2IntMap.Entry> it =
+                            hMap.long2IntEntrySet().fastIterator(); it.hasNext(); ) {
+                        final Long2IntMap.Entry entry = it.next();
+                        int count = entry.getIntValue() - dec;
+                        if (count == 0)
+                            toRemove.add(entry.getLongKey());
+                        else
+                            entry.setValue(count);
+                    }
+                    for (int j = 0; j < toRemove.size(); j++)
+                        hMap.remove(toRemove.getLong(j));
+                    min = !hMap.isEmpty() ? minValue(hMap) : 0;
+                }
+            }
+            i = rowIt.getNextRow();
+        }
+        return new FreqKListMG(data.getNumOfRows(), this.epsilon, this.maxSize,
+                keys.materializeHashMap(hMap));
+    }
+
+    private static int minValue(Long2IntOpenHashMap map) {
+        int result = Integer.MAX_VALUE;
+        for (IntIterator it = map.values().iterator(); it.hasNext(); )
+            result = Math.min(result, it.nextInt());
+        return result;
+    }
 }
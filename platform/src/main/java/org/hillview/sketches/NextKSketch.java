@@ -21,7 +21,6 @@ import it.unimi.dsi.fastutil.ints.Int2IntSortedMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
-import it.unimi.dsi.fastutil.objects.ObjectCollection;
 import org.hillview.dataset.api.ISketch;
 import org.hillview.sketches.results.IntTopK;
 import org.hillview.sketches.results.IntTreeTopK;
@@ -36,6 +35,7 @@ import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -81,14 +81,23 @@ public class NextKSketch implements ISketch<ITable, NextKList> {
 
     /**
      * Given a table, generate the Next K items in Sorted Order starting from a specified
-     * rowSnapShot (topRow), together with counts.
+     * rowSnapShot (topRow), together with counts.  If the sort index of the table is
+     * ready only the rows that are returned are visited, otherwise the whole table is
+     * scanned; tables that are paged repeatedly get an index (see SortIndex).
      * @param data The input table on which we want to compute the NextK list.
      * @return A NextKList.
      */
     public NextKList create(@Nullable ITable data) {
         Converters.checkNull(data);
+        SortIndex index = null;
         if (this.quantizationSchema != null)
             data = new QuantizedTable(data, this.quantizationSchema);
+        else
+            // Quantized tables are created for each request, so it is not worth indexing them.
+            index = SortIndex.get(data, this.recordOrder);
+        if (index != null)
+            return this.createFromIndex(data, index);
+
         IndexComparator comp = this.recordOrder.getIndexComparator(data);
         IntTopK topK = new IntTreeTopK(this.maxSize, comp);
         IRowIterator rowIt = data.getRowIterator();
@@ -119,77 +128,147 @@ public class NextKSketch implements ISketch<ITable, NextKList> {
                 aggregates.put(row, new Double[this.aggregates.length]);
 
             // Do a second pass over the data to compute the aggregates
-            Schema aggSchema = new Schema();
-            for (AggregateDescription ad: this.aggregates)
-                // The same column can be aggregated multiple times
-                if (!aggSchema.containsColumnName(ad.cd.name))
-                    aggSchema.append(ad.cd);
-            vw = new VirtualRowSnapshot(data, aggSchema);
+            vw = new VirtualRowSnapshot(data, this.aggregateSchema());
             rowIt = data.getRowIterator();
             for (int i = rowIt.getNextRow(); i >= 0; i = rowIt.getNextRow()) {
                 vw.setRow(i);
                 Double[] agg = aggregates.get(i);
                 if (agg == null)
                     continue;
-                for (int a = 0; a < this.aggregates.length; a++) {
-                    AggregateDescription cad = this.aggregates[a];
-                    if (vw.isMissing(cad.cd.name))
-                        continue;
-                    double d = vw.asDouble(cad.cd.name);
-                    switch (cad.agkind) {
-                        case Sum:
-                            if (agg[a] == null)
-                                agg[a] = d;
-                            else
-                                agg[a] += d;
-                            break;
-                        case Count:
-                            if (agg[a] == null)
-                                agg[a] = 1.0;
-                            else
-                                agg[a]++;
-                            break;
-                        case Min:
-                            if (agg[a] == null)
-                                agg[a] = d;
-                            else
-                                agg[a] = Math.min(agg[a], d);
-                            break;
-                        case Max:
-                            if (agg[a] == null)
-                                agg[a] = d;
-                            else
-                                agg[a] = Math.max(agg[a], d);
-                            break;
-                        default:
-                            throw new RuntimeException("Unexpected aggregation");
-                    }
-                }
+                this.aggregate(vw, agg);
             }
+            aggTable = this.aggregateTable(aggregates.values());
+        }
 
-            // Create columns for the aggregate table
-            List<DoubleListColumn> aggCols = new ArrayList<DoubleListColumn>(this.aggregates.length);
-            Schema aggTableSchema = NextKList.getSchema(this.aggregates);
-            List<ColumnDescription> cds = aggTableSchema.getColumnDescriptions();
-            for (int i = 0; i < this.aggregates.length; i++) {
-                ColumnDescription cd = cds.get(i);
-                DoubleListColumn col = new DoubleListColumn(cd);
-                aggCols.add(col);
-            }
+        return new NextKList(topKRows, aggTable, count, position, data.getNumOfRows());
+    }
+
+    /**
+     * Compute the NextK list using the sort index of the table.
+     * The rows before topRow are found by binary search, and the count of each
+     * distinct row is the length of its run of equal rows in the index.
+     */
+    private NextKList createFromIndex(ITable data, SortIndex index) {
+        IndexComparator comp = this.recordOrder.getIndexComparator(data);
+        int position = this.topRow == null ? 0 :
+                index.lowerBound(data, this.recordOrder, this.topRow, false);
+        // Position in the index of the first row of each distinct value, and
+        // the position after the last one.
+        IntList starts = new IntArrayList(this.maxSize + 1);
+        int current = position;
+        while (current < index.size() && starts.size() < this.maxSize) {
+            starts.add(current);
+            current = index.endOfRun(comp, current);
+        }
+        starts.add(current);
 
-            ObjectCollection<Double[]> values = aggregates.values();
-            for (Double[] agg: values) {
-                for (int a = 0; a < this.aggregates.length; a++) {
-                    DoubleListColumn col = aggCols.get(a);
-                    col.append(agg[a]);
+        int distinct = starts.size() - 1;
+        int[] rows = new int[distinct];
+        IntList count = new IntArrayList(distinct);
+        for (int i = 0; i < distinct; i++) {
+            rows[i] = index.getRow(starts.getInt(i));
+            count.add(starts.getInt(i + 1) - starts.getInt(i));
+        }
+        SmallTable topKRows = data.compress(this.recordOrder.toSchema(), new ArrayRowOrder(rows));
+
+        SmallTable aggTable = null;
+        if (this.aggregates != null) {
+            List<Double[]> aggregates = new ArrayList<Double[]>(distinct);
+            VirtualRowSnapshot vw = new VirtualRowSnapshot(data, this.aggregateSchema());
+            for (int i = 0; i < distinct; i++) {
+                Double[] agg = new Double[this.aggregates.length];
+                for (int p = starts.getInt(i); p < starts.getInt(i + 1); p++) {
+                    vw.setRow(index.getRow(p));
+                    this.aggregate(vw, agg);
                 }
+                aggregates.add(agg);
             }
-            aggTable = new SmallTable(aggCols);
+            aggTable = this.aggregateTable(aggregates);
         }
-
         return new NextKList(topKRows, aggTable, count, position, data.getNumOfRows());
     }
 
+    /**
+     * The columns that are aggregated.
+     */
+    private Schema aggregateSchema() {
+        Converters.checkNull(this.aggregates);
+        Schema aggSchema = new Schema();
+        for (AggregateDescription ad: this.aggregates)
+            // The same column can be aggregated multiple times
+            if (!aggSchema.containsColumnName(ad.cd.name))
+                aggSchema.append(ad.cd);
+        return aggSchema;
+    }
+
+    /**
+     * Add the values of a row to the aggregates.
+     * @param vw   Row whose values are aggregated.
+     * @param agg  Values of the aggregates, modified in place.
+     */
+    private void aggregate(VirtualRowSnapshot vw, Double[] agg) {
+        Converters.checkNull(this.aggregates);
+        for (int a = 0; a < this.aggregates.length; a++) {
+            AggregateDescription cad = this.aggregates[a];
+            if (vw.isMissing(cad.cd.name))
+                continue;
+            double d = vw.asDouble(cad.cd.name);
+            switch (cad.agkind) {
+                case Sum:
+                    if (agg[a] == null)
+                        agg[a] = d;
+                    else
+                        agg[a] += d;
+                    break;
+                case Count:
+                    if (agg[a] == null)
+                        agg[a] = 1.0;
+                    else
+                        agg[a]++;
+                    break;
+                case Min:
+                    if (agg[a] == null)
+                        agg[a] = d;
+                    else
+                        agg[a] = Math.min(agg[a], d);
+                    break;
+                case Max:
+                    if (agg[a] == null)
+                        agg[a] = d;
+                    else
+                        agg[a] = Math.max(agg[a], d);
+                    break;
+                default:
+                    throw new RuntimeException("Unexpected aggregation");
+            }
+        }
+    }
+
+    /**
+     * Create the table holding the aggregates.
+     * @param values  For each returned row the values of the aggregates, in order.
+     */
+    private SmallTable aggregateTable(Collection<Double[]> values) {
+        Converters.checkNull(this.aggregates);
+        // Create columns for the aggregate table
+        List<DoubleListColumn> aggCols = new ArrayList<DoubleListColumn>(this.aggregates.length);
+        Schema aggTableSchema = NextKList.getSchema(this.aggregates);
+        List<ColumnDescription> cds = aggTableSchema.getColumnDescriptions();
+        for (int i = 0; i < this.aggregates.length; i++) {
+            ColumnDescription cd = cds.get(i);
+            DoubleListColumn col = new DoubleListColumn(cd);
+            aggCols.add(col);
+        }
+
+        for (Double[] agg: values) {
+            for (int a = 0; a < this.aggregates.length; a++) {
+                DoubleListColumn col = aggCols.get(a);
+                col.append(agg[a]);
+            }
+        }
+        return new SmallTable(aggCols);
+    }
+
     /**
      * Given two Columns containing counts left and right, merge them to a single Column, using an
      * Integer array mergeLeft which represents the order in which elements merge.
@@ -1,6 +1,7 @@
 package org.hillview.sketches;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenCustomHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.hillview.dataset.api.ISketch;
 import org.hillview.sketches.results.FreqKList;
@@ -9,6 +10,7 @@ import org.hillview.table.Schema;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
+import org.hillview.table.rows.PackedRowKeys;
 import org.hillview.table.rows.RowSnapshot;
 import org.hillview.table.rows.VirtualRowHashStrategy;
 import org.hillview.utils.Converters;
@@ -72,11 +74,24 @@ public class SampleHeavyHittersSketch implements ISketch<ITable, FreqKListSample
      */
     public FreqKListSample create(@Nullable ITable data) {
         Converters.checkNull(data);
-        VirtualRowHashStrategy hashStrategy = new VirtualRowHashStrategy(data, this.schema);
-        Int2ObjectOpenCustomHashMap<MutableInteger> hMap = new Int2ObjectOpenCustomHashMap<MutableInteger>(hashStrategy);
         final IMembershipSet sampleSet = data.
                 getMembershipSet().sample(this.samplingRate, this.seed);
         IRowIterator rowIt = sampleSet.getIterator();
+        PackedRowKeys keys = PackedRowKeys.create(data, this.schema);
+        if (keys != null) {
+            // Count the dictionary codes of the rows instead of hashing the rows.
+            Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+            int i = rowIt.getNextRow();
+            while (i != -1) {
+                counts.addTo(keys.getKey(i), 1);
+                i = rowIt.getNextRow();
+            }
+            return new FreqKListSample(data.getNumOfRows(), this.epsilon, sampleSet.getSize(),
+                    keys.materializeHashMap(counts));
+        }
+
+        VirtualRowHashStrategy hashStrategy = new VirtualRowHashStrategy(data, this.schema);
+        Int2ObjectOpenCustomHashMap<MutableInteger> hMap = new Int2ObjectOpenCustomHashMap<MutableInteger>(hashStrategy);
         int i = rowIt.getNextRow();
         while (i != -1) {
             MutableInteger val = hMap.get(i);
@@ -32,4 +32,21 @@ public class ColumnSortOrientation implements Serializable {
         this.columnDescription = colDesc;
         this.isAscending = isAscending;
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if ((o == null) || (getClass() != o.getClass())) return false;
+
+        final ColumnSortOrientation that = (ColumnSortOrientation) o;
+        return this.columnDescription.equals(that.columnDescription) &&
+                (this.isAscending == that.isAscending);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = this.columnDescription.hashCode();
+        result = (31 * result) + (this.isAscending ? 1 : 0);
+        return result;
+    }
 }
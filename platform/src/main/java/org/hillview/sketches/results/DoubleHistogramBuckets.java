@@ -18,6 +18,7 @@
 package org.hillview.sketches.results;
 
 import org.hillview.table.api.IColumn;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.utils.Utilities;
 
 /**
@@ -57,6 +58,24 @@ public class DoubleHistogramBuckets implements IHistogramBuckets {
         return this.indexOf(item);
     }
 
+    @Override
+    public void indexOf(IColumn column, RowBatch batch, int[] result) {
+        final double[] values = batch.getDoubles();
+        final boolean[] missing = batch.missing;
+        column.asDoubles(batch.rows, batch.count, values, missing);
+        for (int i = 0; i < batch.count; i++) {
+            final double value = values[i];
+            if (missing[i])
+                result[i] = MISSING;
+            else if ((value < this.minValue) || (value > this.maxValue))
+                result[i] = -1;
+            else
+                // Same computation as indexOf(double); the value is in range, so the cast is safe.
+                result[i] = Math.min((int)((this.bucketCount * (value - this.minValue)) / this.range),
+                                     this.bucketCount - 1);
+        }
+    }
+
     @Override
     public int getBucketCount() { return this.bucketCount; }
 
@@ -17,26 +17,44 @@
 
 package org.hillview.sketches.results;
 
+import it.unimi.dsi.fastutil.ints.Int2ByteMap;
+import it.unimi.dsi.fastutil.ints.Int2ByteOpenHashMap;
 import net.openhft.hashing.LongHashFunction;
 
 import java.io.Serializable;
 
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IRowIterator;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.utils.CountWithConfidence;
 import org.hillview.utils.Utilities;
 
+import javax.annotation.Nullable;
+
 /**
  * A class that computes an approximation of the number of distinct elements in a column. Elements
  * are identified via their hashcode. The class uses the HyperLogLog algorithm for large estimates
  * and LinearCounting algorithm for small estimates.
+ * While few registers are non-zero they are stored sparsely, in a map from register index
+ * to value; this makes small sketches cheap to create, merge and serialize.  The sparse
+ * representation is converted to an array of registers when it would become larger.
  */
 public class HLogLog implements Serializable {
     private static final long serialVersionUID = 1L;
     private final int regNum; // number of registers
     private final int logRegNum;
-    private final byte[] registers;
+    /**
+     * Dense registers; null while the sketch is sparse.
+     */
+    @Nullable
+    private byte[] registers;
+    /**
+     * Non-zero registers, indexed by register number; null when the sketch is dense.
+     */
+    @Nullable
+    private Int2ByteOpenHashMap sparse;
     private final long seed;
     public long distinctItemCount; // Field so that value is accessible after serializing
     private long confidence; // Confidence interval around distinctItemCount: TODO
@@ -49,12 +67,64 @@ public class HLogLog implements Serializable {
     public HLogLog(int logRegNum, long seed) {
         HLogLog.checkSpaceValid(logRegNum);
         this.regNum = 1 << logRegNum;
-        this.registers = new byte[this.regNum];
+        this.registers = null;
+        this.sparse = new Int2ByteOpenHashMap();
         this.logRegNum = logRegNum;
         this.seed = seed;
         this.confidence = 0;
     }
 
+    private HLogLog(HLogLog other) {
+        this.regNum = other.regNum;
+        this.logRegNum = other.logRegNum;
+        this.seed = other.seed;
+        this.registers = other.registers == null ? null : other.registers.clone();
+        this.sparse = other.sparse == null ? null : other.sparse.clone();
+        this.distinctItemCount = other.distinctItemCount;
+        this.confidence = other.confidence;
+    }
+
+    /**
+     * Maximum number of entries of the sparse representation.  A map entry uses
+     * several bytes, while a dense register uses one.
+     */
+    private int sparseLimit() {
+        return this.regNum >> 3;
+    }
+
+    /**
+     * True if the sketch uses the sparse representation.
+     */
+    public boolean isSparse() {
+        return this.sparse != null;
+    }
+
+    private byte[] toDense() {
+        if (this.registers != null)
+            return this.registers;
+        byte[] result = new byte[this.regNum];
+        assert this.sparse != null;
+        for (Int2ByteMap.Entry e : this.sparse.int2ByteEntrySet())
+            result[e.getIntKey()] = e.getByteValue();
+        this.registers = result;
+        this.sparse = null;
+        return result;
+    }
+
+    private void set(int index, byte value) {
+        if (this.registers != null) {
+            if (value > this.registers[index])
+                this.registers[index] = value;
+            return;
+        }
+        assert this.sparse != null;
+        if (value > this.sparse.get(index)) {
+            this.sparse.put(index, value);
+            if (this.sparse.size() > this.sparseLimit())
+                this.toDense();
+        }
+    }
+
     /**
      * adds the long 'itemHash' to the data structure.
      * Uses the first bits to identify the register and then counts trailing zeros
@@ -63,8 +133,7 @@ public class HLogLog implements Serializable {
     private void add(long itemHash) {
         int index =  (int) itemHash >>> (Long.SIZE - this.logRegNum);
         byte zeros = (byte) (Long.numberOfTrailingZeros(itemHash) + 1);
-        if (zeros > this.registers[index])
-            this.registers[index] = zeros;
+        this.set(index, zeros);
     }
 
     /**
@@ -72,25 +141,89 @@ public class HLogLog implements Serializable {
      * of the objects in the column as identifier.
      */
     public void createHLL(IColumn column, IMembershipSet memSet) {
-        final IRowIterator myIter = memSet.getIterator();
         LongHashFunction hash = LongHashFunction.xx(this.seed);
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            if (!column.isMissing(currRow)) {
-                this.add(column.hashCode64(currRow, hash));
-             }
-            currRow = myIter.getNextRow();
+        if (column instanceof IDictionaryColumn && ((IDictionaryColumn)column).isDictionaryEncoded()) {
+            this.addCodes((IDictionaryColumn)column, memSet, hash);
+        } else {
+            final RowBatch batch = new RowBatch(memSet.getIterator());
+            final long[] hashes = new long[batch.capacity()];
+            final int shift = Long.SIZE - this.logRegNum;
+            while (batch.next()) {
+                column.hashCodes64(batch, hash, hashes);
+                final byte[] registers = this.registers;
+                if (registers == null) {
+                    for (int i = 0; i < batch.count; i++)
+                        if (!batch.missing[i])
+                            this.add(hashes[i]);
+                    continue;
+                }
+                for (int i = 0; i < batch.count; i++) {
+                    if (batch.missing[i])
+                        continue;
+                    long itemHash = hashes[i];
+                    int index = (int) itemHash >>> shift;
+                    byte zeros = (byte) (Long.numberOfTrailingZeros(itemHash) + 1);
+                    if (zeros > registers[index])
+                        registers[index] = zeros;
+                }
+            }
         }
         this.distinctItemsEstimator();
     }
 
-    public HLogLog union(HLogLog otherHLL) {
+    /**
+     * Adds the values of a dictionary-encoded column.  Adding an item twice has no effect,
+     * so only the distinct codes that appear in the rows are hashed, once each.
+     */
+    private void addCodes(IDictionaryColumn column, IMembershipSet memSet, LongHashFunction hash) {
+        final boolean[] present = new boolean[column.getDictionarySize()];
+        final IRowIterator it = memSet.getIterator();
+        final int[] rows = new int[RowBatch.DEFAULT_SIZE];
+        int count;
+        do {
+            count = it.getNextRows(rows);
+            for (int i = 0; i < count; i++)
+                present[column.getCode(rows[i])] = true;
+        } while (count == rows.length);
+        for (int code = 0; code < present.length; code++) {
+            if (!present[code])
+                continue;
+            String value = column.decode(code);
+            if (value != null)
+                this.add(hash.hashChars(value));
+        }
+    }
+
+    /**
+     * Merges another sketch into this one, modifying this sketch,
+     * and updates the estimate of the number of distinct items.
+     */
+    public void merge(HLogLog otherHLL) {
         if ((otherHLL.regNum != this.regNum) || (otherHLL.seed != this.seed))
             throw new IllegalArgumentException("attempted union of non matching HLogLog classes");
-        HLogLog result = new HLogLog(this.logRegNum, this.seed);
-        for (int i = 0; i < this.regNum; i++)
-            result.registers[i] = (byte) Integer.max(this.registers[i], otherHLL.registers[i]);
-        result.distinctItemsEstimator();
+        if (otherHLL.sparse != null) {
+            for (Int2ByteMap.Entry e : otherHLL.sparse.int2ByteEntrySet())
+                this.set(e.getIntKey(), e.getByteValue());
+        } else {
+            assert otherHLL.registers != null;
+            byte[] registers = this.toDense();
+            for (int i = 0; i < this.regNum; i++)
+                if (otherHLL.registers[i] > registers[i])
+                    registers[i] = otherHLL.registers[i];
+        }
+        this.distinctItemsEstimator();
+    }
+
+    public HLogLog union(HLogLog otherHLL) {
+        HLogLog result;
+        // Start from the larger sketch, so that fewer registers are merged.
+        if (this.sparse != null && (otherHLL.sparse == null || otherHLL.sparse.size() > this.sparse.size())) {
+            result = new HLogLog(otherHLL);
+            result.merge(this);
+        } else {
+            result = new HLogLog(this);
+            result.merge(otherHLL);
+        }
         return result;
     }
 
@@ -110,10 +243,18 @@ public class HLogLog implements Serializable {
         }
         double rawEstimate = 0;
         int zeroRegs = 0;
-        for (int i = 0; i < this.regNum; i++) {
-            rawEstimate += Math.pow(2, -this.registers[i]);
-            if (this.registers[i] == 0)
-                zeroRegs ++;
+        if (this.sparse != null) {
+            zeroRegs = this.regNum - this.sparse.size();
+            rawEstimate = zeroRegs;
+            for (byte b : this.sparse.values())
+                rawEstimate += Math.scalb(1.0, -b);
+        } else {
+            assert this.registers != null;
+            for (int i = 0; i < this.regNum; i++) {
+                rawEstimate += Math.scalb(1.0, -this.registers[i]);
+                if (this.registers[i] == 0)
+                    zeroRegs ++;
+            }
         }
         rawEstimate = 1 / rawEstimate;
         rawEstimate = rawEstimate * alpha * this.regNum * this.regNum;
@@ -18,6 +18,7 @@
 package org.hillview.sketches.results;
 import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.*;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.utils.Utilities;
 
 import javax.annotation.Nullable;
@@ -31,10 +32,10 @@ public class Heatmap implements IJson {
     public final long[][] buckets;
     @Nullable
     public int[][] confidence;
-    private long missingData; // number of items missing on both columns
-    private Histogram histogramMissingX; // dim1 is missing, dim2 exists
-    private Histogram histogramMissingY; // dim2 is missing, dim1 exists
-    private long totalSize;
+    long missingData; // number of items missing on both columns
+    Histogram histogramMissingX; // dim1 is missing, dim2 exists
+    Histogram histogramMissingY; // dim2 is missing, dim1 exists
+    long totalSize;
     public final int xBucketCount;
     public final int yBucketCount;
 
@@ -62,30 +63,35 @@ public class Heatmap implements IJson {
                               final long seed, final boolean enforceRate) {
         final ISampledRowIterator myIter = membershipSet.getIteratorOverSample(
                 samplingRate, seed, enforceRate);
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            boolean isMissingD1 = columnD1.isMissing(currRow);
-            boolean isMissingD2 = columnD2.isMissing(currRow);
-            if (isMissingD1 || isMissingD2) {
-                if (!isMissingD1) {
-                    // only column 2 is missing
-                    this.histogramMissingY.add(columnD1, currRow, xBuckets);
-                } else if (!isMissingD2) {
-                    // only column 1 is missing
-                    this.histogramMissingX.add(columnD2, currRow, yBuckets);
-                } else {
-                    // both are missing
-                    this.missingData++;
-                }
-            } else {
-                int index1 = xBuckets.indexOf(columnD1, currRow);
-                int index2 = yBuckets.indexOf(columnD2, currRow);
-                if ((index1 >= 0) && (index2 >= 0)) {
+        final RowBatch batch = new RowBatch(myIter);
+        final int[] xIndexes = new int[batch.capacity()];
+        final int[] yIndexes = new int[batch.capacity()];
+        while (batch.next()) {
+            xBuckets.indexOf(columnD1, batch, xIndexes);
+            yBuckets.indexOf(columnD2, batch, yIndexes);
+            for (int i = 0; i < batch.count; i++) {
+                int index1 = xIndexes[i];
+                int index2 = yIndexes[i];
+                boolean isMissingD1 = index1 == IHistogramBuckets.MISSING;
+                boolean isMissingD2 = index2 == IHistogramBuckets.MISSING;
+                if (isMissingD1 || isMissingD2) {
+                    if (!isMissingD1) {
+                        // only column 2 is missing
+                        if (index1 >= 0)
+                            this.histogramMissingY.buckets[index1]++;
+                    } else if (!isMissingD2) {
+                        // only column 1 is missing
+                        if (index2 >= 0)
+                            this.histogramMissingX.buckets[index2]++;
+                    } else {
+                        // both are missing
+                        this.missingData++;
+                    }
+                } else if ((index1 >= 0) && (index2 >= 0)) {
                     this.buckets[index1][index2]++;
                     this.totalSize++;
                 }
             }
-            currRow = myIter.getNextRow();
         }
         samplingRate = myIter.rate();
         if (samplingRate < 1) {
@@ -127,4 +133,17 @@ public class Heatmap implements IJson {
         unionH.histogramMissingY = this.histogramMissingY.union(other.histogramMissingY);
         return unionH;
     }
+
+    /**
+     * Adds the counts of other to this heatmap, modifying it.
+     */
+    public void merge(Heatmap other) {
+        for (int i = 0; i < this.xBucketCount; i++)
+            for (int j = 0; j < this.yBucketCount; j++)
+                this.buckets[i][j] += other.buckets[i][j];
+        this.missingData += other.missingData;
+        this.totalSize += other.totalSize;
+        this.histogramMissingX.merge(other.histogramMissingX);
+        this.histogramMissingY.merge(other.histogramMissingY);
+    }
 }
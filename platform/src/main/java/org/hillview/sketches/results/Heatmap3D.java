@@ -19,6 +19,7 @@ package org.hillview.sketches.results;
 
 import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.*;
+import org.hillview.table.rows.RowBatch;
 
 /**
  * A 3-dimensional histogram.
@@ -26,12 +27,12 @@ import org.hillview.table.api.*;
 public class Heatmap3D implements IJson {
     static final long serialVersionUID = 1;
     
-    private final long[][][] buckets;
-    private long eitherMissing; // number of items missing in either of the columns
+    final long[][][] buckets;
+    long eitherMissing; // number of items missing in either of the columns
     public final int bucketCount0;
     public final int bucketCount1;
     public final int bucketCount2;
-    private long totalPresent; // number of items that have no missing values in either column
+    long totalPresent; // number of items that have no missing values in either column
 
     public Heatmap3D(final int b0,
                      final int b1,
@@ -49,23 +50,27 @@ public class Heatmap3D implements IJson {
             final double samplingRate,
             final long seed, boolean enforceRate) {
         final IRowIterator myIter = membershipSet.getIteratorOverSample(samplingRate, seed, enforceRate);
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            boolean isMissingD1 = col0.isMissing(currRow);
-            boolean isMissingD2 = col1.isMissing(currRow);
-            boolean isMissingD3 = col2.isMissing(currRow);
-            if (isMissingD1 || isMissingD2 || isMissingD3) {
-                this.eitherMissing++; // At least one of the three is missing.
-            } else {
-                int index1 = bucket0.indexOf(col0, currRow);
-                int index2 = bucket1.indexOf(col1, currRow);
-                int index3 = bucket2.indexOf(col2, currRow);
-                if ((index1 >= 0) && (index2 >= 0) && (index3 >= 0)) {
+        final RowBatch batch = new RowBatch(myIter);
+        final int[] indexes1 = new int[batch.capacity()];
+        final int[] indexes2 = new int[batch.capacity()];
+        final int[] indexes3 = new int[batch.capacity()];
+        while (batch.next()) {
+            bucket0.indexOf(col0, batch, indexes1);
+            bucket1.indexOf(col1, batch, indexes2);
+            bucket2.indexOf(col2, batch, indexes3);
+            for (int i = 0; i < batch.count; i++) {
+                int index1 = indexes1[i];
+                int index2 = indexes2[i];
+                int index3 = indexes3[i];
+                if (index1 == IHistogramBuckets.MISSING ||
+                        index2 == IHistogramBuckets.MISSING ||
+                        index3 == IHistogramBuckets.MISSING) {
+                    this.eitherMissing++; // At least one of the three is missing.
+                } else if ((index1 >= 0) && (index2 >= 0) && (index3 >= 0)) {
                     this.buckets[index1][index2][index3]++;
                     this.totalPresent++;
                 }
             }
-            currRow = myIter.getNextRow();
         }
     }
 
@@ -91,4 +96,16 @@ public class Heatmap3D implements IJson {
         unionH.totalPresent = this.totalPresent + otherHeatmap3D.totalPresent;
         return unionH;
     }
+
+    /**
+     * Adds the counts of otherHeatmap3D to this heatmap, modifying it.
+     */
+    public void merge(Heatmap3D otherHeatmap3D) {
+        for (int i = 0; i < this.bucketCount0; i++)
+            for (int j = 0; j < this.bucketCount1; j++)
+                for (int k = 0; k < this.bucketCount2; k++)
+                    this.buckets[i][j][k] += otherHeatmap3D.buckets[i][j][k];
+        this.eitherMissing += otherHeatmap3D.eitherMissing;
+        this.totalPresent += otherHeatmap3D.totalPresent;
+    }
 }
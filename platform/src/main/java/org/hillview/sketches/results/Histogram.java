@@ -21,6 +21,7 @@ import org.hillview.dataset.api.IJson;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.ISampledRowIterator;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.utils.Utilities;
 
 import javax.annotation.Nullable;
@@ -87,14 +88,30 @@ public class Histogram implements IJson {
             throw new RuntimeException("Negative sampling rate");
         final ISampledRowIterator myIter = membershipSet.getIteratorOverSample(
                 sampleRate, seed, enforceRate);
-        int currRow = myIter.getNextRow();
-        while (currRow >= 0) {
-            this.add(column, currRow, buckets);
-            currRow = myIter.getNextRow();
+        final RowBatch batch = new RowBatch(myIter);
+        final int[] indexes = new int[batch.capacity()];
+        while (batch.next()) {
+            buckets.indexOf(column, batch, indexes);
+            this.add(indexes, batch.count);
         }
         this.rescale(myIter.rate());
     }
 
+    /**
+     * Adds a batch of bucket indexes, as produced by IHistogramBuckets.indexOf.
+     * @param indexes  Bucket indexes.
+     * @param count    Number of indexes to add from the array.
+     */
+    public void add(final int[] indexes, final int count) {
+        for (int i = 0; i < count; i++) {
+            final int index = indexes[i];
+            if (index >= 0)
+                this.buckets[index]++;
+            else if (index == IHistogramBuckets.MISSING)
+                this.missingData++;
+        }
+    }
+
     public long getMissingData() { return this.missingData; }
 
     /**
@@ -115,6 +132,15 @@ public class Histogram implements IJson {
         return unionH;
     }
 
+    /**
+     * Adds the counts of otherHistogram to this histogram, modifying it.
+     */
+    public void merge(Histogram otherHistogram) {
+        for (int i = 0; i < this.buckets.length; i++)
+            this.buckets[i] += otherHistogram.buckets[i];
+        this.missingData += otherHistogram.missingData;
+    }
+
     public int getBucketCount() { return this.buckets.length; }
 
     @Override
@@ -18,6 +18,7 @@
 package org.hillview.sketches.results;
 
 import org.hillview.table.api.IColumn;
+import org.hillview.table.rows.RowBatch;
 
 import java.io.Serializable;
 
@@ -25,6 +26,11 @@ import java.io.Serializable;
  * A description of the buckets used to compute a histogram.
  */
 public interface IHistogramBuckets extends Serializable {
+    /**
+     * Bucket index produced by the batch version of indexOf for missing values.
+     */
+    int MISSING = -2;
+
     /**
      * Number of buckets; must be greater than 0.
      */
@@ -37,4 +43,21 @@ public interface IHistogramBuckets extends Serializable {
      * If the value is out of the range of buckets this returns -1.
      */
     int indexOf(IColumn column, int rowIndex);
+
+    /**
+     * Batch version of indexOf, which computes the buckets for all rows in a batch.
+     * @param column  Column holding the data.
+     * @param batch   Rows to bucket; its scratch buffers may be overwritten.
+     * @param result  Receives for each row in the batch the bucket index,
+     *                -1 if the value is out of range, or MISSING if the value is missing.
+     */
+    default void indexOf(IColumn column, RowBatch batch, int[] result) {
+        for (int i = 0; i < batch.count; i++) {
+            int row = batch.rows[i];
+            if (column.isMissing(row))
+                result[i] = MISSING;
+            else
+                result[i] = this.indexOf(column, row);
+        }
+    }
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.sketches.results;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.hillview.dataset.remoting.ITypeCodec;
+import org.hillview.dataset.remoting.WireCodec;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.SmallTable;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.columns.ObjectArrayColumn;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Compact codecs for the large sketch results that travel between workers and the root.
+ */
+public final class ResultCodecs {
+    private ResultCodecs() {}
+
+    /**
+     * Tags 13 to 18 belong to these codecs; new codecs use the next free tag.
+     */
+    public static void register(WireCodec codec) {
+        codec.register(13, WireCodec.COMPACT, new HistogramCodec());
+        codec.register(14, WireCodec.COMPACT, new HeatmapCodec());
+        codec.register(15, WireCodec.COMPACT, new Heatmap3DCodec());
+        codec.register(16, WireCodec.COMPACT, new SmallTableCodec());
+        codec.register(17, WireCodec.COMPACT, new NextKListCodec());
+        codec.register(18, WireCodec.COMPACT, new SampleListCodec());
+    }
+
+    static class HistogramCodec implements ITypeCodec<Histogram> {
+        @Override
+        public Class<Histogram> getEncodedClass() { return Histogram.class; }
+
+        @Override
+        public void encode(Histogram value, DataOutputStream out, WireCodec codec) throws IOException {
+            WireCodec.writeLongs(out, value.buckets);
+            WireCodec.writeVarLong(out, value.missingData);
+            WireCodec.writeInts(out, value.confidence);
+            out.writeInt(value.missingConfidence);
+        }
+
+        @Override
+        public Histogram decode(DataInputStream in, WireCodec codec) throws IOException {
+            long[] buckets = WireCodec.readLongs(in);
+            Histogram result = new Histogram(buckets, WireCodec.readVarLong(in));
+            result.confidence = WireCodec.readInts(in);
+            result.missingConfidence = in.readInt();
+            return result;
+        }
+    }
+
+    static class HeatmapCodec implements ITypeCodec<Heatmap> {
+        @Override
+        public Class<Heatmap> getEncodedClass() { return Heatmap.class; }
+
+        @Override
+        public void encode(Heatmap value, DataOutputStream out, WireCodec codec) throws IOException {
+            out.writeInt(value.xBucketCount);
+            out.writeInt(value.yBucketCount);
+            for (long[] row : value.buckets)
+                for (long b : row)
+                    WireCodec.writeVarLong(out, b);
+            out.writeBoolean(value.confidence != null);
+            if (value.confidence != null)
+                for (int[] row : value.confidence)
+                    WireCodec.writeInts(out, row);
+            WireCodec.writeVarLong(out, value.missingData);
+            WireCodec.writeVarLong(out, value.totalSize);
+            codec.writeObject(out, value.histogramMissingX);
+            codec.writeObject(out, value.histogramMissingY);
+        }
+
+        @Override
+        public Heatmap decode(DataInputStream in, WireCodec codec) throws IOException {
+            int x = in.readInt();
+            int y = in.readInt();
+            Heatmap result = new Heatmap(x, y);
+            for (long[] row : result.buckets)
+                for (int j = 0; j < row.length; j++)
+                    row[j] = WireCodec.readVarLong(in);
+            if (in.readBoolean()) {
+                result.confidence = new int[x][];
+                for (int i = 0; i < x; i++)
+                    result.confidence[i] = WireCodec.readInts(in);
+            }
+            result.missingData = WireCodec.readVarLong(in);
+            result.totalSize = WireCodec.readVarLong(in);
+            result.histogramMissingX = (Histogram)Converters.checkNull(codec.readObject(in));
+            result.histogramMissingY = (Histogram)Converters.checkNull(codec.readObject(in));
+            return result;
+        }
+    }
+
+    static class Heatmap3DCodec implements ITypeCodec<Heatmap3D> {
+        @Override
+        public Class<Heatmap3D> getEncodedClass() { return Heatmap3D.class; }
+
+        @Override
+        public void encode(Heatmap3D value, DataOutputStream out, WireCodec codec) throws IOException {
+            out.writeInt(value.bucketCount0);
+            out.writeInt(value.bucketCount1);
+            out.writeInt(value.bucketCount2);
+            for (long[][] plane : value.buckets)
+                for (long[] row : plane)
+                    for (long b : row)
+                        WireCodec.writeVarLong(out, b);
+            WireCodec.writeVarLong(out, value.eitherMissing);
+            WireCodec.writeVarLong(out, value.totalPresent);
+        }
+
+        @Override
+        public Heatmap3D decode(DataInputStream in, WireCodec codec) throws IOException {
+            int b0 = in.readInt();
+            int b1 = in.readInt();
+            int b2 = in.readInt();
+            Heatmap3D result = new Heatmap3D(b0, b1, b2);
+            for (long[][] plane : result.buckets)
+                for (long[] row : plane)
+                    for (int k = 0; k < row.length; k++)
+                        row[k] = WireCodec.readVarLong(in);
+            result.eitherMissing = WireCodec.readVarLong(in);
+            result.totalPresent = WireCodec.readVarLong(in);
+            return result;
+        }
+    }
+
+    /**
+     * Encodes small tables column by column.  Only tables made of ObjectArrayColumns
+     * (the only kind that is supposed to travel) are handled; values are written
+     * according to the column kind, and missing values are stored in a bitmap.
+     */
+    static class SmallTableCodec implements ITypeCodec<SmallTable> {
+        @Override
+        public Class<SmallTable> getEncodedClass() { return SmallTable.class; }
+
+        @Override
+        public boolean canEncode(SmallTable value) {
+            for (IColumn c : value.getColumns())
+                if (!(c instanceof ObjectArrayColumn))
+                    return false;
+            return true;
+        }
+
+        @Override
+        public void encode(SmallTable value, DataOutputStream out, WireCodec codec) throws IOException {
+            List<IColumn> columns = value.getColumns();
+            int rows = value.getNumOfRows();
+            out.writeInt(columns.size());
+            out.writeInt(rows);
+            for (IColumn col : columns) {
+                ColumnDescription desc = col.getDescription();
+                WireCodec.writeString(out, desc.name);
+                out.writeByte(desc.kind.ordinal());
+                BitSet missing = new BitSet(rows);
+                for (int i = 0; i < rows; i++)
+                    if (col.isMissing(i))
+                        missing.set(i);
+                WireCodec.writeBytes(out, missing.toByteArray());
+                for (int i = 0; i < rows; i++) {
+                    if (missing.get(i))
+                        continue;
+                    this.writeValue(out, desc.kind, col.getObject(i), codec);
+                }
+            }
+        }
+
+        private void writeValue(DataOutputStream out, ContentsKind kind,
+                                @Nullable Object value, WireCodec codec) throws IOException {
+            switch (kind) {
+                case String:
+                case Json:
+                    WireCodec.writeString(out, (String)Converters.checkNull(value));
+                    break;
+                case Integer:
+                    WireCodec.writeVarLong(out, (Integer)Converters.checkNull(value));
+                    break;
+                case Double:
+                    out.writeDouble((Double)Converters.checkNull(value));
+                    break;
+                case Date: {
+                    Instant instant = (Instant)Converters.checkNull(value);
+                    WireCodec.writeVarLong(out, instant.getEpochSecond());
+                    out.writeInt(instant.getNano());
+                    break;
+                }
+                case Duration: {
+                    Duration duration = (Duration)Converters.checkNull(value);
+                    WireCodec.writeVarLong(out, duration.getSeconds());
+                    out.writeInt(duration.getNano());
+                    break;
+                }
+                case None:
+                default:
+                    codec.writeObject(out, value);
+                    break;
+            }
+        }
+
+        @Nullable
+        private Object readValue(DataInputStream in, ContentsKind kind,
+                                 WireCodec codec) throws IOException {
+            switch (kind) {
+                case String:
+                case Json:
+                    return WireCodec.readString(in);
+                case Integer:
+                    return (int)WireCodec.readVarLong(in);
+                case Double:
+                    return in.readDouble();
+                case Date: {
+                    long seconds = WireCodec.readVarLong(in);
+                    return Instant.ofEpochSecond(seconds, in.readInt());
+                }
+                case Duration: {
+                    long seconds = WireCodec.readVarLong(in);
+                    return Duration.ofSeconds(seconds, in.readInt());
+                }
+                case None:
+                default:
+                    return codec.readObject(in);
+            }
+        }
+
+        @Override
+        public SmallTable decode(DataInputStream in, WireCodec codec) throws IOException {
+            int columnCount = in.readInt();
+            int rows = in.readInt();
+            ContentsKind[] kinds = ContentsKind.values();
+            List<IColumn> columns = new ArrayList<IColumn>(columnCount);
+            for (int c = 0; c < columnCount; c++) {
+                String name = WireCodec.readString(in);
+                ContentsKind kind = kinds[in.readUnsignedByte()];
+                ObjectArrayColumn col = new ObjectArrayColumn(new ColumnDescription(name, kind), rows);
+                BitSet missing = BitSet.valueOf(WireCodec.readBytes(in));
+                for (int i = 0; i < rows; i++) {
+                    if (missing.get(i))
+                        continue;
+                    col.set(i, this.readValue(in, kind, codec));
+                }
+                columns.add(col);
+            }
+            SmallTable result = new SmallTable(columns);
+            if (result.getNumOfRows() != rows)
+                throw new IOException("Decoded table has " + result.getNumOfRows() +
+                        " rows instead of " + rows);
+            return result;
+        }
+    }
+
+    static class NextKListCodec implements ITypeCodec<NextKList> {
+        @Override
+        public Class<NextKList> getEncodedClass() { return NextKList.class; }
+
+        @Override
+        public void encode(NextKList value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.rows);
+            codec.writeObject(out, value.aggregates);
+            WireCodec.writeInts(out, value.count.toIntArray());
+            WireCodec.writeVarLong(out, value.startPosition);
+            WireCodec.writeVarLong(out, value.rowsScanned);
+        }
+
+        @Override
+        public NextKList decode(DataInputStream in, WireCodec codec) throws IOException {
+            SmallTable rows = (SmallTable)Converters.checkNull(codec.readObject(in));
+            SmallTable aggregates = (SmallTable)codec.readObject(in);
+            int[] count = Converters.checkNull(WireCodec.readInts(in));
+            long position = WireCodec.readVarLong(in);
+            long scanned = WireCodec.readVarLong(in);
+            return new NextKList(rows, aggregates, new IntArrayList(count), position, scanned);
+        }
+    }
+
+    static class SampleListCodec implements ITypeCodec<SampleList> {
+        @Override
+        public Class<SampleList> getEncodedClass() { return SampleList.class; }
+
+        @Override
+        public void encode(SampleList value, DataOutputStream out, WireCodec codec) throws IOException {
+            codec.writeObject(out, value.table);
+        }
+
+        @Override
+        public SampleList decode(DataInputStream in, WireCodec codec) throws IOException {
+            return new SampleList((SmallTable)Converters.checkNull(codec.readObject(in)));
+        }
+    }
+}
@@ -18,13 +18,24 @@
 package org.hillview.sketches.results;
 
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.columns.SharedDictionary;
+import org.hillview.table.rows.RowBatch;
+
+import javax.annotation.Nullable;
 
 /**
  * Left endpoints for string buckets.
+ * For dictionary-encoded columns the bucket of each value is memoized by its id in the
+ * shared dictionary, so the binary search is done once per distinct value, not once per row;
+ * the memo is reused for all the partitions processed by a worker.
  */
 public class StringHistogramBuckets extends ExplicitHistogramBuckets<String> {
     static final long serialVersionUID = 1;
-    
+
+    @Nullable
+    private transient volatile SharedDictionary.Memo memo;
+
     public StringHistogramBuckets(final String[] leftBoundaries, final String max) {
         super(leftBoundaries, max);
     }
@@ -33,6 +44,48 @@ public class StringHistogramBuckets extends ExplicitHistogramBuckets<String> {
         super(leftBoundaries);
     }
 
+    private SharedDictionary.Memo getMemo() {
+        SharedDictionary.Memo result = this.memo;
+        if (result == null) {
+            result = new SharedDictionary.Memo();
+            this.memo = result;
+        }
+        return result;
+    }
+
+    /**
+     * The shared ids of the codes of a column, or null if the column is not
+     * dictionary-encoded with shared ids.
+     */
+    @Nullable
+    private static int[] getSharedIds(IColumn column) {
+        if (!(column instanceof IDictionaryColumn))
+            return null;
+        IDictionaryColumn dict = (IDictionaryColumn)column;
+        if (!dict.isDictionaryEncoded())
+            return null;
+        return dict.getSharedIds();
+    }
+
+    /**
+     * The bucket of the value with the specified code.
+     */
+    private int indexOfCode(IDictionaryColumn column, int[] ids, SharedDictionary.Memo memo, int code) {
+        int id = ids[code];
+        if (id >= 0) {
+            int index = memo.get(id);
+            if (index != SharedDictionary.Memo.UNKNOWN)
+                return index;
+        }
+        String item = column.decode(code);
+        if (item == null)
+            return MISSING;
+        int index = this.indexOf(item);
+        if (id >= 0)
+            memo.put(id, index);
+        return index;
+    }
+
     @Override
     public int indexOf(IColumn column, int rowIndex) {
         String item = column.getString(rowIndex);
@@ -41,4 +94,22 @@ public class StringHistogramBuckets extends ExplicitHistogramBuckets<String> {
             return -1;
         return this.indexOf(item);
     }
+
+    @Override
+    public void indexOf(IColumn column, RowBatch batch, int[] result) {
+        final int[] ids = getSharedIds(column);
+        if (ids != null) {
+            final IDictionaryColumn dict = (IDictionaryColumn)column;
+            final SharedDictionary.Memo memo = this.getMemo();
+            for (int i = 0; i < batch.count; i++)
+                result[i] = this.indexOfCode(dict, ids, memo, dict.getCode(batch.rows[i]));
+            return;
+        }
+        final String[] values = batch.getStrings();
+        column.getStrings(batch.rows, batch.count, values);
+        for (int i = 0; i < batch.count; i++) {
+            final String item = values[i];
+            result[i] = item == null ? MISSING : this.indexOf(item);
+        }
+    }
 }
@@ -0,0 +1,529 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.storage;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Table;
+import org.hillview.table.api.*;
+import org.hillview.table.columns.BaseListColumn;
+import org.hillview.table.columns.OffHeapColumn;
+import org.hillview.table.columns.OffHeapStringColumn;
+import org.hillview.utils.HillviewLogger;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caches the tables loaded from files in a native binary columnar format,
+ * so that reloading a file, e.g., after a worker restart, does not have to parse it again.
+ * The cached data mirrors the layout of the columns in memory: fixed-size values,
+ * dictionary codes and bitmaps of missing values, all aligned to 8 bytes and
+ * in the native byte order.  Cached files are memory-mapped when loaded,
+ * so the columns are paged in by the OS on demand.
+ *
+ * A cache file is identified by a key describing the source file (path,
+ * modification time and size) and the way it is parsed (e.g., the schema);
+ * when the source changes the key changes, and the file is parsed again.
+ *
+ * The file layout is: a magic number, the data regions, a footer
+ * describing the columns, the offset of the footer and the magic number again.
+ */
+public final class ColumnarFileCache {
+    /**
+     * The cache used by the loaders of this process.
+     */
+    public static final ColumnarFileCache instance = new ColumnarFileCache();
+
+    private static final long MAGIC = 0x4856434F4C533031L;  // "HVCOLS01"
+    private static final String SUFFIX = ".hvc";
+
+    // Encodings of the columns.
+    private static final byte NUMERIC = 0;
+    private static final byte CODES = 1;
+    private static final byte STRINGS = 2;
+
+    /**
+     * Folder holding the cached files; if null caching is disabled.
+     */
+    @Nullable
+    private volatile Path directory;
+    private long hits;
+    private long misses;
+
+    private ColumnarFileCache() {
+        this.directory = null;
+    }
+
+    /**
+     * Set the folder where cached files are stored.
+     * @param directory  Folder name; if null caching is disabled.
+     */
+    public void setDirectory(@Nullable String directory) {
+        HillviewLogger.instance.info("Columnar file cache", "{0}", directory);
+        if (directory == null) {
+            this.directory = null;
+            return;
+        }
+        Path dir = Paths.get(directory);
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        this.directory = dir;
+    }
+
+    public boolean isEnabled() {
+        return this.directory != null;
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Build the key that identifies a cached file.
+     * @param pathname  Source file.
+     * @param options   Describes how the file is parsed; must change when the
+     *                  resulting table could change.
+     */
+    public static String getKey(String pathname, String options) {
+        File file = new File(pathname);
+        return file.getAbsolutePath() + "\n" + file.lastModified() + "\n" +
+                file.length() + "\n" + options;
+    }
+
+    private Path getCachePath(Path dir, String pathname, String key) {
+        long hash = LongHashFunction.xx().hashChars(key);
+        String name = Paths.get(pathname).getFileName().toString();
+        return dir.resolve(name + "." + Long.toHexString(hash) + SUFFIX);
+    }
+
+    /**
+     * Load a file, using the cached data if it is available, and caching the table otherwise.
+     * @param pathname  Source file.
+     * @param key       Key of the file, built by getKey.
+     * @param loader    Parses the source file.
+     */
+    public ITable load(String pathname, String key, TextFileLoader loader) {
+        Path dir = this.directory;
+        if (dir == null)
+            return loader.load();
+        Path cached = this.getCachePath(dir, pathname, key);
+        ITable result = null;
+        if (Files.exists(cached))
+            result = this.read(cached, pathname, key);
+        synchronized (this) {
+            if (result != null)
+                this.hits++;
+            else
+                this.misses++;
+        }
+        if (result != null)
+            return result;
+        result = loader.load();
+        this.write(result, cached, key);
+        return result;
+    }
+
+    /**
+     * Read a cached file.
+     * @return null if the file cannot be used.
+     */
+    @Nullable
+    private ITable read(Path cached, String pathname, String key) {
+        try (FileChannel channel = FileChannel.open(cached, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < 24)
+                return null;
+            ByteBuffer trailer = ByteBuffer.allocate(16).order(ByteOrder.nativeOrder());
+            readFully(channel, trailer, fileSize - 16);
+            long footerStart = trailer.getLong(0);
+            if (trailer.getLong(8) != MAGIC || footerStart < 8 || footerStart > fileSize - 16)
+                return null;
+            ByteBuffer footer = ByteBuffer.allocate((int)(fileSize - 16 - footerStart));
+            readFully(channel, footer, footerStart);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer.array()));
+            if (!readString(in).equals(key))
+                return null;
+            ByteOrder order = in.readBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            if (order != ByteOrder.nativeOrder())
+                return null;
+            int rows = in.readInt();
+            int columnCount = in.readInt();
+            List<IColumn> columns = new ArrayList<IColumn>(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                ColumnDescription desc = new ColumnDescription(
+                        readString(in), ContentsKind.valueOf(readString(in)));
+                byte encoding = in.readByte();
+                ByteBuffer data = map(channel, in.readLong(), in.readLong());
+                long missingOffset = in.readLong();
+                ByteBuffer missing = missingOffset < 0 ? null :
+                        map(channel, missingOffset, OffHeapColumn.bitmapBytes(rows));
+                switch (encoding) {
+                    case NUMERIC:
+                        columns.add(OffHeapColumn.create(desc, rows, data, missing));
+                        break;
+                    case CODES: {
+                        String[] dictionary = new String[in.readInt()];
+                        for (int d = 0; d < dictionary.length; d++)
+                            dictionary[d] = in.readBoolean() ? readString(in) : null;
+                        columns.add(OffHeapStringColumn.create(desc, rows, data, missing, dictionary));
+                        break;
+                    }
+                    case STRINGS: {
+                        ByteBuffer offsets = map(channel, in.readLong(), ((long)rows + 1) << 2);
+                        columns.add(readStrings(desc, rows, data, offsets, missing));
+                        break;
+                    }
+                    default:
+                        return null;
+                }
+            }
+            HillviewLogger.instance.info("Loaded cached file", "{0}", cached);
+            return new Table(columns, pathname, null);
+        } catch (Exception ex) {
+            HillviewLogger.instance.error("Error reading cached file " + cached, ex);
+            return null;
+        }
+    }
+
+    private static IColumn readStrings(ColumnDescription desc, int rows, ByteBuffer data,
+                                       ByteBuffer offsets, @Nullable ByteBuffer missing) {
+        IAppendableColumn result = BaseListColumn.create(desc);
+        byte[] bytes = new byte[0];
+        for (int i = 0; i < rows; i++) {
+            if (missing != null && ((missing.getLong((i >>> 6) << 3) >>> i) & 1) != 0) {
+                result.appendMissing();
+                continue;
+            }
+            int start = offsets.getInt(i << 2);
+            int length = offsets.getInt((i + 1) << 2) - start;
+            if (bytes.length < length)
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            ByteBuffer value = data.duplicate();
+            value.position(start);
+            value.get(bytes, 0, length);
+            result.append(new String(bytes, 0, length, StandardCharsets.UTF_8));
+        }
+        return result.seal();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new EOFException();
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length)
+            throws IOException {
+        // A mapping stays valid after the channel is closed.
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length)
+                .order(ByteOrder.nativeOrder());
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Buffered writer of values in the native byte order which tracks the file position.
+     */
+    private static final class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long position;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.nativeOrder());
+            this.position = 0;
+        }
+
+        long position() {
+            return this.position;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (this.buffer.remaining() < bytes)
+                this.flush();
+            this.position += bytes;
+        }
+
+        void putByte(byte value) throws IOException {
+            this.ensure(1);
+            this.buffer.put(value);
+        }
+
+        void putShort(short value) throws IOException {
+            this.ensure(2);
+            this.buffer.putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            this.ensure(4);
+            this.buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            this.ensure(8);
+            this.buffer.putLong(value);
+        }
+
+        void putDouble(double value) throws IOException {
+            this.ensure(8);
+            this.buffer.putDouble(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            if (bytes.length > this.buffer.capacity()) {
+                this.flush();
+                ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+                while (wrapped.hasRemaining())
+                    this.channel.write(wrapped);
+                this.position += bytes.length;
+                return;
+            }
+            this.ensure(bytes.length);
+            this.buffer.put(bytes);
+        }
+
+        /**
+         * Pad the file to a multiple of 8 bytes.
+         */
+        void align() throws IOException {
+            while ((this.position & 7) != 0)
+                this.putByte((byte)0);
+        }
+
+        void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining())
+                this.channel.write(this.buffer);
+            this.buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.flush();
+        }
+    }
+
+    /**
+     * Write the missing values of a column.
+     * @return The offset of the bitmap, or -1 if no value is missing.
+     */
+    private static long writeMissing(Output output, IColumn column) throws IOException {
+        int rows = column.sizeInRows();
+        boolean any = false;
+        for (int i = 0; i < rows && !any; i++)
+            any = column.isMissing(i);
+        if (!any)
+            return -1;
+        output.align();
+        long offset = output.position();
+        for (int word = 0; word < rows; word += 64) {
+            long bits = 0;
+            int end = Math.min(rows, word + 64);
+            for (int row = word; row < end; row++)
+                if (column.isMissing(row))
+                    bits |= 1L << (row - word);
+            output.putLong(bits);
+        }
+        return offset;
+    }
+
+    /**
+     * Write the data of a column and describe it in the footer.
+     * @return False if the column cannot be cached.
+     */
+    private static boolean writeColumn(Output output, DataOutputStream footer, IColumn column)
+            throws IOException {
+        int rows = column.sizeInRows();
+        ContentsKind kind = column.getKind();
+        byte encoding;
+        if (kind == ContentsKind.Integer || kind == ContentsKind.Double ||
+                kind == ContentsKind.Date || kind == ContentsKind.Duration)
+            encoding = NUMERIC;
+        else if (!kind.isString())
+            return false;
+        else if (column instanceof IDictionaryColumn &&
+                ((IDictionaryColumn)column).isDictionaryEncoded() &&
+                ((IDictionaryColumn)column).getDictionarySize() <= 1 << 16)
+            encoding = CODES;
+        else
+            encoding = STRINGS;
+
+        output.align();
+        long dataOffset = output.position();
+        int[] offsets = null;
+        switch (encoding) {
+            case NUMERIC:
+                for (int i = 0; i < rows; i++) {
+                    boolean missing = column.isMissing(i);
+                    if (kind == ContentsKind.Integer)
+                        output.putInt(missing ? 0 : column.getInt(i));
+                    else
+                        output.putDouble(missing ? 0 : column.asDouble(i));
+                }
+                break;
+            case CODES: {
+                IDictionaryColumn dict = (IDictionaryColumn)column;
+                boolean byteCodes = dict.getDictionarySize() <= 1 << 8;
+                for (int i = 0; i < rows; i++) {
+                    if (byteCodes)
+                        output.putByte((byte)dict.getCode(i));
+                    else
+                        output.putShort((short)dict.getCode(i));
+                }
+                break;
+            }
+            default: {
+                offsets = new int[rows + 1];
+                long length = 0;
+                for (int i = 0; i < rows; i++) {
+                    offsets[i] = (int)length;
+                    String s = column.isMissing(i) ? null : column.getString(i);
+                    if (s == null)
+                        continue;
+                    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                    output.putBytes(bytes);
+                    length += bytes.length;
+                    if (length > Integer.MAX_VALUE)
+                        return false;
+                }
+                offsets[rows] = (int)length;
+                break;
+            }
+        }
+        long dataLength = output.position() - dataOffset;
+        long missingOffset = writeMissing(output, column);
+
+        writeString(footer, column.getName());
+        writeString(footer, kind.toString());
+        footer.writeByte(encoding);
+        footer.writeLong(dataOffset);
+        footer.writeLong(dataLength);
+        footer.writeLong(missingOffset);
+        if (encoding == CODES) {
+            IDictionaryColumn dict = (IDictionaryColumn)column;
+            footer.writeInt(dict.getDictionarySize());
+            for (int d = 0; d < dict.getDictionarySize(); d++) {
+                String value = dict.decode(d);
+                footer.writeBoolean(value != null);
+                if (value != null)
+                    writeString(footer, value);
+            }
+        } else if (offsets != null) {
+            output.align();
+            footer.writeLong(output.position());
+            for (int offset : offsets)
+                output.putInt(offset);
+        }
+        return true;
+    }
+
+    /**
+     * Write a table to a cached file.  Tables whose columns are not all loaded
+     * are not cached, since that would require loading them.
+     */
+    private void write(ITable table, Path cached, String key) {
+        List<IColumn> columns = new ArrayList<IColumn>();
+        for (String name : table.getSchema().getColumnNames()) {
+            IColumn column = table.getColumn(name);
+            if (!column.isLoaded())
+                return;
+            columns.add(column);
+        }
+        // Only tables that contain all the rows of their columns are cached.
+        IMembershipSet members = table.getMembershipSet();
+        if (members.getSize() != members.getMax())
+            return;
+
+        Path dir = cached.getParent();
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, "hillview", SUFFIX + ".tmp");
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            writeString(footer, key);
+            footer.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
+            footer.writeInt(table.getNumOfRows());
+            footer.writeInt(columns.size());
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE);
+                 Output output = new Output(channel)) {
+                output.putLong(MAGIC);
+                for (IColumn c : columns) {
+                    if (!writeColumn(output, footer, c)) {
+                        HillviewLogger.instance.info("Column cannot be cached", "{0}", c);
+                        return;
+                    }
+                }
+                footer.flush();
+                long footerStart = output.position();
+                output.putBytes(footerBytes.toByteArray());
+                output.putLong(footerStart);
+                output.putLong(MAGIC);
+            }
+            // Readers never see a partially written file.
+            Files.move(tmp, cached, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            HillviewLogger.instance.info("Cached file", "{0}", cached);
+        } catch (Exception ex) {
+            HillviewLogger.instance.error("Error writing cached file " + cached, ex);
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ex) {
+                    HillviewLogger.instance.error("Error deleting " + tmp, ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "columnar file cache: " + this.directory + ", " +
+                this.hits + " hits, " + this.misses + " misses";
+    }
+}
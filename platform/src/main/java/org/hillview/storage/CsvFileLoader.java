@@ -51,6 +51,12 @@ public class CsvFileLoader extends TextFileLoader {
          * If true the file is expected to have a header row.
          */
         public boolean hasHeaderRow;
+        /**
+         * Uncompressed files larger than twice this size are split into chunks
+         * of about this many bytes, which are parsed in parallel.
+         * If zero files are always parsed sequentially.
+         */
+        public long parallelChunkSize = 64L << 20;
     }
 
     private final Config configuration;
@@ -66,27 +72,56 @@ public class CsvFileLoader extends TextFileLoader {
         this.allowFewerColumns = configuration.allowFewerColumns;
     }
 
+    /**
+     * Parser settings shared by the sequential and the parallel loader.
+     * @param schema  Schema of the file, if known.
+     */
+    static CsvParserSettings createSettings(Config configuration, @Nullable Schema schema) {
+        CsvParserSettings settings = new CsvParserSettings();
+        CsvFormat format = new CsvFormat();
+        format.setDelimiter(configuration.separator);
+        settings.setFormat(format);
+        settings.setIgnoreTrailingWhitespaces(true);
+        settings.setEmptyValue("");
+        settings.setNullValue(null);
+        settings.setReadInputOnSeparateThread(false);
+        if (schema != null)
+            settings.setMaxColumns(schema.getColumnCount());
+        else
+            settings.setMaxColumns(50000);
+        settings.setMaxCharsPerColumn(100000);
+        return settings;
+    }
+
+    /**
+     * Create a schema with string columns from a header row.
+     */
+    static Schema createSchema(String[] header) {
+        HillviewLogger.instance.info("Creating schema");
+        Schema schema = new Schema();
+        int index = 0;
+        for (String col : header) {
+            if ((col == null) || col.isEmpty())
+                col = schema.newColumnName("Column_" + index);
+            col = schema.newColumnName(col);
+            ColumnDescription cd = new ColumnDescription(col,
+                    ContentsKind.String);
+            schema.append(cd);
+            index++;
+        }
+        return schema;
+    }
+
     public ITable load() {
         if (!Utilities.isNullOrEmpty(this.schemaPath))
             this.actualSchema = Schema.readFromJsonFile(Paths.get(this.schemaPath));
+        if (ParallelCsvLoader.canLoad(this.filename, this.configuration))
+            return new ParallelCsvLoader(this.filename, this.configuration, this.actualSchema).load();
 
         Reader file = null;
         try {
             file = this.getFileReader();
-            CsvParserSettings settings = new CsvParserSettings();
-            CsvFormat format = new CsvFormat();
-            format.setDelimiter(this.configuration.separator);
-            settings.setFormat(format);
-            settings.setIgnoreTrailingWhitespaces(true);
-            settings.setEmptyValue("");
-            settings.setNullValue(null);
-            settings.setReadInputOnSeparateThread(false);
-            if (this.actualSchema != null)
-                settings.setMaxColumns(this.actualSchema.getColumnCount());
-            else
-                settings.setMaxColumns(50000);
-            settings.setMaxCharsPerColumn(100000);
-            CsvParser reader = new CsvParser(settings);
+            CsvParser reader = new CsvParser(createSettings(this.configuration, this.actualSchema));
             reader.beginParsing(file);
 
             if (this.configuration.hasHeaderRow) {
@@ -100,18 +135,7 @@ public class CsvFileLoader extends TextFileLoader {
                 if (line == null)
                     throw new RuntimeException("Missing header row " + this.filename);
                 if (this.actualSchema == null) {
-                    HillviewLogger.instance.info("Creating schema");
-                    this.actualSchema = new Schema();
-                    int index = 0;
-                    for (String col : line) {
-                        if ((col == null) || col.isEmpty())
-                            col = this.actualSchema.newColumnName("Column_" + index);
-                        col = this.actualSchema.newColumnName(col);
-                        ColumnDescription cd = new ColumnDescription(col,
-                                ContentsKind.String);
-                        this.actualSchema.append(cd);
-                        index++;
-                    }
+                    this.actualSchema = createSchema(line);
                 } else {
                     this.currentRow++;
                 }
@@ -136,7 +136,25 @@ public class FileSetDescription implements IJson {
                     throw new RuntimeException(
                             "Unexpected file kind " + FileSetDescription.this.fileKind);
             }
-            return loader.load();
+            if (!ColumnarFileCache.instance.isEnabled())
+                return loader.load();
+            String key = ColumnarFileCache.getKey(this.pathname, this.getParsingOptions());
+            return ColumnarFileCache.instance.load(this.pathname, key, loader);
+        }
+
+        /**
+         * Describes everything besides the file contents that influences the loaded table.
+         */
+        private String getParsingOptions() {
+            FileSetDescription desc = FileSetDescription.this;
+            String schemaPath = desc.getSchemaPath();
+            String schema = "";
+            if (schemaPath != null) {
+                File file = new File(schemaPath);
+                schema = file.getAbsolutePath() + "@" + file.lastModified();
+            }
+            return desc.fileKind + "," + desc.headerRow + "," + schema + "," +
+                    desc.logFormat + "," + desc.startTime + "," + desc.endTime;
         }
 
         public long getSizeInBytes() {
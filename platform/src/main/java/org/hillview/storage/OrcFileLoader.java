@@ -20,10 +20,18 @@ package org.hillview.storage;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.exec.vector.*;
+import org.apache.orc.ColumnStatistics;
+import org.apache.orc.DoubleColumnStatistics;
+import org.apache.orc.IntegerColumnStatistics;
 import org.apache.orc.OrcFile;
 import org.apache.orc.Reader;
 import org.apache.orc.RecordReader;
+import org.apache.orc.StringColumnStatistics;
+import org.apache.orc.StripeInformation;
+import org.apache.orc.StripeStatistics;
+import org.apache.orc.TimestampColumnStatistics;
 import org.apache.orc.TypeDescription;
+import org.hillview.table.BlockStatistics;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.Schema;
 import org.hillview.table.Table;
@@ -102,6 +110,116 @@ public class OrcFileLoader extends TextFileLoader {
                 throw new RuntimeException(e);
             }
         }
+
+        @Nullable
+        @Override
+        public List<BlockStatistics> getStatistics(String name) {
+            try {
+                return OrcFileLoader.this.getStatistics(name);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Stripe statistics of a column.  They are only used when the column
+     * is not converted to a different kind by the Hillview schema.
+     */
+    @Nullable
+    private List<BlockStatistics> getStatistics(String name) throws IOException {
+        assert this.schema != null;
+        int index = this.schema.getFieldNames().indexOf(name);
+        if (index < 0)
+            return null;
+        TypeDescription type = this.schema.getChildren().get(index);
+        if (this.hillviewSchema != null &&
+                this.hillviewSchema.getColumnDescriptions().get(index).kind != getKind(type))
+            return null;
+        switch (type.getCategory()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case STRING:
+            case TIMESTAMP:
+                break;
+            default:
+                return null;
+        }
+
+        Reader reader = OrcFile.createReader(new Path(this.filename),
+                OrcFile.readerOptions(this.conf));
+        List<StripeInformation> stripes = reader.getStripes();
+        List<StripeStatistics> stripeStatistics = reader.getStripeStatistics();
+        if (stripes.size() != stripeStatistics.size())
+            return null;
+        List<BlockStatistics> result = new ArrayList<BlockStatistics>(stripes.size());
+        int firstRow = 0;
+        for (int i = 0; i < stripes.size(); i++) {
+            int rows = Utilities.toInt(stripes.get(i).getNumberOfRows());
+            // Column 0 is the struct that contains all columns.
+            ColumnStatistics stats = stripeStatistics.get(i).getColumnStatistics()[index + 1];
+            long present = stats.getNumberOfValues();
+            BlockStatistics block;
+            if (type.getCategory() == TypeDescription.Category.STRING) {
+                String min = null, max = null;
+                if (present > 0) {
+                    StringColumnStatistics ss = (StringColumnStatistics)stats;
+                    min = ss.getMinimum();
+                    max = ss.getMaximum();
+                    // ORC compares the UTF-8 encodings; this agrees with String.compareTo
+                    // only if the bounds have no surrogate or private use characters.
+                    if (min == null || max == null ||
+                            !sameOrderAsUtf8(min) || !sameOrderAsUtf8(max))
+                        return null;
+                }
+                block = new BlockStatistics(firstRow, rows, present, min, max);
+            } else {
+                double min = 0, max = 0;
+                if (present > 0) {
+                    switch (type.getCategory()) {
+                        case FLOAT:
+                        case DOUBLE: {
+                            DoubleColumnStatistics ds = (DoubleColumnStatistics)stats;
+                            min = ds.getMinimum();
+                            max = ds.getMaximum();
+                            if (Double.isNaN(min) || Double.isNaN(max))
+                                return null;
+                            break;
+                        }
+                        case TIMESTAMP: {
+                            TimestampColumnStatistics ts = (TimestampColumnStatistics)stats;
+                            min = ts.getMinimumUTC().getTime();
+                            // The statistics are truncated to milliseconds, and appendColumn
+                            // adds the nanoseconds to the milliseconds, so the values can be
+                            // up to a second larger.
+                            max = ts.getMaximumUTC().getTime() + 1000;
+                            break;
+                        }
+                        default: {
+                            IntegerColumnStatistics is = (IntegerColumnStatistics)stats;
+                            min = is.getMinimum();
+                            max = is.getMaximum();
+                            break;
+                        }
+                    }
+                }
+                block = new BlockStatistics(firstRow, rows, present, min, max);
+            }
+            result.add(block);
+            firstRow += rows;
+        }
+        return result;
+    }
+
+    private static boolean sameOrderAsUtf8(String s) {
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) >= Character.MIN_SURROGATE)
+                return false;
+        return true;
     }
 
     /**
@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.storage;
+
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
+import org.hillview.table.Table;
+import org.hillview.table.api.*;
+import org.hillview.table.columns.ConcatenatedColumn;
+import org.hillview.table.columns.DateListColumn;
+import org.hillview.table.membership.FullMembershipSet;
+import org.hillview.table.rows.GuessSchema;
+import org.hillview.utils.Converters;
+import org.hillview.utils.DateParsing;
+import org.hillview.utils.ExecutorUtils;
+import org.hillview.utils.HillviewLogger;
+import org.hillview.utils.Utilities;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Loads a large CSV file by parsing chunks of the file in parallel.
+ * The file is split at record boundaries: a newline ends a record only if it
+ * is preceded by an even number of quote characters, so newlines in quoted
+ * fields are handled.  This assumes that quotes only appear in quoted fields.
+ * Each chunk is parsed into its own columns; the columns of the chunks are
+ * concatenated without copying.
+ *
+ * If the file has no schema the kinds of the columns are guessed from
+ * a sample of rows from each chunk, and the chunks are parsed directly into
+ * columns of these kinds.  If some value does not match the guessed kind the
+ * file is parsed again as strings and the kinds are guessed from all rows,
+ * as the sequential loader does.  Values are checked with the same rules used
+ * to guess the kinds, so the result is the same as with the sequential loader.
+ */
+class ParallelCsvLoader extends TextFileLoader {
+    /**
+     * Threads used to parse chunks.  These are not the compute threads,
+     * since files are usually loaded from a computation.
+     */
+    private static final ExecutorService loaderPool = ExecutorUtils.newNamedThreadPool(
+            "csv-loader", Runtime.getRuntime().availableProcessors(), -1);
+    /**
+     * Number of rows of each chunk used to guess the schema.
+     */
+    private static final int sampleRows = 1000;
+    private static final int bufferSize = 1 << 16;
+
+    private final CsvFileLoader.Config configuration;
+    /**
+     * Schema read from a schema file; if null the schema is guessed.
+     */
+    @Nullable
+    private final Schema fileSchema;
+    private final char quote;
+
+    ParallelCsvLoader(String path, CsvFileLoader.Config configuration, @Nullable Schema schema) {
+        super(path);
+        this.configuration = configuration;
+        this.fileSchema = schema;
+        this.allowFewerColumns = configuration.allowFewerColumns;
+        this.quote = CsvFileLoader.createSettings(configuration, schema).getFormat().getQuote();
+    }
+
+    /**
+     * True if the file should be loaded in parallel: it is large, it is not
+     * compressed, and it is encoded in UTF-8.
+     */
+    static boolean canLoad(String path, CsvFileLoader.Config configuration) {
+        if (configuration.parallelChunkSize <= 0 || Utilities.isCompressed(path) != null)
+            return false;
+        File file = new File(path);
+        if (file.length() < 2 * configuration.parallelChunkSize)
+            return false;
+        return bomSize(path) >= 0;
+    }
+
+    /**
+     * The size of the byte order mark at the beginning of a file.
+     * @return -1 if the file is not encoded in UTF-8.
+     */
+    private static int bomSize(String path) {
+        byte[] start = new byte[3];
+        int read;
+        try (InputStream in = new FileInputStream(path)) {
+            read = in.read(start);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (read >= 2 && ((start[0] == (byte)0xFE && start[1] == (byte)0xFF) ||
+                (start[0] == (byte)0xFF && start[1] == (byte)0xFE)))
+            return -1;  // UTF-16 or UTF-32LE
+        if (read >= 2 && start[0] == 0 && start[1] == 0)
+            return -1;  // Possibly UTF-32BE
+        if (read == 3 && start[0] == (byte)0xEF && start[1] == (byte)0xBB && start[2] == (byte)0xBF)
+            return 3;
+        return 0;
+    }
+
+    /**
+     * Reads part of a file into a buffer.
+     * @return The number of bytes read; 0 at the end of the file.
+     */
+    private static int read(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                break;
+        }
+        buffer.flip();
+        return buffer.limit();
+    }
+
+    /**
+     * Count the quote characters between two file positions.
+     */
+    private long countQuotes(long start, long end) throws IOException {
+        long count = 0;
+        byte quote = (byte)this.quote;
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        try (FileChannel channel = FileChannel.open(Paths.get(this.filename), StandardOpenOption.READ)) {
+            for (long position = start; position < end; ) {
+                int read = read(channel, buffer, position);
+                if (read == 0)
+                    break;
+                int length = (int)Math.min(read, end - position);
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < length; i++)
+                    if (bytes[i] == quote)
+                        count++;
+                position += length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Find the end of the first record that ends at or after a position.
+     * @param odd  True if an odd number of quotes precede the position.
+     * @return The position after the newline that ends the record, or the file size.
+     */
+    private static long findRecordEnd(FileChannel channel, long position, boolean odd, byte quote)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        while (true) {
+            int read = read(channel, buffer, position);
+            if (read == 0)
+                return channel.size();
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == quote)
+                    odd = !odd;
+                else if (bytes[i] == '\n' && !odd)
+                    return position + i + 1;
+            }
+            position += read;
+        }
+    }
+
+    private static String readString(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Utilities.toInt(end - start));
+        read(channel, buffer, start);
+        return new String(buffer.array(), 0, buffer.limit(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the records between two file positions.
+     */
+    private final class ChunkLoader extends TextFileLoader {
+        private final long start;
+        private final long end;
+        @Nullable
+        private Schema schema;
+        /**
+         * If not null, checks that the values of each column with a guessed
+         * kind can be parsed as this kind.
+         */
+        @Nullable
+        private GuessSchema[] validators;
+        /**
+         * Parser for each date column, shared by all chunks.
+         */
+        private DateParsing[] dateParsers;
+
+        ChunkLoader(long start, long end) {
+            super(ParallelCsvLoader.this.filename);
+            this.start = start;
+            this.end = end;
+            this.allowFewerColumns = ParallelCsvLoader.this.allowFewerColumns;
+            this.dateParsers = new DateParsing[0];
+        }
+
+        private CsvParser beginParsing(Reader reader) {
+            CsvParserSettings settings = CsvFileLoader.createSettings(
+                    ParallelCsvLoader.this.configuration, this.schema);
+            CsvParser parser = new CsvParser(settings);
+            parser.beginParsing(reader);
+            return parser;
+        }
+
+        private Reader open() throws IOException {
+            FileInputStream stream = new FileInputStream(this.filename);
+            try {
+                stream.getChannel().position(this.start);
+                return new InputStreamReader(new BoundedInputStream(
+                        new BufferedInputStream(stream, bufferSize), this.end - this.start),
+                        StandardCharsets.UTF_8);
+            } catch (IOException ex) {
+                stream.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Parse the first rows of the chunk.
+         */
+        private void scan(Consumer<String[]> consumer) {
+            Reader reader = null;
+            try {
+                reader = this.open();
+                CsvParser parser = this.beginParsing(reader);
+                for (int row = 0; row < sampleRows; row++) {
+                    String[] line = parser.parseNext();
+                    if (line == null)
+                        break;
+                    consumer.accept(line);
+                }
+                parser.stopParsing();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                this.close(reader);
+            }
+        }
+
+        /**
+         * Update the schema guesses with the first rows of the chunk.
+         */
+        void sample(GuessSchema[] guesses) {
+            this.scan(line -> {
+                for (int i = 0; i < line.length && i < guesses.length; i++)
+                    guesses[i].updateGuess(line[i]);
+            });
+        }
+
+        /**
+         * Find the first non-empty value of each column that has none yet.
+         */
+        void firstValues(String[] values) {
+            this.scan(line -> {
+                for (int i = 0; i < line.length && i < values.length; i++)
+                    if (values[i] == null && line[i] != null && !line[i].isEmpty())
+                        values[i] = line[i];
+            });
+        }
+
+        ITable load(Schema schema, boolean validate, DateParsing[] dateParsers) {
+            this.schema = schema;
+            this.dateParsers = dateParsers;
+            this.validators = null;
+            if (validate) {
+                this.validators = new GuessSchema[schema.getColumnCount()];
+                int index = 0;
+                for (String name : schema.getColumnNames()) {
+                    ContentsKind kind = schema.getKind(name);
+                    if (kind != ContentsKind.String) {
+                        this.validators[index] = new GuessSchema(name, kind);
+                        this.validators[index].setDateParser(dateParsers[index]);
+                    }
+                    index++;
+                }
+            }
+            return this.load();
+        }
+
+        /**
+         * True if all values can be parsed as the guessed kinds.
+         */
+        boolean isValid() {
+            if (this.validators == null)
+                return true;
+            int index = 0;
+            for (String name : Converters.checkNull(this.schema).getColumnNames()) {
+                GuessSchema v = this.validators[index++];
+                if (v != null && v.getColumnDesc().kind != this.schema.getKind(name))
+                    return false;
+            }
+            return true;
+        }
+
+        private void validate(String[] line) {
+            if (this.validators == null)
+                return;
+            for (int i = 0; i < line.length && i < this.validators.length; i++)
+                if (this.validators[i] != null)
+                    this.validators[i].updateGuess(line[i]);
+        }
+
+        @Override
+        public ITable load() {
+            assert this.schema != null;
+            Reader reader = null;
+            try {
+                reader = this.open();
+                CsvParser parser = this.beginParsing(reader);
+                this.columns = this.schema.createAppendableColumns();
+                for (int i = 0; i < this.columns.length; i++)
+                    if (this.columns[i] instanceof DateListColumn)
+                        ((DateListColumn)this.columns[i]).setDateParser(this.dateParsers[i]);
+                while (true) {
+                    @Nullable
+                    String[] line = null;
+                    try {
+                        line = parser.parseNext();
+                    } catch (Exception ex) {
+                        this.error(ex.getMessage());
+                    }
+                    if (line == null)
+                        break;
+                    this.append(line);
+                    this.validate(line);
+                }
+                parser.stopParsing();
+                return new Table(this.columns, this.filename, null);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                this.close(reader);
+            }
+        }
+    }
+
+    /**
+     * Parse all chunks in parallel.
+     * @param validate  If true check that the values match the kinds in the schema.
+     * @return For each column the concatenated columns of all chunks, or null
+     *         if validation fails.
+     */
+    @Nullable
+    private List<IColumn> loadChunks(List<ChunkLoader> chunks, Schema schema, boolean validate) {
+        try {
+            DateParsing[] dateParsers = dateParsers(chunks, schema);
+            List<Future<ITable>> futures = new ArrayList<Future<ITable>>(chunks.size());
+            for (ChunkLoader c : chunks)
+                futures.add(loaderPool.submit(() -> c.load(schema, validate, dateParsers)));
+            List<ITable> tables = new ArrayList<ITable>(chunks.size());
+            for (Future<ITable> f : futures)
+                tables.add(f.get());
+            for (ChunkLoader c : chunks)
+                if (!c.isValid())
+                    return null;
+            List<IColumn> result = new ArrayList<IColumn>(schema.getColumnCount());
+            for (String name : schema.getColumnNames()) {
+                List<IColumn> parts = new ArrayList<IColumn>(tables.size());
+                for (ITable t : tables)
+                    parts.add(t.getLoadedColumn(name));
+                result.add(ConcatenatedColumn.create(parts));
+            }
+            return result;
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Guess the format of each date column from its first value in the file,
+     * as the sequential loader does; all chunks parse dates with this format.
+     * Otherwise each chunk would guess the format from its own first value.
+     * @return A parser for each column; null if the column does not contain dates
+     *         or no value is found in the first rows of the chunks.
+     */
+    private static DateParsing[] dateParsers(List<ChunkLoader> chunks, Schema schema) {
+        List<String> names = schema.getColumnNames();
+        DateParsing[] result = new DateParsing[names.size()];
+        boolean hasDates = false;
+        for (String name : names)
+            hasDates |= schema.getKind(name) == ContentsKind.Date;
+        if (!hasDates)
+            return result;
+        String[] values = new String[names.size()];
+        for (ChunkLoader c : chunks) {
+            c.firstValues(values);
+            boolean found = true;
+            for (int i = 0; i < values.length; i++)
+                if (schema.getKind(names.get(i)) == ContentsKind.Date && values[i] == null)
+                    found = false;
+            if (found)
+                break;
+        }
+        for (int i = 0; i < values.length; i++) {
+            if (schema.getKind(names.get(i)) != ContentsKind.Date || values[i] == null)
+                continue;
+            try {
+                result[i] = new DateParsing(values[i]);
+            } catch (RuntimeException ex) {
+                // Not a date; the chunks report the parsing errors.
+            }
+        }
+        return result;
+    }
+
+    private static Schema withKinds(Schema schema, ContentsKind[] kinds) {
+        Schema result = new Schema();
+        int index = 0;
+        for (String name : schema.getColumnNames())
+            result.append(new ColumnDescription(name, kinds[index++]));
+        return result;
+    }
+
+    @Override
+    public ITable load() {
+        HillviewLogger.instance.info("Reading file in parallel", "{0}", this.filename);
+        try (FileChannel channel = FileChannel.open(Paths.get(this.filename), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            byte quote = (byte)this.quote;
+            long dataStart = bomSize(this.filename);
+            Schema schema = this.fileSchema;
+            if (this.configuration.hasHeaderRow) {
+                long headerEnd = findRecordEnd(channel, dataStart, false, quote);
+                String[] header = new CsvParser(CsvFileLoader.createSettings(this.configuration, schema))
+                        .parseLine(readString(channel, dataStart, headerEnd));
+                if (header == null)
+                    throw new RuntimeException("Missing header row " + this.filename);
+                if (schema == null)
+                    schema = CsvFileLoader.createSchema(header);
+                dataStart = headerEnd;
+            }
+            if (schema == null) {
+                String[] firstLine = new CsvParser(CsvFileLoader.createSettings(this.configuration, null))
+                        .parseLine(readString(channel, dataStart,
+                                findRecordEnd(channel, dataStart, false, quote)));
+                if (firstLine == null)
+                    throw new RuntimeException("Cannot create schema from empty CSV file");
+                schema = new Schema();
+                for (int i = 0; i < firstLine.length; i++)
+                    schema.append(new ColumnDescription("Column " + i, ContentsKind.String));
+            }
+
+            // Split the data in ranges; count the quotes in each range in parallel.
+            int chunkCount = Utilities.toInt(Math.max(1,
+                    (fileSize - dataStart) / this.configuration.parallelChunkSize));
+            long[] starts = new long[chunkCount + 1];
+            for (int i = 0; i <= chunkCount; i++)
+                starts[i] = dataStart + (fileSize - dataStart) * i / chunkCount;
+            List<Future<Long>> counts = new ArrayList<Future<Long>>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                long start = starts[i];
+                long end = starts[i + 1];
+                counts.add(loaderPool.submit(() -> this.countQuotes(start, end)));
+            }
+            long quotes = this.countQuotes(0, dataStart);
+            List<ChunkLoader> chunks = new ArrayList<ChunkLoader>(chunkCount);
+            long chunkStart = dataStart;
+            for (int i = 1; i <= chunkCount; i++) {
+                quotes += counts.get(i - 1).get();
+                long end = i == chunkCount ? fileSize :
+                        findRecordEnd(channel, starts[i], (quotes & 1) != 0, quote);
+                if (end > chunkStart)
+                    chunks.add(new ChunkLoader(chunkStart, end));
+                chunkStart = end;
+            }
+            if (chunks.isEmpty())
+                chunks.add(new ChunkLoader(dataStart, fileSize));
+            HillviewLogger.instance.info("Parsing chunks", "{0}", chunks.size());
+
+            if (this.fileSchema != null)
+                return new Table(Converters.checkNull(this.loadChunks(chunks, schema, false)),
+                        this.filename, null);
+
+            List<String> names = schema.getColumnNames();
+            GuessSchema[] guesses = new GuessSchema[names.size()];
+            for (int i = 0; i < guesses.length; i++) {
+                guesses[i] = new GuessSchema();
+                guesses[i].setName(names.get(i));
+            }
+            for (ChunkLoader c : chunks)
+                c.sample(guesses);
+            ContentsKind[] kinds = new ContentsKind[guesses.length];
+            for (int i = 0; i < guesses.length; i++) {
+                kinds[i] = guesses[i].getColumnDesc().kind;
+                // Columns with no values in the sample are guessed from all rows.
+                if (kinds[i] == ContentsKind.None)
+                    kinds[i] = ContentsKind.String;
+            }
+            List<IColumn> columns = this.loadChunks(chunks, withKinds(schema, kinds), true);
+            if (columns == null) {
+                HillviewLogger.instance.info("Sampled schema does not match data", "{0}", this.filename);
+                for (int i = 0; i < kinds.length; i++) {
+                    kinds[i] = ContentsKind.String;
+                    guesses[i] = new GuessSchema();
+                    guesses[i].setName(names.get(i));
+                }
+                columns = Converters.checkNull(this.loadChunks(chunks, schema, false));
+            }
+
+            IMembershipSet ms = new FullMembershipSet(columns.get(0).sizeInRows());
+            for (int i = 0; i < columns.size(); i++) {
+                IColumn c = columns.get(i);
+                if (kinds[i] != ContentsKind.String ||
+                        guesses[i].getColumnDesc().kind == ContentsKind.String)
+                    continue;
+                GuessSchema.SchemaInfo info = new GuessSchema().guess((IStringColumn)c);
+                if (info.kind != ContentsKind.String &&
+                        info.kind != ContentsKind.None)  // all elements are null
+                    columns.set(i, c.convertKind(info.kind, c.getName(), ms));
+            }
+            return new Table(columns, this.filename, null);
+        } catch (IOException | InterruptedException ex) {
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+}
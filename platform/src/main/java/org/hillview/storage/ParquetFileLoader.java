@@ -20,34 +20,56 @@ package org.hillview.storage;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
 import org.apache.parquet.column.page.PageReadStore;
-import org.apache.parquet.example.data.Group;
+import org.apache.parquet.column.statistics.Statistics;
 import org.apache.parquet.example.data.simple.NanoTime;
-import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
 import org.apache.parquet.format.converter.ParquetMetadataConverter;
 import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
 import org.apache.parquet.hadoop.metadata.FileMetaData;
 import org.apache.parquet.hadoop.metadata.ParquetMetadata;
-import org.apache.parquet.io.ColumnIOFactory;
-import org.apache.parquet.io.MessageColumnIO;
-import org.apache.parquet.io.RecordReader;
 import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
 import org.apache.parquet.schema.MessageType;
-import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.PrimitiveType;
+import org.hillview.table.BlockStatistics;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.Table;
 import org.hillview.table.api.*;
 import org.hillview.table.columns.BaseListColumn;
+import org.hillview.utils.Converters;
+import org.hillview.utils.ExecutorUtils;
 import org.hillview.utils.Linq;
 import org.hillview.utils.Utilities;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+/**
+ * Loads Parquet files.  The data is decoded column by column, directly into
+ * the columns of the table.
+ */
 public class ParquetFileLoader extends TextFileLoader {
+    /**
+     * Threads used to decode columns in parallel.  These are not the compute
+     * threads, since columns are usually loaded from a computation.
+     */
+    private static final ExecutorService loaderPool = ExecutorUtils.newNamedThreadPool(
+            "parquet-loader", Runtime.getRuntime().availableProcessors(), -1);
     private final boolean lazy;
     private final Path path;
     private final Configuration configuration;
@@ -69,79 +91,145 @@ public class ParquetFileLoader extends TextFileLoader {
         }
     }
 
-    @SuppressWarnings("RedundantCast")
-    private static void appendGroup(
-            List<IAppendableColumn> cols, Group g, List<ColumnDescriptor> cds) {
-        int fieldCount = g.getType().getFieldCount();
-        for (int field = 0; field < fieldCount; field++) {
-            int valueCount = g.getFieldRepetitionCount(field);
-            IAppendableColumn col = cols.get(field);
-            if (valueCount == 0) {
-                col.appendMissing();
-                continue;
-            }
-            if (valueCount > 1)
-                throw new RuntimeException("Repeated values not supported");
+    /**
+     * Receives the values decoded by a Parquet column reader and appends them
+     * to a column.  Dictionary-encoded pages are decoded once per dictionary,
+     * so the values of a dictionary-encoded string column are shared.
+     */
+    private static class ValueConverter extends PrimitiveConverter {
+        private final IAppendableColumn column;
+        private final PrimitiveType.PrimitiveTypeName type;
+        /**
+         * Values of the current dictionary, decoded.
+         */
+        @Nullable
+        private Object[] dictionary;
 
-            Type fieldType = g.getType().getType(field);
-            if (!fieldType.isPrimitive())
-                throw new RuntimeException("Non-primitive field not supported");
-            switch (cds.get(field).getType()) {
-                case INT64: {
-                    long l = g.getLong(field, 0);
-                    col.append((double) l);
-                    break;
-                }
-                case FLOAT: {
-                    float f = g.getFloat(field, 0);
-                    col.append((double) f);
-                    break;
-                }
-                case DOUBLE: {
-                    double d = g.getDouble(field, 0);
-                    col.append(d);
-                    break;
-                }
-                case INT32: {
-                    int i = g.getInteger(field, 0);
-                    col.append(i);
-                    break;
-                }
-                case BOOLEAN: {
-                    boolean b = g.getBoolean(field, 0);
-                    col.append(b ? "true" : "false");
-                    break;
-                }
-                case BINARY: {
-                    Binary b = g.getBinary(field, 0);
-                    String s = b.toStringUsingUTF8();
-                    col.append(s);
-                    break;
+        ValueConverter(ColumnDescriptor cd, IAppendableColumn column) {
+            this.column = column;
+            this.type = cd.getType();
+            this.dictionary = null;
+        }
+
+        @Override
+        public boolean hasDictionarySupport() {
+            return this.type != PrimitiveType.PrimitiveTypeName.INT96;
+        }
+
+        @Override
+        public void setDictionary(Dictionary dictionary) {
+            Object[] values = new Object[dictionary.getMaxId() + 1];
+            for (int i = 0; i < values.length; i++) {
+                switch (this.type) {
+                    case INT64:
+                        values[i] = (double)dictionary.decodeToLong(i);
+                        break;
+                    case FLOAT:
+                        values[i] = (double)dictionary.decodeToFloat(i);
+                        break;
+                    case DOUBLE:
+                        values[i] = dictionary.decodeToDouble(i);
+                        break;
+                    case INT32:
+                        values[i] = dictionary.decodeToInt(i);
+                        break;
+                    case BOOLEAN:
+                        values[i] = dictionary.decodeToBoolean(i) ? "true" : "false";
+                        break;
+                    case BINARY:
+                    case FIXED_LEN_BYTE_ARRAY:
+                        values[i] = dictionary.decodeToBinary(i).toStringUsingUTF8();
+                        break;
+                    default:
+                        throw new RuntimeException("Unexpected dictionary for " + this.type);
                 }
-                case FIXED_LEN_BYTE_ARRAY: {
-                    String s = g.getString(field, 0);
-                    col.append(s);
+            }
+            this.dictionary = values;
+        }
+
+        @Override
+        public void addValueFromDictionary(int dictionaryId) {
+            Object value = Converters.checkNull(this.dictionary)[dictionaryId];
+            switch (this.type) {
+                case INT64:
+                case FLOAT:
+                case DOUBLE:
+                    this.column.append((double)value);
                     break;
-                }
-                case INT96: {
-                    // We are assuming that this is a Hive/Impala timestamp
-                    // from the drill ParquetReaderUtility.java file
-                    final long JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH = 2440588;
-                    Binary val = g.getInt96(field, 0);
-                    NanoTime nt = NanoTime.fromBinary(val);
-                    int julianDay = nt.getJulianDay();
-                    long nanosOfDay = nt.getTimeOfDayNanos();
-                    long epochSeconds = (julianDay - JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH) * 24 * 60 * 60;
-                    Instant inst = Instant.ofEpochSecond(epochSeconds, nanosOfDay);
-                    col.append(inst);
+                case INT32:
+                    this.column.append((int)value);
                     break;
-                }
                 default:
-                    throw new RuntimeException("Unexpected column kind " + cds.get(field).getType());
+                    this.column.append((String)value);
+                    break;
+            }
+        }
+
+        @Override
+        public void addLong(long value) {
+            this.column.append((double)value);
+        }
+
+        @Override
+        public void addFloat(float value) {
+            this.column.append((double)value);
+        }
+
+        @Override
+        public void addDouble(double value) {
+            this.column.append(value);
+        }
+
+        @Override
+        public void addInt(int value) {
+            this.column.append(value);
+        }
+
+        @Override
+        public void addBoolean(boolean value) {
+            this.column.append(value ? "true" : "false");
+        }
+
+        @Override
+        public void addBinary(Binary value) {
+            if (this.type == PrimitiveType.PrimitiveTypeName.INT96) {
+                // We are assuming that this is a Hive/Impala timestamp
+                // from the drill ParquetReaderUtility.java file
+                final long JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH = 2440588;
+                NanoTime nt = NanoTime.fromBinary(value);
+                int julianDay = nt.getJulianDay();
+                long nanosOfDay = nt.getTimeOfDayNanos();
+                long epochSeconds = (julianDay - JULIAN_DAY_NUMBER_FOR_UNIX_EPOCH) * 24 * 60 * 60;
+                Instant inst = Instant.ofEpochSecond(epochSeconds, nanosOfDay);
+                this.column.append(inst);
+            } else {
+                this.column.append(value.toStringUsingUTF8());
             }
         }
     }
 
+    /**
+     * The root converter for a schema that contains a single column.
+     */
+    private static class SingleColumnConverter extends GroupConverter {
+        private final PrimitiveConverter converter;
+
+        SingleColumnConverter(PrimitiveConverter converter) {
+            this.converter = converter;
+        }
+
+        @Override
+        public Converter getConverter(int fieldIndex) {
+            return this.converter;
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void end() {}
+    }
+
     private static ColumnDescription getColumnDescription(ColumnDescriptor cd) {
         String name = String.join("", cd.getPath());  // this should contain a single String
         ContentsKind kind;
@@ -168,62 +256,127 @@ public class ParquetFileLoader extends TextFileLoader {
         return new ColumnDescription(name, kind);
     }
 
-    private static List<IAppendableColumn> createColumns(ParquetMetadata md) {
-        MessageType schema = md.getFileMetaData().getSchema();
-        List<ColumnDescriptor> cols = schema.getColumns();
-        List<IAppendableColumn> result = new ArrayList<IAppendableColumn>(cols.size());
-
-        for (ColumnDescriptor cd : cols) {
-            ColumnDescription desc = getColumnDescription(cd);
-            result.add(BaseListColumn.create(desc));
-        }
-        return result;
-    }
-
     public class ParquetColumnLoader implements IColumnLoader {
         @Override
         public List<IColumn> loadColumns(List<String> names) {
-            FileMetaData fm = ParquetFileLoader.this.metadata.getFileMetaData();
-            MessageType schema = fm.getSchema();
-            List<Type> list = new ArrayList<Type>();
-            for (Type col : schema.getFields()) {
-                String colName = col.getName();
-                if (names.contains(colName))
-                    list.add(col);
+            List<ColumnDescriptor> cds = new ArrayList<ColumnDescriptor>();
+            for (ColumnDescriptor cd : ParquetFileLoader.this.metadata.getFileMetaData()
+                    .getSchema().getColumns()) {
+                if (names.contains(getColumnDescription(cd).name))
+                    cds.add(cd);
             }
-            assert list.size() > 0;
-            MessageType newSchema = new MessageType(schema.getName(), list);
-            FileMetaData nfm = new FileMetaData(
-                    newSchema, fm.getKeyValueMetaData(), fm.getCreatedBy());
-            List<BlockMetaData> blocks = ParquetFileLoader.this.metadata.getBlocks();
-            ParquetMetadata md = new ParquetMetadata(nfm, blocks);
-            return ParquetFileLoader.this.loadColumns(md);
+            assert cds.size() > 0;
+            return ParquetFileLoader.this.loadColumns(cds);
+        }
+
+        @Nullable
+        @Override
+        public List<BlockStatistics> getStatistics(String name) {
+            return ParquetFileLoader.this.getStatistics(name);
         }
     }
 
-    private List<IColumn> loadColumns(ParquetMetadata md) {
-        try {
-            MessageType schema = md.getFileMetaData().getSchema();
-            List<IAppendableColumn> cols = createColumns(md);
-            ParquetFileReader r = ParquetFileReader.open(this.configuration, this.path);
-            MessageColumnIO columnIO = new ColumnIOFactory().getColumnIO(schema);
+    /**
+     * Row group statistics of a column.  Only numeric columns are handled:
+     * older Parquet writers compare binary values as signed bytes, so the
+     * statistics of string columns cannot be trusted.
+     */
+    @Nullable
+    private List<BlockStatistics> getStatistics(String name) {
+        ColumnDescriptor cd = null;
+        for (ColumnDescriptor c : this.metadata.getFileMetaData().getSchema().getColumns()) {
+            if (getColumnDescription(c).name.equals(name))
+                cd = c;
+        }
+        if (cd == null || cd.getMaxRepetitionLevel() > 0)
+            return null;
+        switch (cd.getType()) {
+            case INT32:
+            case INT64:
+            case FLOAT:
+            case DOUBLE:
+                break;
+            default:
+                return null;
+        }
 
+        ColumnPath path = ColumnPath.get(cd.getPath());
+        List<BlockStatistics> result = new ArrayList<BlockStatistics>();
+        int firstRow = 0;
+        for (BlockMetaData block : this.metadata.getBlocks()) {
+            Statistics<?> stats = null;
+            for (ColumnChunkMetaData chunk : block.getColumns())
+                if (chunk.getPath().equals(path))
+                    stats = chunk.getStatistics();
+            if (stats == null || stats.isEmpty())
+                return null;
+            int rows = Utilities.toInt(block.getRowCount());
+            long present = rows - stats.getNumNulls();
+            double min = 0, max = 0;
+            if (present > 0) {
+                if (!stats.hasNonNullValue())
+                    return null;
+                min = ((Number)stats.genericGetMin()).doubleValue();
+                max = ((Number)stats.genericGetMax()).doubleValue();
+                if (Double.isNaN(min) || Double.isNaN(max))
+                    return null;
+            }
+            result.add(new BlockStatistics(firstRow, rows, present, min, max));
+            firstRow += rows;
+        }
+        return result;
+    }
+
+    /**
+     * Decodes a column chunk by chunk; only the pages of this column are read from the file.
+     */
+    private IColumn loadColumn(ColumnDescriptor cd) throws IOException {
+        if (cd.getPath().length != 1)
+            throw new RuntimeException("Non-primitive field not supported");
+        FileMetaData fm = this.metadata.getFileMetaData();
+        MessageType schema = new MessageType(
+                fm.getSchema().getName(), fm.getSchema().getType(cd.getPath()[0]));
+        IAppendableColumn col = BaseListColumn.create(getColumnDescription(cd));
+        GroupConverter converter = new SingleColumnConverter(new ValueConverter(cd, col));
+        int maxDefinitionLevel = cd.getMaxDefinitionLevel();
+        try (ParquetFileReader r = ParquetFileReader.open(this.configuration, this.path, this.metadata)) {
+            r.setRequestedSchema(schema);
             PageReadStore pages;
             while (null != (pages = r.readNextRowGroup())) {
-                final long rows = pages.getRowCount();
-                RecordReader<Group> recordReader = columnIO.getRecordReader(
-                        pages, new GroupRecordConverter(schema));
-                for (int i = 0; i < rows; i++) {
-                    Group g = recordReader.read();
-                    appendGroup(cols, g, md.getFileMetaData().getSchema().getColumns());
+                ColumnReader reader = new ColumnReadStoreImpl(
+                        pages, converter, schema, fm.getCreatedBy()).getColumnReader(cd);
+                long values = reader.getTotalValueCount();
+                for (long i = 0; i < values; i++) {
+                    if (reader.getCurrentRepetitionLevel() > 0)
+                        throw new RuntimeException("Repeated values not supported");
+                    if (reader.getCurrentDefinitionLevel() < maxDefinitionLevel)
+                        col.appendMissing();
+                    else
+                        reader.writeCurrentValueToConverter();
+                    reader.consume();
                 }
             }
+        }
+        return col.seal();
+    }
 
-            for (IAppendableColumn c : cols)
-                c.seal();
-            r.close();
-            return Linq.map(cols, e -> e);
-        } catch (IOException ex) {
+    /**
+     * Loads the specified columns; each column is loaded by a separate thread.
+     */
+    private List<IColumn> loadColumns(List<ColumnDescriptor> cds) {
+        try {
+            if (cds.size() == 1)
+                return Collections.singletonList(this.loadColumn(cds.get(0)));
+            List<Future<IColumn>> futures = new ArrayList<Future<IColumn>>(cds.size());
+            for (ColumnDescriptor cd : cds)
+                futures.add(loaderPool.submit(() -> this.loadColumn(cd)));
+            List<IColumn> result = new ArrayList<IColumn>(cds.size());
+            for (Future<IColumn> f : futures)
+                result.add(f.get());
+            return result;
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        } catch (IOException | InterruptedException ex) {
             throw new RuntimeException(ex);
         }
     }
@@ -248,7 +401,7 @@ public class ParquetFileLoader extends TextFileLoader {
             this.close(null);
             return result;
         } else {
-            List<IColumn> cols = this.loadColumns(md);
+            List<IColumn> cols = this.loadColumns(md.getFileMetaData().getSchema().getColumns());
             this.close(null);
             return new Table(cols, this.filename, null);
         }
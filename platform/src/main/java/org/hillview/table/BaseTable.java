@@ -49,10 +49,11 @@ public abstract class BaseTable implements ITable, Serializable {
 
     <C extends IColumn> BaseTable(List<C> columns) {
         BaseTable.columnSize(columns);  // validate column sizes
-        sealColumns(columns);
         this.columns = new HashMap<String, IColumn>();
-        for (final IColumn c : columns)
-            this.columns.put(c.getName(), c);
+        for (final IColumn c : columns) {
+            IColumn sealed = seal(c);
+            this.columns.put(sealed.getName(), sealed);
+        }
     }
 
     /**
@@ -194,13 +195,15 @@ public abstract class BaseTable implements ITable, Serializable {
         return this.replace(result);
     }
 
-    private static <C extends IColumn> void sealColumns(List<C> columns) {
-        for (C c: columns) {
-            if (c instanceof IMutableColumn) {
-                ((IMutableColumn)c).seal();
-            } else if (c instanceof IAppendableColumn) {
-                ((IAppendableColumn)c).seal();
-            }
-        }
+    /**
+     * Seal a column if it is mutable.
+     * @return  The sealed column, which may store its data differently.
+     */
+    private static IColumn seal(IColumn c) {
+        if (c instanceof IMutableColumn)
+            return ((IMutableColumn)c).seal();
+        else if (c instanceof IAppendableColumn)
+            return ((IAppendableColumn)c).seal();
+        return c;
     }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table;
+
+import javax.annotation.Nullable;
+
+/**
+ * Statistics of the values of a column in a block of consecutive rows, as
+ * stored in the file that the column is loaded from (e.g., an ORC stripe or
+ * a Parquet row group).  Filters can use them to decide the result for all
+ * rows of a block without loading the column.
+ */
+public class BlockStatistics {
+    /**
+     * Index of the first row in the block.
+     */
+    public final int firstRow;
+    public final int rowCount;
+    /**
+     * Number of rows that do not have a missing value.
+     */
+    public final long presentCount;
+    /**
+     * Range of the present values, as returned by IColumn.asDouble.
+     * Only used for columns that do not hold strings.
+     */
+    public final double min;
+    public final double max;
+    /**
+     * Range of the present values for string columns.
+     */
+    @Nullable
+    public final String minString;
+    @Nullable
+    public final String maxString;
+
+    public BlockStatistics(int firstRow, int rowCount, long presentCount,
+                           double min, double max) {
+        this.firstRow = firstRow;
+        this.rowCount = rowCount;
+        this.presentCount = presentCount;
+        this.min = min;
+        this.max = max;
+        this.minString = null;
+        this.maxString = null;
+    }
+
+    public BlockStatistics(int firstRow, int rowCount, long presentCount,
+                           @Nullable String minString, @Nullable String maxString) {
+        this.firstRow = firstRow;
+        this.rowCount = rowCount;
+        this.presentCount = presentCount;
+        this.min = 0;
+        this.max = 0;
+        this.minString = minString;
+        this.maxString = maxString;
+    }
+
+    /**
+     * True if no value in the block is missing.
+     */
+    public boolean isComplete() {
+        return this.presentCount == this.rowCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Block[" + this.firstRow + "+" + this.rowCount + "]";
+    }
+}
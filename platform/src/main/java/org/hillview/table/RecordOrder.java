@@ -26,7 +26,6 @@ import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.ITable;
 import org.hillview.table.api.IndexComparator;
 import org.hillview.table.rows.RowSnapshot;
-import org.hillview.table.rows.VirtualRowSnapshot;
 import org.hillview.utils.Converters;
 import org.hillview.utils.Linq;
 
@@ -87,6 +86,20 @@ public class RecordOrder implements Serializable {
         return this.sortOrientationList.get(index);
     }
 
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if ((o == null) || (getClass() != o.getClass())) return false;
+
+        final RecordOrder that = (RecordOrder) o;
+        return this.sortOrientationList.equals(that.sortOrientationList);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.sortOrientationList.hashCode();
+    }
+
     /**
      * Returns an IndexComparator for rows in a Table, based on the sort order.
      * The table and the RecordOrder need to be compatible.
@@ -117,14 +130,20 @@ public class RecordOrder implements Serializable {
     /**
      * Considers only the rows in the table given by the membership set.
      * Returns an array containing rows indices of a Table in sorted order,
-     * using the getIndexComparator method above. The table and the RecordOrder need to be compatible.
+     * comparing the sort keys of the rows. The table and the RecordOrder need to be compatible.
      * Should only be applied to very small membership sets.
      * @param table The Table we wish to sort.
      * @param set   Membership set of the table containing the rows to consider.
      */
     public int[] getSortedRowOrder(final ITable table, IMembershipSet set) {
-        int[] order = set.getRows();
-        IntArrays.quickSort(order, this.getIndexComparator(table));
+        int[] rows = set.getRows();
+        SortKeys keys = SortKeys.extract(table, this, rows, rows.length);
+        int[] order = new int[rows.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        IntArrays.quickSort(order, keys.getComparator());
+        for (int i = 0; i < order.length; i++)
+            order[i] = rows[order[i]];
         return order;
     }
 
@@ -148,12 +167,9 @@ public class RecordOrder implements Serializable {
         final boolean[] mergeLeft = new boolean[length];
         int i = 0, j = 0, k = 0;
 
-        VirtualRowSnapshot vrsLeft = new VirtualRowSnapshot(left, left.schema);
-        VirtualRowSnapshot vrsRight = new VirtualRowSnapshot(right, right.schema);
+        SortKeys[] keys = SortKeys.extract(this, left, right);
         while ((i < leftLength) && (j < rightLength)) {
-            vrsLeft.setRow(i);
-            vrsRight.setRow(j);
-            int outcome = vrsLeft.compareTo(vrsRight, this);
+            int outcome = keys[0].compare(i, keys[1], j);
             if (outcome < 0) {
                 mergeLeft[k] = true;
                 i++;
@@ -201,12 +217,9 @@ public class RecordOrder implements Serializable {
         final int rightLength = right.getNumOfRows();
         final IntList merge = new IntArrayList();
         int i = 0, j = 0;
-        VirtualRowSnapshot vrsLeft = new VirtualRowSnapshot(left, left.schema);
-        VirtualRowSnapshot vrsRight = new VirtualRowSnapshot(right, right.schema);
+        SortKeys[] keys = SortKeys.extract(this, left, right);
         while ((i < leftLength) && (j < rightLength)) {
-            vrsLeft.setRow(i);
-            vrsRight.setRow(j);
-            int outcome = vrsLeft.compareTo(vrsRight, this);
+            int outcome = keys[0].compare(i, keys[1], j);
             if (outcome < 0) {
                 merge.add(outcome);
                 i++;
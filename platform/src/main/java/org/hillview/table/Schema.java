@@ -55,6 +55,11 @@ public final class Schema implements IJson {
     private List<ColumnDescription> cachedDescriptions;
     @Nullable
     private String sourceFile;
+    /**
+     * Maps each column name to its position; computed when first needed.
+     */
+    @Nullable
+    private transient volatile HashMap<String, Integer> columnIndexes;
 
     /**
      * Canonical name for schema files.  Most useful when there is only one
@@ -212,6 +217,30 @@ public final class Schema implements IJson {
         return this.cachedDescriptions;
     }
 
+    /**
+     * The position of a column in the schema.
+     * @param columnName  Name of the column.
+     * @return  The index of the column, or -1 if there is no such column.
+     */
+    public int getColumnIndex(String columnName) {
+        HashMap<String, Integer> indexes = this.columnIndexes;
+        if (indexes == null)
+            indexes = this.computeColumnIndexes();
+        Integer result = indexes.get(columnName);
+        return result == null ? -1 : result;
+    }
+
+    private synchronized HashMap<String, Integer> computeColumnIndexes() {
+        if (this.columnIndexes != null)
+            return this.columnIndexes;
+        List<String> names = this.getColumnNames();
+        HashMap<String, Integer> indexes = new HashMap<String, Integer>(names.size());
+        for (int i = 0; i < names.size(); i++)
+            indexes.put(names.get(i), i);
+        this.columnIndexes = indexes;
+        return indexes;
+    }
+
     public boolean containsColumnName(String columnName) {
         return columns.containsKey(columnName);
     }
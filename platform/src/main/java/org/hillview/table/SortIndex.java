@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.ints.IntHeapPriorityQueue;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.table.api.IndexComparator;
+import org.hillview.table.columns.ColumnStorage;
+import org.hillview.table.rows.RowSnapshot;
+import org.hillview.table.rows.VirtualRowSnapshot;
+import org.hillview.utils.ExecutorUtils;
+import org.hillview.utils.HillviewLogger;
+
+import javax.annotation.Nullable;
+import java.nio.IntBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * A permutation of the rows of a table sorted according to a RecordOrder.
+ * Sketches that page through sorted data use it to reach a given position in
+ * logarithmic time instead of scanning the whole table on each request.
+ * Sorting costs much more than a scan, so the index is only built once a table
+ * has been requested in the same order several times, and it is built in the
+ * background: requests keep scanning the table until the index is ready.
+ * The index is cached as long as the table is alive.  Rows that are equal
+ * according to the order are adjacent.
+ * Large indexes are built with an external merge sort and are stored in
+ * memory-mapped spill files, so they do not use heap memory.
+ */
+public final class SortIndex {
+    /**
+     * Tables with fewer rows are scanned instead of being indexed.
+     */
+    public static final int minimumRows = 10000;
+    /**
+     * Number of rows sorted in memory at once; larger tables are sorted in
+     * runs of this size which are then merged.
+     */
+    static final int chunkRows = 1 << 22;
+    /**
+     * Maximum number of indexes kept for each table.
+     */
+    private static final int maxOrdersPerTable = 4;
+    /**
+     * The index of a table for an order is built after this many requests.
+     */
+    static final int buildAfterRequests = 2;
+
+    /**
+     * Builds the indexes with a low priority, so they do not slow down other computations.
+     */
+    private static final ExecutorService builder = ExecutorUtils.newNamedThreadPool(
+            "sort-index", 1, Thread.MIN_PRIORITY);
+
+    /**
+     * Indexes of each table.  Tables are compared by identity and only weakly referenced,
+     * so the indexes are discarded when the table is no longer used.  The indexes must
+     * not refer to their table.
+     */
+    private static final Cache<ITable, Cache<RecordOrder, Entry>> indexes =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * The requests for a table in one order, and its index once it is being built.
+     * Guarded by itself.
+     */
+    private static final class Entry {
+        int requests;
+        @Nullable
+        Future<SortIndex> index;
+    }
+
+    /**
+     * Rows of the table in sorted order.
+     */
+    private final IntBuffer rows;
+    /**
+     * If true the rows are traversed from the end; this is the index of the reversed order.
+     */
+    private final boolean reversed;
+
+    private SortIndex(IntBuffer rows, boolean reversed) {
+        this.rows = rows;
+        this.reversed = reversed;
+    }
+
+    /**
+     * Get the index of a table for the specified order if it has been built.
+     * If the index for the reverse order exists it is used instead.  Once a table
+     * has been requested buildAfterRequests times in an order its index is built
+     * in the background.
+     * @return  The index, or null if it is not ready or the table is too small
+     *          to be worth indexing; the caller should scan the table.
+     */
+    @Nullable
+    public static SortIndex get(ITable table, RecordOrder order) {
+        if (table.getNumOfRows() < minimumRows || order.getSize() == 0)
+            return null;
+        try {
+            Cache<RecordOrder, Entry> tableIndexes = indexes.get(table,
+                    () -> CacheBuilder.newBuilder().maximumSize(maxOrdersPerTable).build());
+            SortIndex reverse = ready(tableIndexes.getIfPresent(order.reverse()));
+            if (reverse != null)
+                return reverse.reverse();
+            Entry entry = tableIndexes.get(order, Entry::new);
+            synchronized (entry) {
+                SortIndex index = ready(entry);
+                if (index != null)
+                    return index;
+                entry.requests++;
+                if (entry.index == null && entry.requests >= buildAfterRequests)
+                    entry.index = builder.submit(() -> build(table, order));
+            }
+            return null;
+        } catch (ExecutionException ex) {
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    private static SortIndex build(ITable table, RecordOrder order) {
+        try {
+            HillviewLogger.instance.info("Building sort index", "{0} rows", table.getNumOfRows());
+            return create(table, order, chunkRows);
+        } catch (Throwable ex) {
+            HillviewLogger.instance.error("Could not build sort index", ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * The index of an entry if it has been built.
+     */
+    @Nullable
+    private static SortIndex ready(@Nullable Entry entry) {
+        if (entry == null)
+            return null;
+        Future<SortIndex> index;
+        synchronized (entry) {
+            index = entry.index;
+        }
+        if (index == null || !index.isDone())
+            return null;
+        try {
+            return index.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            // The failure was logged when building.
+            return null;
+        }
+    }
+
+    /**
+     * Sort the rows of a table.
+     * @param table      Table to sort.
+     * @param order      Sort order.
+     * @param chunkRows  Number of rows sorted in memory at once.  If the table
+     *                   has more rows an external merge sort is used.
+     */
+    public static SortIndex create(ITable table, RecordOrder order, int chunkRows) {
+        int size = table.getNumOfRows();
+        IRowIterator it = table.getRowIterator();
+        if (size <= chunkRows) {
+            int[] rows = new int[size];
+            for (int i = 0; i < size; i++)
+                rows[i] = it.getNextRow();
+            sort(table, order, rows, size);
+            return new SortIndex(IntBuffer.wrap(rows), false);
+        }
+
+        HillviewLogger.instance.info("Building external sort index", "{0} rows", size);
+        int runCount = (size + chunkRows - 1) / chunkRows;
+        IntBuffer[] runs = new IntBuffer[runCount];
+        int[] chunk = new int[chunkRows];
+        for (int r = 0; r < runCount; r++) {
+            int length = Math.min(chunkRows, size - r * chunkRows);
+            for (int i = 0; i < length; i++)
+                chunk[i] = it.getNextRow();
+            sort(table, order, chunk, length);
+            runs[r] = spill(length);
+            runs[r].put(chunk, 0, length);
+            runs[r].flip();
+        }
+
+        // Merge the sorted runs; the queue holds the indexes of the runs,
+        // compared by their first remaining row.  The sort keys of different
+        // runs are not comparable, so the merge compares the column values.
+        IndexComparator comparator = order.getIndexComparator(table);
+        IntBuffer result = spill(size);
+        int[] heads = new int[runCount];
+        IntHeapPriorityQueue queue = new IntHeapPriorityQueue(
+                runCount, (a, b) -> comparator.compare(heads[a], heads[b]));
+        for (int r = 0; r < runCount; r++) {
+            heads[r] = runs[r].get();
+            queue.enqueue(r);
+        }
+        while (!queue.isEmpty()) {
+            int r = queue.dequeueInt();
+            result.put(heads[r]);
+            if (runs[r].hasRemaining()) {
+                heads[r] = runs[r].get();
+                queue.enqueue(r);
+            }
+        }
+        result.flip();
+        return new SortIndex(result, false);
+    }
+
+    /**
+     * Sort a set of rows of a table using their sort keys.
+     * @param rows   Rows to sort.
+     * @param count  Only the first count rows are sorted.
+     */
+    private static void sort(ITable table, RecordOrder order, int[] rows, int count) {
+        SortKeys keys = SortKeys.extract(table, order, rows, count);
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++)
+            positions[i] = i;
+        IntArrays.quickSort(positions, keys.getComparator());
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++)
+            sorted[i] = rows[positions[i]];
+        System.arraycopy(sorted, 0, rows, 0, count);
+    }
+
+    private static IntBuffer spill(int rows) {
+        return ColumnStorage.allocate((long)rows * Integer.BYTES, ColumnStorage.Tier.Mapped)
+                .asIntBuffer();
+    }
+
+    /**
+     * The index for the reverse order.
+     */
+    public SortIndex reverse() {
+        return new SortIndex(this.rows, !this.reversed);
+    }
+
+    /**
+     * Number of rows in the index.
+     */
+    public int size() {
+        return this.rows.limit();
+    }
+
+    /**
+     * The row at the specified position in sorted order.
+     */
+    public int getRow(int position) {
+        if (this.reversed)
+            position = this.rows.limit() - 1 - position;
+        return this.rows.get(position);
+    }
+
+    /**
+     * Find by binary search the first position whose row is after the specified row.
+     * @param table   Table that was indexed.
+     * @param order   Order of this index.
+     * @param row     Row to look for.
+     * @param strict  If true, find the first row strictly greater than row, else
+     *                the first row greater or equal to it.
+     * @return        A position in the index; if all rows are smaller the size of the index.
+     */
+    public int lowerBound(ITable table, RecordOrder order, RowSnapshot row, boolean strict) {
+        VirtualRowSnapshot vw = new VirtualRowSnapshot(table, order.toSchema());
+        int low = 0;
+        int high = this.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            vw.setRow(this.getRow(mid));
+            int c = row.compareTo(vw, order);
+            if (c > 0 || (strict && c == 0))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Find the end of the sequence of rows equal to the row at a given position.
+     * Uses an exponential search, so the cost is logarithmic in the length of the sequence.
+     * @param comparator  Comparator for the rows of the table in the order of this index.
+     * @param position    A position in the index.
+     * @return            The first position after position whose row is different.
+     */
+    public int endOfRun(IndexComparator comparator, int position) {
+        int row = this.getRow(position);
+        int size = this.size();
+        int low = position + 1;  // first position not known to be equal
+        int step = 1;
+        int high = low;
+        while (high < size && comparator.compare(row, this.getRow(high)) == 0) {
+            low = high + 1;
+            high += step;
+            step *= 2;
+        }
+        high = Math.min(high, size);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(row, this.getRow(mid)) == 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+}
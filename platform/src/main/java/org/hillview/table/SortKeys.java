@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.hillview.sketches.results.ColumnSortOrientation;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ITable;
+import org.hillview.table.api.IndexComparator;
+import org.hillview.utils.Converters;
+import org.hillview.utils.Linq;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Normalized sort keys of a set of rows for a RecordOrder.  The value of each sort
+ * column is extracted once into a long, such that comparing the keys of two rows
+ * is the same as comparing their values: integers are used unchanged, doubles, dates
+ * and durations are mapped to longs with the same order, and strings are replaced by
+ * their rank among the values of the column.  Missing values are the largest keys.
+ * Comparisons then only read primitive arrays, which is much cheaper than reading
+ * the columns for data that is compared many times, e.g., when sorting.
+ */
+public final class SortKeys {
+    /**
+     * Key of missing values.  No other value has this key.
+     */
+    private static final long MISSING = Long.MAX_VALUE;
+
+    /**
+     * The keys of all sort columns, stored row by row, so that comparing two rows
+     * reads adjacent memory: the key of column c at index i is at i * columns + c.
+     */
+    private final long[] keys;
+    private final boolean[] ascending;
+    private final int columns;
+
+    private SortKeys(long[] keys, boolean[] ascending) {
+        this.keys = keys;
+        this.ascending = ascending;
+        this.columns = ascending.length;
+    }
+
+    private static boolean[] getAscending(RecordOrder order) {
+        boolean[] result = new boolean[order.getSize()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = order.getOrientation(i).isAscending;
+        return result;
+    }
+
+    private static List<IColumn> getColumns(ITable table, RecordOrder order) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < order.getSize(); i++)
+            names.add(order.getOrientation(i).columnDescription.name);
+        return table.getLoadedColumns(names);
+    }
+
+    private static int[] getRows(ITable table) {
+        int[] rows = new int[table.getNumOfRows()];
+        IRowIterator it = table.getRowIterator();
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = it.getNextRow();
+        return rows;
+    }
+
+    /**
+     * Extract the keys of all rows of a table.  The keys are indexed by row number.
+     */
+    public static SortKeys extract(ITable table, RecordOrder order) {
+        int[] rows = getRows(table);
+        return extract(table, order, rows, rows.length,
+                table.getMembershipSet().getMax(), true);
+    }
+
+    /**
+     * Extract the keys of some rows of a table.  The keys are indexed by the position of
+     * the row in the rows array, not by the row number.
+     * @param rows   Rows whose keys are extracted.
+     * @param count  Only the first count rows are used.
+     */
+    public static SortKeys extract(ITable table, RecordOrder order, int[] rows, int count) {
+        return extract(table, order, rows, count, count, false);
+    }
+
+    private static SortKeys extract(ITable table, RecordOrder order, int[] rows, int count,
+                                    int size, boolean byRow) {
+        List<IColumn> columns = getColumns(table, order);
+        long[] keys = new long[size * columns.size()];
+        for (int c = 0; c < columns.size(); c++) {
+            IColumn column = Converters.checkNull(columns.get(c));
+            Object2IntOpenHashMap<String> ranks = null;
+            if (isString(column) && !isDictionaryEncoded(column))
+                ranks = rankStrings(Arrays.asList(column), Arrays.asList(rows), count);
+            extractColumn(column, rows, count, byRow, ranks, keys, c, columns.size());
+        }
+        return new SortKeys(keys, getAscending(order));
+    }
+
+    /**
+     * Extract the keys of all rows of several tables, such that the keys of rows in
+     * different tables can be compared.  This is used to merge small sorted tables.
+     * The keys of each table are indexed by row number.
+     */
+    public static SortKeys[] extract(RecordOrder order, ITable... tables) {
+        boolean[] ascending = getAscending(order);
+        List<int[]> rows = Linq.map(Arrays.asList(tables), SortKeys::getRows);
+        List<List<IColumn>> columns = Linq.map(Arrays.asList(tables), t -> getColumns(t, order));
+        long[][] keys = new long[tables.length][];
+        for (int t = 0; t < tables.length; t++)
+            keys[t] = new long[tables[t].getMembershipSet().getMax() * order.getSize()];
+        for (int c = 0; c < order.getSize(); c++) {
+            final int index = c;
+            List<IColumn> toRank = Linq.map(columns, l -> l.get(index));
+            Object2IntOpenHashMap<String> ranks = null;
+            if (isString(toRank.get(0)))
+                // The dictionaries of different columns are not comparable.
+                ranks = rankStrings(toRank, rows, -1);
+            for (int t = 0; t < tables.length; t++) {
+                int[] tableRows = rows.get(t);
+                extractColumn(Converters.checkNull(toRank.get(t)), tableRows, tableRows.length,
+                        true, ranks, keys[t], c, order.getSize());
+            }
+        }
+        SortKeys[] result = new SortKeys[tables.length];
+        for (int t = 0; t < tables.length; t++)
+            result[t] = new SortKeys(keys[t], ascending);
+        return result;
+    }
+
+    private static boolean isString(IColumn column) {
+        switch (column.getKind()) {
+            case String:
+            case Json:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isDictionaryEncoded(IColumn column) {
+        return column instanceof IDictionaryColumn &&
+                ((IDictionaryColumn)column).isDictionaryEncoded();
+    }
+
+    /**
+     * Compute the rank of each distinct string that appears in some columns.
+     * @param columns  Columns to scan.
+     * @param rows     For each column the rows to scan.
+     * @param count    Number of rows to scan in each column; if negative all rows.
+     */
+    private static Object2IntOpenHashMap<String> rankStrings(
+            List<IColumn> columns, List<int[]> rows, int count) {
+        Object2IntOpenHashMap<String> ranks = new Object2IntOpenHashMap<String>();
+        for (int c = 0; c < columns.size(); c++) {
+            IColumn column = columns.get(c);
+            int[] r = rows.get(c);
+            int n = count < 0 ? r.length : count;
+            for (int i = 0; i < n; i++) {
+                String s = column.getString(r[i]);
+                if (s != null)
+                    ranks.put(s, 0);
+            }
+        }
+        String[] distinct = ranks.keySet().toArray(new String[0]);
+        Arrays.sort(distinct);
+        for (int i = 0; i < distinct.length; i++)
+            ranks.put(distinct[i], i);
+        return ranks;
+    }
+
+    /**
+     * Converts a double into a long with the same order as Double.compare.
+     */
+    private static long doubleKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        // Negative numbers are ordered in reverse when their bits are compared.
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Extract the keys of a column.
+     * @param ranks   For string columns that are not dictionary-encoded the
+     *                rank of each string value.
+     * @param byRow   If true the keys are indexed by row, otherwise by position in rows.
+     * @param result  Array where the keys are written.
+     * @param offset  Index of the column in the order.
+     * @param stride  Number of columns in the order.
+     */
+    private static void extractColumn(IColumn column, int[] rows, int count, boolean byRow,
+                                      @Nullable Object2IntOpenHashMap<String> ranks,
+                                      long[] result, int offset, int stride) {
+        int[] codeRanks = null;
+        if (ranks == null && isString(column))
+            codeRanks = ((IDictionaryColumn)column).getCodeRanks();
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            int index = (byRow ? row : i) * stride + offset;
+            if (column.isMissing(row)) {
+                result[index] = MISSING;
+                continue;
+            }
+            switch (column.getKind()) {
+                case Integer:
+                    result[index] = column.getInt(row);
+                    break;
+                case Double:
+                    result[index] = doubleKey(column.getDouble(row));
+                    break;
+                case Date:
+                case Duration:
+                    // Dates and durations are compared with a precision of a millisecond.
+                    result[index] = doubleKey(column.asDouble(row));
+                    break;
+                case String:
+                case Json:
+                    if (codeRanks != null) {
+                        int rank = codeRanks[((IDictionaryColumn)column).getCode(row)];
+                        // The rank of null is Integer.MAX_VALUE
+                        result[index] = rank == Integer.MAX_VALUE ? MISSING : rank;
+                    } else {
+                        String value = column.getString(row);
+                        result[index] = value == null ? MISSING :
+                                Converters.checkNull(ranks).getInt(value);
+                    }
+                    break;
+                default:
+                    throw new RuntimeException("Cannot sort column of kind " + column.getKind());
+            }
+        }
+    }
+
+    /**
+     * Compare the keys at two indexes.
+     */
+    public int compare(int i, int j) {
+        return this.compare(i, this, j);
+    }
+
+    /**
+     * Compare a key of this set with a key of another set, extracted together with this one.
+     */
+    public int compare(int i, SortKeys other, int j) {
+        int left = i * this.columns;
+        int right = j * this.columns;
+        for (int c = 0; c < this.columns; c++) {
+            int result = Long.compare(this.keys[left + c], other.keys[right + c]);
+            if (result != 0)
+                return this.ascending[c] ? result : -result;
+        }
+        return 0;
+    }
+
+    /**
+     * A comparator for the indexes of the keys.
+     */
+    public IndexComparator getComparator() {
+        return new IndexComparator() {
+            @Override
+            public int compare(final int i, final int j) {
+                return SortKeys.this.compare(i, j);
+            }
+        };
+    }
+}
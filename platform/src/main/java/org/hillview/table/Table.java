@@ -25,6 +25,7 @@ import org.hillview.utils.Linq;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -152,6 +153,10 @@ public class Table extends BaseTable {
                 this.sourceFile, this.columnLoader);
     }
 
+    /**
+     * Lazy columns stay in the table after they are loaded, so that the
+     * ColumnCache can unload them; the result contains their data.
+     */
     @Override
     synchronized public List<IColumn> getLoadedColumns(List<String> columns) {
         List<String> toLoad = new ArrayList<String>();
@@ -163,22 +168,50 @@ public class Table extends BaseTable {
             if (!col.isLoaded())
                 toLoad.add(name);
         }
+        HashMap<String, IColumn> loaded = new HashMap<String, IColumn>();
         if (!toLoad.isEmpty()) {
             if (this.columnLoader == null)
                 throw new RuntimeException("Cannot load columns dynamically");
             List<IColumn> cols = this.columnLoader.loadColumns(toLoad);
-            for (IColumn c: cols)
-                this.columns.put(c.getName(), c);
+            for (IColumn c: cols) {
+                IColumn existing = this.columns.get(c.getName());
+                if (existing instanceof LazyColumn) {
+                    // The loader may have filled the column already; this
+                    // happens when it is shared with the table that we come from.
+                    if (!existing.isLoaded())
+                        ((LazyColumn)existing).setData(c);
+                } else {
+                    this.columns.put(c.getName(), c);
+                }
+                loaded.put(c.getName(), c);
+            }
         }
         for (String name : columns) {
-            IColumn col = this.columns.get(name);
+            IColumn col = loaded.get(name);
+            if (col == null)
+                col = this.columns.get(name);
             if (col == null)
                 throw new RuntimeException("Cannot get column " + name);
+            if (col instanceof LazyColumn)
+                col = ((LazyColumn)col).getData();
             result.add(col);
         }
         return result;
     }
 
+    /**
+     * Only lazy columns have statistics, since the data of other
+     * columns may not be the data in the file.
+     */
+    @Nullable
+    @Override
+    public List<BlockStatistics> getColumnStatistics(String column) {
+        IColumn col = this.columns.get(column);
+        if (col instanceof LazyColumn)
+            return ((LazyColumn)col).getStatistics();
+        return null;
+    }
+
     @Nullable
     @Override
     public String getSourceFile() {
@@ -215,6 +248,19 @@ public class Table extends BaseTable {
         return new Table(this.getColumns(), set, this.sourceFile, this.columnLoader);
     }
 
+    /**
+     * The resulting tables load their lazy columns through this table,
+     * so each column is loaded only once even if the parts are used concurrently.
+     */
+    @Override
+    public List<ITable> splitRows(int parts) {
+        IColumnLoader loader = this.columnLoader == null ? null : this::getLoadedColumns;
+        List<ITable> result = new ArrayList<ITable>(parts);
+        for (IMembershipSet set : this.members.splitRanges(parts))
+            result.add(new Table(this.getColumns(), set, this.sourceFile, loader));
+        return result;
+    }
+
     /**
      * Generates a table that contains all the columns, and only
      * the rows contained in IMembership Set members with consecutive numbering.
@@ -20,6 +20,7 @@ package org.hillview.table.api;
 import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.*;
 import org.hillview.table.columns.*;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.utils.HillviewLogger;
 
 import javax.annotation.Nullable;
@@ -98,6 +99,35 @@ public interface IColumn extends Serializable {
      */
     double asDouble(int rowIndex);
 
+    /**
+     * Batch version of asDouble, which reads the values of a block of rows at once.
+     * Implementations can avoid several virtual calls per row.
+     * @param rows     Indexes of the rows to read.
+     * @param count    Number of rows to read from the rows array.
+     * @param values   Receives the values of the rows; the values of missing rows are unspecified.
+     * @param missing  Receives true for each row that is missing.
+     */
+    default void asDoubles(final int[] rows, final int count,
+                           final double[] values, final boolean[] missing) {
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            missing[i] = this.isMissing(row);
+            if (!missing[i])
+                values[i] = this.asDouble(row);
+        }
+    }
+
+    /**
+     * Batch version of getString, which reads the values of a block of rows at once.
+     * @param rows     Indexes of the rows to read.
+     * @param count    Number of rows to read from the rows array.
+     * @param values   Receives the values of the rows; null for missing rows.
+     */
+    default void getStrings(final int[] rows, final int count, final String[] values) {
+        for (int i = 0; i < count; i++)
+            values[i] = this.getString(rows[i]);
+    }
+
     // Returns null only if the object is missing.
     @Nullable
     String asString(int rowIndex);
@@ -198,5 +228,20 @@ public interface IColumn extends Serializable {
      */
     long hashCode64(int rowIndex, LongHashFunction hash);
 
+    /**
+     * Batch version of hashCode64 for the rows of a batch.
+     * @param batch   Rows to hash; batch.missing receives true for each row that is missing.
+     * @param hash    Hash function.
+     * @param hashes  Receives the hash codes; the hashes of missing rows are unspecified.
+     */
+    default void hashCodes64(final RowBatch batch, final LongHashFunction hash, final long[] hashes) {
+        for (int i = 0; i < batch.count; i++) {
+            int row = batch.rows[i];
+            batch.missing[i] = this.isMissing(row);
+            if (!batch.missing[i])
+                hashes[i] = this.hashCode64(row, hash);
+        }
+    }
+
     long MISSING_HASH_VALUE = 0;
 }
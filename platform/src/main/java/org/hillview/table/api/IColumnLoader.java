@@ -17,6 +17,9 @@
 
 package org.hillview.table.api;
 
+import org.hillview.table.BlockStatistics;
+
+import javax.annotation.Nullable;
 import java.util.List;
 
 public interface IColumnLoader {
@@ -26,4 +29,15 @@ public interface IColumnLoader {
      * @return       The loaded columns.
      */
     List<IColumn> loadColumns(List<String> names);
+
+    /**
+     * Statistics stored in the file for a column, if available.
+     * @param name  Column name.
+     * @return      Statistics for blocks of rows that cover all rows in increasing
+     *              order, or null if there are no statistics for this column.
+     */
+    @Nullable
+    default List<BlockStatistics> getStatistics(String name) {
+        return null;
+    }
 }
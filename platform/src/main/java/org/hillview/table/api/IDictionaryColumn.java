@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.api;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+
+/**
+ * A string column that may store its values as small integer codes into a
+ * dictionary.  Two rows have the same value if and only if they have the same code,
+ * so computations that only test values for equality can work directly on codes.
+ */
+public interface IDictionaryColumn extends IStringColumn {
+    /**
+     * True if all the values of the column are currently dictionary-encoded.
+     * If this is false the other methods of the interface cannot be used.
+     */
+    boolean isDictionaryEncoded();
+
+    /**
+     * The number of distinct codes; all codes are between 0 and this value.
+     */
+    int getDictionarySize();
+
+    /**
+     * The code of the value in the specified row.  Missing values have a code as well.
+     */
+    int getCode(int rowIndex);
+
+    /**
+     * The value that corresponds to a code.
+     */
+    @Nullable
+    String decode(int code);
+
+    /**
+     * The code of a value, or -1 if the value does not appear in the column.
+     */
+    int lookup(@Nullable String value);
+
+    /**
+     * The id in the shared dictionary of the value of each code, or null if the
+     * values are not in the shared dictionary.  The id of a value that is not in
+     * the shared dictionary, such as null, is -1.
+     */
+    @Nullable
+    default int[] getSharedIds() {
+        return null;
+    }
+
+    /**
+     * The rank of each code in the sort order of the values: comparing the ranks
+     * of two codes is the same as comparing their values.  Null is the largest value.
+     * Only the codes of this column are sorted; dictionaries are small.
+     */
+    default int[] getCodeRanks() {
+        int[] result = new int[this.getDictionarySize()];
+        int[] order = new int[result.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        IntArrays.quickSort(order, (a, b) -> Converters.compareStrings(this.decode(a), this.decode(b)));
+        for (int i = 0; i < order.length; i++)
+            result[order[i]] = this.decode(order[i]) == null ? Integer.MAX_VALUE : i;
+        return result;
+    }
+
+    @Override
+    default IndexComparator getComparator() {
+        if (!this.isDictionaryEncoded())
+            return IStringColumn.super.getComparator();
+        final int[] ranks = this.getCodeRanks();
+        return new IndexComparator() {
+            @Override
+            public int compare(final int i, final int j) {
+                return Integer.compare(
+                        ranks[IDictionaryColumn.this.getCode(i)],
+                        ranks[IDictionaryColumn.this.getCode(j)]);
+            }
+        };
+    }
+}
@@ -18,6 +18,7 @@
 package org.hillview.table.api;
 
 import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.utils.Utilities;
 
 import javax.annotation.Nullable;
@@ -29,6 +30,17 @@ public interface IDoubleColumn extends IColumn {
         return this.getDouble(rowIndex);
     }
 
+    @Override
+    default void asDoubles(final int[] rows, final int count,
+                           final double[] values, final boolean[] missing) {
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            missing[i] = this.isMissing(row);
+            if (!missing[i])
+                values[i] = this.getDouble(row);
+        }
+    }
+
     @Nullable
     @Override
     default String asString(final int rowIndex) {
@@ -63,6 +75,15 @@ public interface IDoubleColumn extends IColumn {
         return hash.hashLong(Double.doubleToRawLongBits(this.getDouble(rowIndex)));
     }
 
+    @Override
+    default void hashCodes64(final RowBatch batch, final LongHashFunction hash, final long[] hashes) {
+        final double[] values = batch.getDoubles();
+        this.asDoubles(batch.rows, batch.count, values, batch.missing);
+        for (int i = 0; i < batch.count; i++)
+            if (!batch.missing[i])
+                hashes[i] = hash.hashLong(Double.doubleToRawLongBits(values[i]));
+    }
+
     @Override
     default IColumn convertKind(ContentsKind kind, String newColName, IMembershipSet set) {
         IMutableColumn newColumn = this.allocateConvertedColumn(
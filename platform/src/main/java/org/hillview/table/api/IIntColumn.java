@@ -18,6 +18,7 @@
 package org.hillview.table.api;
 
 import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.rows.RowBatch;
 
 import javax.annotation.Nullable;
 
@@ -28,6 +29,17 @@ public interface IIntColumn extends IColumn {
         return this.getInt(rowIndex);
     }
 
+    @Override
+    default void asDoubles(final int[] rows, final int count,
+                           final double[] values, final boolean[] missing) {
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            missing[i] = this.isMissing(row);
+            if (!missing[i])
+                values[i] = this.getInt(row);
+        }
+    }
+
     @Nullable
     @Override
     default String asString(final int rowIndex) {
@@ -65,6 +77,15 @@ public interface IIntColumn extends IColumn {
         return hash.hashInt(this.getInt(rowIndex));
     }
 
+    @Override
+    default void hashCodes64(final RowBatch batch, final LongHashFunction hash, final long[] hashes) {
+        final double[] values = batch.getDoubles();
+        this.asDoubles(batch.rows, batch.count, values, batch.missing);
+        for (int i = 0; i < batch.count; i++)
+            if (!batch.missing[i])
+                hashes[i] = hash.hashInt((int)values[i]);
+    }
+
     @Override
     default IColumn convertKind(
             ContentsKind kind, String newColName, IMembershipSet set) {
@@ -21,6 +21,9 @@ import org.hillview.table.membership.MembershipSetFactory;
 import org.hillview.utils.Randomness;
 import org.hillview.utils.Utilities;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.IntPredicate;
 
 /**
@@ -59,6 +62,58 @@ public interface IMembershipSet extends IRowOrder {
         return ms.seal();
     }
 
+    /**
+     * Returns an iterator over the members between start (inclusive) and end (exclusive).
+     * This implementation enumerates all members.
+     */
+    default IRowIterator getIterator(final int start, final int end) {
+        final IRowIterator it = this.getIterator();
+        return () -> {
+            int row = it.getNextRow();
+            while (row >= 0 && (row < start || row >= end))
+                row = it.getNextRow();
+            return row;
+        };
+    }
+
+    /**
+     * Splits this set into disjoint sets; each of them contains the members
+     * that fall in a contiguous range of row indexes.  The ranges are chosen
+     * such that the parts have about the same size.  This implementation
+     * copies the members, so it is only suitable for small sets.
+     * @param parts  Number of parts.
+     * @return       A list with one membership set for each range; some may be empty.
+     */
+    default List<IMembershipSet> splitRanges(final int parts) {
+        final int[] rows = this.getRows();
+        Arrays.sort(rows);
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(parts);
+        for (int i = 0; i < parts; i++) {
+            int from = Utilities.toInt((long)rows.length * i / parts);
+            int to = Utilities.toInt((long)rows.length * (i + 1) / parts);
+            IMutableMembershipSet set = MembershipSetFactory.create(this.getMax(), to - from);
+            for (int j = from; j < to; j++)
+                set.add(rows[j]);
+            result.add(set.seal());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the members that fall in the specified ranges of row indexes.
+     * @param starts  First row of each range, in increasing order.
+     * @param ends    End of each range (exclusive); ranges do not overlap.
+     */
+    default IMembershipSet selectRanges(final int[] starts, final int[] ends) {
+        return this.filter(row -> {
+            int index = Arrays.binarySearch(starts, row);
+            if (index >= 0)
+                return starts[index] < ends[index];
+            index = -index - 2;
+            return index >= 0 && row < ends[index];
+        });
+    }
+
     /**
      * @return an IMembershipSet containing k samples from the membership map. The samples are made
      * without replacement. Returns the full set if its size is smaller than k. The pseudo-random
@@ -25,4 +25,22 @@ public interface IRowIterator {
     // Returns -1 when iteration is completed; else it returns
     // the index of the next row.
     int getNextRow();
+
+    /**
+     * Fills an array with the indexes of the next rows.
+     * @param rows  Array that receives the row indexes.
+     * @return The number of rows written in the array.  This is less than
+     * the array length only when iteration is completed; after that the
+     * iterator should no longer be used.
+     */
+    default int getNextRows(final int[] rows) {
+        int count = 0;
+        while (count < rows.length) {
+            int row = this.getNextRow();
+            if (row < 0)
+                break;
+            rows[count++] = row;
+        }
+        return count;
+    }
 }
@@ -67,10 +67,15 @@ public interface IStringColumn extends IColumn {
     class DateParserHelper implements Function<Integer, Instant> {
         final IStringColumn column;
         @Nullable
-        DateParsing parser = null;
+        DateParsing parser;
 
-        DateParserHelper(IStringColumn col) {
+        /**
+         * @param parser  Parser for the dates; if null the format is
+         *                guessed from the first value.
+         */
+        DateParserHelper(IStringColumn col, @Nullable DateParsing parser) {
             this.column = col;
+            this.parser = parser;
         }
 
         @Override
@@ -85,6 +90,16 @@ public interface IStringColumn extends IColumn {
         }
     }
 
+    /**
+     * Converts the values to dates, parsing them with the specified parser.
+     */
+    default IColumn convertToDate(String newColName, IMembershipSet set, DateParsing parser) {
+        IMutableColumn newColumn = this.allocateConvertedColumn(
+                ContentsKind.Date, set, newColName);
+        this.convert(newColumn, set, new DateParserHelper(this, parser));
+        return newColumn;
+    }
+
     @Override
     default IColumn convertKind(
             ContentsKind kind, String newColName, IMembershipSet set) {
@@ -118,7 +133,7 @@ public interface IStringColumn extends IColumn {
                 break;
             }
             case Date: {
-                Function<Integer, Instant> p = new DateParserHelper(this);
+                Function<Integer, Instant> p = new DateParserHelper(this, null);
                 this.convert(newColumn, set, p);
                 break;
             }
@@ -18,6 +18,7 @@
 package org.hillview.table.api;
 
 import org.hillview.sketches.results.ColumnSortOrientation;
+import org.hillview.table.BlockStatistics;
 import org.hillview.table.RecordOrder;
 import org.hillview.table.Schema;
 import org.hillview.table.SmallTable;
@@ -144,6 +145,16 @@ public interface ITable {
         return result.get(0);
     }
 
+    /**
+     * Statistics of a column for blocks of rows, as stored in the file the
+     * table was loaded from.  The row indexes are those of the full table.
+     * @return Null if no statistics are available for this column.
+     */
+    @Nullable
+    default List<BlockStatistics> getColumnStatistics(String column) {
+        return null;
+    }
+
     /**
      * Return a new table which has the exact same columns as the specified one plus one extra.
      * @param column  Column to insert.
@@ -175,6 +186,19 @@ public interface ITable {
         return this.replace(cols);
     }
 
+    /**
+     * Splits the rows of this table into several tables that share the same columns.
+     * The membership sets of the resulting tables are disjoint ranges of rows,
+     * so the tables can be processed in parallel.
+     * @param parts  Number of tables to produce.
+     */
+    default List<ITable> splitRows(int parts) {
+        List<ITable> result = new ArrayList<ITable>(parts);
+        for (IMembershipSet set : this.getMembershipSet().splitRanges(parts))
+            result.add(this.selectRowsFromFullTable(set));
+        return result;
+    }
+
     default RecordOrder getRecordOrder(boolean isAscending) {
         RecordOrder ro = new RecordOrder();
         for (String colName : this.getSchema().getColumnNames())
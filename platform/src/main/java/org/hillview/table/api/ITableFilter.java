@@ -26,4 +26,16 @@ public interface ITableFilter {
      * @param rowIndex Row index in the table.
      */
     boolean test(int rowIndex);
+
+    /**
+     * Tests a block of rows.  Filters that can evaluate many rows
+     * faster than one at a time override this method.
+     * @param rows    Row indexes in the table.
+     * @param count   Number of rows to test from the rows array.
+     * @param result  Receives the result of the test for each row.
+     */
+    default void test(int[] rows, int count, boolean[] result) {
+        for (int i = 0; i < count; i++)
+            result[i] = this.test(rows[i]);
+    }
 }
@@ -18,6 +18,9 @@
 package org.hillview.table.api;
 
 import org.hillview.dataset.api.IJson;
+import org.hillview.table.BlockStatistics;
+
+import javax.annotation.Nullable;
 
 /**
  * Describes a filter that is applied to each row of a table.
@@ -29,4 +32,24 @@ public interface ITableFilterDescription extends IJson {
      * @return       A new filter, customized for this table.
      */
     ITableFilter getFilter(ITable table);
+
+    /**
+     * @return The column whose block statistics can be used by testBlock,
+     *         or null if the filter cannot use statistics.
+     */
+    @Nullable
+    default String getStatisticsColumn() {
+        return null;
+    }
+
+    /**
+     * Decides the result of the filter for all rows of a block using the
+     * statistics of the column returned by getStatisticsColumn.
+     * @return True if all rows in the block pass the filter, false if no row
+     *         passes, null if the rows have to be tested one by one.
+     */
+    @Nullable
+    default Boolean testBlock(BlockStatistics statistics) {
+        return null;
+    }
 }
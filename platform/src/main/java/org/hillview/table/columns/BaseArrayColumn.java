@@ -51,6 +51,21 @@ public abstract class BaseArrayColumn extends BaseColumn {
         return this.missing.get(rowIndex);
     }
 
+    /**
+     * Batch version of isMissing.
+     * @param contiguous  True if the rows are consecutive; see isContiguous.
+     */
+    void getMissing(final int[] rows, final int count,
+                    final boolean contiguous, final boolean[] result) {
+        assert this.missing != null;
+        if (contiguous) {
+            expandBits(this.missing, rows[0], count, result, 0);
+        } else {
+            for (int i = 0; i < count; i++)
+                result[i] = this.missing.get(rows[i]);
+        }
+    }
+
     public void setMissing(final int rowIndex) {
         assert this.missing != null;
         this.missing.set(rowIndex);
@@ -24,6 +24,7 @@ import org.hillview.table.api.IMutableColumn;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.BitSet;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -48,6 +49,39 @@ public abstract class BaseColumn implements IColumn {
         this.id = uniqueId.getAndIncrement();
     }
 
+    /**
+     * True if the rows are consecutive, i.e., rows[i] == rows[0] + i.
+     * Batch readers use this to process whole ranges of data at once.
+     */
+    static boolean isContiguous(final int[] rows, final int count) {
+        if (count == 0)
+            return false;
+        final int first = rows[0];
+        if (rows[count - 1] != first + count - 1)
+            return false;
+        for (int i = 1; i < count - 1; i++)
+            if (rows[i] != first + i)
+                return false;
+        return true;
+    }
+
+    /**
+     * Copies a range of bits from a bitset into a boolean array.
+     * @param bits    Bitset to read.
+     * @param from    First bit to read.
+     * @param count   Number of bits to read.
+     * @param result  Array receiving the bits.
+     * @param offset  Position in result where the first bit is written.
+     */
+    static void expandBits(final BitSet bits, final int from, final int count,
+                           final boolean[] result, final int offset) {
+        // Extracting the words at once is much cheaper than testing bits one by one.
+        final long[] words = bits.get(from, from + count).toLongArray();
+        final int set = words.length * 64;
+        for (int i = 0; i < count; i++)
+            result[offset + i] = i < set && ((words[i >>> 6] >>> i) & 1) != 0;
+    }
+
     @Override
     public ColumnDescription getDescription() {
         return this.description;
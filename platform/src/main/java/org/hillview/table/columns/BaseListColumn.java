@@ -19,11 +19,13 @@ package org.hillview.table.columns;
 
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.api.IAppendableColumn;
+import org.hillview.table.api.IColumn;
 
 import javax.annotation.Nullable;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 
 /**
@@ -40,6 +42,12 @@ public abstract class BaseListColumn extends BaseColumn implements IAppendableCo
     @Nullable
     ArrayList<BitSet> missing = null;
     int size;
+    /**
+     * The column returned by seal; it may hold a copy of the data in
+     * a different storage tier.
+     */
+    @Nullable
+    private transient IColumn sealed = null;
 
     BaseListColumn(final ColumnDescription desc) {
         super(desc);
@@ -48,6 +56,16 @@ public abstract class BaseListColumn extends BaseColumn implements IAppendableCo
         this.size = 0;
     }
 
+    /**
+     * Move the data of the sealed column to the storage tier of the process.
+     * Sealing again returns the same column.
+     */
+    synchronized IColumn store() {
+        if (this.sealed == null)
+            this.sealed = ColumnStorage.store(this);
+        return this.sealed;
+    }
+
     void checkMissingSize(int size) {
         if (this.missing != null && this.missing.size() != size)
             throw new RuntimeException("Missing size does not match column data: " +
@@ -71,6 +89,33 @@ public abstract class BaseListColumn extends BaseColumn implements IAppendableCo
         return this.missing.get(segmentId).get(localIndex);
     }
 
+    /**
+     * Batch version of isMissing.
+     * @param contiguous  True if the rows are consecutive; see isContiguous.
+     */
+    void getMissing(final int[] rows, final int count,
+                    final boolean contiguous, final boolean[] result) {
+        if (this.missing == null) {
+            Arrays.fill(result, 0, count, false);
+            return;
+        }
+        if (contiguous) {
+            int done = 0;
+            while (done < count) {
+                final int row = rows[0] + done;
+                final int localIndex = row & SegmentMask;
+                final int length = Math.min(count - done, SegmentSize - localIndex);
+                expandBits(this.missing.get(row >> LogSegmentSize), localIndex, length, result, done);
+                done += length;
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                final int row = rows[i];
+                result[i] = this.missing.get(row >> LogSegmentSize).get(row & SegmentMask);
+            }
+        }
+    }
+
     @Override
     public void append(@Nullable Object obj) {
         if (obj == null) {
@@ -21,6 +21,7 @@ import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 import javax.annotation.Nullable;
+import java.util.Arrays;
 
 /**
  * This class is used to compress categorical data.
@@ -30,11 +31,16 @@ class CategoryEncoding {
     private final Object2IntOpenHashMap<String> intEncoding;
     // Decode small integer into categorical value
     private final Int2ObjectOpenHashMap<String> intDecoding;
+    // Id in the shared dictionary of each code; computed on demand
+    private int[] sharedIds;
+    private int sharedCount;
     private static final int KEY_NOT_FOUND = -1;
 
     CategoryEncoding() {
         this.intEncoding = new Object2IntOpenHashMap<String>(100);
         this.intDecoding = new Int2ObjectOpenHashMap<String>(100);
+        this.sharedIds = new int[0];
+        this.sharedCount = 0;
     }
 
     @Nullable
@@ -45,13 +51,50 @@ class CategoryEncoding {
         if (ret != KEY_NOT_FOUND)
             return ret;
         int encoding = this.intEncoding.size();
+        if (value != null)
+            value = value.intern();
         this.intEncoding.put(value, encoding);
         this.intDecoding.put(encoding, value);
         return encoding;
     }
 
+    /**
+     * The code of a value, or -1 if the value has not been encoded.
+     */
+    int lookup(@Nullable String value) {
+        return this.intEncoding.getOrDefault(value, KEY_NOT_FOUND);
+    }
+
+    /**
+     * The id in the shared dictionary of each code.  Values are added to the shared
+     * dictionary only when they are needed, so that columns which end up switching
+     * to a dense representation do not fill it.
+     */
+    synchronized int[] getSharedIds() {
+        int size = this.size();
+        if (this.sharedCount < size) {
+            if (this.sharedIds.length < size)
+                this.sharedIds = Arrays.copyOf(this.sharedIds, Math.max(size, this.sharedIds.length * 2));
+            for (int i = this.sharedCount; i < size; i++) {
+                String value = this.decode(i);
+                this.sharedIds[i] = value == null ? KEY_NOT_FOUND : SharedDictionary.instance.intern(value);
+            }
+            this.sharedCount = size;
+        }
+        return this.sharedIds;
+    }
+
+    /**
+     * Number of encoded values.
+     */
+    int size() {
+        return this.intEncoding.size();
+    }
+
     public void clear() {
         this.intEncoding.clear();
         this.intDecoding.clear();
+        this.sharedIds = new int[0];
+        this.sharedCount = 0;
     }
 }
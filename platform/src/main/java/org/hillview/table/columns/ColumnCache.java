@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import org.hillview.table.api.IColumn;
+import org.hillview.utils.HillviewLogger;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Bounds the memory used by the data of lazy columns in a process.
+ * When the estimated size of the loaded columns exceeds the budget the least
+ * recently used columns are unloaded; they are loaded again on the next access.
+ * The cache only holds weak references to the lazy columns, so it does not
+ * keep alive the tables that are no longer used; the entries of
+ * garbage-collected columns are removed from the budget.
+ */
+public final class ColumnCache {
+    /**
+     * The cache used by the lazy columns of this process.
+     */
+    public static final ColumnCache instance = new ColumnCache(Runtime.getRuntime().maxMemory() / 2);
+
+    /**
+     * Bookkeeping for one loaded column.  Entries are compared by identity.
+     */
+    static final class Entry extends WeakReference<LazyColumn> {
+        long bytes;
+
+        Entry(LazyColumn column, ReferenceQueue<LazyColumn> queue) {
+            super(column, queue);
+            this.bytes = 0;
+        }
+    }
+
+    /**
+     * Loaded columns, in access order: the least recently used is first.
+     */
+    private final LinkedHashMap<Entry, Entry> loaded;
+    /**
+     * Entries whose columns have been garbage-collected.
+     */
+    private final ReferenceQueue<LazyColumn> collected;
+    private long budget;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Create a column cache.
+     * @param budget  Maximum estimated size in bytes of the loaded columns.
+     */
+    public ColumnCache(long budget) {
+        this.loaded = new LinkedHashMap<Entry, Entry>(16, .75f, true);
+        this.collected = new ReferenceQueue<LazyColumn>();
+        this.budget = budget;
+    }
+
+    /**
+     * Create the bookkeeping entry for a lazy column that uses this cache.
+     */
+    Entry newEntry(LazyColumn column) {
+        return new Entry(column, this.collected);
+    }
+
+    /**
+     * Remove from the cache the entries of the columns that have been garbage-collected.
+     * Must be called with the lock held.
+     */
+    private void purge() {
+        Reference<? extends LazyColumn> ref;
+        while ((ref = this.collected.poll()) != null) {
+            Entry e = (Entry)ref;
+            if (this.loaded.remove(e) != null)
+                this.usedBytes -= e.bytes;
+        }
+    }
+
+    /**
+     * Change the budget of the cache; evicts columns if necessary.
+     */
+    public void setBudget(long budget) {
+        List<LazyColumn> toUnload;
+        synchronized (this) {
+            this.budget = budget;
+            this.purge();
+            toUnload = this.evict(0);
+        }
+        unload(toUnload);
+    }
+
+    /**
+     * Record that the data of a lazy column has just been loaded.
+     * This counts as a miss.
+     */
+    void loaded(Entry entry, IColumn data) {
+        long bytes = estimateSize(data);
+        List<LazyColumn> toUnload;
+        synchronized (this) {
+            this.misses++;
+            this.purge();
+            Entry previous = this.loaded.remove(entry);
+            if (previous != null)
+                this.usedBytes -= previous.bytes;
+            toUnload = this.evict(bytes);
+            entry.bytes = bytes;
+            this.loaded.put(entry, entry);
+            this.usedBytes += bytes;
+        }
+        unload(toUnload);
+    }
+
+    /**
+     * Record that the data of a loaded lazy column has been used.
+     */
+    synchronized void hit(Entry entry) {
+        this.hits++;
+        // Moves the entry to the end of the access order.
+        this.loaded.get(entry);
+    }
+
+    /**
+     * Remove entries from the cache until there is room for the specified number of bytes.
+     * Must be called with the lock held.
+     * @return  The columns that have to be unloaded.  Unloading synchronizes on each
+     *          column, so it is done after releasing the lock on the cache.
+     */
+    private List<LazyColumn> evict(long bytes) {
+        List<LazyColumn> result = new ArrayList<LazyColumn>();
+        Iterator<Entry> it = this.loaded.keySet().iterator();
+        while (it.hasNext() && this.usedBytes + bytes > this.budget) {
+            Entry e = it.next();
+            it.remove();
+            this.usedBytes -= e.bytes;
+            LazyColumn column = e.get();
+            // If the column has been garbage-collected its data is gone already.
+            if (column != null) {
+                result.add(column);
+                this.evictions++;
+            }
+        }
+        return result;
+    }
+
+    private static void unload(List<LazyColumn> columns) {
+        for (LazyColumn c : columns) {
+            HillviewLogger.instance.info("Unloading lazy column", "{0}", c);
+            c.unload();
+        }
+    }
+
+    /**
+     * Estimate the memory used by a column.  This is only a rough estimate:
+     * strings are assumed to have a fixed size.
+     */
+    static long estimateSize(IColumn column) {
+        long rows = column.sizeInRows();
+        long bytesPerRow;
+        switch (column.getKind()) {
+            case Integer:
+                bytesPerRow = 4;
+                break;
+            case Double:
+            case Date:
+            case Duration:
+                bytesPerRow = 8;
+                break;
+            case String:
+            case Json:
+                bytesPerRow = 32;
+                break;
+            case None:
+            default:
+                bytesPerRow = 0;
+                break;
+        }
+        // One bit per row for the missing values.
+        return rows * bytesPerRow + rows / 8;
+    }
+
+    public synchronized long getUsedBytes() {
+        this.purge();
+        return this.usedBytes;
+    }
+
+    public synchronized int getLoadedColumnCount() {
+        this.purge();
+        return this.loaded.size();
+    }
+
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        this.purge();
+        return "column cache: " + this.usedBytes + "/" + this.budget + " bytes, " +
+                this.loaded.size() + " columns, " + this.hits + " hits, " +
+                this.misses + " misses, " + this.evictions + " evictions";
+    }
+}
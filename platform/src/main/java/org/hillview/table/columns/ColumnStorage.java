@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.utils.HillviewLogger;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decides where the data of the columns loaded by a worker is stored.
+ * Columns are moved to the selected tier when they are sealed after loading.
+ * Off-heap data does not have to be scanned by the garbage collector; the
+ * direct memory available is limited by the -XX:MaxDirectMemorySize JVM option,
+ * while memory-mapped data is backed by spill files and paged by the OS.
+ */
+public final class ColumnStorage {
+    public enum Tier {
+        /**
+         * Java arrays; this is the default.
+         */
+        Heap,
+        /**
+         * Direct byte buffers.
+         */
+        Direct,
+        /**
+         * Byte buffers mapped to temporary files in the spill directory.
+         */
+        Mapped
+    }
+
+    /**
+     * Columns with fewer rows are always kept on the heap.
+     */
+    static final int minimumRows = BaseListColumn.SegmentSize;
+
+    private static volatile Tier tier = Tier.Heap;
+    @Nullable
+    private static volatile Path spillDirectory = null;
+
+    private ColumnStorage() {}
+
+    /**
+     * Select the storage used for the columns loaded from now on.
+     * @param tier       Storage tier.
+     * @param directory  Folder for spill files; if null the system temporary folder is used.
+     */
+    public static void setTier(Tier tier, @Nullable String directory) {
+        HillviewLogger.instance.info("Column storage", "{0} {1}", tier, directory);
+        ColumnStorage.spillDirectory = directory == null ? null : Paths.get(directory);
+        ColumnStorage.tier = tier;
+    }
+
+    public static Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Allocate a zero-filled buffer in the specified tier, using the native byte order.
+     */
+    public static ByteBuffer allocate(long bytes, Tier tier) {
+        if (bytes > Integer.MAX_VALUE)
+            throw new RuntimeException("Buffer too large: " + bytes);
+        switch (tier) {
+            case Heap:
+                return ByteBuffer.allocate((int)bytes).order(ByteOrder.nativeOrder());
+            case Direct:
+                return ByteBuffer.allocateDirect((int)bytes).order(ByteOrder.nativeOrder());
+            case Mapped:
+                return map(bytes);
+            default:
+                throw new RuntimeException("Unexpected tier " + tier);
+        }
+    }
+
+    private static ByteBuffer map(long bytes) {
+        Path dir = spillDirectory;
+        if (dir == null)
+            dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        try {
+            Path file = Files.createTempFile(dir, "hillview", ".column");
+            ByteBuffer result;
+            try (FileChannel channel = FileChannel.open(
+                    file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                result = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+            try {
+                // The mapping stays valid after the file is deleted on POSIX systems.
+                Files.delete(file);
+            } catch (IOException ex) {
+                file.toFile().deleteOnExit();
+            }
+            return result.order(ByteOrder.nativeOrder());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Move the data of a sealed column to the current storage tier.
+     * @return  The column itself if it is stored on the heap or if it
+     *          cannot be stored off-heap, or an off-heap copy.
+     */
+    public static IColumn store(IColumn column) {
+        Tier current = tier;
+        if (current == Tier.Heap || column.sizeInRows() < minimumRows)
+            return column;
+        // Each buffer is limited to 2GB.
+        if ((long)column.sizeInRows() * 8 > Integer.MAX_VALUE)
+            return column;
+        switch (column.getKind()) {
+            case Integer:
+                return OffHeapIntColumn.copy(column, current);
+            case Double:
+                return OffHeapDoubleColumn.copy(column, current);
+            case Date:
+                return OffHeapDateColumn.copy(column, current);
+            case Duration:
+                return OffHeapDurationColumn.copy(column, current);
+            case String:
+            case Json:
+                if (column instanceof IDictionaryColumn &&
+                        ((IDictionaryColumn)column).isDictionaryEncoded())
+                    return OffHeapStringColumn.copy((IDictionaryColumn)column, current);
+                return column;
+            default:
+                return column;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.api.*;
+import org.hillview.table.membership.FullMembershipSet;
+import org.hillview.table.membership.MembershipSetFactory;
+import org.hillview.utils.Converters;
+import org.hillview.utils.DateParsing;
+
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A column made of several columns with the same description, placed one
+ * after the other.  The data of the parts is not copied.  This is used to
+ * assemble the pieces of a file that were loaded in parallel.
+ */
+public class ConcatenatedColumn extends BaseColumn {
+    static final long serialVersionUID = 1;
+    private static final int LogBlockSize = BaseListColumn.LogSegmentSize;
+
+    final IColumn[] parts;
+    /**
+     * Index of the first row of each part; the last element is the number of rows.
+     */
+    private final int[] starts;
+    /**
+     * For each block of rows the part that contains the first row of the block.
+     */
+    private final int[] blockPart;
+
+    ConcatenatedColumn(IColumn[] parts) {
+        super(parts[0].getDescription());
+        this.parts = parts;
+        this.starts = new int[parts.length + 1];
+        long rows = 0;
+        for (int i = 0; i < parts.length; i++) {
+            if (!parts[i].getDescription().equals(this.description))
+                throw new RuntimeException("Concatenating columns with different descriptions: " +
+                        this.description + " and " + parts[i].getDescription());
+            this.starts[i] = (int)rows;
+            rows += parts[i].sizeInRows();
+            this.parsingExceptionCount += parts[i].getParsingExceptionCount();
+        }
+        if (rows > Integer.MAX_VALUE)
+            throw new RuntimeException("Concatenated column too large: " + rows);
+        this.starts[parts.length] = (int)rows;
+        this.blockPart = new int[(int)(rows >>> LogBlockSize) + 1];
+        int part = 0;
+        for (int block = 0; block < this.blockPart.length; block++) {
+            int row = block << LogBlockSize;
+            while (part < parts.length - 1 && row >= this.starts[part + 1])
+                part++;
+            this.blockPart[block] = part;
+        }
+    }
+
+    /**
+     * Concatenate columns.
+     * @param parts  Columns to concatenate; they must all have the same description.
+     * @return The column if there is a single one, otherwise a concatenated column.
+     */
+    public static IColumn create(List<IColumn> parts) {
+        if (parts.isEmpty())
+            throw new RuntimeException("No columns to concatenate");
+        if (parts.size() == 1)
+            return parts.get(0);
+        IColumn[] array = parts.toArray(new IColumn[0]);
+        if (parts.get(0).getKind().isString())
+            return new ConcatenatedStringColumn(array);
+        return new ConcatenatedColumn(array);
+    }
+
+    /**
+     * The index of the first row of a part.
+     */
+    final int getStart(final int part) {
+        return this.starts[part];
+    }
+
+    /**
+     * The part that contains a row.
+     */
+    final int getPart(final int rowIndex) {
+        int part = this.blockPart[rowIndex >>> LogBlockSize];
+        while (rowIndex >= this.starts[part + 1])
+            part++;
+        return part;
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return true;
+    }
+
+    @Override
+    public int sizeInRows() {
+        return this.starts[this.parts.length];
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].isMissing(rowIndex - this.starts[part]);
+    }
+
+    @Override
+    public double getDouble(final int rowIndex) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].getDouble(rowIndex - this.starts[part]);
+    }
+
+    @Override
+    public int getInt(final int rowIndex) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].getInt(rowIndex - this.starts[part]);
+    }
+
+    @Nullable
+    @Override
+    public String getString(final int rowIndex) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].getString(rowIndex - this.starts[part]);
+    }
+
+    @Nullable
+    @Override
+    public Instant getDate(final int rowIndex) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].getDate(rowIndex - this.starts[part]);
+    }
+
+    @Nullable
+    @Override
+    public Duration getDuration(final int rowIndex) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].getDuration(rowIndex - this.starts[part]);
+    }
+
+    @Override
+    public double asDouble(final int rowIndex) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].asDouble(rowIndex - this.starts[part]);
+    }
+
+    @Nullable
+    @Override
+    public String asString(final int rowIndex) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].asString(rowIndex - this.starts[part]);
+    }
+
+    @Override
+    public long hashCode64(final int rowIndex, final LongHashFunction hash) {
+        int part = this.getPart(rowIndex);
+        return this.parts[part].hashCode64(rowIndex - this.starts[part], hash);
+    }
+
+    @Override
+    public IndexComparator getComparator() {
+        final ContentsKind kind = this.getKind();
+        return new IndexComparator() {
+            @Override
+            public int compare(final int i, final int j) {
+                if (kind.isString())
+                    return Converters.compareStrings(
+                            ConcatenatedColumn.this.getString(i), ConcatenatedColumn.this.getString(j));
+                final boolean iMissing = ConcatenatedColumn.this.isMissing(i);
+                final boolean jMissing = ConcatenatedColumn.this.isMissing(j);
+                if (iMissing && jMissing) {
+                    return 0;
+                } else if (iMissing) {
+                    return 1;
+                } else if (jMissing) {
+                    return -1;
+                } else if (kind == ContentsKind.Integer) {
+                    return Integer.compare(
+                            ConcatenatedColumn.this.getInt(i), ConcatenatedColumn.this.getInt(j));
+                } else {
+                    return Double.compare(
+                            ConcatenatedColumn.this.asDouble(i), ConcatenatedColumn.this.asDouble(j));
+                }
+            }
+        };
+    }
+
+    /**
+     * Converts each part separately, so the result is also a concatenated column.
+     * Dates are parsed with the format of the first value, as for a single column.
+     */
+    @Override
+    public IColumn convertKind(ContentsKind kind, String newColName, IMembershipSet set) {
+        IMembershipSet[] partSets = new IMembershipSet[this.parts.length];
+        if (set.getSize() == this.sizeInRows()) {
+            for (int i = 0; i < this.parts.length; i++)
+                partSets[i] = new FullMembershipSet(this.parts[i].sizeInRows());
+        } else {
+            IMutableMembershipSet[] sets = new IMutableMembershipSet[this.parts.length];
+            for (int i = 0; i < this.parts.length; i++)
+                sets[i] = MembershipSetFactory.create(this.parts[i].sizeInRows(),
+                        Math.min(set.getSize(), this.parts[i].sizeInRows()));
+            IRowIterator it = set.getIterator();
+            int row = it.getNextRow();
+            while (row >= 0) {
+                int part = this.getPart(row);
+                sets[part].add(row - this.starts[part]);
+                row = it.getNextRow();
+            }
+            for (int i = 0; i < this.parts.length; i++)
+                partSets[i] = sets[i].seal();
+        }
+        DateParsing parser = null;
+        if (kind == ContentsKind.Date && this.getKind().isString()) {
+            IRowIterator it = set.getIterator();
+            for (int row = it.getNextRow(); row >= 0 && parser == null; row = it.getNextRow()) {
+                String s = this.getString(row);
+                if (s != null)
+                    parser = new DateParsing(s);
+            }
+        }
+        List<IColumn> converted = new ArrayList<IColumn>(this.parts.length);
+        for (int i = 0; i < this.parts.length; i++) {
+            if (parser != null)
+                converted.add(((IStringColumn)this.parts[i]).convertToDate(newColName, partSets[i], parser));
+            else
+                converted.add(this.parts[i].convertKind(kind, newColName, partSets[i]));
+        }
+        return create(converted);
+    }
+
+    @Override
+    public IColumn rename(String newName) {
+        List<IColumn> renamed = new ArrayList<IColumn>(this.parts.length);
+        for (IColumn p : this.parts)
+            renamed.add(p.rename(newName));
+        return create(renamed);
+    }
+}
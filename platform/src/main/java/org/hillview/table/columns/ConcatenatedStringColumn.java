@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.IndexComparator;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+
+/**
+ * A concatenated column of strings.  If all the parts are dictionary-encoded
+ * the column is dictionary-encoded as well: the codes of each part are mapped
+ * to the codes of a merged dictionary.
+ */
+public class ConcatenatedStringColumn extends ConcatenatedColumn implements IDictionaryColumn {
+    static final long serialVersionUID = 1;
+
+    /**
+     * For each part the code in the merged dictionary of each code of the part;
+     * null if some part is not dictionary-encoded.
+     */
+    @Nullable
+    private final int[][] codeMaps;
+    private final ArrayList<String> dictionary;
+    private final Object2IntOpenHashMap<String> codes;
+    /**
+     * Ids of the values in the shared dictionary; computed on demand.
+     */
+    @Nullable
+    private transient volatile int[] sharedIds;
+
+    ConcatenatedStringColumn(IColumn[] parts) {
+        super(parts);
+        this.dictionary = new ArrayList<String>();
+        this.codes = new Object2IntOpenHashMap<String>();
+        this.codes.defaultReturnValue(-1);
+        boolean encoded = true;
+        for (IColumn p : parts)
+            encoded = encoded && p instanceof IDictionaryColumn &&
+                    ((IDictionaryColumn)p).isDictionaryEncoded();
+        if (!encoded) {
+            this.codeMaps = null;
+            return;
+        }
+        this.codeMaps = new int[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            IDictionaryColumn part = (IDictionaryColumn)parts[i];
+            int[] map = new int[part.getDictionarySize()];
+            for (int c = 0; c < map.length; c++) {
+                String value = part.decode(c);
+                int code = this.codes.getInt(value);
+                if (code < 0) {
+                    code = this.dictionary.size();
+                    this.dictionary.add(value);
+                    this.codes.put(value, code);
+                }
+                map[c] = code;
+            }
+            this.codeMaps[i] = map;
+        }
+    }
+
+    @Override
+    public boolean isDictionaryEncoded() {
+        return this.codeMaps != null;
+    }
+
+    @Override
+    public int getDictionarySize() {
+        return this.dictionary.size();
+    }
+
+    @Override
+    public int getCode(final int rowIndex) {
+        assert this.codeMaps != null;
+        int part = this.getPart(rowIndex);
+        int code = ((IDictionaryColumn)this.parts[part]).getCode(rowIndex - this.getStart(part));
+        return this.codeMaps[part][code];
+    }
+
+    @Nullable
+    @Override
+    public String decode(final int code) {
+        return this.dictionary.get(code);
+    }
+
+    @Override
+    public int lookup(@Nullable final String value) {
+        return this.codes.getInt(value);
+    }
+
+    @Nullable
+    @Override
+    public int[] getSharedIds() {
+        if (!this.isDictionaryEncoded())
+            return null;
+        int[] result = this.sharedIds;
+        if (result == null) {
+            result = SharedDictionary.instance.intern(this);
+            this.sharedIds = result;
+        }
+        return result;
+    }
+
+    @Override
+    public IndexComparator getComparator() {
+        return IDictionaryColumn.super.getComparator();
+    }
+}
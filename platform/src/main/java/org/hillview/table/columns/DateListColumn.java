@@ -45,6 +45,14 @@ public class DateListColumn
         this.dateParser = null;
     }
 
+    /**
+     * Use the specified parser for strings instead of guessing
+     * the format from the first value.
+     */
+    public void setDateParser(@Nullable DateParsing dateParser) {
+        this.dateParser = dateParser;
+    }
+
     @Nullable
     @Override
     public Instant getDate(final int rowIndex) {
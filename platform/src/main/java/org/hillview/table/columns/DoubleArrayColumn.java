@@ -63,6 +63,19 @@ public class DoubleArrayColumn
     @Override
     public double getDouble(final int rowIndex) { return this.data[rowIndex];}
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          final double[] values, final boolean[] missing) {
+        final boolean contiguous = isContiguous(rows, count);
+        this.getMissing(rows, count, contiguous, missing);
+        if (contiguous) {
+            System.arraycopy(this.data, rows[0], values, 0, count);
+        } else {
+            for (int i = 0; i < count; i++)
+                values[i] = this.data[rows[i]];
+        }
+    }
+
     @Override
     public void set(int rowIndex, @Nullable Object value) {
         if (value == null)
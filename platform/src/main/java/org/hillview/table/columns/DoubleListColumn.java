@@ -50,7 +50,7 @@ public class DoubleListColumn
     public IColumn seal() {
         this.checkMissingSize(this.segments.size());
         this.segments.trimToSize();
-        return this;
+        return this.store();
     }
 
     @Override
@@ -66,6 +66,28 @@ public class DoubleListColumn
         return this.segments.get(segmentId)[localIndex];
     }
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          final double[] values, final boolean[] missing) {
+        final boolean contiguous = isContiguous(rows, count);
+        this.getMissing(rows, count, contiguous, missing);
+        if (contiguous) {
+            int done = 0;
+            while (done < count) {
+                final int row = rows[0] + done;
+                final int localIndex = row & SegmentMask;
+                final int length = Math.min(count - done, SegmentSize - localIndex);
+                System.arraycopy(this.segments.get(row >> LogSegmentSize), localIndex, values, done, length);
+                done += length;
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                final int row = rows[i];
+                values[i] = this.segments.get(row >> LogSegmentSize)[row & SegmentMask];
+            }
+        }
+    }
+
     @Override
     void grow() {
         this.segments.add(new double[SegmentSize]);
@@ -69,6 +69,21 @@ public final class IntArrayColumn
         return this.data[rowIndex];
     }
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          final double[] values, final boolean[] missing) {
+        final boolean contiguous = isContiguous(rows, count);
+        this.getMissing(rows, count, contiguous, missing);
+        if (contiguous) {
+            final int first = rows[0];
+            for (int i = 0; i < count; i++)
+                values[i] = this.data[first + i];
+        } else {
+            for (int i = 0; i < count; i++)
+                values[i] = this.data[rows[i]];
+        }
+    }
+
     @Override
     public void set(int rowIndex, @Nullable Object value) {
         if (value == null)
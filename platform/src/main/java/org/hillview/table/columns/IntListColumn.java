@@ -56,7 +56,7 @@ public final class IntListColumn
     @Override
     public IColumn seal() {
         this.checkMissingSize(this.segments.size());
-        return this;
+        return this.store();
     }
 
     @Override
@@ -66,6 +66,30 @@ public final class IntListColumn
         return this.segments.get(segmentId)[localIndex];
     }
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          final double[] values, final boolean[] missing) {
+        final boolean contiguous = isContiguous(rows, count);
+        this.getMissing(rows, count, contiguous, missing);
+        if (contiguous) {
+            int done = 0;
+            while (done < count) {
+                final int row = rows[0] + done;
+                final int localIndex = row & SegmentMask;
+                final int length = Math.min(count - done, SegmentSize - localIndex);
+                final int[] segment = this.segments.get(row >> LogSegmentSize);
+                for (int i = 0; i < length; i++)
+                    values[done + i] = segment[localIndex + i];
+                done += length;
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                final int row = rows[i];
+                values[i] = this.segments.get(row >> LogSegmentSize)[row & SegmentMask];
+            }
+        }
+    }
+
     @Override
     public IColumn rename(String newName) {
         return new IntListColumn(this.description.rename(newName), this.segments,
@@ -18,11 +18,14 @@
 package org.hillview.table.columns;
 
 import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.BlockStatistics;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.api.*;
 import org.hillview.utils.HillviewLogger;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -30,20 +33,32 @@ import java.util.List;
 
 /**
  * The contents of a lazy column is loaded lazily.
+ * The loaded data is accounted in a ColumnCache, which may unload it
+ * when memory is short; it is then loaded again on the next access.
  */
 public class LazyColumn extends BaseColumn {
     static final long serialVersionUID = 1;
 
     @Nullable
-    private IColumn data;
+    private volatile IColumn data;
     private final IColumnLoader loader;
     private final int size;
+    // Not serialized: a deserialized column uses the cache of the receiving process.
+    private transient ColumnCache cache;
+    private transient ColumnCache.Entry cacheEntry;
 
-    public LazyColumn(final ColumnDescription description, int size, IColumnLoader loader) {
+    public LazyColumn(final ColumnDescription description, int size,
+                      IColumnLoader loader, ColumnCache cache) {
         super(description);
         this.data = null;
         this.loader = loader;
         this.size = size;
+        this.cache = cache;
+        this.cacheEntry = cache.newEntry(this);
+    }
+
+    public LazyColumn(final ColumnDescription description, int size, IColumnLoader loader) {
+        this(description, size, loader, ColumnCache.instance);
     }
 
     @Override
@@ -103,8 +118,13 @@ public class LazyColumn extends BaseColumn {
     @Override
     public IColumn rename(String newName) {
         LazyColumn result =
-                new LazyColumn(this.description.rename(newName), this.size, this.loader);
-        result.data = this.data;
+                new LazyColumn(this.description.rename(newName), this.size, this.loader, this.cache);
+        IColumn current = this.data;
+        if (current != null) {
+            // The renamed column has its own cache entry, so its data is accounted separately.
+            result.data = current;
+            result.cache.loaded(result.cacheEntry, current);
+        }
         return result;
     }
 
@@ -118,17 +138,78 @@ public class LazyColumn extends BaseColumn {
         return this.ensureLoaded().hashCode64(rowIndex, hash);
     }
 
-    synchronized private IColumn ensureLoaded() {
-        if (this.data != null)
-            return this.data;
-        HillviewLogger.instance.info("Loading data for lazy column", "{0}", this);
-        List<String> toLoad = new ArrayList<String>();
-        toLoad.add(this.getName());
-        List<IColumn> loaded = this.loader.loadColumns(toLoad);
-        if (loaded.size() != 1)
-            throw new RuntimeException("Expected 1 column to be loaded, not " + loaded.size());
-        this.data = loaded.get(0);
-        assert this.data != null;
-        return this.data;
+    /**
+     * Statistics of this column as stored in the file, if the loader has them.
+     */
+    @Nullable
+    public List<BlockStatistics> getStatistics() {
+        return this.loader.getStatistics(this.getName());
+    }
+
+    /**
+     * Get the loaded data of this column, loading it if necessary.
+     */
+    public IColumn getData() {
+        IColumn result = this.data;
+        if (result == null)
+            return this.load();
+        this.cache.hit(this.cacheEntry);
+        return result;
+    }
+
+    /**
+     * Set the data of this column, which has been loaded by the caller.
+     */
+    public void setData(IColumn data) {
+        if (data.sizeInRows() != this.size)
+            throw new RuntimeException("Loaded column " + data.getName() + " has " +
+                    data.sizeInRows() + " rows instead of " + this.size);
+        this.data = data;
+        this.cache.loaded(this.cacheEntry, data);
+    }
+
+    /**
+     * Drop the loaded data; called by the cache.  Users of the data
+     * that still hold a reference to it are not affected.
+     */
+    void unload() {
+        this.data = null;
+    }
+
+    private IColumn ensureLoaded() {
+        IColumn result = this.data;
+        if (result != null)
+            return result;
+        return this.load();
+    }
+
+    private IColumn load() {
+        IColumn result;
+        synchronized (this) {
+            IColumn current = this.data;
+            if (current != null)
+                return current;
+            HillviewLogger.instance.info("Loading data for lazy column", "{0}", this);
+            List<String> toLoad = new ArrayList<String>();
+            toLoad.add(this.getName());
+            List<IColumn> loaded = this.loader.loadColumns(toLoad);
+            if (loaded.size() != 1)
+                throw new RuntimeException("Expected 1 column to be loaded, not " + loaded.size());
+            result = loaded.get(0);
+            assert result != null;
+            this.data = result;
+        }
+        // The cache may unload other columns, so this is done without holding the lock.
+        this.cache.loaded(this.cacheEntry, result);
+        return result;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.cache = ColumnCache.instance;
+        this.cacheEntry = this.cache.newEntry(this);
+        IColumn current = this.data;
+        if (current != null)
+            this.cache.loaded(this.cacheEntry, current);
     }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Base class for columns whose data is stored outside of the Java heap, in
+ * direct or memory-mapped byte buffers.  These columns are immutable.
+ * Missing values are stored in a separate bitmap buffer, which is null if
+ * no value is missing.
+ */
+public abstract class OffHeapColumn extends BaseColumn {
+    static final long serialVersionUID = 1;
+
+    final int size;
+    transient ByteBuffer data;
+    @Nullable
+    transient ByteBuffer missing;
+
+    OffHeapColumn(ColumnDescription description, int size,
+                  ByteBuffer data, @Nullable ByteBuffer missing) {
+        super(description);
+        this.size = size;
+        this.data = data;
+        this.missing = missing;
+    }
+
+    /**
+     * Create a numeric column over existing buffers, e.g., regions of a mapped file.
+     * @param description  Column description; the kind must be Integer, Double, Date or Duration.
+     * @param size         Number of rows.
+     * @param data         One value per row: 4-byte integers or 8-byte doubles.
+     * @param missing      Bitmap of missing values, in 64-bit words; null if no value is missing.
+     */
+    public static OffHeapColumn create(ColumnDescription description, int size,
+                                       ByteBuffer data, @Nullable ByteBuffer missing) {
+        switch (description.kind) {
+            case Integer:
+                return new OffHeapIntColumn(description, size, data, missing);
+            case Double:
+                OffHeapDoubleColumn result = new OffHeapDoubleColumn(description, size, data, missing);
+                result.checkKind(ContentsKind.Double);
+                return result;
+            case Date:
+                return new OffHeapDateColumn(description, size, data, missing);
+            case Duration:
+                return new OffHeapDurationColumn(description, size, data, missing);
+            default:
+                throw new RuntimeException("Unexpected column kind " + description.kind);
+        }
+    }
+
+    /**
+     * Number of bytes used by a bitmap with one bit per row.
+     */
+    public static long bitmapBytes(int rows) {
+        return (((long)rows + 63) >>> 6) << 3;
+    }
+
+    /**
+     * Copy the missing values of a column into a bitmap.
+     * @return null if the column has no missing values.
+     */
+    @Nullable
+    static ByteBuffer copyMissing(IColumn column, ColumnStorage.Tier tier) {
+        int rows = column.sizeInRows();
+        ByteBuffer result = null;
+        for (int word = 0; word < rows; word += 64) {
+            long bits = 0;
+            int end = Math.min(rows, word + 64);
+            for (int row = word; row < end; row++)
+                if (column.isMissing(row))
+                    bits |= 1L << (row - word);
+            if (bits != 0 && result == null)
+                result = ColumnStorage.allocate(bitmapBytes(rows), tier);
+            if (result != null)
+                result.putLong(word >>> 3, bits);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isLoaded() { return true; }
+
+    @Override
+    public int sizeInRows() {
+        return this.size;
+    }
+
+    @Override
+    public boolean isMissing(final int rowIndex) {
+        if (this.missing == null)
+            return false;
+        long word = this.missing.getLong((rowIndex >>> 6) << 3);
+        return ((word >>> rowIndex) & 1) != 0;
+    }
+
+    /**
+     * Batch version of isMissing.
+     */
+    void getMissing(final int[] rows, final int count, final boolean[] result) {
+        if (this.missing == null) {
+            Arrays.fill(result, 0, count, false);
+            return;
+        }
+        for (int i = 0; i < count; i++)
+            result[i] = this.isMissing(rows[i]);
+    }
+
+    /**
+     * Number of bytes stored outside of the heap.
+     */
+    public long getStorageSize() {
+        return this.data.capacity() + (this.missing == null ? 0 : this.missing.capacity());
+    }
+
+    private static void writeBuffer(ObjectOutputStream out, @Nullable ByteBuffer buffer)
+            throws IOException {
+        if (buffer == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = new byte[buffer.capacity()];
+        ByteBuffer copy = buffer.duplicate();
+        copy.clear();
+        copy.get(bytes);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static ByteBuffer readBuffer(ObjectInputStream in, ByteOrder order) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        // Deserialized columns are small, so they are kept on the heap.
+        return ByteBuffer.wrap(bytes).order(order);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeBoolean(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
+        writeBuffer(out, this.data);
+        writeBuffer(out, this.missing);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // The buffers keep the byte order of the writer.
+        ByteOrder order = in.readBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        this.data = Converters.checkNull(readBuffer(in, order));
+        this.missing = readBuffer(in, order);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * A column of dates stored outside of the heap.
+ */
+@SuppressWarnings("EmptyMethod")
+public class OffHeapDateColumn extends OffHeapDoubleColumn implements IDateColumn {
+    static final long serialVersionUID = 1;
+
+    OffHeapDateColumn(ColumnDescription description, int size,
+                      ByteBuffer data, @Nullable ByteBuffer missing) {
+        super(description, size, data, missing);
+        this.checkKind(ContentsKind.Date);
+    }
+
+    static OffHeapDateColumn copy(IColumn column, ColumnStorage.Tier tier) {
+        OffHeapDateColumn result = new OffHeapDateColumn(column.getDescription(),
+                column.sizeInRows(), copyDoubles(column, tier), copyMissing(column, tier));
+        result.parsingExceptionCount = column.getParsingExceptionCount();
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public Instant getDate(final int rowIndex) {
+        double d = this.getDouble(rowIndex);
+        return Converters.toDate(d);
+    }
+
+    @Override
+    public double asDouble(int rowIndex) {
+        return this.getDouble(rowIndex);
+    }
+
+    @Nullable
+    @Override
+    public String asString(int rowIndex) {
+        if (this.isMissing(rowIndex))
+            return null;
+        Instant dt = this.getDate(rowIndex);
+        return Converters.toString(dt);
+    }
+
+    @Override
+    public IndexComparator getComparator() {
+        return super.getComparator();
+    }
+
+    @Override
+    public long hashCode64(int rowIndex, LongHashFunction hash) {
+        return super.hashCode64(rowIndex, hash);
+    }
+
+    @Override
+    public IColumn convertKind(
+            ContentsKind kind, String newColName, IMembershipSet set) {
+        return IDateColumn.super.convertKind(kind, newColName, set);
+    }
+
+    @Override
+    public IColumn rename(String newName) {
+        OffHeapDateColumn result = new OffHeapDateColumn(
+                this.description.rename(newName), this.size, this.data, this.missing);
+        result.parsingExceptionCount = this.parsingExceptionCount;
+        return result;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDoubleColumn;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * A column of doubles stored outside of the heap.
+ */
+public class OffHeapDoubleColumn extends OffHeapColumn implements IDoubleColumn {
+    static final long serialVersionUID = 1;
+
+    OffHeapDoubleColumn(ColumnDescription description, int size,
+                        ByteBuffer data, @Nullable ByteBuffer missing) {
+        super(description, size, data, missing);
+    }
+
+    /**
+     * Copy the values of a column that stores doubles into a buffer.
+     */
+    static ByteBuffer copyDoubles(IColumn column, ColumnStorage.Tier tier) {
+        int size = column.sizeInRows();
+        ByteBuffer data = ColumnStorage.allocate((long)size << 3, tier);
+        for (int i = 0; i < size; i++)
+            if (!column.isMissing(i))
+                data.putDouble(i << 3, column.getDouble(i));
+        return data;
+    }
+
+    static OffHeapDoubleColumn copy(IColumn column, ColumnStorage.Tier tier) {
+        OffHeapDoubleColumn result = new OffHeapDoubleColumn(column.getDescription(),
+                column.sizeInRows(), copyDoubles(column, tier), copyMissing(column, tier));
+        result.checkKind(ContentsKind.Double);
+        result.parsingExceptionCount = column.getParsingExceptionCount();
+        return result;
+    }
+
+    @Override
+    public double getDouble(final int rowIndex) {
+        return this.data.getDouble(rowIndex << 3);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          final double[] values, final boolean[] missing) {
+        this.getMissing(rows, count, missing);
+        for (int i = 0; i < count; i++)
+            values[i] = this.data.getDouble(rows[i] << 3);
+    }
+
+    @Override
+    public IColumn rename(String newName) {
+        OffHeapDoubleColumn result = new OffHeapDoubleColumn(
+                this.description.rename(newName), this.size, this.data, this.missing);
+        result.parsingExceptionCount = this.parsingExceptionCount;
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import net.openhft.hashing.LongHashFunction;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.*;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+/**
+ * A column of time durations stored outside of the heap.
+ */
+@SuppressWarnings("EmptyMethod")
+public class OffHeapDurationColumn extends OffHeapDoubleColumn implements IDurationColumn {
+    static final long serialVersionUID = 1;
+
+    OffHeapDurationColumn(ColumnDescription description, int size,
+                          ByteBuffer data, @Nullable ByteBuffer missing) {
+        super(description, size, data, missing);
+        this.checkKind(ContentsKind.Duration);
+    }
+
+    static OffHeapDurationColumn copy(IColumn column, ColumnStorage.Tier tier) {
+        OffHeapDurationColumn result = new OffHeapDurationColumn(column.getDescription(),
+                column.sizeInRows(), copyDoubles(column, tier), copyMissing(column, tier));
+        result.parsingExceptionCount = column.getParsingExceptionCount();
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public Duration getDuration(final int rowIndex) {
+        double d = this.getDouble(rowIndex);
+        return Converters.toDuration(d);
+    }
+
+    @Override
+    public double asDouble(int rowIndex) {
+        return this.getDouble(rowIndex);
+    }
+
+    @Nullable
+    @Override
+    public String asString(int rowIndex) {
+        if (this.isMissing(rowIndex))
+            return null;
+        Duration dt = this.getDuration(rowIndex);
+        assert (dt != null);
+        return dt.toString();
+    }
+
+    @Override
+    public IndexComparator getComparator() {
+        return super.getComparator();
+    }
+
+    @Override
+    public long hashCode64(int rowIndex, LongHashFunction hash) {
+        return super.hashCode64(rowIndex, hash);
+    }
+
+    @Override
+    public IColumn convertKind(
+            ContentsKind kind, String newColName, IMembershipSet set) {
+        return IDurationColumn.super.convertKind(kind, newColName, set);
+    }
+
+    @Override
+    public IColumn rename(String newName) {
+        OffHeapDurationColumn result = new OffHeapDurationColumn(
+                this.description.rename(newName), this.size, this.data, this.missing);
+        result.parsingExceptionCount = this.parsingExceptionCount;
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IIntColumn;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * A column of integers stored outside of the heap.
+ */
+public class OffHeapIntColumn extends OffHeapColumn implements IIntColumn {
+    static final long serialVersionUID = 1;
+
+    OffHeapIntColumn(ColumnDescription description, int size,
+                     ByteBuffer data, @Nullable ByteBuffer missing) {
+        super(description, size, data, missing);
+        this.checkKind(ContentsKind.Integer);
+    }
+
+    static OffHeapIntColumn copy(IColumn column, ColumnStorage.Tier tier) {
+        int size = column.sizeInRows();
+        ByteBuffer data = ColumnStorage.allocate((long)size << 2, tier);
+        for (int i = 0; i < size; i++)
+            if (!column.isMissing(i))
+                data.putInt(i << 2, column.getInt(i));
+        OffHeapIntColumn result = new OffHeapIntColumn(
+                column.getDescription(), size, data, copyMissing(column, tier));
+        result.parsingExceptionCount = column.getParsingExceptionCount();
+        return result;
+    }
+
+    @Override
+    public int getInt(final int rowIndex) {
+        return this.data.getInt(rowIndex << 2);
+    }
+
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          final double[] values, final boolean[] missing) {
+        this.getMissing(rows, count, missing);
+        for (int i = 0; i < count; i++)
+            values[i] = this.data.getInt(rows[i] << 2);
+    }
+
+    @Override
+    public IColumn rename(String newName) {
+        OffHeapIntColumn result = new OffHeapIntColumn(
+                this.description.rename(newName), this.size, this.data, this.missing);
+        result.parsingExceptionCount = this.parsingExceptionCount;
+        return result;
+    }
+}
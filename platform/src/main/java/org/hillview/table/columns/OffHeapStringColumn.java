@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A dictionary-encoded column of strings whose codes are stored outside of the heap.
+ * The codes use one or two bytes per row, depending on the size of the dictionary;
+ * the dictionary itself is kept on the heap.
+ */
+public class OffHeapStringColumn extends OffHeapColumn implements IDictionaryColumn {
+    static final long serialVersionUID = 1;
+
+    /**
+     * The value of each code.
+     */
+    private final String[] dictionary;
+    /**
+     * True if each code uses a single byte; otherwise codes use two bytes.
+     */
+    private final boolean byteCodes;
+    private transient Object2IntOpenHashMap<String> codes;
+    /**
+     * Ids of the values in the shared dictionary; computed on demand.
+     */
+    @Nullable
+    private transient volatile int[] sharedIds;
+
+    private OffHeapStringColumn(ColumnDescription description, int size,
+                                ByteBuffer data, @Nullable ByteBuffer missing,
+                                String[] dictionary, boolean byteCodes) {
+        super(description, size, data, missing);
+        if (!description.kind.isString())
+            throw new IllegalArgumentException("Unexpected column kind " + description.kind);
+        this.dictionary = dictionary;
+        this.byteCodes = byteCodes;
+        this.codes = this.computeCodes();
+    }
+
+    /**
+     * Create a column over existing buffers, e.g., regions of a mapped file.
+     * @param data        Codes of the rows; one byte per row if the dictionary has at
+     *                    most 256 values, two bytes otherwise.
+     * @param missing     Bitmap of missing values, in 64-bit words; null if no value is missing.
+     * @param dictionary  Value of each code.
+     */
+    public static OffHeapStringColumn create(ColumnDescription description, int size,
+                                             ByteBuffer data, @Nullable ByteBuffer missing,
+                                             String[] dictionary) {
+        if (dictionary.length > 1 << 16)
+            throw new RuntimeException("Dictionary too large: " + dictionary.length);
+        return new OffHeapStringColumn(
+                description, size, data, missing, dictionary, dictionary.length <= 1 << 8);
+    }
+
+    static OffHeapStringColumn copy(IDictionaryColumn column, ColumnStorage.Tier tier) {
+        int size = column.sizeInRows();
+        String[] dictionary = new String[column.getDictionarySize()];
+        for (int i = 0; i < dictionary.length; i++)
+            dictionary[i] = column.decode(i);
+        if (dictionary.length > 1 << 16)
+            throw new RuntimeException("Dictionary too large: " + dictionary.length);
+        boolean byteCodes = dictionary.length <= 1 << 8;
+        ByteBuffer data = ColumnStorage.allocate(byteCodes ? size : (long)size << 1, tier);
+        for (int i = 0; i < size; i++) {
+            int code = column.getCode(i);
+            if (byteCodes)
+                data.put(i, (byte)code);
+            else
+                data.putShort(i << 1, (short)code);
+        }
+        OffHeapStringColumn result = new OffHeapStringColumn(column.getDescription(), size,
+                data, copyMissing(column, tier), dictionary, byteCodes);
+        result.parsingExceptionCount = column.getParsingExceptionCount();
+        return result;
+    }
+
+    private Object2IntOpenHashMap<String> computeCodes() {
+        Object2IntOpenHashMap<String> result =
+                new Object2IntOpenHashMap<String>(this.dictionary.length);
+        result.defaultReturnValue(-1);
+        for (int i = 0; i < this.dictionary.length; i++)
+            result.put(this.dictionary[i], i);
+        return result;
+    }
+
+    @Override
+    public boolean isDictionaryEncoded() {
+        return true;
+    }
+
+    @Override
+    public int getDictionarySize() {
+        return this.dictionary.length;
+    }
+
+    @Override
+    public int getCode(final int rowIndex) {
+        if (this.byteCodes)
+            return Byte.toUnsignedInt(this.data.get(rowIndex));
+        return Short.toUnsignedInt(this.data.getShort(rowIndex << 1));
+    }
+
+    @Nullable
+    @Override
+    public String decode(final int code) {
+        return this.dictionary[code];
+    }
+
+    @Override
+    public int lookup(@Nullable final String value) {
+        return this.codes.getInt(value);
+    }
+
+    @Nullable
+    @Override
+    public int[] getSharedIds() {
+        if (!this.isDictionaryEncoded())
+            return null;
+        int[] result = this.sharedIds;
+        if (result == null) {
+            result = SharedDictionary.instance.intern(this);
+            this.sharedIds = result;
+        }
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public String getString(final int rowIndex) {
+        return this.dictionary[this.getCode(rowIndex)];
+    }
+
+    @Override
+    public void getStrings(final int[] rows, final int count, final String[] values) {
+        for (int i = 0; i < count; i++)
+            values[i] = this.dictionary[this.getCode(rows[i])];
+    }
+
+    @Override
+    public IColumn rename(String newName) {
+        OffHeapStringColumn result = new OffHeapStringColumn(this.description.rename(newName),
+                this.size, this.data, this.missing, this.dictionary, this.byteCodes);
+        result.parsingExceptionCount = this.parsingExceptionCount;
+        return result;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.codes = this.computeCodes();
+    }
+}
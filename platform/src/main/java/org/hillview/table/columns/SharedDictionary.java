@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.columns;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.utils.HillviewLogger;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * A dictionary of strings shared by all the dictionary-encoded columns of a worker.
+ * Each distinct value is stored once and has a small integer id; columns keep their
+ * compact codes, but they map them to shared ids.  Computations that process many
+ * columns or partitions, such as histograms, can memoize results per shared id.
+ * Ids are never reused; the dictionary stops growing when it reaches its capacity.
+ */
+public final class SharedDictionary {
+    /**
+     * The dictionary used by the columns of this process.
+     */
+    public static final SharedDictionary instance = new SharedDictionary(1 << 20);
+
+    private static final int LogPageSize = 12;
+    private static final int PageSize = 1 << LogPageSize;
+    private static final int PageMask = PageSize - 1;
+
+    /**
+     * Ids of the values; guarded by this.
+     */
+    private final Object2IntOpenHashMap<String> ids;
+    /**
+     * The values, stored in pages which are never reallocated.
+     */
+    private volatile String[][] pages;
+    private volatile int size;
+    private int capacity;
+
+    public SharedDictionary(int capacity) {
+        this.ids = new Object2IntOpenHashMap<String>();
+        this.ids.defaultReturnValue(-1);
+        this.pages = new String[0][];
+        this.size = 0;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Change the maximum number of values.  Values already in the dictionary are kept.
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a value to the dictionary.
+     * @return  The id of the value, or -1 if the dictionary is full.
+     */
+    public synchronized int intern(String value) {
+        int id = this.ids.getInt(value);
+        if (id >= 0)
+            return id;
+        id = this.size;
+        if (id >= this.capacity) {
+            if (id == this.capacity)
+                HillviewLogger.instance.info("Shared dictionary is full", "{0}", id);
+            return -1;
+        }
+        int page = id >>> LogPageSize;
+        String[][] pages = this.pages;
+        if (page == pages.length) {
+            pages = Arrays.copyOf(pages, page + 1);
+            pages[page] = new String[PageSize];
+        }
+        pages[page][id & PageMask] = value;
+        this.ids.put(value, id);
+        this.pages = pages;
+        this.size = id + 1;
+        return id;
+    }
+
+    /**
+     * The value with the specified id.
+     */
+    public String get(int id) {
+        return this.pages[id >>> LogPageSize][id & PageMask];
+    }
+
+    /**
+     * The id of a value, or -1 if the value is not in the dictionary.
+     */
+    public synchronized int lookup(@Nullable String value) {
+        return this.ids.getInt(value);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Intern all the values of a dictionary-encoded column.
+     * @return The shared id of each code; -1 for null values and values that
+     *         could not be added.
+     */
+    public int[] intern(IDictionaryColumn column) {
+        int[] result = new int[column.getDictionarySize()];
+        for (int i = 0; i < result.length; i++) {
+            String value = column.decode(i);
+            result[i] = value == null ? -1 : this.intern(value);
+        }
+        return result;
+    }
+
+    /**
+     * Memoizes an integer function of the values of the dictionary, indexed by id.
+     * It is safe to use it from multiple threads: an entry written concurrently
+     * with a resize may be lost, and then it is just computed again.
+     */
+    public static final class Memo {
+        public static final int UNKNOWN = Integer.MIN_VALUE;
+
+        private volatile int[] values = new int[0];
+
+        /**
+         * The memoized value for an id, or UNKNOWN.
+         */
+        public int get(int id) {
+            int[] v = this.values;
+            return id < v.length ? v[id] : UNKNOWN;
+        }
+
+        public void put(int id, int value) {
+            int[] v = this.values;
+            if (id >= v.length)
+                v = this.grow(id);
+            v[id] = value;
+        }
+
+        private synchronized int[] grow(int id) {
+            int[] v = this.values;
+            if (id < v.length)
+                return v;
+            int[] result = Arrays.copyOf(v, Math.max(id + 1, v.length * 2));
+            Arrays.fill(result, v.length, result.length, UNKNOWN);
+            this.values = result;
+            return result;
+        }
+    }
+}
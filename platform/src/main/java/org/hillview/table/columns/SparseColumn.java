@@ -17,47 +17,314 @@
 
 package org.hillview.table.columns;
 
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import net.openhft.hashing.LongHashFunction;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.api.*;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.utils.Converters;
 
 import javax.annotation.Nullable;
+import java.io.Serializable;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 
+/**
+ * A column that only stores values for a few rows; all other rows are missing.
+ * Values are stored unboxed, depending on the column kind: integers as ints,
+ * doubles, dates and durations as doubles, and strings as objects.
+ * While the column is being filled the values are kept in a hash map; when the
+ * column is sealed they are moved to parallel arrays sorted by row index, which
+ * are searched using binary search.  Batch accesses in increasing row order (e.g., in
+ * the order of a membership set) are served by a linear scan.
+ * The sorted arrays are immutable and published through a single volatile field, so
+ * a sealed column can be read without synchronization; the maps are only used
+ * while holding the lock on the column.
+ */
 public class SparseColumn extends BaseColumn
         implements IMutableColumn, IStringColumn, IDoubleColumn, IIntColumn, IDateColumn, IDurationColumn {
     static final long serialVersionUID = 1;
 
-    private final Int2ObjectMap<Object> data;
+    /**
+     * The values of a sealed column: the sorted indexes of the rows that have values,
+     * and the values of these rows in the same order.  Only the array for the kind
+     * of the column is used.
+     */
+    private static final class SortedValues implements Serializable {
+        static final long serialVersionUID = 1;
+
+        final int[] rows;
+        @Nullable
+        final int[] intValues;
+        @Nullable
+        final double[] doubleValues;
+        @Nullable
+        final String[] stringValues;
+
+        SortedValues(int[] rows, @Nullable int[] intValues,
+                     @Nullable double[] doubleValues, @Nullable String[] stringValues) {
+            this.rows = rows;
+            this.intValues = intValues;
+            this.doubleValues = doubleValues;
+            this.stringValues = stringValues;
+        }
+
+        /**
+         * Position of a row in the sorted arrays, or -1 if the row has no value.
+         * @param hint  Position where the search starts; callers that access rows in
+         *              increasing order pass the position of the last row found.
+         */
+        int find(int rowIndex, int hint) {
+            int[] sorted = this.rows;
+            if (hint < sorted.length && sorted[hint] == rowIndex)
+                return hint;
+            if (hint + 1 < sorted.length && sorted[hint + 1] == rowIndex)
+                return hint + 1;
+            int from = (hint < sorted.length && sorted[hint] < rowIndex) ? hint + 1 : 0;
+            int position = Arrays.binarySearch(sorted, from, sorted.length, rowIndex);
+            return position < 0 ? -1 : position;
+        }
+
+        int find(int rowIndex) {
+            return this.find(rowIndex, 0);
+        }
+    }
+
     private final int size;
 
+    /*
+     * Only the map for the kind of the column is used.
+     * The maps are null when the column is sealed.
+     */
+    @Nullable
+    private Int2IntOpenHashMap intMap;
+    @Nullable
+    private Int2DoubleOpenHashMap doubleMap;
+    @Nullable
+    private Int2ObjectOpenHashMap<String> stringMap;
+
+    /**
+     * The values of the column if it is sealed, null otherwise.
+     */
+    @Nullable
+    private volatile SortedValues sorted;
+
     public SparseColumn(ColumnDescription desc, int size) {
         super(desc);
         this.size = size;
-        this.data = new Int2ObjectOpenHashMap<Object>();
+        this.allocateMap();
     }
 
-    private SparseColumn(ColumnDescription description, Int2ObjectMap<Object> data, int size) {
+    private SparseColumn(ColumnDescription description, SparseColumn other) {
         super(description);
-        this.data = data;
-        this.size = size;
+        this.size = other.size;
+        synchronized (other) {
+            // The sorted values are immutable and can be shared; the maps are copied.
+            this.sorted = other.sorted;
+            if (other.intMap != null)
+                this.intMap = new Int2IntOpenHashMap(other.intMap);
+            if (other.doubleMap != null)
+                this.doubleMap = new Int2DoubleOpenHashMap(other.doubleMap);
+            if (other.stringMap != null)
+                this.stringMap = new Int2ObjectOpenHashMap<String>(other.stringMap);
+        }
+    }
+
+    private boolean storesInts() {
+        return this.description.kind == ContentsKind.Integer;
     }
 
+    private boolean storesDoubles() {
+        switch (this.description.kind) {
+            case Double:
+            case Date:
+            case Duration:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void allocateMap() {
+        if (this.storesInts())
+            this.intMap = new Int2IntOpenHashMap();
+        else if (this.storesDoubles())
+            this.doubleMap = new Int2DoubleOpenHashMap();
+        else
+            this.stringMap = new Int2ObjectOpenHashMap<String>();
+    }
+
+    private boolean isSealed() {
+        return this.sorted != null;
+    }
+
+    /**
+     * Move the values to sorted arrays.
+     */
     @Override
-    public boolean isLoaded() { return true; }
+    public synchronized IColumn seal() {
+        if (this.isSealed())
+            return this;
+        int[] rows;
+        int[] intValues = null;
+        double[] doubleValues = null;
+        String[] stringValues = null;
+        if (this.intMap != null) {
+            rows = this.intMap.keySet().toIntArray();
+            Arrays.sort(rows);
+            intValues = new int[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                intValues[i] = this.intMap.get(rows[i]);
+        } else if (this.doubleMap != null) {
+            rows = this.doubleMap.keySet().toIntArray();
+            Arrays.sort(rows);
+            doubleValues = new double[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                doubleValues[i] = this.doubleMap.get(rows[i]);
+        } else {
+            Int2ObjectOpenHashMap<String> map = Converters.checkNull(this.stringMap);
+            rows = map.keySet().toIntArray();
+            Arrays.sort(rows);
+            stringValues = new String[rows.length];
+            for (int i = 0; i < rows.length; i++)
+                stringValues[i] = map.get(rows[i]);
+        }
+        this.sorted = new SortedValues(rows, intValues, doubleValues, stringValues);
+        this.intMap = null;
+        this.doubleMap = null;
+        this.stringMap = null;
+        return this;
+    }
+
+    /**
+     * Move the values of a sealed column back to a map, so it can be changed.
+     * Must be called with the lock held.
+     */
+    private void unseal() {
+        SortedValues values = Converters.checkNull(this.sorted);
+        this.allocateMap();
+        for (int i = 0; i < values.rows.length; i++) {
+            if (this.intMap != null)
+                this.intMap.put(values.rows[i], Converters.checkNull(values.intValues)[i]);
+            else if (this.doubleMap != null)
+                this.doubleMap.put(values.rows[i], Converters.checkNull(values.doubleValues)[i]);
+            else
+                Converters.checkNull(this.stringMap).put(values.rows[i], Converters.checkNull(values.stringValues)[i]);
+        }
+        this.sorted = null;
+    }
 
     @Override
-    public IColumn seal() { return this; }
+    public boolean isLoaded() { return true; }
 
     @Override
     public int sizeInRows() {
         return this.size;
     }
 
+    @Override
+    public boolean isMissing(final int rowIndex) {
+        SortedValues values = this.sorted;
+        if (values == null) {
+            synchronized (this) {
+                values = this.sorted;
+                if (values == null) {
+                    if (this.intMap != null)
+                        return !this.intMap.containsKey(rowIndex);
+                    if (this.doubleMap != null)
+                        return !this.doubleMap.containsKey(rowIndex);
+                    return Converters.checkNull(this.stringMap).get(rowIndex) == null;
+                }
+            }
+        }
+        return values.find(rowIndex) < 0;
+    }
+
+    @Override
+    public int getInt(final int rowIndex) {
+        SortedValues values = this.sorted;
+        if (values == null) {
+            synchronized (this) {
+                values = this.sorted;
+                if (values == null)
+                    return Converters.checkNull(this.intMap).get(rowIndex);
+            }
+        }
+        int position = values.find(rowIndex);
+        assert position >= 0;
+        return Converters.checkNull(values.intValues)[position];
+    }
+
+    @Override
+    public double getDouble(final int rowIndex) {
+        SortedValues values = this.sorted;
+        if (values == null) {
+            synchronized (this) {
+                values = this.sorted;
+                if (values == null)
+                    return Converters.checkNull(this.doubleMap).get(rowIndex);
+            }
+        }
+        int position = values.find(rowIndex);
+        assert position >= 0;
+        return Converters.checkNull(values.doubleValues)[position];
+    }
+
+    @Nullable
+    @Override
+    public String getString(final int rowIndex) {
+        SortedValues values = this.sorted;
+        if (values == null) {
+            synchronized (this) {
+                values = this.sorted;
+                if (values == null)
+                    return Converters.checkNull(this.stringMap).get(rowIndex);
+            }
+        }
+        int position = values.find(rowIndex);
+        if (position < 0)
+            return null;
+        return Converters.checkNull(values.stringValues)[position];
+    }
+
+    @Nullable
+    @Override
+    public Instant getDate(final int rowIndex) {
+        if (this.isMissing(rowIndex))
+            return null;
+        return Converters.toDate(this.getDouble(rowIndex));
+    }
+
+    @Nullable
+    @Override
+    public Duration getDuration(final int rowIndex) {
+        if (this.isMissing(rowIndex))
+            return null;
+        return Converters.toDuration(this.getDouble(rowIndex));
+    }
+
+    @Nullable
+    @Override
+    public Object getObject(final int rowIndex) {
+        if (this.isMissing(rowIndex))
+            return null;
+        switch (this.description.kind) {
+            case Integer:
+                return this.getInt(rowIndex);
+            case Double:
+                return this.getDouble(rowIndex);
+            case Date:
+                return this.getDate(rowIndex);
+            case Duration:
+                return this.getDuration(rowIndex);
+            default:
+                return this.getString(rowIndex);
+        }
+    }
+
     @SuppressWarnings("ConstantConditions")
     @Override
     public double asDouble(int rowIndex) {
@@ -69,16 +336,41 @@ public class SparseColumn extends BaseColumn
             case Integer:
                 return this.getInt(rowIndex);
             case Date:
-                return Converters.toDouble(this.getDate(rowIndex));
             case Double:
-                return this.getDouble(rowIndex);
             case Duration:
-                return Converters.toDouble(this.getDuration(rowIndex));
+                return this.getDouble(rowIndex);
             default:
                 throw new RuntimeException("Unexpected kind " + this.description.kind);
         }
     }
 
+    @Override
+    public void asDoubles(final int[] rows, final int count,
+                          final double[] values, final boolean[] missing) {
+        SortedValues sortedValues = this.sorted;
+        if (sortedValues == null || this.description.kind.isString()) {
+            for (int i = 0; i < count; i++) {
+                int row = rows[i];
+                missing[i] = this.isMissing(row);
+                if (!missing[i])
+                    values[i] = this.asDouble(row);
+            }
+            return;
+        }
+        int hint = 0;
+        for (int i = 0; i < count; i++) {
+            int position = sortedValues.find(rows[i], hint);
+            missing[i] = position < 0;
+            if (missing[i])
+                continue;
+            hint = position;
+            if (sortedValues.intValues != null)
+                values[i] = sortedValues.intValues[position];
+            else
+                values[i] = Converters.checkNull(sortedValues.doubleValues)[position];
+        }
+    }
+
     @Nullable
     @Override
     public String asString(int rowIndex) {
@@ -116,8 +408,8 @@ public class SparseColumn extends BaseColumn
                 case Date:
                 case Double:
                 case Duration:
-                    return Double.compare(SparseColumn.this.asDouble(o1),
-                            SparseColumn.this.asDouble(o2));
+                    return Double.compare(SparseColumn.this.getDouble(o1),
+                            SparseColumn.this.getDouble(o2));
                 default:
                     throw new RuntimeException("Unexpected kind " +
                             SparseColumn.this.description.kind);
@@ -128,7 +420,7 @@ public class SparseColumn extends BaseColumn
 
     @Override
     public IColumn rename(String newName) {
-        return new SparseColumn(this.description.rename(newName), this.data, this.size);
+        return new SparseColumn(this.description.rename(newName), this);
     }
 
     @Override
@@ -144,70 +436,91 @@ public class SparseColumn extends BaseColumn
             case Date:
             case Double:
             case Duration:
-                return hash.hashLong(Double.doubleToRawLongBits(this.asDouble(rowIndex)));
+                return hash.hashLong(Double.doubleToRawLongBits(this.getDouble(rowIndex)));
             default:
                 throw new RuntimeException("Unexpected kind " + this.description.kind);
         }
     }
 
     @Override
-    public Object getObject(final int rowIndex) {
-        if (this.data.containsKey(rowIndex))
-            return this.data.get(rowIndex);
-        return null;
-    }
-
-    @Override
-    public boolean isMissing(final int rowIndex) {
-        return !this.data.containsKey(rowIndex);
+    public void hashCodes64(final RowBatch batch, final LongHashFunction hash, final long[] hashes) {
+        for (int i = 0; i < batch.count; i++) {
+            int row = batch.rows[i];
+            batch.missing[i] = this.isMissing(row);
+            if (!batch.missing[i])
+                hashes[i] = this.hashCode64(row, hash);
+        }
     }
 
-    public void set(final int rowIndex, @Nullable final Object value) {
+    public synchronized void set(final int rowIndex, @Nullable final Object value) {
         if (value == null) {
-            if (this.data.containsKey(rowIndex))
-                this.data.remove(rowIndex);
+            this.setMissing(rowIndex);
             return;
         }
-        this.data.put(rowIndex, value);
-    }
-
-    @Override
-    public void setMissing(final int rowIndex) {}
-
-    public void set(final int rowIndex, final double value) {
-        this.data.put(rowIndex, (Object)value);
-    }
-
-    @Override
-    public double getDouble(final int rowIndex) {
-        Object o = this.getObject(rowIndex);
-        assert o != null;
-        return (double)o;
+        switch (this.description.kind) {
+            case Integer:
+                this.set(rowIndex, ((Number)value).intValue());
+                break;
+            case Double:
+                this.set(rowIndex, ((Number)value).doubleValue());
+                break;
+            case Date:
+                this.set(rowIndex, value instanceof Instant ?
+                        Converters.toDouble((Instant)value) : ((Number)value).doubleValue());
+                break;
+            case Duration:
+                this.set(rowIndex, value instanceof Duration ?
+                        Converters.toDouble((Duration)value) : ((Number)value).doubleValue());
+                break;
+            default:
+                this.set(rowIndex, (String)value);
+                break;
+        }
     }
 
     @Override
-    public Instant getDate(final int rowIndex) {
-        Object o = this.getObject(rowIndex);
-        return (Instant)o;
+    public synchronized void set(final int rowIndex, @Nullable final String value) {
+        if (value == null) {
+            this.setMissing(rowIndex);
+            return;
+        }
+        if (this.isSealed())
+            this.unseal();
+        Converters.checkNull(this.stringMap).put(rowIndex, value);
     }
 
     @Override
-    public int getInt(final int rowIndex) {
-        Object o = this.getObject(rowIndex);
-        assert o != null;
-        return (int)o;
+    public synchronized void set(final int rowIndex, final int value) {
+        if (this.isSealed())
+            this.unseal();
+        if (this.intMap != null)
+            this.intMap.put(rowIndex, value);
+        else if (this.doubleMap != null)
+            this.doubleMap.put(rowIndex, value);
+        else
+            throw new RuntimeException("Cannot store an integer in a column of " + this.description.kind);
     }
 
     @Override
-    public Duration getDuration(final int rowIndex) {
-        Object o = this.getObject(rowIndex);
-        return (Duration)o;
+    public synchronized void set(final int rowIndex, final double value) {
+        if (this.isSealed())
+            this.unseal();
+        if (this.doubleMap != null)
+            this.doubleMap.put(rowIndex, value);
+        else
+            throw new RuntimeException("Cannot store a double in a column of " + this.description.kind);
     }
 
     @Override
-    public String getString(final int rowIndex) {
-        Object o = this.getObject(rowIndex);
-        return (String)o;
+    public synchronized void setMissing(final int rowIndex) {
+        if (this.isSealed())
+            this.unseal();
+        if (this.intMap != null)
+            this.intMap.remove(rowIndex);
+        else if (this.doubleMap != null)
+            this.doubleMap.remove(rowIndex);
+        else
+            Converters.checkNull(this.stringMap).remove(rowIndex);
     }
 
     @Override
@@ -27,7 +27,7 @@ import java.util.ArrayList;
 /**
  * A column of String values that can grow in size.
  */
-public class StringListColumn extends BaseListColumn implements IStringColumn {
+public class StringListColumn extends BaseListColumn implements IDictionaryColumn {
     static final long serialVersionUID = 1;
     /*
      * We use one of two representations for string columns:
@@ -120,7 +120,45 @@ public class StringListColumn extends BaseListColumn implements IStringColumn {
     }
 
     @Override
-    public IColumn seal() { return this; }
+    public boolean isDictionaryEncoded() {
+        return this.isSparse();
+    }
+
+    @Override
+    public int getDictionarySize() {
+        return this.encoding.size();
+    }
+
+    @Override
+    public int getCode(final int rowIndex) {
+        assert this.isSparse();
+        final int segmentId = rowIndex >> LogSegmentSize;
+        final int localIndex = rowIndex & SegmentMask;
+        if (segmentId < this.firstShortSegment)
+            return Byte.toUnsignedInt(this.byteSegments.get(segmentId)[localIndex]);
+        return Short.toUnsignedInt(
+                this.shortSegments.get(segmentId - this.firstShortSegment)[localIndex]);
+    }
+
+    @Nullable
+    @Override
+    public String decode(final int code) {
+        return this.encoding.decode(code);
+    }
+
+    @Override
+    public int lookup(@Nullable final String value) {
+        return this.encoding.lookup(value);
+    }
+
+    @Nullable
+    @Override
+    public int[] getSharedIds() {
+        return this.isSparse() ? this.encoding.getSharedIds() : null;
+    }
+
+    @Override
+    public IColumn seal() { return this.store(); }
 
     @Override
     void grow() {
@@ -136,8 +174,6 @@ public class StringListColumn extends BaseListColumn implements IStringColumn {
 
     @Override
     public void append(@Nullable String value) {
-        if (value != null)
-            value = value.intern();
         int segmentId = this.size >> LogSegmentSize;
         final int localIndex = this.size & SegmentMask;
 
@@ -169,7 +205,7 @@ public class StringListColumn extends BaseListColumn implements IStringColumn {
                         }
                     }
                     // Append the new value
-                    segments.get(segments.size() - 1)[localIndex] = value;
+                    segments.get(segments.size() - 1)[localIndex] = this.encoding.decode(encoding);
                     this.segments = segments;
                     this.shortSegments.clear();
                     this.byteSegments.clear();
@@ -200,6 +236,8 @@ public class StringListColumn extends BaseListColumn implements IStringColumn {
                 }
             }
         } else {
+            if (value != null)
+                value = value.intern();
             int segmentCount = this.segments.size();
             if (segmentCount == segmentId)
                 this.grow();
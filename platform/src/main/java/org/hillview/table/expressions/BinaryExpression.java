@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+
+/**
+ * Arithmetic, comparison and logical operators.  Missing operands produce a missing
+ * result, except for the logical operators: false && x is false and true || x is true.
+ */
+final class BinaryExpression extends Expression {
+    enum Operator {
+        Add("+"),
+        Subtract("-"),
+        Multiply("*"),
+        Divide("/"),
+        Modulo("%"),
+        Less("<"),
+        LessOrEqual("<="),
+        Greater(">"),
+        GreaterOrEqual(">="),
+        Equal("=="),
+        NotEqual("!="),
+        And("&&"),
+        Or("||");
+
+        final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        boolean isComparison() {
+            return this.ordinal() >= Less.ordinal() && this.ordinal() <= NotEqual.ordinal();
+        }
+
+        boolean isLogical() {
+            return this == And || this == Or;
+        }
+
+        @Nullable
+        static Operator fromSymbol(String symbol) {
+            for (Operator o : Operator.values())
+                if (o.symbol.equals(symbol))
+                    return o;
+            return null;
+        }
+    }
+
+    private final Operator operator;
+    private final Expression left;
+    private final Expression right;
+    @Nullable
+    private ValueBatch leftValues;
+    @Nullable
+    private ValueBatch rightValues;
+
+    private BinaryExpression(ExpressionType type, Operator operator, Expression left, Expression right) {
+        super(type, left, right);
+        this.operator = operator;
+        this.left = left;
+        this.right = right;
+    }
+
+    static BinaryExpression create(String symbol, Expression left, Expression right) {
+        Operator op = Converters.checkNull(Operator.fromSymbol(symbol));
+        ExpressionType type = resultType(op, left.type, right.type);
+        if (type == null)
+            throw new RuntimeException("Operator " + symbol + " cannot be applied to " +
+                    left.type + " and " + right.type);
+        return new BinaryExpression(type, op, left, right);
+    }
+
+    @Nullable
+    private static ExpressionType resultType(Operator op, ExpressionType left, ExpressionType right) {
+        final ExpressionType number = ExpressionType.Number;
+        final ExpressionType date = ExpressionType.Date;
+        if (op.isLogical())
+            return left == ExpressionType.Boolean && right == ExpressionType.Boolean ?
+                    ExpressionType.Boolean : null;
+        if (op.isComparison()) {
+            if (left != right)
+                return null;
+            if (left == ExpressionType.Boolean && op != Operator.Equal && op != Operator.NotEqual)
+                return null;
+            return ExpressionType.Boolean;
+        }
+        switch (op) {
+            case Add:
+                if (left == ExpressionType.String || right == ExpressionType.String)
+                    return ExpressionType.String;
+                if (left == number && right == number)
+                    return number;
+                if ((left == date && right == number) || (left == number && right == date))
+                    return date;
+                return null;
+            case Subtract:
+                if (left == number && right == number)
+                    return number;
+                if (left == date && right == number)
+                    return date;
+                if (left == date && right == date)
+                    return number;
+                return null;
+            default:
+                return left == number && right == number ? number : null;
+        }
+    }
+
+    private static boolean isKnownTrue(Expression e, int row) {
+        return !e.isMissing(row) && e.getBoolean(row);
+    }
+
+    private static boolean isKnownFalse(Expression e, int row) {
+        return !e.isMissing(row) && !e.getBoolean(row);
+    }
+
+    @Override
+    public boolean isMissing(int row) {
+        switch (this.operator) {
+            case And:
+                return (this.left.isMissing(row) || this.right.isMissing(row)) &&
+                        !isKnownFalse(this.left, row) && !isKnownFalse(this.right, row);
+            case Or:
+                return (this.left.isMissing(row) || this.right.isMissing(row)) &&
+                        !isKnownTrue(this.left, row) && !isKnownTrue(this.right, row);
+            default:
+                return this.left.isMissing(row) || this.right.isMissing(row);
+        }
+    }
+
+    private static double arithmetic(Operator op, double l, double r) {
+        switch (op) {
+            case Add:
+                return l + r;
+            case Subtract:
+                return l - r;
+            case Multiply:
+                return l * r;
+            case Divide:
+                return l / r;
+            case Modulo:
+                return l % r;
+            default:
+                throw new RuntimeException("Unexpected operator " + op);
+        }
+    }
+
+    private static boolean test(Operator op, int compare) {
+        switch (op) {
+            case Less:
+                return compare < 0;
+            case LessOrEqual:
+                return compare <= 0;
+            case Greater:
+                return compare > 0;
+            case GreaterOrEqual:
+                return compare >= 0;
+            case Equal:
+                return compare == 0;
+            case NotEqual:
+                return compare != 0;
+            default:
+                throw new RuntimeException("Unexpected operator " + op);
+        }
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return arithmetic(this.operator, this.left.getDouble(row), this.right.getDouble(row));
+    }
+
+    @Override
+    public String getString(int row) {
+        return this.left.asString(row) + this.right.asString(row);
+    }
+
+    @Override
+    public boolean getBoolean(int row) {
+        switch (this.operator) {
+            case And:
+                return isKnownTrue(this.left, row) && isKnownTrue(this.right, row);
+            case Or:
+                return isKnownTrue(this.left, row) || isKnownTrue(this.right, row);
+            default:
+                break;
+        }
+        int compare;
+        switch (this.left.type) {
+            case Number:
+            case Date:
+                compare = Double.compare(this.left.getDouble(row), this.right.getDouble(row));
+                break;
+            case String:
+                compare = this.left.getString(row).compareTo(this.right.getString(row));
+                break;
+            case Boolean:
+            default:
+                compare = Boolean.compare(this.left.getBoolean(row), this.right.getBoolean(row));
+                break;
+        }
+        return test(this.operator, compare);
+    }
+
+    /**
+     * Operations on numbers are evaluated on whole blocks: the operands are
+     * evaluated first, and then combined in a loop.
+     */
+    @Override
+    public void evaluate(int[] rows, int count, ValueBatch result) {
+        if (this.operator.isLogical()) {
+            this.evaluateLogical(rows, count, result);
+            return;
+        }
+        boolean numeric = this.left.type.isNumeric() && this.right.type.isNumeric() &&
+                this.type != ExpressionType.String;
+        if (!numeric) {
+            super.evaluate(rows, count, result);
+            return;
+        }
+        this.leftValues = ValueBatch.ensure(this.leftValues, this.left.type, count);
+        this.rightValues = ValueBatch.ensure(this.rightValues, this.right.type, count);
+        this.left.evaluate(rows, count, this.leftValues);
+        this.right.evaluate(rows, count, this.rightValues);
+        double[] l = Converters.checkNull(this.leftValues.doubles);
+        double[] r = Converters.checkNull(this.rightValues.doubles);
+        boolean[] lm = this.leftValues.missing;
+        boolean[] rm = this.rightValues.missing;
+        boolean[] missing = result.missing;
+        for (int i = 0; i < count; i++)
+            missing[i] = lm[i] || rm[i];
+        if (this.operator.isComparison()) {
+            boolean[] values = Converters.checkNull(result.booleans);
+            switch (this.operator) {
+                case Less:
+                    for (int i = 0; i < count; i++)
+                        values[i] = Double.compare(l[i], r[i]) < 0;
+                    break;
+                case Greater:
+                    for (int i = 0; i < count; i++)
+                        values[i] = Double.compare(l[i], r[i]) > 0;
+                    break;
+                default:
+                    for (int i = 0; i < count; i++)
+                        values[i] = test(this.operator, Double.compare(l[i], r[i]));
+                    break;
+            }
+        } else {
+            double[] values = Converters.checkNull(result.doubles);
+            switch (this.operator) {
+                case Add:
+                    for (int i = 0; i < count; i++)
+                        values[i] = l[i] + r[i];
+                    break;
+                case Subtract:
+                    for (int i = 0; i < count; i++)
+                        values[i] = l[i] - r[i];
+                    break;
+                case Multiply:
+                    for (int i = 0; i < count; i++)
+                        values[i] = l[i] * r[i];
+                    break;
+                default:
+                    for (int i = 0; i < count; i++)
+                        values[i] = arithmetic(this.operator, l[i], r[i]);
+                    break;
+            }
+        }
+    }
+
+    private void evaluateLogical(int[] rows, int count, ValueBatch result) {
+        this.leftValues = ValueBatch.ensure(this.leftValues, ExpressionType.Boolean, count);
+        this.rightValues = ValueBatch.ensure(this.rightValues, ExpressionType.Boolean, count);
+        this.left.evaluate(rows, count, this.leftValues);
+        this.right.evaluate(rows, count, this.rightValues);
+        boolean[] l = Converters.checkNull(this.leftValues.booleans);
+        boolean[] r = Converters.checkNull(this.rightValues.booleans);
+        boolean[] lm = this.leftValues.missing;
+        boolean[] rm = this.rightValues.missing;
+        boolean[] values = Converters.checkNull(result.booleans);
+        // For And the dominant value is false, for Or it is true.
+        boolean dominant = this.operator == Operator.Or;
+        for (int i = 0; i < count; i++) {
+            boolean leftDominant = !lm[i] && l[i] == dominant;
+            boolean rightDominant = !rm[i] && r[i] == dominant;
+            if (leftDominant || rightDominant) {
+                result.missing[i] = false;
+                values[i] = dominant;
+            } else {
+                result.missing[i] = lm[i] || rm[i];
+                values[i] = !dominant;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(" + this.left + " " + this.operator.symbol + " " + this.right + ")";
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.IColumn;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * An expression that reads the value of a column.
+ */
+final class ColumnExpression extends Expression {
+    final ColumnDescription description;
+    @Nullable
+    private IColumn column;
+
+    ColumnExpression(ColumnDescription description) {
+        super(ExpressionType.fromKind(description.kind));
+        this.description = description;
+    }
+
+    void bind(IColumn column) {
+        this.column = column;
+    }
+
+    private IColumn getColumn() {
+        if (this.column == null)
+            throw new RuntimeException("Expression is not bound to a table");
+        return this.column;
+    }
+
+    @Override
+    void collectColumns(List<ColumnExpression> columns) {
+        columns.add(this);
+    }
+
+    @Override
+    public boolean isMissing(int row) {
+        return this.getColumn().isMissing(row);
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return this.getColumn().asDouble(row);
+    }
+
+    @Override
+    public String getString(int row) {
+        return Converters.checkNull(this.getColumn().getString(row));
+    }
+
+    @Override
+    public void evaluate(int[] rows, int count, ValueBatch result) {
+        IColumn col = this.getColumn();
+        if (this.type.isNumeric()) {
+            col.asDoubles(rows, count, Converters.checkNull(result.doubles), result.missing);
+        } else {
+            String[] strings = Converters.checkNull(result.strings);
+            col.getStrings(rows, count, strings);
+            for (int i = 0; i < count; i++)
+                result.missing[i] = strings[i] == null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.description.name;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+/**
+ * The expression condition ? ifTrue : ifFalse.
+ */
+final class ConditionalExpression extends Expression {
+    private final Expression condition;
+    private final Expression ifTrue;
+    private final Expression ifFalse;
+
+    ConditionalExpression(Expression condition, Expression ifTrue, Expression ifFalse) {
+        super(ifTrue.type, condition, ifTrue, ifFalse);
+        if (condition.type != ExpressionType.Boolean)
+            throw new RuntimeException("Condition must be a Boolean, not " + condition.type);
+        if (ifTrue.type != ifFalse.type)
+            throw new RuntimeException("Both alternatives must have the same type: " +
+                    ifTrue.type + " and " + ifFalse.type);
+        this.condition = condition;
+        this.ifTrue = ifTrue;
+        this.ifFalse = ifFalse;
+    }
+
+    private Expression select(int row) {
+        return this.condition.getBoolean(row) ? this.ifTrue : this.ifFalse;
+    }
+
+    @Override
+    public boolean isMissing(int row) {
+        return this.condition.isMissing(row) || this.select(row).isMissing(row);
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return this.select(row).getDouble(row);
+    }
+
+    @Override
+    public String getString(int row) {
+        return this.select(row).getString(row);
+    }
+
+    @Override
+    public boolean getBoolean(int row) {
+        return this.select(row).getBoolean(row);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + this.condition + " ? " + this.ifTrue + " : " + this.ifFalse + ")";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+import java.util.Arrays;
+
+/**
+ * A literal value.
+ */
+final class ConstantExpression extends Expression {
+    private final double number;
+    private final String string;
+    private final boolean bool;
+
+    private ConstantExpression(ExpressionType type, double number, String string, boolean bool) {
+        super(type);
+        this.number = number;
+        this.string = string;
+        this.bool = bool;
+    }
+
+    static ConstantExpression number(double value) {
+        return new ConstantExpression(ExpressionType.Number, value, "", false);
+    }
+
+    static ConstantExpression string(String value) {
+        return new ConstantExpression(ExpressionType.String, 0, value, false);
+    }
+
+    static ConstantExpression bool(boolean value) {
+        return new ConstantExpression(ExpressionType.Boolean, 0, "", value);
+    }
+
+    @Override
+    public boolean isMissing(int row) {
+        return false;
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return this.number;
+    }
+
+    @Override
+    public String getString(int row) {
+        return this.string;
+    }
+
+    @Override
+    public boolean getBoolean(int row) {
+        return this.bool;
+    }
+
+    @Override
+    public void evaluate(int[] rows, int count, ValueBatch result) {
+        Arrays.fill(result.missing, 0, count, false);
+        if (result.doubles != null)
+            Arrays.fill(result.doubles, 0, count, this.number);
+        else if (result.strings != null)
+            Arrays.fill(result.strings, 0, count, this.string);
+        else if (result.booleans != null)
+            Arrays.fill(result.booleans, 0, count, this.bool);
+    }
+
+    @Override
+    public String toString() {
+        switch (this.type) {
+            case Number:
+                return formatNumber(this.number);
+            case String:
+                return "\"" + this.string + "\"";
+            default:
+                return Boolean.toString(this.bool);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.ITable;
+import org.hillview.utils.Converters;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A node of a compiled expression.  Expressions are produced by the ExpressionParser;
+ * they are type-checked when they are built, and they are evaluated by calling directly
+ * the accessors of the columns, without boxing the values.  Expressions can be evaluated
+ * one row at a time or on blocks of rows.  An expression must be bound to a table
+ * before it is evaluated; it is not thread-safe.
+ */
+public abstract class Expression {
+    public final ExpressionType type;
+    final Expression[] children;
+
+    Expression(ExpressionType type, Expression... children) {
+        this.type = type;
+        this.children = children;
+    }
+
+    /**
+     * True if the value of the expression for the specified row is missing.
+     */
+    public abstract boolean isMissing(int row);
+
+    /**
+     * The value of a Number or Date expression.  Only valid if the value is not missing.
+     */
+    public double getDouble(int row) {
+        throw new RuntimeException("Expression of type " + this.type + " does not produce a number");
+    }
+
+    /**
+     * The value of a String expression.  Only valid if the value is not missing.
+     */
+    public String getString(int row) {
+        throw new RuntimeException("Expression of type " + this.type + " does not produce a string");
+    }
+
+    /**
+     * The value of a Boolean expression.  Only valid if the value is not missing.
+     */
+    public boolean getBoolean(int row) {
+        throw new RuntimeException("Expression of type " + this.type + " does not produce a boolean");
+    }
+
+    /**
+     * Evaluates the expression for a block of rows.  Nodes that can compute
+     * a whole block faster than row by row override this method.
+     * @param rows    Indexes of the rows.
+     * @param count   Number of rows to evaluate from the rows array.
+     * @param result  Receives the values; it must have the type of this expression.
+     */
+    public void evaluate(int[] rows, int count, ValueBatch result) {
+        for (int i = 0; i < count; i++) {
+            int row = rows[i];
+            result.missing[i] = this.isMissing(row);
+            if (result.missing[i])
+                continue;
+            switch (this.type) {
+                case Number:
+                case Date:
+                    Converters.checkNull(result.doubles)[i] = this.getDouble(row);
+                    break;
+                case String:
+                    Converters.checkNull(result.strings)[i] = this.getString(row);
+                    break;
+                case Boolean:
+                    Converters.checkNull(result.booleans)[i] = this.getBoolean(row);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The value of the expression converted to a string; used for concatenation.
+     */
+    String asString(int row) {
+        switch (this.type) {
+            case Number:
+                return formatNumber(this.getDouble(row));
+            case Date:
+                return Converters.toString(Converters.toDate(this.getDouble(row)));
+            case String:
+                return this.getString(row);
+            case Boolean:
+            default:
+                return Boolean.toString(this.getBoolean(row));
+        }
+    }
+
+    /**
+     * Formats a number; integral values are written without a decimal point.
+     */
+    public static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return Long.toString((long)value);
+        return Double.toString(value);
+    }
+
+    void collectColumns(List<ColumnExpression> columns) {
+        for (Expression e : this.children)
+            e.collectColumns(columns);
+    }
+
+    /**
+     * Binds the expression to the columns of a table; loads the columns if necessary.
+     * @return This expression.
+     */
+    public Expression bind(ITable table) {
+        List<ColumnExpression> columns = new ArrayList<ColumnExpression>();
+        this.collectColumns(columns);
+        List<String> names = new ArrayList<String>();
+        for (ColumnExpression c : columns)
+            if (!names.contains(c.description.name))
+                names.add(c.description.name);
+        Map<String, IColumn> loaded = new HashMap<String, IColumn>();
+        for (IColumn col : table.getLoadedColumns(names))
+            loaded.put(col.getName(), col);
+        for (ColumnExpression c : columns)
+            c.bind(Converters.checkNull(loaded.get(c.description.name)));
+        return this;
+    }
+
+    /**
+     * Converts the value of a Date expression.
+     */
+    Instant getDate(int row) {
+        return Converters.toDate(this.getDouble(row));
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses and type-checks expressions.  The grammar is:
+ * <pre>
+ * expression  := or [ '?' expression ':' expression ]
+ * or          := and { '||' and }
+ * and         := comparison { '&amp;&amp;' comparison }
+ * comparison  := sum [ ('==' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;=') sum ]
+ * sum         := product { ('+' | '-') product }
+ * product     := unary { ('*' | '/' | '%') unary }
+ * unary       := ('-' | '!') unary | primary
+ * primary     := number | string | 'true' | 'false' | column | function '(' [ expression { ',' expression } ] ')'
+ *                | '(' expression ')'
+ * </pre>
+ * Strings are enclosed in single or double quotes.  Columns are referred to by name;
+ * names that are not identifiers are enclosed in backquotes, e.g. `Flight date`.
+ */
+public final class ExpressionParser {
+    private final String text;
+    /**
+     * Columns indexed by the names that are visible to the user.
+     */
+    private final Map<String, ColumnDescription> columns;
+    private int position;
+
+    private ExpressionParser(String text, Schema schema, @Nullable Map<String, String> renameMap) {
+        this.text = text;
+        this.position = 0;
+        this.columns = new HashMap<String, ColumnDescription>();
+        for (ColumnDescription cd : schema.getColumnDescriptions()) {
+            String name = cd.name;
+            if (renameMap != null && renameMap.containsKey(name))
+                name = renameMap.get(name);
+            this.columns.put(name, cd);
+        }
+    }
+
+    /**
+     * Parse an expression.
+     * @param text       Expression source.
+     * @param schema     Columns that the expression can refer to.
+     * @param renameMap  Map from the original column names to the names displayed,
+     *                   which are used in the expression.
+     * @return           An expression that must be bound to a table before being evaluated.
+     */
+    public static Expression parse(String text, Schema schema, @Nullable Map<String, String> renameMap) {
+        ExpressionParser parser = new ExpressionParser(text, schema, renameMap);
+        Expression result = parser.expression();
+        parser.skipSpaces();
+        if (parser.position < text.length())
+            throw parser.error("Unexpected text");
+        return result;
+    }
+
+    private RuntimeException error(String message) {
+        return new RuntimeException(message + " at position " + this.position +
+                " in expression " + this.text);
+    }
+
+    private void skipSpaces() {
+        while (this.position < this.text.length() &&
+                Character.isWhitespace(this.text.charAt(this.position)))
+            this.position++;
+    }
+
+    /**
+     * If the next token is the specified operator consume it.
+     */
+    private boolean accept(String operator) {
+        this.skipSpaces();
+        if (!this.text.startsWith(operator, this.position))
+            return false;
+        int end = this.position + operator.length();
+        // Do not accept a prefix of a longer operator, e.g. < from <=
+        if (operator.length() == 1 && "<>!".contains(operator) &&
+                end < this.text.length() && this.text.charAt(end) == '=')
+            return false;
+        this.position = end;
+        return true;
+    }
+
+    private void expect(String operator) {
+        if (!this.accept(operator))
+            throw this.error("Expected " + operator);
+    }
+
+    /**
+     * Wraps errors detected while building an expression with the current position.
+     */
+    private RuntimeException typeError(RuntimeException ex) {
+        return this.error(ex.getMessage());
+    }
+
+    private Expression expression() {
+        Expression condition = this.or();
+        if (!this.accept("?"))
+            return condition;
+        Expression ifTrue = this.expression();
+        this.expect(":");
+        Expression ifFalse = this.expression();
+        try {
+            return new ConditionalExpression(condition, ifTrue, ifFalse);
+        } catch (RuntimeException ex) {
+            throw this.typeError(ex);
+        }
+    }
+
+    private Expression binary(String operator, Expression left, Expression right) {
+        try {
+            return BinaryExpression.create(operator, left, right);
+        } catch (RuntimeException ex) {
+            throw this.typeError(ex);
+        }
+    }
+
+    private Expression or() {
+        Expression result = this.and();
+        while (this.accept("||"))
+            result = this.binary("||", result, this.and());
+        return result;
+    }
+
+    private Expression and() {
+        Expression result = this.comparison();
+        while (this.accept("&&"))
+            result = this.binary("&&", result, this.comparison());
+        return result;
+    }
+
+    private Expression comparison() {
+        Expression result = this.sum();
+        for (String op : new String[] { "==", "!=", "<=", ">=", "<", ">" })
+            if (this.accept(op))
+                return this.binary(op, result, this.sum());
+        return result;
+    }
+
+    private Expression sum() {
+        Expression result = this.product();
+        while (true) {
+            if (this.accept("+"))
+                result = this.binary("+", result, this.product());
+            else if (this.accept("-"))
+                result = this.binary("-", result, this.product());
+            else
+                return result;
+        }
+    }
+
+    private Expression product() {
+        Expression result = this.unary();
+        while (true) {
+            if (this.accept("*"))
+                result = this.binary("*", result, this.unary());
+            else if (this.accept("/"))
+                result = this.binary("/", result, this.unary());
+            else if (this.accept("%"))
+                result = this.binary("%", result, this.unary());
+            else
+                return result;
+        }
+    }
+
+    private Expression unary() {
+        for (String op : new String[] { "-", "!" }) {
+            if (this.accept(op)) {
+                Expression operand = this.unary();
+                try {
+                    return UnaryExpression.create(op, operand);
+                } catch (RuntimeException ex) {
+                    throw this.typeError(ex);
+                }
+            }
+        }
+        return this.primary();
+    }
+
+    private Expression primary() {
+        this.skipSpaces();
+        if (this.position >= this.text.length())
+            throw this.error("Unexpected end");
+        char c = this.text.charAt(this.position);
+        if (this.accept("(")) {
+            Expression result = this.expression();
+            this.expect(")");
+            return result;
+        }
+        if (Character.isDigit(c) || c == '.')
+            return ConstantExpression.number(this.number());
+        if (c == '"' || c == '\'')
+            return ConstantExpression.string(this.string(c));
+        if (c == '`') {
+            int end = this.text.indexOf('`', this.position + 1);
+            if (end < 0)
+                throw this.error("Unterminated column name");
+            String name = this.text.substring(this.position + 1, end);
+            this.position = end + 1;
+            return this.column(name);
+        }
+        if (Character.isJavaIdentifierStart(c)) {
+            int start = this.position;
+            while (this.position < this.text.length() &&
+                    Character.isJavaIdentifierPart(this.text.charAt(this.position)))
+                this.position++;
+            String name = this.text.substring(start, this.position);
+            if (this.accept("("))
+                return this.function(name);
+            if (name.equals("true") || name.equals("false"))
+                return ConstantExpression.bool(name.equals("true"));
+            return this.column(name);
+        }
+        throw this.error("Unexpected character " + c);
+    }
+
+    private Expression column(String name) {
+        ColumnDescription cd = this.columns.get(name);
+        if (cd == null)
+            throw this.error("Unknown column " + name);
+        try {
+            return new ColumnExpression(cd);
+        } catch (RuntimeException ex) {
+            throw this.typeError(ex);
+        }
+    }
+
+    private Expression function(String name) {
+        List<Expression> args = new ArrayList<Expression>();
+        if (!this.accept(")")) {
+            do {
+                args.add(this.expression());
+            } while (this.accept(","));
+            this.expect(")");
+        }
+        try {
+            return FunctionExpression.create(name, args);
+        } catch (RuntimeException ex) {
+            throw this.typeError(ex);
+        }
+    }
+
+    private double number() {
+        int start = this.position;
+        while (this.position < this.text.length()) {
+            char c = this.text.charAt(this.position);
+            if (Character.isDigit(c) || c == '.') {
+                this.position++;
+            } else if ((c == 'e' || c == 'E') && this.position > start) {
+                this.position++;
+                if (this.position < this.text.length() &&
+                        (this.text.charAt(this.position) == '-' || this.text.charAt(this.position) == '+'))
+                    this.position++;
+            } else {
+                break;
+            }
+        }
+        try {
+            return Double.parseDouble(this.text.substring(start, this.position));
+        } catch (NumberFormatException ex) {
+            this.position = start;
+            throw this.error("Invalid number");
+        }
+    }
+
+    private String string(char quote) {
+        StringBuilder builder = new StringBuilder();
+        this.position++;
+        while (this.position < this.text.length()) {
+            char c = this.text.charAt(this.position++);
+            if (c == quote)
+                return builder.toString();
+            if (c == '\\' && this.position < this.text.length())
+                c = this.text.charAt(this.position++);
+            builder.append(c);
+        }
+        throw this.error("Unterminated string");
+    }
+}
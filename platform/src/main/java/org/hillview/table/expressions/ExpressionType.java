@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+import org.hillview.table.api.ContentsKind;
+
+/**
+ * The types of the values computed by expressions.  Dates are represented
+ * as doubles, like in Converters.toDouble; durations are numbers of milliseconds.
+ */
+public enum ExpressionType {
+    Number,
+    String,
+    Boolean,
+    Date;
+
+    /**
+     * The type used in expressions for the values of a column.
+     */
+    public static ExpressionType fromKind(ContentsKind kind) {
+        switch (kind) {
+            case Integer:
+            case Double:
+            case Duration:
+                return Number;
+            case Date:
+                return Date;
+            case String:
+            case Json:
+                return String;
+            case None:
+            default:
+                throw new RuntimeException("Columns of kind " + kind + " cannot be used in expressions");
+        }
+    }
+
+    /**
+     * True if values of this type are represented as doubles.
+     */
+    public boolean isNumeric() {
+        return this == Number || this == Date;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+import javax.annotation.Nullable;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Calls to the built-in functions.  The result is missing if any argument
+ * is missing, except for isMissing.
+ */
+final class FunctionExpression extends Expression {
+    private static final ExpressionType N = ExpressionType.Number;
+    private static final ExpressionType S = ExpressionType.String;
+    private static final ExpressionType B = ExpressionType.Boolean;
+    private static final ExpressionType D = ExpressionType.Date;
+
+    enum Function {
+        Abs("abs", N, N),
+        Floor("floor", N, N),
+        Ceil("ceil", N, N),
+        Round("round", N, N),
+        Sqrt("sqrt", N, N),
+        Log("log", N, N),
+        Exp("exp", N, N),
+        Pow("pow", N, N, N),
+        Min("min", N, N, N),
+        Max("max", N, N, N),
+        Length("length", N, S),
+        IndexOf("indexOf", N, S, S),
+        Lower("lower", S, S),
+        Upper("upper", S, S),
+        Trim("trim", S, S),
+        Substring("substring", S, S, N),
+        SubstringLength("substring", S, S, N, N),
+        Contains("contains", B, S, S),
+        StartsWith("startsWith", B, S, S),
+        EndsWith("endsWith", B, S, S),
+        ToNumber("toNumber", N, S),
+        // The argument types of the following functions are checked separately.
+        ToString("toString", S),
+        IsMissing("isMissing", B),
+        Year("year", N, D),
+        Month("month", N, D),
+        Day("day", N, D),
+        Hour("hour", N, D),
+        Minute("minute", N, D),
+        Second("second", N, D),
+        DayOfWeek("dayOfWeek", N, D);
+
+        final String name;
+        final ExpressionType result;
+        final ExpressionType[] arguments;
+
+        Function(String name, ExpressionType result, ExpressionType... arguments) {
+            this.name = name;
+            this.result = result;
+            this.arguments = arguments;
+        }
+
+        boolean anyArgument() {
+            return this == ToString || this == IsMissing;
+        }
+
+        boolean matches(List<Expression> args) {
+            if (this.anyArgument())
+                return args.size() == 1;
+            if (args.size() != this.arguments.length)
+                return false;
+            for (int i = 0; i < args.size(); i++)
+                if (args.get(i).type != this.arguments[i])
+                    return false;
+            return true;
+        }
+    }
+
+    private final Function function;
+    private final Expression[] args;
+
+    private FunctionExpression(Function function, Expression[] args) {
+        super(function.result, args);
+        this.function = function;
+        this.args = args;
+    }
+
+    static FunctionExpression create(String name, List<Expression> args) {
+        boolean found = false;
+        for (Function f : Function.values()) {
+            if (!f.name.equals(name))
+                continue;
+            found = true;
+            if (f.matches(args))
+                return new FunctionExpression(f, args.toArray(new Expression[0]));
+        }
+        if (!found)
+            throw new RuntimeException("Unknown function " + name);
+        StringBuilder types = new StringBuilder();
+        for (Expression e : args) {
+            if (types.length() > 0)
+                types.append(", ");
+            types.append(e.type);
+        }
+        throw new RuntimeException("Function " + name + " cannot be applied to (" + types + ")");
+    }
+
+    @Nullable
+    private static Double parseNumber(String s) {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isMissing(int row) {
+        if (this.function == Function.IsMissing)
+            return false;
+        for (Expression e : this.args)
+            if (e.isMissing(row))
+                return true;
+        if (this.function == Function.ToNumber)
+            return parseNumber(this.args[0].getString(row)) == null;
+        return false;
+    }
+
+    private ZonedDateTime getLocalDate(int row) {
+        return this.args[0].getDate(row).atZone(ZoneId.systemDefault());
+    }
+
+    private static int clamp(double index, int length) {
+        return (int)Math.max(0, Math.min(length, index));
+    }
+
+    @Override
+    public double getDouble(int row) {
+        switch (this.function) {
+            case Abs:
+                return Math.abs(this.args[0].getDouble(row));
+            case Floor:
+                return Math.floor(this.args[0].getDouble(row));
+            case Ceil:
+                return Math.ceil(this.args[0].getDouble(row));
+            case Round:
+                return Math.round(this.args[0].getDouble(row));
+            case Sqrt:
+                return Math.sqrt(this.args[0].getDouble(row));
+            case Log:
+                return Math.log(this.args[0].getDouble(row));
+            case Exp:
+                return Math.exp(this.args[0].getDouble(row));
+            case Pow:
+                return Math.pow(this.args[0].getDouble(row), this.args[1].getDouble(row));
+            case Min:
+                return Math.min(this.args[0].getDouble(row), this.args[1].getDouble(row));
+            case Max:
+                return Math.max(this.args[0].getDouble(row), this.args[1].getDouble(row));
+            case Length:
+                return this.args[0].getString(row).length();
+            case IndexOf:
+                return this.args[0].getString(row).indexOf(this.args[1].getString(row));
+            case ToNumber:
+                //noinspection ConstantConditions
+                return parseNumber(this.args[0].getString(row));
+            case Year:
+                return this.getLocalDate(row).getYear();
+            case Month:
+                return this.getLocalDate(row).getMonthValue();
+            case Day:
+                return this.getLocalDate(row).getDayOfMonth();
+            case Hour:
+                return this.getLocalDate(row).getHour();
+            case Minute:
+                return this.getLocalDate(row).getMinute();
+            case Second:
+                return this.getLocalDate(row).getSecond();
+            case DayOfWeek:
+                return this.getLocalDate(row).getDayOfWeek().getValue();
+            default:
+                return super.getDouble(row);
+        }
+    }
+
+    @Override
+    public String getString(int row) {
+        switch (this.function) {
+            case Lower:
+                return this.args[0].getString(row).toLowerCase();
+            case Upper:
+                return this.args[0].getString(row).toUpperCase();
+            case Trim:
+                return this.args[0].getString(row).trim();
+            case Substring: {
+                String s = this.args[0].getString(row);
+                return s.substring(clamp(this.args[1].getDouble(row), s.length()));
+            }
+            case SubstringLength: {
+                String s = this.args[0].getString(row);
+                int start = clamp(this.args[1].getDouble(row), s.length());
+                int end = clamp(start + this.args[2].getDouble(row), s.length());
+                return s.substring(start, Math.max(start, end));
+            }
+            case ToString:
+                return this.args[0].asString(row);
+            default:
+                return super.getString(row);
+        }
+    }
+
+    @Override
+    public boolean getBoolean(int row) {
+        switch (this.function) {
+            case Contains:
+                return this.args[0].getString(row).contains(this.args[1].getString(row));
+            case StartsWith:
+                return this.args[0].getString(row).startsWith(this.args[1].getString(row));
+            case EndsWith:
+                return this.args[0].getString(row).endsWith(this.args[1].getString(row));
+            case IsMissing:
+                return this.args[0].isMissing(row);
+            default:
+                return super.getBoolean(row);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(this.function.name);
+        builder.append("(");
+        for (int i = 0; i < this.args.length; i++) {
+            if (i > 0)
+                builder.append(", ");
+            builder.append(this.args[i]);
+        }
+        return builder.append(")").toString();
+    }
+}
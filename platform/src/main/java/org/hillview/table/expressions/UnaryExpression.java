@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+/**
+ * Arithmetic negation or logical not.
+ */
+final class UnaryExpression extends Expression {
+    private final Expression operand;
+
+    private UnaryExpression(ExpressionType type, Expression operand) {
+        super(type, operand);
+        this.operand = operand;
+    }
+
+    static UnaryExpression create(String operator, Expression operand) {
+        ExpressionType expected = operator.equals("-") ? ExpressionType.Number : ExpressionType.Boolean;
+        if (operand.type != expected)
+            throw new RuntimeException("Operator " + operator + " cannot be applied to " + operand.type);
+        return new UnaryExpression(expected, operand);
+    }
+
+    @Override
+    public boolean isMissing(int row) {
+        return this.operand.isMissing(row);
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return -this.operand.getDouble(row);
+    }
+
+    @Override
+    public boolean getBoolean(int row) {
+        return !this.operand.getBoolean(row);
+    }
+
+    @Override
+    public String toString() {
+        return (this.type == ExpressionType.Number ? "-" : "!") + this.operand;
+    }
+}
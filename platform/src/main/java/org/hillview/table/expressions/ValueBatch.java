@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.expressions;
+
+import javax.annotation.Nullable;
+
+/**
+ * Holds the values computed by an expression for a block of rows.
+ * Only the array that corresponds to the type of the expression is allocated.
+ */
+public final class ValueBatch {
+    public final ExpressionType type;
+    /**
+     * Values of Number and Date expressions.
+     */
+    @Nullable
+    public final double[] doubles;
+    @Nullable
+    public final String[] strings;
+    @Nullable
+    public final boolean[] booleans;
+    /**
+     * True for each row where the value is missing; the other
+     * arrays are unspecified for these rows.
+     */
+    public final boolean[] missing;
+
+    public ValueBatch(ExpressionType type, int capacity) {
+        this.type = type;
+        this.doubles = type.isNumeric() ? new double[capacity] : null;
+        this.strings = type == ExpressionType.String ? new String[capacity] : null;
+        this.booleans = type == ExpressionType.Boolean ? new boolean[capacity] : null;
+        this.missing = new boolean[capacity];
+    }
+
+    public int capacity() {
+        return this.missing.length;
+    }
+
+    /**
+     * Returns a batch that can hold values of the specified type for count rows;
+     * reuses the existing batch if possible.
+     */
+    static ValueBatch ensure(@Nullable ValueBatch batch, ExpressionType type, int count) {
+        if (batch == null || batch.capacity() < count)
+            return new ValueBatch(type, count);
+        return batch;
+    }
+}
@@ -17,6 +17,7 @@
 
 package org.hillview.table.filters;
 
+import org.hillview.table.BlockStatistics;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.api.*;
 import org.hillview.utils.Converters;
@@ -62,6 +63,82 @@ public class ComparisonFilterDescription implements ITableFilterDescription {
         return new ComparisonFilter(table);
     }
 
+    @Override
+    public String getStatisticsColumn() {
+        return this.column.name;
+    }
+
+    /**
+     * Only blocks without missing values are decided, because the
+     * result for missing values depends on the column kind.
+     */
+    @Nullable
+    @Override
+    public Boolean testBlock(BlockStatistics statistics) {
+        if (!statistics.isComplete() || statistics.rowCount == 0)
+            return null;
+        // Comparison of the value with the smallest and largest value in the block.
+        int compareLow, compareHigh;
+        if (this.column.kind.isString()) {
+            if (this.stringValue == null ||
+                    statistics.minString == null || statistics.maxString == null)
+                return null;
+            compareLow = Integer.signum(this.stringValue.compareTo(statistics.minString));
+            compareHigh = Integer.signum(this.stringValue.compareTo(statistics.maxString));
+        } else {
+            if (this.doubleValue == null)
+                return null;
+            double value = this.doubleValue;
+            if (this.column.kind == ContentsKind.Integer)
+                value = Utilities.toInt(this.doubleValue);
+            if (Double.isNaN(value) || Double.isNaN(statistics.min) || Double.isNaN(statistics.max))
+                return null;
+            compareLow = value < statistics.min ? -1 : (value > statistics.min ? 1 : 0);
+            compareHigh = value < statistics.max ? -1 : (value > statistics.max ? 1 : 0);
+        }
+
+        // The value is to the left of the comparison.
+        switch (this.comparison) {
+            case "==":
+            case "!=": {
+                Boolean equal = null;
+                if (compareLow < 0 || compareHigh > 0)
+                    equal = false;
+                else if (compareLow == 0 && compareHigh == 0)
+                    equal = true;
+                if (equal == null)
+                    return null;
+                return this.comparison.equals("==") ? equal : !equal;
+            }
+            case ">":
+                if (compareHigh > 0)
+                    return true;
+                if (compareLow <= 0)
+                    return false;
+                return null;
+            case "<":
+                if (compareLow < 0)
+                    return true;
+                if (compareHigh >= 0)
+                    return false;
+                return null;
+            case "<=":
+                if (compareLow <= 0)
+                    return true;
+                if (compareHigh > 0)
+                    return false;
+                return null;
+            case ">=":
+                if (compareHigh >= 0)
+                    return true;
+                if (compareLow < 0)
+                    return false;
+                return null;
+            default:
+                return null;
+        }
+    }
+
     /**
      * This filter maps a given Table to a Table that only contains the given value in the
      * specified column.
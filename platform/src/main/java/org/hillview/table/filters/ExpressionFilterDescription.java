@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.filters;
+
+import org.hillview.table.Schema;
+import org.hillview.table.api.ITable;
+import org.hillview.table.api.ITableFilter;
+import org.hillview.table.api.ITableFilterDescription;
+import org.hillview.table.expressions.Expression;
+import org.hillview.table.expressions.ExpressionParser;
+import org.hillview.table.expressions.ExpressionType;
+import org.hillview.table.expressions.ValueBatch;
+import org.hillview.utils.Converters;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * A filter described by a Boolean expression over the columns of a table.
+ * Rows where the expression is missing are rejected.
+ */
+public class ExpressionFilterDescription implements ITableFilterDescription {
+    static final long serialVersionUID = 1;
+
+    private final String expression;
+    private final Schema schema;
+    @Nullable
+    private final Map<String, String> renameMap;
+
+    /**
+     * Make a filter that accepts the rows where an expression is true.
+     * @param expression  Expression, in the syntax of the ExpressionParser.
+     * @param schema      Columns that the expression may refer to.
+     * @param renameMap   Map that shows how columns were renamed in the UI.
+     */
+    public ExpressionFilterDescription(
+            String expression, Schema schema, @Nullable Map<String, String> renameMap) {
+        this.expression = expression;
+        this.schema = schema;
+        this.renameMap = renameMap;
+        // Report errors early
+        this.parse();
+    }
+
+    private Expression parse() {
+        Expression result = ExpressionParser.parse(this.expression, this.schema, this.renameMap);
+        if (result.type != ExpressionType.Boolean)
+            throw new RuntimeException("Filter expression must produce a Boolean value, not " + result.type);
+        return result;
+    }
+
+    class ExpressionFilter implements ITableFilter {
+        private final Expression compiled;
+        @Nullable
+        private ValueBatch values;
+
+        ExpressionFilter(ITable table) {
+            this.compiled = ExpressionFilterDescription.this.parse().bind(table);
+        }
+
+        @Override
+        public boolean test(int rowIndex) {
+            return !this.compiled.isMissing(rowIndex) && this.compiled.getBoolean(rowIndex);
+        }
+
+        @Override
+        public void test(int[] rows, int count, boolean[] result) {
+            if (this.values == null || this.values.capacity() < count)
+                this.values = new ValueBatch(ExpressionType.Boolean, count);
+            this.compiled.evaluate(rows, count, this.values);
+            boolean[] booleans = Converters.checkNull(this.values.booleans);
+            for (int i = 0; i < count; i++)
+                result[i] = !this.values.missing[i] && booleans[i];
+        }
+
+        @Override
+        public String toString() {
+            return this.compiled.toString();
+        }
+    }
+
+    @Override
+    public ITableFilter getFilter(ITable table) {
+        return new ExpressionFilter(table);
+    }
+
+    @Override
+    public String toString() {
+        return this.expression;
+    }
+}
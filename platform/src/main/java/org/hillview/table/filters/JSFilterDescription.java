@@ -66,6 +66,8 @@ public class JSFilterDescription implements ITableFilterDescription {
                         JSFilterDescription.this.renameMap);
                 ScriptEngineManager factory = new ScriptEngineManager();
                 ScriptEngine engine = factory.getEngineByName("nashorn");
+                if (engine == null)
+                    throw new RuntimeException("JavaScript is not available in this JVM; use an expression instead");
                 // Compiles the JS function
                 engine.eval(JSFilterDescription.this.jsCode);
                 this.invocable = (Invocable) engine;
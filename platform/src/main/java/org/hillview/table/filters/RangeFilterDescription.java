@@ -17,6 +17,7 @@
 
 package org.hillview.table.filters;
 
+import org.hillview.table.BlockStatistics;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.api.*;
 import org.hillview.table.columns.ColumnQuantization;
@@ -48,6 +49,44 @@ public class RangeFilterDescription implements ITableFilterDescription {
             return new DoubleRangeFilter(col);
     }
 
+    @Override
+    public String getStatisticsColumn() {
+        return this.cd.name;
+    }
+
+    @Nullable
+    @Override
+    public Boolean testBlock(BlockStatistics statistics) {
+        boolean result;
+        if (statistics.presentCount == 0) {
+            // Missing values are never in the range.
+            result = false;
+        } else if (this.cd.kind.isString()) {
+            String low = statistics.minString;
+            String high = statistics.maxString;
+            if (low == null || high == null)
+                return null;
+            if (high.compareTo(this.minString) < 0 || low.compareTo(this.maxString) > 0)
+                result = false;
+            else if (statistics.isComplete() &&
+                    low.compareTo(this.minString) >= 0 && high.compareTo(this.maxString) <= 0)
+                result = true;
+            else
+                return null;
+        } else {
+            if (statistics.max < this.min || statistics.min > this.max)
+                result = false;
+            else if (statistics.isComplete() &&
+                    statistics.min >= this.min && statistics.max <= this.max)
+                result = true;
+            else
+                return null;
+        }
+        if (this.complement)
+            result = !result;
+        return result;
+    }
+
     public class DoubleRangeFilter implements ITableFilter {
         final IColumn column;
 
@@ -113,26 +152,50 @@ public class RangeFilterDescription implements ITableFilterDescription {
 
     public class StringRangeFilter implements ITableFilter {
         final IColumn column;
+        /**
+         * If the column is dictionary-encoded, the result of the test for each code:
+         * 0 if not yet computed, 1 for false, 2 for true.  Each distinct value is
+         * compared with the bounds only once.
+         */
+        @Nullable
+        final byte[] codeResults;
 
         StringRangeFilter(IColumn column) {
             this.column = column;
+            if (column instanceof IDictionaryColumn &&
+                    ((IDictionaryColumn)column).isDictionaryEncoded())
+                this.codeResults = new byte[((IDictionaryColumn)column).getDictionarySize()];
+            else
+                this.codeResults = null;
         }
 
-        public boolean test(int rowIndex) {
+        boolean inRange(@Nullable String s) {
             RangeFilterDescription desc = RangeFilterDescription.this;
-            boolean result;
-            if (this.column.isMissing(rowIndex))
-                result = false;
-            else {
-                String s = this.column.getString(rowIndex);
-                assert s != null;
-                result = (s.compareTo(desc.minString) >= 0) && (s.compareTo(desc.maxString) <= 0);
-            }
+            boolean result = s != null &&
+                    (s.compareTo(desc.minString) >= 0) && (s.compareTo(desc.maxString) <= 0);
             if (desc.complement)
                 result = !result;
             return result;
         }
 
+        public boolean test(int rowIndex) {
+            if (this.codeResults != null) {
+                IDictionaryColumn dict = (IDictionaryColumn)this.column;
+                int code = dict.getCode(rowIndex);
+                byte cached = this.codeResults[code];
+                if (cached == 0) {
+                    cached = this.inRange(dict.decode(code)) ? (byte)2 : (byte)1;
+                    this.codeResults[code] = cached;
+                }
+                return cached == 2;
+            }
+            if (this.column.isMissing(rowIndex))
+                return this.inRange(null);
+            String s = this.column.getString(rowIndex);
+            assert s != null;
+            return this.inRange(s);
+        }
+
         public String toString() {
             return "Rangefilter[" + RangeFilterDescription.this.minString + "," +
                     RangeFilterDescription.this.maxString + "]";
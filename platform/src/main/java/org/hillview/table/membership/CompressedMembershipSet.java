@@ -0,0 +1,784 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.table.membership;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IMutableMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ISampledRowIterator;
+import org.hillview.utils.Randomness;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compressed membership set, organized like a Roaring bitmap.
+ * The row indexes are split into chunks of 2^16 consecutive rows; the
+ * members of each chunk are stored in a container whose representation
+ * depends on their number and layout: a sorted array of offsets, a bitmap,
+ * or a list of runs.  This uses little memory for sets of any density, and
+ * set operations between two compressed sets work one container at a time.
+ * Once sealed the set is immutable, so sets derived from it may share containers.
+ */
+public class CompressedMembershipSet implements IMembershipSet, IMutableMembershipSet {
+    private static final int chunkBits = 16;
+    private static final int chunkSize = 1 << chunkBits;
+    private static final int chunkMask = chunkSize - 1;
+    /**
+     * Number of 64-bit words in a bitmap container.
+     */
+    private static final int bitmapWords = chunkSize / 64;
+    /**
+     * An array container with more elements would use more space than a bitmap.
+     */
+    private static final int maxArraySize = 4096;
+    private final static double samplingThreshold = 0.05;
+    private final static double samplingSizeMinimum = 100; // if size is smaller than this no need to sample
+
+    private final int max;
+    /**
+     * Containers indexed by chunk number; null for empty chunks.
+     */
+    private Container[] containers;
+    private int size;
+    private boolean sealed;
+    /**
+     * prefix[i] is the number of members in all chunks before chunk i.
+     * Computed when needed for sampling.
+     */
+    @Nullable
+    private int[] prefix;
+
+    public CompressedMembershipSet(int max) {
+        this.max = max;
+        this.containers = new Container[(max + chunkSize - 1) >>> chunkBits];
+        this.size = 0;
+        this.sealed = false;
+    }
+
+    /**
+     * Creates a sealed set from a list of containers.
+     */
+    private CompressedMembershipSet(int max, Container[] containers) {
+        this.max = max;
+        this.containers = containers;
+        this.size = 0;
+        for (Container c : containers)
+            if (c != null)
+                this.size += c.cardinality();
+        this.sealed = true;
+    }
+
+    @Override
+    public int getMax() {
+        return this.max;
+    }
+
+    @Override
+    public boolean isMember(int rowIndex) {
+        int chunk = rowIndex >>> chunkBits;
+        if (chunk >= this.containers.length)
+            return false;
+        Container c = this.containers[chunk];
+        return c != null && c.contains(rowIndex & chunkMask);
+    }
+
+    @Override
+    public void add(int index) {
+        if (this.sealed)
+            throw new RuntimeException("Adding to a sealed membership set");
+        int chunk = index >>> chunkBits;
+        if (chunk >= this.containers.length)
+            this.containers = Arrays.copyOf(this.containers, chunk + 1);
+        Container c = this.containers[chunk];
+        if (c == null)
+            c = new ArrayContainer(4);
+        int before = c.cardinality();
+        c = c.add(index & chunkMask);
+        this.containers[chunk] = c;
+        this.size += c.cardinality() - before;
+    }
+
+    /**
+     * Converts each container to its most compact representation.
+     */
+    @Override
+    public IMembershipSet seal() {
+        if (this.sealed)
+            return this;
+        for (int i = 0; i < this.containers.length; i++) {
+            Container c = this.containers[i];
+            if (c != null)
+                this.containers[i] = fromWords(c.toWords());
+        }
+        this.sealed = true;
+        return this;
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        return new CompressedIterator(this.containers);
+    }
+
+    @Override
+    public IMembershipSet intersection(IMembershipSet other) {
+        if (!(other instanceof CompressedMembershipSet))
+            return IMembershipSet.super.intersection(other);
+        CompressedMembershipSet o = (CompressedMembershipSet)other;
+        Container[] result = new Container[Math.min(this.containers.length, o.containers.length)];
+        for (int i = 0; i < result.length; i++) {
+            Container a = this.containers[i];
+            Container b = o.containers[i];
+            if (a == null || b == null)
+                continue;
+            if (a instanceof ArrayContainer)
+                result[i] = ((ArrayContainer)a).filter(b, true);
+            else if (b instanceof ArrayContainer)
+                result[i] = ((ArrayContainer)b).filter(a, true);
+            else {
+                long[] words = a.toWords();
+                long[] bw = b.getWords();
+                for (int w = 0; w < bitmapWords; w++)
+                    words[w] &= bw[w];
+                result[i] = fromWords(words);
+            }
+        }
+        return new CompressedMembershipSet(this.max, result);
+    }
+
+    @Override
+    public IMembershipSet union(IMembershipSet other) {
+        if (!(other instanceof CompressedMembershipSet))
+            return IMembershipSet.super.union(other);
+        CompressedMembershipSet o = (CompressedMembershipSet)other;
+        Container[] result = new Container[Math.max(this.containers.length, o.containers.length)];
+        for (int i = 0; i < result.length; i++) {
+            Container a = i < this.containers.length ? this.containers[i] : null;
+            Container b = i < o.containers.length ? o.containers[i] : null;
+            if (a == null)
+                result[i] = b;
+            else if (b == null)
+                result[i] = a;
+            else {
+                long[] words = a.toWords();
+                long[] bw = b.getWords();
+                for (int w = 0; w < bitmapWords; w++)
+                    words[w] |= bw[w];
+                result[i] = fromWords(words);
+            }
+        }
+        return new CompressedMembershipSet(Math.max(this.max, o.max), result);
+    }
+
+    @Override
+    public IMembershipSet setMinus(IMembershipSet other) {
+        if (!(other instanceof CompressedMembershipSet))
+            return IMembershipSet.super.setMinus(other);
+        CompressedMembershipSet o = (CompressedMembershipSet)other;
+        Container[] result = new Container[this.containers.length];
+        for (int i = 0; i < result.length; i++) {
+            Container a = this.containers[i];
+            Container b = i < o.containers.length ? o.containers[i] : null;
+            if (a == null || b == null)
+                result[i] = a;
+            else if (a instanceof ArrayContainer)
+                result[i] = ((ArrayContainer)a).filter(b, false);
+            else {
+                long[] words = a.toWords();
+                long[] bw = b.getWords();
+                for (int w = 0; w < bitmapWords; w++)
+                    words[w] &= ~bw[w];
+                result[i] = fromWords(words);
+            }
+        }
+        return new CompressedMembershipSet(this.max, result);
+    }
+
+    /**
+     * Splits on container boundaries; the parts share the containers of this set.
+     */
+    @Override
+    public List<IMembershipSet> splitRanges(final int parts) {
+        if (!this.sealed)
+            return IMembershipSet.super.splitRanges(parts);
+        final int[] p = this.getPrefix();
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(parts);
+        int first = 0;
+        for (int i = 0; i < parts; i++) {
+            long target = (long)this.size * (i + 1) / parts;
+            int last = first;
+            if (i == parts - 1)
+                last = this.containers.length;
+            else
+                while (last < this.containers.length && p[last] < target)
+                    last++;
+            Container[] part = new Container[last];
+            System.arraycopy(this.containers, first, part, first, last - first);
+            result.add(new CompressedMembershipSet(this.max, part));
+            first = last;
+        }
+        return result;
+    }
+
+    private int[] getPrefix() {
+        if (this.prefix == null || !this.sealed) {
+            int[] p = new int[this.containers.length + 1];
+            for (int i = 0; i < this.containers.length; i++) {
+                Container c = this.containers[i];
+                p[i + 1] = p[i] + (c == null ? 0 : c.cardinality());
+            }
+            this.prefix = p;
+        }
+        return this.prefix;
+    }
+
+    /**
+     * @param rank  A number between 0 and size - 1.
+     * @return The member with the specified rank.
+     */
+    private int select(int rank) {
+        int[] p = this.getPrefix();
+        // Invariant: p[lo] <= rank < p[hi]
+        int lo = 0;
+        int hi = this.containers.length;
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (p[mid] <= rank)
+                lo = mid;
+            else
+                hi = mid;
+        }
+        return (lo << chunkBits) + this.containers[lo].select(rank - p[lo]);
+    }
+
+    /**
+     * Samples k distinct members.  Small samples pick random ranks;
+     * large samples use reservoir sampling.
+     */
+    @Override
+    public IMembershipSet sample(int k, long seed) {
+        if (k >= this.size)
+            return this;
+        final Randomness psg = new Randomness(seed);
+        IMutableMembershipSet mms = MembershipSetFactory.create(this.getMax(), k);
+        if (k > 0.7 * this.size) {
+            int[] chosen = new int[k];
+            CompressedIterator ri = new CompressedIterator(this.containers);
+            int count = ri.getNextRows(chosen);
+            assert count == k;
+            int row = ri.getNextRow();
+            for (int i = k; row >= 0; ++i) {
+                int j = psg.nextInt(i + 1);
+                if (j < k)
+                    chosen[j] = row;
+                row = ri.getNextRow();
+            }
+            for (int c : chosen)
+                mms.add(c);
+        } else {
+            while (mms.size() < k)
+                mms.add(this.select(psg.nextInt(this.size)));
+        }
+        return mms.seal();
+    }
+
+    @Override
+    public ISampledRowIterator getIteratorOverSample(double rate, long seed, boolean enforceRate) {
+        double usedRate;
+        if (enforceRate)
+            usedRate = rate;
+        else
+            usedRate = this.computeRate(rate);
+        if (usedRate >= 1)
+            return new NoSampleRowIterator(this.getIterator());
+        return new CompressedSampledRowIterator(this.containers, usedRate, seed);
+    }
+
+    private double computeRate(double rate) {
+        if (this.size < CompressedMembershipSet.samplingSizeMinimum)
+            return 1;
+        if (rate <= CompressedMembershipSet.samplingThreshold)
+            return rate;
+        else return 1;
+    }
+
+    /**
+     * Builds the most compact container holding the bits set in a bitmap.
+     * @param words  A bitmap with bitmapWords words; may be reused by the result.
+     * @return       A container, or null if the bitmap is empty.
+     */
+    @Nullable
+    private static Container fromWords(long[] words) {
+        int cardinality = 0;
+        int runs = 0;
+        long previous = 0;
+        for (long w : words) {
+            cardinality += Long.bitCount(w);
+            // A run starts at each bit set whose predecessor is not set.
+            runs += Long.bitCount(w & ~((w << 1) | (previous >>> 63)));
+            previous = w;
+        }
+        if (cardinality == 0)
+            return null;
+        long runBytes = 4L * runs;
+        long arrayBytes = cardinality <= maxArraySize ? 2L * cardinality : Long.MAX_VALUE;
+        long bitmapBytes = 8L * bitmapWords;
+        if (runBytes < arrayBytes && runBytes < bitmapBytes) {
+            char[] starts = new char[runs];
+            char[] lasts = new char[runs];
+            int run = -1;
+            int last = -2;
+            for (int i = 0; i < bitmapWords; i++) {
+                long w = words[i];
+                while (w != 0) {
+                    int value = (i << 6) + Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                    if (value != last + 1)
+                        starts[++run] = (char)value;
+                    lasts[run] = (char)value;
+                    last = value;
+                }
+            }
+            return new RunContainer(starts, lasts, cardinality);
+        }
+        if (arrayBytes < bitmapBytes) {
+            char[] values = new char[cardinality];
+            fill(words, values);
+            return new ArrayContainer(values, cardinality);
+        }
+        return new BitmapContainer(words, cardinality);
+    }
+
+    private static void fill(long[] words, char[] values) {
+        int count = 0;
+        for (int i = 0; i < bitmapWords; i++) {
+            long w = words[i];
+            while (w != 0) {
+                values[count++] = (char)((i << 6) + Long.numberOfTrailingZeros(w));
+                w &= w - 1;
+            }
+        }
+    }
+
+    /**
+     * The members of a chunk, as offsets between 0 and chunkSize - 1.
+     */
+    private static abstract class Container {
+        abstract int cardinality();
+        abstract boolean contains(int value);
+        /**
+         * Adds a value.
+         * @return The container holding the result; it may be a different one.
+         */
+        abstract Container add(int value);
+        /**
+         * @return The member with the specified rank.
+         */
+        abstract int select(int rank);
+        /**
+         * Writes the members in increasing order.
+         * @return The number of members written.
+         */
+        abstract int fill(int[] values);
+        /**
+         * Sets the bits of the members in a bitmap.
+         */
+        abstract void setBits(long[] words);
+
+        /**
+         * @return A new bitmap with the members of this container.
+         */
+        long[] toWords() {
+            long[] words = new long[bitmapWords];
+            this.setBits(words);
+            return words;
+        }
+
+        /**
+         * @return A bitmap with the members of this container, which must not be modified.
+         */
+        long[] getWords() {
+            return this.toWords();
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer(int capacity) {
+            this(new char[capacity], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        boolean contains(int value) {
+            return Arrays.binarySearch(this.values, 0, this.cardinality, (char)value) >= 0;
+        }
+
+        @Override
+        Container add(int value) {
+            int index;
+            // Rows are usually added in increasing order.
+            if (this.cardinality == 0 || this.values[this.cardinality - 1] < value)
+                index = -this.cardinality - 1;
+            else
+                index = Arrays.binarySearch(this.values, 0, this.cardinality, (char)value);
+            if (index >= 0)
+                return this;
+            if (this.cardinality == maxArraySize)
+                return new BitmapContainer(this.toWords(), this.cardinality).add(value);
+            index = -index - 1;
+            if (this.cardinality == this.values.length)
+                this.values = Arrays.copyOf(this.values, Math.min(2 * this.values.length, maxArraySize));
+            System.arraycopy(this.values, index, this.values, index + 1, this.cardinality - index);
+            this.values[index] = (char)value;
+            this.cardinality++;
+            return this;
+        }
+
+        @Override
+        int select(int rank) {
+            return this.values[rank];
+        }
+
+        @Override
+        int fill(int[] values) {
+            for (int i = 0; i < this.cardinality; i++)
+                values[i] = this.values[i];
+            return this.cardinality;
+        }
+
+        @Override
+        void setBits(long[] words) {
+            for (int i = 0; i < this.cardinality; i++) {
+                char v = this.values[i];
+                words[v >>> 6] |= 1L << v;
+            }
+        }
+
+        /**
+         * Keeps the members that are (or are not) in another container.
+         * @param other  Container to test membership.
+         * @param keep   If true keep the members of other, else keep the non-members.
+         */
+        @Nullable
+        Container filter(Container other, boolean keep) {
+            char[] result = new char[this.cardinality];
+            int count = 0;
+            for (int i = 0; i < this.cardinality; i++) {
+                char v = this.values[i];
+                if (other.contains(v) == keep)
+                    result[count++] = v;
+            }
+            if (count == 0)
+                return null;
+            return new ArrayContainer(Arrays.copyOf(result, count), count);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        boolean contains(int value) {
+            return (this.words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(int value) {
+            long bit = 1L << value;
+            if ((this.words[value >>> 6] & bit) == 0) {
+                this.words[value >>> 6] |= bit;
+                this.cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        int select(int rank) {
+            for (int i = 0; i < bitmapWords; i++) {
+                long w = this.words[i];
+                int count = Long.bitCount(w);
+                if (rank < count) {
+                    for (; rank > 0; rank--)
+                        w &= w - 1;
+                    return (i << 6) + Long.numberOfTrailingZeros(w);
+                }
+                rank -= count;
+            }
+            throw new RuntimeException("Rank out of bounds");
+        }
+
+        @Override
+        int fill(int[] values) {
+            int count = 0;
+            for (int i = 0; i < bitmapWords; i++) {
+                long w = this.words[i];
+                while (w != 0) {
+                    values[count++] = (i << 6) + Long.numberOfTrailingZeros(w);
+                    w &= w - 1;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        void setBits(long[] words) {
+            for (int i = 0; i < bitmapWords; i++)
+                words[i] |= this.words[i];
+        }
+
+        @Override
+        long[] getWords() {
+            return this.words;
+        }
+    }
+
+    /**
+     * Stores the members as a list of runs of consecutive values.
+     */
+    private static final class RunContainer extends Container {
+        private final char[] starts;
+        /**
+         * Last value of each run (inclusive).
+         */
+        private final char[] lasts;
+        private final int cardinality;
+
+        RunContainer(char[] starts, char[] lasts, int cardinality) {
+            this.starts = starts;
+            this.lasts = lasts;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        boolean contains(int value) {
+            int index = Arrays.binarySearch(this.starts, (char)value);
+            if (index >= 0)
+                return true;
+            index = -index - 2;
+            return index >= 0 && value <= this.lasts[index];
+        }
+
+        @Override
+        Container add(int value) {
+            if (this.contains(value))
+                return this;
+            return new BitmapContainer(this.toWords(), this.cardinality).add(value);
+        }
+
+        @Override
+        int select(int rank) {
+            for (int i = 0; i < this.starts.length; i++) {
+                int length = this.lasts[i] - this.starts[i] + 1;
+                if (rank < length)
+                    return this.starts[i] + rank;
+                rank -= length;
+            }
+            throw new RuntimeException("Rank out of bounds");
+        }
+
+        @Override
+        int fill(int[] values) {
+            int count = 0;
+            for (int i = 0; i < this.starts.length; i++)
+                for (int v = this.starts[i]; v <= this.lasts[i]; v++)
+                    values[count++] = v;
+            return count;
+        }
+
+        @Override
+        void setBits(long[] words) {
+            for (int i = 0; i < this.starts.length; i++) {
+                int start = this.starts[i];
+                int end = this.lasts[i] + 1;
+                int firstWord = start >>> 6;
+                int lastWord = (end - 1) >>> 6;
+                long firstMask = -1L << start;
+                long lastMask = -1L >>> -end;
+                if (firstWord == lastWord) {
+                    words[firstWord] |= firstMask & lastMask;
+                } else {
+                    words[firstWord] |= firstMask;
+                    for (int w = firstWord + 1; w < lastWord; w++)
+                        words[w] = -1L;
+                    words[lastWord] |= lastMask;
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates over the members one container at a time; the members of the
+     * current container are decoded in a buffer.  This class is not thread-safe.
+     */
+    private static class CompressedIterator implements IRowIterator {
+        private final Container[] containers;
+        /**
+         * Index of the next container.
+         */
+        private int chunk;
+        private int[] values;
+        private int count;
+        private int position;
+        private int base;
+
+        CompressedIterator(Container[] containers) {
+            this.containers = containers;
+            this.chunk = 0;
+            this.values = new int[0];
+            this.count = 0;
+            this.position = 0;
+        }
+
+        private void load(Container c) {
+            int cardinality = c.cardinality();
+            if (this.values.length < cardinality)
+                this.values = new int[cardinality];
+            this.count = c.fill(this.values);
+            this.position = 0;
+            this.base = (this.chunk - 1) << chunkBits;
+        }
+
+        /**
+         * Loads the next non-empty container.
+         * @return False at the end of the iteration.
+         */
+        private boolean advance() {
+            while (this.chunk < this.containers.length) {
+                Container c = this.containers[this.chunk++];
+                if (c != null) {
+                    this.load(c);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public int getNextRow() {
+            if (this.position == this.count && !this.advance())
+                return -1;
+            return this.base + this.values[this.position++];
+        }
+
+        @Override
+        public int getNextRows(final int[] rows) {
+            int result = 0;
+            while (result < rows.length) {
+                if (this.position == this.count && !this.advance())
+                    break;
+                int n = Math.min(rows.length - result, this.count - this.position);
+                for (int i = 0; i < n; i++)
+                    rows[result + i] = this.base + this.values[this.position + i];
+                this.position += n;
+                result += n;
+            }
+            return result;
+        }
+
+        /**
+         * Skips some members and returns the next one.  Containers that are
+         * skipped entirely are not decoded.
+         * @param skip  Number of members to skip.
+         * @return      The next member, or -1 at the end of the iteration.
+         */
+        int skipAndGetNext(int skip) {
+            while (this.position + skip >= this.count) {
+                skip -= this.count - this.position;
+                this.position = this.count;
+                Container c = null;
+                while (this.chunk < this.containers.length) {
+                    c = this.containers[this.chunk++];
+                    if (c != null) {
+                        if (skip < c.cardinality())
+                            break;
+                        skip -= c.cardinality();
+                    }
+                    c = null;
+                }
+                if (c == null)
+                    return -1;
+                this.load(c);
+            }
+            this.position += skip;
+            return this.base + this.values[this.position++];
+        }
+    }
+
+    /**
+     * Iterates over a sample of the members: the distance between two sampled
+     * members follows a geometric distribution.  This class is not thread-safe.
+     */
+    private static class CompressedSampledRowIterator implements ISampledRowIterator {
+        private final CompressedIterator iterator;
+        private final Randomness prg;
+        private final double rate;
+
+        CompressedSampledRowIterator(Container[] containers, double rate, long seed) {
+            this.iterator = new CompressedIterator(containers);
+            this.prg = new Randomness(seed);
+            this.rate = rate;
+        }
+
+        @Override
+        public int getNextRow() {
+            return this.iterator.skipAndGetNext(this.prg.nextGeometric(this.rate) - 1);
+        }
+
+        @Override
+        public double rate() { return this.rate; }
+    }
+}
@@ -22,8 +22,12 @@ import org.hillview.table.api.IMutableMembershipSet;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ISampledRowIterator;
 import org.hillview.utils.Randomness;
+import org.hillview.utils.Utilities;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.List;
 
 /**
  * A dense membership set.
@@ -32,6 +36,11 @@ public class DenseMembershipSet implements IMembershipSet, IMutableMembershipSet
     private final BitSet membershipMap;
     private final int max;
     private int size;
+    /**
+     * Result of the last call to splitRanges.
+     */
+    @Nullable
+    private List<IMembershipSet> ranges;
     private final static double samplingThreshold = 0.05;
     private final static double samplingSizeMinimum = 100; // if size is smaller than this no need to sample
 
@@ -105,6 +114,15 @@ public class DenseMembershipSet implements IMembershipSet, IMutableMembershipSet
         this.size++;
     }
 
+    /**
+     * Adds all rows between start (inclusive) and end (exclusive).
+     */
+    void addRange(int start, int end) {
+        int before = this.membershipMap.cardinality();
+        this.membershipMap.set(start, end);
+        this.size += this.membershipMap.cardinality() - before;
+    }
+
     @Override
     public IMembershipSet seal() {
         return this;
@@ -123,6 +141,36 @@ public class DenseMembershipSet implements IMembershipSet, IMutableMembershipSet
         return new DenseMembershipIterator(this.membershipMap);
     }
 
+    @Override
+    public IRowIterator getIterator(int start, int end) {
+        return new DenseMembershipIterator(this.membershipMap, start, end);
+    }
+
+    /**
+     * The parts are views of this set, so they do not copy the bitmap.
+     * The result is cached, since a table may be split for each sketch.
+     */
+    @Override
+    public synchronized List<IMembershipSet> splitRanges(final int parts) {
+        if (this.ranges != null && this.ranges.size() == parts)
+            return this.ranges;
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(parts);
+        int start = 0;
+        // First member that is not in a part yet.
+        int next = this.membershipMap.nextSetBit(0);
+        for (int i = 0; i < parts; i++) {
+            int count = Utilities.toInt((long)this.size * (i + 1) / parts) -
+                    Utilities.toInt((long)this.size * i / parts);
+            for (int j = 0; j < count; j++)
+                next = this.membershipMap.nextSetBit(next + 1);
+            int end = (i == parts - 1 || next < 0) ? this.max : next;
+            result.add(new RangeMembershipSet(this, start, end, count));
+            start = end;
+        }
+        this.ranges = result;
+        return result;
+    }
+
     /**
      *
      * @param rate  Sampling rate.
@@ -186,15 +234,28 @@ public class DenseMembershipSet implements IMembershipSet, IMutableMembershipSet
     public static class DenseMembershipIterator implements IRowIterator {
         private final BitSet bits;
         private int current;
+        private final int end;
 
         DenseMembershipIterator(BitSet bits) {
+            this(bits, 0, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Iterates over the bits set between start (inclusive) and end (exclusive).
+         */
+        DenseMembershipIterator(BitSet bits, int start, int end) {
             this.bits = bits;
-            this.current = -1;
+            this.current = Math.max(start, 0) - 1;
+            this.end = end;
         }
 
         @Override
         public int getNextRow() {
+            if (this.current >= this.end)
+                return -1;
             this.current = this.bits.nextSetBit(this.current + 1);
+            if (this.current >= this.end)
+                return -1;
             return this.current;
         }
     }
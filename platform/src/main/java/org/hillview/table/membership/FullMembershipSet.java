@@ -24,6 +24,9 @@ import org.hillview.table.api.ISampledRowIterator;
 import org.hillview.utils.Randomness;
 import org.hillview.utils.Utilities;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A IMembershipSet which contains all rows.
  */
@@ -55,6 +58,37 @@ public class FullMembershipSet implements IMembershipSet {
         return this.rowCount;
     }
 
+    @Override
+    public List<IMembershipSet> splitRanges(final int parts) {
+        final List<IMembershipSet> result = new ArrayList<IMembershipSet>(parts);
+        for (int i = 0; i < parts; i++) {
+            int start = Utilities.toInt((long)this.rowCount * i / parts);
+            int end = Utilities.toInt((long)this.rowCount * (i + 1) / parts);
+            result.add(new RangeMembershipSet(start, end, this.rowCount));
+        }
+        return result;
+    }
+
+    @Override
+    public IMembershipSet selectRanges(final int[] starts, final int[] ends) {
+        if (starts.length == 1)
+            return new RangeMembershipSet(starts[0], ends[0], this.rowCount);
+        int size = 0;
+        for (int i = 0; i < starts.length; i++)
+            size += ends[i] - starts[i];
+        DenseMembershipSet set = new DenseMembershipSet(this.rowCount, size);
+        for (int i = 0; i < starts.length; i++)
+            set.addRange(starts[i], ends[i]);
+        return set;
+    }
+
+    @Override
+    public IRowIterator getIterator(final int start, final int end) {
+        int first = Math.max(start, 0);
+        return new RangeMembershipSet(first, Math.max(first, Math.min(end, this.rowCount)),
+                this.rowCount).getIterator();
+    }
+
     @Override
     public IRowIterator getIterator() {
         return new FullMembershipIterator(this.rowCount);
@@ -166,5 +200,14 @@ public class FullMembershipSet implements IMembershipSet {
             }
             else return - 1;
         }
+
+        @Override
+        public int getNextRows(final int[] rows) {
+            int count = Math.min(rows.length, this.range - this.cursor);
+            for (int i = 0; i < count; i++)
+                rows[i] = this.cursor + i;
+            this.cursor += count;
+            return count;
+        }
     }
 }
@@ -28,13 +28,22 @@ import java.util.function.IntPredicate;
  */
 public class MembershipSetFactory {
     private static final int sizeEstimationSampleSize = 40;
+    /**
+     * Compressed sets are only used for sets with at least this many rows;
+     * small sets fit in a single compressed container anyway.
+     */
+    private static final int compressedMinimumMax = 1 << 16;
 
     /**
-     * Creates a mutable membership set.
+     * Creates a mutable membership set.  Very sparse sets use a hash set, very dense
+     * sets a bitmap; for large sets the densities in between use a compressed set.
      * @param maxSize        Maximum size.
      * @param estimatedSize  Estimated number of elements inside.
      */
     public static IMutableMembershipSet create(int maxSize, int estimatedSize) {
+        if (maxSize >= compressedMinimumMax &&
+                estimatedSize >= maxSize / 1024 && estimatedSize < maxSize / 4)
+            return new CompressedMembershipSet(maxSize);
         if (estimatedSize >= maxSize / 30)
             return new DenseMembershipSet(maxSize, estimatedSize);
         else
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.membership;
+
+import org.hillview.table.api.IMembershipSet;
+import org.hillview.table.api.IMutableMembershipSet;
+import org.hillview.table.api.IRowIterator;
+import org.hillview.table.api.ISampledRowIterator;
+import org.hillview.utils.Randomness;
+
+import javax.annotation.Nullable;
+
+/**
+ * The members of a set that fall in a contiguous range of rows [start, end).
+ * Without a base set this holds all the rows in the range and uses constant space;
+ * otherwise it is a view of the base set, which must not change afterwards.
+ */
+public class RangeMembershipSet implements IMembershipSet {
+    @Nullable
+    private final IMembershipSet base;
+    private final int start;
+    private final int end;
+    private final int size;
+    private final int max;
+    private final static double samplingThreshold = 0.04;
+    private final static double samplingSizeMinimum = 100; // if size is smaller than this no need to sample
+
+    /**
+     * A set containing all rows between start (inclusive) and end (exclusive).
+     */
+    public RangeMembershipSet(int start, int end, int max) {
+        if (start < 0 || end < start || max < end)
+            throw new RuntimeException("Illegal range " + start + "-" + end + " of " + max);
+        this.base = null;
+        this.start = start;
+        this.end = end;
+        this.size = end - start;
+        this.max = max;
+    }
+
+    /**
+     * The members of base between start (inclusive) and end (exclusive).
+     * @param size  Number of members of base in the range.
+     */
+    RangeMembershipSet(IMembershipSet base, int start, int end, int size) {
+        this.base = base;
+        this.start = start;
+        this.end = end;
+        this.size = size;
+        this.max = base.getMax();
+    }
+
+    @Override
+    public int getMax() {
+        return this.max;
+    }
+
+    @Override
+    public boolean isMember(int rowIndex) {
+        return this.start <= rowIndex && rowIndex < this.end &&
+                (this.base == null || this.base.isMember(rowIndex));
+    }
+
+    @Override
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public IRowIterator getIterator() {
+        return this.getIterator(this.start, this.end);
+    }
+
+    @Override
+    public IRowIterator getIterator(int start, int end) {
+        start = Math.max(start, this.start);
+        end = Math.min(end, this.end);
+        if (this.base != null)
+            return this.base.getIterator(start, end);
+        return new RangeIterator(start, end);
+    }
+
+    /**
+     * Reservoir sampling over the members; the result is not a view.
+     */
+    @Override
+    public IMembershipSet sample(int k, long seed) {
+        if (k >= this.size)
+            return this;
+        final Randomness psg = new Randomness(seed);
+        int[] chosen = new int[k];
+        IRowIterator ri = this.getIterator();
+        int count = ri.getNextRows(chosen);
+        assert count == k;
+        int row = ri.getNextRow();
+        for (int i = k; row >= 0; ++i) {
+            int j = psg.nextInt(i + 1);
+            if (j < k)
+                chosen[j] = row;
+            row = ri.getNextRow();
+        }
+        IMutableMembershipSet mms = MembershipSetFactory.create(this.max, k);
+        for (int c : chosen)
+            mms.add(c);
+        return mms.seal();
+    }
+
+    @Override
+    public ISampledRowIterator getIteratorOverSample(double rate, long seed, boolean enforceRate) {
+        double usedRate = rate;
+        if (!enforceRate && (this.size < RangeMembershipSet.samplingSizeMinimum ||
+                rate > RangeMembershipSet.samplingThreshold))
+            usedRate = 1;
+        if (usedRate >= 1)
+            return new NoSampleRowIterator(this.getIterator());
+        return new RangeSampledRowIterator(this.getIterator(), usedRate, seed);
+    }
+
+    private static class RangeIterator implements IRowIterator {
+        private int cursor;
+        private final int end;
+
+        RangeIterator(int start, int end) {
+            this.cursor = start;
+            this.end = end;
+        }
+
+        @Override
+        public int getNextRow() {
+            if (this.cursor < this.end)
+                return this.cursor++;
+            return -1;
+        }
+
+        @Override
+        public int getNextRows(final int[] rows) {
+            int count = Math.max(0, Math.min(rows.length, this.end - this.cursor));
+            for (int i = 0; i < count; i++)
+                rows[i] = this.cursor + i;
+            this.cursor += count;
+            return count;
+        }
+    }
+
+    /**
+     * Skips a geometrically distributed number of members between samples.
+     * When the range is contiguous the skipped members are not enumerated.
+     * This class is not thread-safe.
+     */
+    private static class RangeSampledRowIterator implements ISampledRowIterator {
+        private final IRowIterator iterator;
+        @Nullable
+        private final RangeIterator contiguous;
+        private final Randomness prg;
+        private final double rate;
+
+        RangeSampledRowIterator(IRowIterator iterator, double rate, long seed) {
+            this.iterator = iterator;
+            this.contiguous = iterator instanceof RangeIterator ? (RangeIterator)iterator : null;
+            this.prg = new Randomness(seed);
+            this.rate = rate;
+        }
+
+        @Override
+        public double rate() { return this.rate; }
+
+        @Override
+        public int getNextRow() {
+            int skip = this.prg.nextGeometric(this.rate) - 1;
+            if (this.contiguous != null) {
+                this.contiguous.cursor += Math.min(skip, Math.max(0, this.contiguous.end - this.contiguous.cursor));
+                return this.contiguous.getNextRow();
+            }
+            for (int i = 0; i < skip; i++)
+                if (this.iterator.getNextRow() < 0)
+                    return -1;
+            return this.iterator.getNextRow();
+        }
+    }
+}
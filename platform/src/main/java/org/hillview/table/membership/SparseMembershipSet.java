@@ -25,6 +25,9 @@ import org.hillview.utils.IntSet;
 import org.hillview.utils.Randomness;
 import org.hillview.utils.Utilities;
 
+import javax.annotation.Nullable;
+import java.util.List;
+
 /**
  * This implementation uses a Set data structure to store the membership. It uses the Set's
  * membership and iterator methods. The upside is that it is efficient in space and that the
@@ -38,6 +41,11 @@ public class SparseMembershipSet implements IMembershipSet, IMutableMembershipSe
      * The sorting takes time but makes the iterator faster */
     public static final int thresholdSortedIterator = 50000000;
     private final int max;
+    /**
+     * Result of the last call to splitRanges.
+     */
+    @Nullable
+    private List<IMembershipSet> ranges;
 
     @Override
     public int getMax() { return this.max; }
@@ -100,6 +108,17 @@ public class SparseMembershipSet implements IMembershipSet, IMutableMembershipSe
     @Override
     public IRowIterator getIterator() { return new SparseIterator(this.membershipMap); }
 
+    /**
+     * The members are not stored in order, so splitting sorts them;
+     * the result is cached, since a table may be split for each sketch.
+     */
+    @Override
+    public synchronized List<IMembershipSet> splitRanges(final int parts) {
+        if (this.ranges == null || this.ranges.size() != parts)
+            this.ranges = IMembershipSet.super.splitRanges(parts);
+        return this.ranges;
+    }
+
     /**
      * Returns an iterator that runs over the sampled data.
      * @param rate  Sampling rate.
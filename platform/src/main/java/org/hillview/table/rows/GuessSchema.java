@@ -103,10 +103,28 @@ public class GuessSchema {
         this.myInfo = new GuessSchema.SchemaInfo(ContentsKind.None, false);
     }
 
+    /**
+     * Create a guesser whose current guess is the specified kind;
+     * the guess changes if a value cannot be parsed as this kind.
+     */
+    public GuessSchema(String name, ContentsKind kind) {
+        this();
+        this.name = name;
+        this.myInfo.kind = kind;
+    }
+
     public void setName(String name) {
         this.name = name;
     }
 
+    /**
+     * Use the specified parser for dates instead of guessing
+     * the format from the first value.
+     */
+    public void setDateParser(@Nullable DateParsing dateParser) {
+        this.dateParser = dateParser;
+    }
+
     private void guess(@Nullable String value, SchemaInfo info) {
         if (info.kind == ContentsKind.String)
             return;
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.rows;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import org.hillview.table.Schema;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.ITable;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Represents the projection of a row on a schema as a single long value, obtained by
+ * packing the dictionary codes of the row in all the columns of the schema.
+ * Two rows have the same key if and only if they have the same values in these
+ * columns, so keys can be counted in primitive hash maps instead of hashing
+ * and comparing rows.  This is only possible if all columns are dictionary-encoded
+ * and the codes fit in 63 bits.
+ */
+public final class PackedRowKeys {
+    private final Schema schema;
+    private final IDictionaryColumn[] columns;
+    private final int[] shifts;
+    private final long[] masks;
+
+    private PackedRowKeys(Schema schema, IDictionaryColumn[] columns, int[] shifts, long[] masks) {
+        this.schema = schema;
+        this.columns = columns;
+        this.shifts = shifts;
+        this.masks = masks;
+    }
+
+    /**
+     * Create packed keys for the projection of a table on a schema.
+     * @return null if the rows cannot be represented as packed keys; in this
+     * case the caller has to hash the rows.
+     */
+    @Nullable
+    public static PackedRowKeys create(ITable data, Schema schema) {
+        List<IColumn> cols = data.getLoadedColumns(schema.getColumnNames());
+        IDictionaryColumn[] columns = new IDictionaryColumn[cols.size()];
+        int[] shifts = new int[cols.size()];
+        long[] masks = new long[cols.size()];
+        int bits = 0;
+        for (int i = 0; i < columns.length; i++) {
+            IColumn col = cols.get(i);
+            if (!(col instanceof IDictionaryColumn))
+                return null;
+            IDictionaryColumn dc = (IDictionaryColumn)col;
+            if (!dc.isDictionaryEncoded())
+                return null;
+            int size = dc.getDictionarySize();
+            int width = size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+            columns[i] = dc;
+            shifts[i] = bits;
+            masks[i] = (1L << width) - 1;
+            bits += width;
+            if (bits > 63)
+                return null;
+        }
+        return new PackedRowKeys(schema, columns, shifts, masks);
+    }
+
+    /**
+     * The key of a row of the table.
+     */
+    public long getKey(int rowIndex) {
+        long key = 0;
+        for (int i = 0; i < this.columns.length; i++)
+            key |= ((long)this.columns[i].getCode(rowIndex)) << this.shifts[i];
+        return key;
+    }
+
+    /**
+     * The key of a row that may not come from the table.
+     * @return -1 if some value of the row does not appear in the table.
+     */
+    public long getKey(RowSnapshot row) {
+        List<String> names = this.schema.getColumnNames();
+        long key = 0;
+        for (int i = 0; i < this.columns.length; i++) {
+            Object value = row.getObject(names.get(i));
+            if (value != null && !(value instanceof String))
+                return -1;
+            int code = this.columns[i].lookup((String)value);
+            if (code < 0)
+                return -1;
+            key |= ((long)code) << this.shifts[i];
+        }
+        return key;
+    }
+
+    /**
+     * The row that corresponds to a key.
+     */
+    public RowSnapshot getRow(long key) {
+        Object[] values = new Object[this.columns.length];
+        for (int i = 0; i < this.columns.length; i++) {
+            int code = (int)((key >>> this.shifts[i]) & this.masks[i]);
+            values[i] = this.columns[i].decode(code);
+        }
+        return new RowSnapshot(this.schema, values);
+    }
+
+    /**
+     * Convert a map from keys to counts into a map from rows to counts.
+     */
+    public Object2IntOpenHashMap<RowSnapshot> materializeHashMap(Long2IntOpenHashMap counts) {
+        Object2IntOpenHashMap<RowSnapshot> hm = new Object2IntOpenHashMap<RowSnapshot>(counts.size());
+        for (ObjectIterator<Long2IntMap.Entry> it = counts.long2IntEntrySet().fastIterator();
+             it.hasNext(); ) {
+            final Long2IntMap.Entry entry = it.next();
+            hm.put(this.getRow(entry.getLongKey()), entry.getIntValue());
+        }
+        return hm;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.table.rows;
+
+import org.hillview.table.api.IRowIterator;
+
+import javax.annotation.Nullable;
+
+/**
+ * Reads the rows of an iterator a block at a time.  The batch holds the
+ * indexes of the current block of rows, together with scratch buffers that
+ * can hold the values of a column for these rows.  Sketches that process rows
+ * in blocks reuse one batch for the whole computation, so the buffers are
+ * allocated only once.  This class is not thread-safe.
+ */
+public final class RowBatch {
+    public static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * Indexes of the rows in the batch; only the first 'count' are valid.
+     */
+    public final int[] rows;
+    public int count;
+    public final boolean[] missing;
+    private final IRowIterator iterator;
+    private boolean done;
+    @Nullable
+    private double[] doubles;
+    @Nullable
+    private String[] strings;
+
+    public RowBatch(final IRowIterator iterator, final int capacity) {
+        this.iterator = iterator;
+        this.rows = new int[capacity];
+        this.missing = new boolean[capacity];
+        this.count = 0;
+        this.done = false;
+    }
+
+    public RowBatch(final IRowIterator iterator) {
+        this(iterator, DEFAULT_SIZE);
+    }
+
+    public int capacity() { return this.rows.length; }
+
+    /**
+     * Reads the next block of rows from the iterator.
+     * @return False when the iterator has no more rows.
+     */
+    public boolean next() {
+        if (this.done) {
+            this.count = 0;
+            return false;
+        }
+        this.count = this.iterator.getNextRows(this.rows);
+        // A partial block means that the iterator is exhausted; some
+        // iterators must not be called again after they have returned -1.
+        this.done = this.count < this.rows.length;
+        return this.count > 0;
+    }
+
+    public double[] getDoubles() {
+        if (this.doubles == null)
+            this.doubles = new double[this.rows.length];
+        return this.doubles;
+    }
+
+    public String[] getStrings() {
+        if (this.strings == null)
+            this.strings = new String[this.rows.length];
+        return this.strings;
+    }
+}
@@ -34,7 +34,8 @@ import java.util.*;
 
 /**
  * The copy of the data in a row of the table.
- * This is quite inefficient, it should be used rarely.
+ * The values are stored in an array, in the order of the columns in the schema;
+ * the schema is shared by all rows that are created from the same table.
  * When the data is a date or duration it is represented instead by its
  * double encoding.
  */
@@ -42,26 +43,25 @@ public class RowSnapshot extends BaseRowSnapshot
         implements IJson  {
     static final long serialVersionUID = 1;
     /**
-     * Maps a column name to a value.
+     * One value for each column of the schema.
      */
-    private final LinkedHashMap<String, Object> fields =
-            new LinkedHashMap<String, Object>();
+    private final Object[] values;
     private final int cachedHashcode;
     private final Schema schema;
 
     public RowSnapshot(final ITable data, final int rowIndex, final Schema schema) {
         List<IColumn> columns = data.getColumns(schema);
         this.schema = schema;
-        for (IColumn c: columns) {
-            if (c.isMissing(rowIndex)) {
-                this.fields.put(c.getName(), null);
+        this.values = new Object[columns.size()];
+        for (int i = 0; i < this.values.length; i++) {
+            IColumn c = columns.get(i);
+            if (c.isMissing(rowIndex))
                 continue;
-            }
             ContentsKind kind = c.getKind();
             if (kind == ContentsKind.Date || kind == ContentsKind.Duration)
-                this.fields.put(c.getName(), c.getDouble(rowIndex));
+                this.values[i] = c.getDouble(rowIndex);
             else
-                this.fields.put(c.getName(), c.getObject(rowIndex));
+                this.values[i] = c.getObject(rowIndex);
         }
         this.cachedHashcode = this.computeHashCode(schema);
     }
@@ -73,11 +73,14 @@ public class RowSnapshot extends BaseRowSnapshot
      */
     public RowSnapshot(RowSnapshot other, Schema schema) {
         this.schema = schema;
-        for (ColumnDescription cd : schema.getColumnDescriptions()) {
+        List<ColumnDescription> descriptions = schema.getColumnDescriptions();
+        this.values = new Object[descriptions.size()];
+        for (int i = 0; i < this.values.length; i++) {
+            ColumnDescription cd = descriptions.get(i);
             if (cd.kind == ContentsKind.Date || cd.kind == ContentsKind.Duration)
-                this.fields.put(cd.name, other.getDouble(cd.name));
+                this.values[i] = other.getField(cd.name);
             else
-                this.fields.put(cd.name, other.getObject(cd.name));
+                this.values[i] = other.getObject(cd.name);
         }
         this.cachedHashcode = this.computeHashCode(this.schema);
     }
@@ -99,23 +102,31 @@ public class RowSnapshot extends BaseRowSnapshot
     public RowSnapshot(final Schema schema, final Object[] data) {
         if (schema.getColumnCount() != data.length)
             throw new RuntimeException("Mismatched schema");
-        int index = 0;
         this.schema = schema;
-        for (String col: schema.getColumnNames()) {
-            this.fields.put(col, data[index]);
-            index++;
-        }
+        this.values = data.clone();
         this.cachedHashcode = this.computeHashCode(schema);
     }
 
+    /**
+     * The value stored for a column, or null if the column is missing
+     * or does not exist.
+     */
+    @Nullable
+    private Object getField(String colName) {
+        int index = this.schema.getColumnIndex(colName);
+        if (index < 0)
+            return null;
+        return this.values[index];
+    }
+
     @Override
     public boolean exists() { return true; }
 
-    public boolean isMissing(String colName) { return (this.fields.get(colName) == null); }
+    public boolean isMissing(String colName) { return (this.getField(colName) == null); }
 
     @Override
     public int columnCount() {
-        return this.fields.size();
+        return this.values.length;
     }
 
     @Override
@@ -125,19 +136,22 @@ public class RowSnapshot extends BaseRowSnapshot
 
     @Override
     public Object getObject(String colName) {
-        Object o = this.fields.get(colName);
+        int index = this.schema.getColumnIndex(colName);
+        if (index < 0)
+            return null;
+        Object o = this.values[index];
         if (o == null)
             return null;
-        ContentsKind kind = this.schema.getKind(colName);
+        ContentsKind kind = this.schema.getColumnKinds().get(index);
         if (kind == ContentsKind.Date)
-            return Converters.toDate(this.getDouble(colName));
+            return Converters.toDate((double)o);
         else if (kind == ContentsKind.Duration)
-            return Converters.toDuration(this.getDouble(colName));
+            return Converters.toDuration((double)o);
         return o;
     }
 
     public String getString(String colName) {
-        return (String) this.fields.get(colName);
+        return (String) this.getField(colName);
     }
 
     public String asString(String colName) {
@@ -147,11 +161,11 @@ public class RowSnapshot extends BaseRowSnapshot
     }
 
     public int getInt(String colName) {
-        return (int)this.fields.get(colName);
+        return (int)this.getField(colName);
     }
 
     public double getDouble(String colName) {
-        return (double)this.fields.get(colName);
+        return (double)this.getField(colName);
     }
 
     @Override
@@ -216,48 +230,58 @@ public class RowSnapshot extends BaseRowSnapshot
 
     @Override
     public JsonElement toJsonTree() {
-        Object[] data = new Object[this.fields.size()];
-        int index = 0;
-        for (Object o : this.fields.values())
-            data[index++] = o;
-        return IJson.gsonInstance.toJsonTree(data);
+        return IJson.gsonInstance.toJsonTree(this.values);
+    }
+
+    /**
+     * The row as a map from column names to values; only used by the
+     * rarely called Map methods that return collections.
+     */
+    private LinkedHashMap<String, Object> asMap() {
+        List<String> names = this.schema.getColumnNames();
+        LinkedHashMap<String, Object> result = new LinkedHashMap<String, Object>(names.size());
+        for (int i = 0; i < this.values.length; i++)
+            result.put(names.get(i), this.values[i]);
+        return result;
     }
 
     // The following are Map interface methods.
 
     @Override
     public int size() {
-        return this.fields.size();
+        return this.values.length;
     }
 
     @Override
     public boolean isEmpty() {
-        return this.fields.isEmpty();
+        return this.values.length == 0;
     }
 
     @Override
     public boolean containsKey(Object key) {
-        return this.fields.containsKey(key);
+        return key instanceof String && this.schema.getColumnIndex((String)key) >= 0;
     }
 
     @Override
     public Object get(Object key) {
-        return this.fields.get(key);
+        if (!(key instanceof String))
+            return null;
+        return this.getField((String)key);
     }
 
     @Override
     public Set<String> keySet() {
-        return this.fields.keySet();
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(this.schema.getColumnNames()));
     }
 
     @Override
     public Collection<Object> values() {
-        return this.fields.values();
+        return Collections.unmodifiableList(Arrays.asList(this.values));
     }
 
     @Override
     public Set<Entry<String, Object>> entrySet() {
-        return this.fields.entrySet();
+        return Collections.unmodifiableMap(this.asMap()).entrySet();
     }
 
     @Override
@@ -265,7 +289,19 @@ public class RowSnapshot extends BaseRowSnapshot
         if (this == o) return true;
         if ((o == null) || (getClass() != o.getClass())) return false;
         RowSnapshot that = (RowSnapshot) o;
-        return this.fields.equals(that.fields);
+        if (this.values.length != that.values.length)
+            return false;
+        if (this.schema == that.schema ||
+                this.schema.getColumnNames().equals(that.schema.getColumnNames()))
+            return Arrays.equals(this.values, that.values);
+        // Same columns in a different order
+        List<String> names = this.schema.getColumnNames();
+        for (int i = 0; i < this.values.length; i++) {
+            int index = that.schema.getColumnIndex(names.get(i));
+            if (index < 0 || !Objects.equals(this.values[i], that.values[index]))
+                return false;
+        }
+        return true;
     }
 
     @Override
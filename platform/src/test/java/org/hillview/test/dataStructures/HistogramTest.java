@@ -17,13 +17,11 @@
 
 package org.hillview.test.dataStructures;
 
-import org.hillview.sketches.results.DoubleHistogramBuckets;
-import org.hillview.sketches.results.Heatmap;
-import org.hillview.sketches.results.Histogram;
+import org.hillview.sketches.results.*;
 import org.hillview.table.ColumnDescription;
-import org.hillview.table.api.ContentsKind;
-import org.hillview.table.api.IAppendableColumn;
+import org.hillview.table.api.*;
 import org.hillview.table.columns.BaseListColumn;
+import org.hillview.table.columns.IntArrayColumn;
 import org.hillview.table.membership.FullMembershipSet;
 import org.hillview.table.columns.DoubleArrayColumn;
 import org.hillview.test.BaseTest;
@@ -120,4 +118,59 @@ public class HistogramTest extends BaseTest {
         Assert.assertEquals(1, h1.getCount(1));
         Assert.assertEquals(1, hm.getMissingData());
     }
+
+    private static Histogram rowAtATime(IColumn col, IMembershipSet set, IHistogramBuckets buckets,
+                                        double rate) {
+        Histogram result = new Histogram(buckets.getBucketCount());
+        ISampledRowIterator it = set.getIteratorOverSample(rate, 0, false);
+        int row = it.getNextRow();
+        while (row >= 0) {
+            result.add(col, row, buckets);
+            row = it.getNextRow();
+        }
+        result.rescale(it.rate());
+        return result;
+    }
+
+    private static void checkBatch(IColumn col, IHistogramBuckets buckets) {
+        FullMembershipSet full = new FullMembershipSet(col.sizeInRows());
+        IMembershipSet[] sets = new IMembershipSet[] { full, full.sample(col.sizeInRows() / 3, 1) };
+        for (IMembershipSet set : sets) {
+            for (double rate : new double[] { 1.0, 0.1 }) {
+                Histogram expected = rowAtATime(col, set, buckets, rate);
+                Histogram batched = new Histogram(buckets.getBucketCount());
+                batched.create(col, set, buckets, rate, 0, false);
+                Assert.assertArrayEquals(expected.buckets, batched.buckets);
+                Assert.assertEquals(expected.getMissingData(), batched.getMissingData());
+            }
+        }
+    }
+
+    @Test
+    public void testBatchMatchesRows() {
+        final int size = 3 * BaseListColumn.SegmentSize + 17;
+        DoubleHistogramBuckets buckets = new DoubleHistogramBuckets(10, 90, 13);
+        IAppendableColumn doubles = BaseListColumn.create(new ColumnDescription("d", ContentsKind.Double));
+        IAppendableColumn ints = BaseListColumn.create(new ColumnDescription("i", ContentsKind.Integer));
+        IAppendableColumn strings = BaseListColumn.create(new ColumnDescription("s", ContentsKind.String));
+        IntArrayColumn intArray = new IntArrayColumn(new ColumnDescription("a", ContentsKind.Integer), size);
+        for (int i = 0; i < size; i++) {
+            if (i % 7 == 3) {
+                doubles.appendMissing();
+                ints.appendMissing();
+                strings.appendMissing();
+                intArray.setMissing(i);
+            } else {
+                doubles.append((i * 13) % 100 + 0.5);
+                ints.append((i * 17) % 100);
+                strings.append("s" + (i % 50));
+                intArray.set(i, i % 100);
+            }
+        }
+        checkBatch(DoubleArrayTest.generateDoubleArray(size, 100), buckets);
+        checkBatch(doubles, buckets);
+        checkBatch(ints, buckets);
+        checkBatch(intArray, buckets);
+        checkBatch(strings, new StringHistogramBuckets(new String[] { "s1", "s3", "s30" }));
+    }
 }
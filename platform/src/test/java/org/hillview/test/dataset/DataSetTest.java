@@ -19,6 +19,7 @@ package org.hillview.test.dataset;
 
 import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.TreeCombiner;
 import org.hillview.dataset.api.*;
 import org.hillview.test.BaseTest;
 import org.hillview.utils.Converters;
@@ -321,4 +322,59 @@ public class DataSetTest extends BaseTest {
         IDataSet<Integer> result = pds.blockingPrune(isZero);
         //Assert.assertNull(result);
     }
+
+    /**
+     * Concatenates lists; counts the additions done in place.
+     */
+    private static class ListMonoid implements IMonoid<ArrayList<Integer>> {
+        static final long serialVersionUID = 1;
+        int inPlace = 0;
+
+        @Override
+        public ArrayList<Integer> zero() {
+            return new ArrayList<Integer>();
+        }
+
+        @Override
+        public ArrayList<Integer> add(@Nullable ArrayList<Integer> left, @Nullable ArrayList<Integer> right) {
+            ArrayList<Integer> result = new ArrayList<Integer>(Converters.checkNull(left));
+            result.addAll(Converters.checkNull(right));
+            return result;
+        }
+
+        @Override
+        public ArrayList<Integer> addInto(@Nullable ArrayList<Integer> left, @Nullable ArrayList<Integer> right) {
+            this.inPlace++;
+            Converters.checkNull(left).addAll(Converters.checkNull(right));
+            return left;
+        }
+    }
+
+    @Test
+    public void treeCombinerTest() {
+        ListMonoid monoid = new ListMonoid();
+        TreeCombiner<ArrayList<Integer>> combiner = new TreeCombiner<ArrayList<Integer>>(monoid);
+        Assert.assertTrue(combiner.isEmpty());
+        Assert.assertEquals(0, Converters.checkNull(combiner.getResult()).size());
+
+        final int count = 13;
+        List<ArrayList<Integer>> values = new ArrayList<ArrayList<Integer>>();
+        combiner = new TreeCombiner<ArrayList<Integer>>(monoid);
+        for (int i = 0; i < count; i++) {
+            ArrayList<Integer> value = new ArrayList<Integer>();
+            value.add(i);
+            values.add(value);
+            combiner.add(value);
+        }
+        ArrayList<Integer> result = combiner.getResult();
+        Assert.assertNotNull(result);
+        Assert.assertEquals(count, result.size());
+        // The order of the values is preserved.
+        for (int i = 0; i < count; i++)
+            Assert.assertEquals(i, result.get(i).intValue());
+        // The values added are not modified.
+        for (ArrayList<Integer> v : values)
+            Assert.assertEquals(1, v.size());
+        Assert.assertTrue(monoid.inPlace > 0);
+    }
 }
@@ -23,13 +23,19 @@ import org.hillview.dataset.ParallelDataSet;
 import org.hillview.dataset.api.IDataSet;
 import org.hillview.sketches.*;
 import org.hillview.sketches.results.FreqKList;
+import org.hillview.sketches.results.FreqKListExact;
 import org.hillview.sketches.results.FreqKListMG;
 import org.hillview.sketches.results.FreqKListSample;
 import org.hillview.sketches.results.NextKList;
+import org.hillview.table.ColumnDescription;
 import org.hillview.table.Schema;
 import org.hillview.table.SmallTable;
 import org.hillview.table.Table;
+import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.ITable;
+import org.hillview.table.columns.StringArrayColumn;
+import org.hillview.table.columns.StringListColumn;
+import org.hillview.table.rows.PackedRowKeys;
 import org.hillview.test.BaseTest;
 import org.hillview.utils.Converters;
 import org.hillview.utils.TestTables;
@@ -38,7 +44,9 @@ import org.junit.Test;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertTrue;
 
@@ -191,4 +199,71 @@ public class FreqKTest extends BaseTest {
         String s = "10: 4\n20: 4\n30: 3\n40: 2\n60: 1\n50: 1\n";
         Assert.assertEquals(Converters.checkNull(fk.create(t)).toString(), s);
     }
+
+    /**
+     * A table with two string columns with skewed values, stored both
+     * as dictionary-encoded lists and as arrays.
+     */
+    private static Table[] getSkewedStringTables(int size) {
+        ColumnDescription c0 = new ColumnDescription("First", ContentsKind.String);
+        ColumnDescription c1 = new ColumnDescription("Second", ContentsKind.String);
+        StringListColumn l0 = new StringListColumn(c0);
+        StringListColumn l1 = new StringListColumn(c1);
+        String[] a0 = new String[size];
+        String[] a1 = new String[size];
+        Random random = new Random(1);
+        for (int i = 0; i < size; i++) {
+            int v = (int)Math.abs(random.nextGaussian() * 20);
+            a0[i] = v == 7 ? null : "A" + v;
+            a1[i] = "B" + (v % 3 + random.nextInt(2));
+            l0.append(a0[i]);
+            l1.append(a1[i]);
+        }
+        Table list = new Table(Arrays.asList(l0, l1), null, null);
+        Table array = new Table(Arrays.asList(
+                new StringArrayColumn(c0, a0), new StringArrayColumn(c1, a1)), null, null);
+        return new Table[] { list, array };
+    }
+
+    @Test
+    public void testDictionaryCodes() {
+        Table[] tables = getSkewedStringTables(20000);
+        Table list = tables[0];
+        Table array = tables[1];
+        Schema schema = list.getSchema();
+        Assert.assertNotNull(PackedRowKeys.create(list, schema));
+        Assert.assertNull(PackedRowKeys.create(array, schema));
+
+        // Few counters, so that the algorithm has to evict some.
+        MGFreqKSketch mg = new MGFreqKSketch(schema, 0.1);
+        FreqKListMG mgList = mg.create(list);
+        FreqKListMG mgArray = mg.create(array);
+        Assert.assertNotNull(mgList);
+        Assert.assertNotNull(mgArray);
+        Assert.assertEquals(mgArray.hMap, mgList.hMap);
+
+        SampleHeavyHittersSketch shh = new SampleHeavyHittersSketch(schema, 0.02,
+                list.getNumOfRows(), 1);
+        FreqKListSample shhList = shh.create(list);
+        FreqKListSample shhArray = shh.create(array);
+        Assert.assertNotNull(shhList);
+        Assert.assertNotNull(shhArray);
+        Assert.assertEquals(shhArray.hMap, shhList.hMap);
+
+        ExactFreqSketch ef = new ExactFreqSketch(schema, mgArray);
+        FreqKListExact efList = ef.create(list);
+        FreqKListExact efArray = ef.create(array);
+        Assert.assertNotNull(efList);
+        Assert.assertNotNull(efArray);
+        Assert.assertEquals(efArray.hMap, efList.hMap);
+
+        // A value that does not appear in the table is counted as 0.
+        Table[] other = getSkewedStringTables(100);
+        ExactFreqSketch small = new ExactFreqSketch(schema, mgArray);
+        FreqKListExact smallList = small.create(other[0]);
+        FreqKListExact smallArray = small.create(other[1]);
+        Assert.assertNotNull(smallList);
+        Assert.assertNotNull(smallArray);
+        Assert.assertEquals(smallArray.hMap, smallList.hMap);
+    }
 }
@@ -16,9 +16,12 @@
  */
 
 package org.hillview.test.dataset;
+import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.api.PartialResult;
 import org.hillview.sketches.*;
 import org.hillview.sketches.results.DoubleHistogramBuckets;
+import org.hillview.sketches.results.Heatmap;
 import org.hillview.sketches.results.Histogram;
 import org.hillview.sketches.results.IHistogramBuckets;
 import org.hillview.table.api.IColumn;
@@ -27,9 +30,12 @@ import org.hillview.utils.TestTables;
 import org.hillview.table.SmallTable;
 import org.hillview.table.Table;
 import org.hillview.table.api.ITable;
+import org.hillview.table.membership.RangeMembershipSet;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.List;
+
 /**
  * Test class for the sketches of all types of histograms.
  */
@@ -82,6 +88,25 @@ public class HistSketchTest extends BaseTest {
         Assert.assertEquals(bigSize, size);
     }
 
+    @Test
+    public void manyPartitionsTest() {
+        final int bigSize = 100000;
+        final SmallTable bigTable = TestTables.getIntTable(bigSize, 1);
+        final String colName = bigTable.getSchema().getColumnNames().get(0);
+        final IHistogramBuckets buckets = new DoubleHistogramBuckets(0, 5 * bigSize, 20);
+        final HistogramSketch sketch = new HistogramSketch(buckets, colName, 1, 0, null);
+        final Histogram expected = sketch.create(bigTable);
+        Assert.assertNotNull(expected);
+        // Partial results of the leaves are added in place in a tree.
+        final ParallelDataSet<ITable> all = TestTables.makeParallel(bigTable, bigSize / 200);
+        for (int i = 0; i < 2; i++) {
+            final Histogram result = all.blockingSketch(sketch);
+            Assert.assertNotNull(result);
+            Assert.assertArrayEquals(expected.buckets, result.buckets);
+            Assert.assertEquals(expected.getMissingData(), result.getMissingData());
+        }
+    }
+
    @Test
     public void HeatmapSketchTest() {
         final int numCols = 2;
@@ -96,4 +121,101 @@ public class HistSketchTest extends BaseTest {
         all.blockingSketch(
                 new HeatmapSketch(buckets1, buckets2, colName1, colName2, rate, 0));
     }
+
+    @Test
+    public void splitSketchTest() {
+        final int tableSize = 50000;
+        final Table table = TestTables.getRepIntTable(tableSize, 1);
+        final IHistogramBuckets buckets = new DoubleHistogramBuckets(1, 50, 10);
+        final String colName = table.getSchema().getColumnNames().get(0);
+        final HistogramSketch sketch = new HistogramSketch(buckets, colName, 1, 0, null);
+        ITable sampled = table.selectRowsFromFullTable(table.getMembershipSet().sample(0.3, 1));
+        LocalDataSet.setSketchParallelism(4, 5000);
+        try {
+            for (ITable t : new ITable[] { table, sampled }) {
+                Histogram expected = sketch.create(t);
+                Assert.assertNotNull(expected);
+                LocalDataSet<ITable> local = new LocalDataSet<ITable>(t);
+                List<PartialResult<Histogram>> partials = local.sketch(sketch).toList().toBlocking().single();
+                Assert.assertTrue(partials.size() > 1);
+                double done = 0;
+                for (PartialResult<Histogram> p : partials)
+                    done += p.deltaDone;
+                Assert.assertEquals(1.0, done, 1e-9);
+                Histogram result = local.blockingSketch(sketch);
+                Assert.assertNotNull(result);
+                Assert.assertArrayEquals(expected.buckets, result.buckets);
+                Assert.assertEquals(expected.getMissingData(), result.getMissingData());
+            }
+        } finally {
+            LocalDataSet.setSketchParallelism(1, 1 << 17);
+        }
+    }
+
+    @Test
+    public void incrementalSketchTest() {
+        final int tableSize = 50000;
+        final Table table = TestTables.getRepIntTable(tableSize, 2);
+        final IHistogramBuckets buckets = new DoubleHistogramBuckets(1, 50, 10);
+        final String colName = table.getSchema().getColumnNames().get(0);
+        final String colName1 = table.getSchema().getColumnNames().get(1);
+        final HistogramSketch sketch = new HistogramSketch(buckets, colName, 1, 0, null);
+        final HeatmapSketch hsketch = new HeatmapSketch(buckets, buckets, colName, colName1, 1, 0);
+        LocalDataSet<ITable> local = new LocalDataSet<ITable>(table);
+        // Incremental sketches are disabled by default.
+        List<PartialResult<Histogram>> partials = local.sketch(sketch).toList().toBlocking().single();
+        Assert.assertEquals(1, partials.size());
+        LocalDataSet.setIncrementalChunkSize(7000);
+        try {
+            Histogram expected = sketch.create(table);
+            Assert.assertNotNull(expected);
+            partials = local.sketch(sketch).toList().toBlocking().single();
+            Assert.assertEquals(7, partials.size());
+            double done = 0;
+            for (PartialResult<Histogram> p : partials)
+                done += p.deltaDone;
+            Assert.assertEquals(1.0, done, 1e-9);
+            Histogram result = local.blockingSketch(sketch);
+            Assert.assertNotNull(result);
+            Assert.assertArrayEquals(expected.buckets, result.buckets);
+            Assert.assertEquals(expected.getMissingData(), result.getMissingData());
+
+            // Sampled sketches are not split.
+            HistogramSketch sampled = new HistogramSketch(buckets, colName, 0.5, 0, null);
+            partials = local.sketch(sampled).toList().toBlocking().single();
+            Assert.assertEquals(1, partials.size());
+
+            // Only the first partial result is computed if the consumer stops early.
+            PartialResult<Histogram> first = local.sketch(sketch).toBlocking().first();
+            Assert.assertTrue(first.deltaDone < 1);
+
+            // The chunks of a full table are ranges; they do not copy the rows.
+            for (ITable part : table.splitRows(7))
+                Assert.assertTrue(part.getMembershipSet() instanceof RangeMembershipSet);
+            // All the selected rows are in the last part of the table;
+            // the chunks still have the same size.
+            ITable filtered = table.selectRowsFromFullTable(
+                    table.getMembershipSet().filter(row -> row >= tableSize - 21000));
+            expected = sketch.create(filtered);
+            Assert.assertNotNull(expected);
+            local = new LocalDataSet<ITable>(filtered);
+            partials = local.sketch(sketch).toList().toBlocking().single();
+            Assert.assertEquals(3, partials.size());
+            for (PartialResult<Histogram> p : partials)
+                Assert.assertEquals(1.0 / 3, p.deltaDone, 1e-9);
+            result = local.blockingSketch(sketch);
+            Assert.assertNotNull(result);
+            Assert.assertArrayEquals(expected.buckets, result.buckets);
+
+            Heatmap hexpected = hsketch.create(table);
+            Assert.assertNotNull(hexpected);
+            ParallelDataSet<ITable> all = TestTables.makeParallel(table, tableSize / 2);
+            Heatmap hresult = all.blockingSketch(hsketch);
+            Assert.assertNotNull(hresult);
+            for (int i = 0; i < buckets.getBucketCount(); i++)
+                Assert.assertArrayEquals(hexpected.buckets[i], hresult.buckets[i]);
+        } finally {
+            LocalDataSet.setIncrementalChunkSize(0);
+        }
+    }
 }
@@ -18,8 +18,13 @@
 package org.hillview.test.dataset;
 
 import org.hillview.dataset.ParallelDataSet;
+import org.hillview.dataset.TreeCombiner;
 import org.hillview.sketches.*;
 import org.hillview.sketches.results.HLogLog;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.columns.StringArrayColumn;
+import org.hillview.table.columns.StringListColumn;
 import org.hillview.table.membership.FullMembershipSet;
 import org.hillview.table.columns.IntArrayColumn;
 import org.hillview.table.SmallTable;
@@ -31,6 +36,11 @@ import org.hillview.utils.TestTables;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 /**
@@ -65,4 +75,94 @@ public class HyperLogLogTest extends BaseTest {
         Assert.assertNotNull(hll);
         assertTrue(hll.distinctItemsEstimator() > 85000);
     }
+
+    @Test
+    public void testCombinePartitions() {
+        final int partitions = 3;
+        final int distinct = 1000;
+        HLogLogSketch sketch = new HLogLogSketch("X", 12, 0, null);
+        List<HLogLog> parts = new ArrayList<HLogLog>();
+        for (int p = 0; p < partitions; p++) {
+            int[] data = new int[distinct];
+            for (int i = 0; i < distinct; i++)
+                data[i] = p * distinct + i;
+            IntArrayColumn col = new IntArrayColumn(
+                    new ColumnDescription("X", ContentsKind.Integer), data);
+            parts.add(sketch.create(new SmallTable(Collections.singletonList(col))));
+        }
+
+        HLogLog reduced = sketch.reduce(parts);
+        Assert.assertNotNull(reduced);
+        TreeCombiner<HLogLog> combiner = new TreeCombiner<HLogLog>(sketch);
+        for (HLogLog h : parts)
+            combiner.add(h);
+        HLogLog combined = combiner.getResult();
+        HLogLog added = sketch.add(parts.get(0), parts.get(1));
+        added = sketch.addInto(added, parts.get(2));
+        Assert.assertNotNull(added);
+
+        long expected = partitions * distinct;
+        for (HLogLog h : Arrays.asList(reduced, combined, added)) {
+            long count = h.getCount().count;
+            Assert.assertTrue(count > 0.9 * expected && count < 1.1 * expected);
+            // The estimate is up to date.
+            Assert.assertEquals(h.distinctItemsEstimator(), count);
+        }
+    }
+
+    @Test
+    public void testSparseAndMerge() {
+        final int size = 10000;
+        final int accuracy = 12;
+        final long seed = 0;
+        final Randomness rn = this.getRandomness();
+        final FullMembershipSet memSet = new FullMembershipSet(size);
+        final IntArrayColumn small = IntArrayGenerator.getRandIntArray(size, 100, "Small", rn);
+        final IntArrayColumn large = IntArrayGenerator.getRandIntArray(size, 5000, "Large", rn);
+
+        final HLogLog smallHll = new HLogLog(accuracy, seed);
+        smallHll.createHLL(small, memSet);
+        assertTrue(smallHll.isSparse());
+        final HLogLog largeHll = new HLogLog(accuracy, seed);
+        largeHll.createHLL(large, memSet);
+        Assert.assertFalse(largeHll.isSparse());
+        long smallCount = smallHll.distinctItemCount;
+        assertTrue(smallCount > 90 && smallCount < 110);
+
+        // Union does not modify its arguments, and is the same in both orders.
+        HLogLog union = smallHll.union(largeHll);
+        assertEquals(union.distinctItemCount, largeHll.union(smallHll).distinctItemCount);
+        assertEquals(smallCount, smallHll.distinctItemsEstimator());
+        assertTrue(smallHll.isSparse());
+
+        // Merging in place gives the same result as union.
+        HLogLog merged = new HLogLog(accuracy, seed);
+        merged.merge(smallHll);
+        merged.merge(largeHll);
+        assertEquals(union.distinctItemCount, merged.distinctItemsEstimator());
+        HLogLog self = new HLogLog(accuracy, seed);
+        self.merge(largeHll);
+        assertEquals(largeHll.distinctItemCount, self.distinctItemsEstimator());
+    }
+
+    @Test
+    public void testDictionaryColumn() {
+        final int size = 100000;
+        final Randomness rn = this.getRandomness();
+        ColumnDescription desc = new ColumnDescription("S", ContentsKind.String);
+        StringListColumn encoded = new StringListColumn(desc);
+        StringArrayColumn plain = new StringArrayColumn(desc, size);
+        for (int i = 0; i < size; i++) {
+            String value = i % 7 == 0 ? null : "v" + rn.nextInt(3000);
+            encoded.append(value);
+            plain.set(i, value);
+        }
+        FullMembershipSet memSet = new FullMembershipSet(size);
+        HLogLog fromCodes = new HLogLog(14, 1);
+        fromCodes.createHLL(encoded, memSet);
+        HLogLog fromRows = new HLogLog(14, 1);
+        fromRows.createHLL(plain, memSet);
+        assertEquals(fromRows.distinctItemCount, fromCodes.distinctItemCount);
+        assertTrue(fromCodes.distinctItemCount > 2700 && fromCodes.distinctItemCount < 3300);
+    }
 }
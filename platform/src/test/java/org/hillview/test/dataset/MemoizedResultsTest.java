@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.test.dataset;
+
+import com.google.protobuf.ByteString;
+import org.hillview.dataset.remoting.MemoizedResults;
+import org.hillview.pb.Command;
+import org.hillview.pb.PartialResponse;
+import org.hillview.test.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the bounded cache of memoized results used by HillviewServer.
+ */
+public class MemoizedResultsTest extends BaseTest {
+    private static Command command(String op, int index) {
+        return Command.newBuilder()
+                .setSerializedOp(ByteString.copyFromUtf8(op))
+                .setIdsIndex(index)
+                .build();
+    }
+
+    private static PartialResponse response(int bytes) {
+        return PartialResponse.newBuilder()
+                .setSerializedOp(ByteString.copyFrom(new byte[bytes]))
+                .build();
+    }
+
+    @Test
+    public void testEviction() {
+        // Room for about two responses.
+        MemoizedResults results = new MemoizedResults(2500, 100000);
+        results.insert(command("a", 1), response(1000), 5);
+        results.insert(command("b", 1), response(1000), 6);
+        Assert.assertNotNull(results.get(command("a", 1)));
+        Assert.assertNull(results.get(command("a", 2)));
+        Assert.assertNull(results.get(command("c", 1)));
+        // "b" is the least recently used.
+        results.insert(command("c", 1), response(1000), 7);
+        Assert.assertEquals(1, results.getEvictions());
+        Assert.assertNull(results.get(command("b", 1)));
+        Assert.assertNotNull(results.get(command("a", 1)));
+        Assert.assertNotNull(results.get(command("c", 1)));
+        Assert.assertTrue(results.getUsedBytes() <= 2500);
+        Assert.assertEquals(3, results.getHits());
+        Assert.assertEquals(3, results.getMisses());
+        Assert.assertEquals(0.5, results.getHitRate(), 1e-9);
+
+        // Too large to be memoized
+        results.insert(command("d", 1), response(3000), 8);
+        Assert.assertNull(results.get(command("d", 1)));
+        Assert.assertEquals(2, results.size());
+
+        results.setBudget(0);
+        Assert.assertEquals(0, results.size());
+        Assert.assertEquals(0, results.getUsedBytes());
+    }
+
+    @Test
+    public void testInvalidation() {
+        MemoizedResults results = new MemoizedResults(100000, 100000);
+        results.insert(command("a", 1), response(10), 5);
+        results.insert(command("b", 2), response(10), 6);
+        results.insert(command("c", 5), response(10), 0);
+        results.insert(command("d", 3), response(10), 7);
+        // Removes the result of "a", which created dataset 5, and "c", which used it.
+        results.invalidateDataset(5);
+        Assert.assertNull(results.get(command("a", 1)));
+        Assert.assertNull(results.get(command("c", 5)));
+        Assert.assertNotNull(results.get(command("b", 2)));
+        // Removes the result of "b", which used dataset 2.
+        results.invalidateDataset(2);
+        Assert.assertNull(results.get(command("b", 2)));
+        Assert.assertNotNull(results.get(command("d", 3)));
+        Assert.assertEquals(1, results.size());
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        MemoizedResults results = new MemoizedResults(100000, 1);
+        results.insert(command("a", 1), response(10), 5);
+        Thread.sleep(10);
+        Assert.assertNull(results.get(command("a", 1)));
+        Assert.assertEquals(0, results.size());
+        Assert.assertEquals(0, results.getUsedBytes());
+    }
+}
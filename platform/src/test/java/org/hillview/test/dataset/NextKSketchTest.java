@@ -30,6 +30,7 @@ import org.hillview.table.api.IndexComparator;
 import org.hillview.table.membership.EmptyMembershipSet;
 import org.hillview.table.rows.RowSnapshot;
 import org.hillview.test.BaseTest;
+import org.hillview.test.table.SortIndexTest;
 import org.hillview.utils.Converters;
 import org.hillview.utils.TestTables;
 import org.junit.Assert;
@@ -155,6 +156,36 @@ public class NextKSketchTest extends BaseTest {
                 "...");
     }
 
+    @Test
+    public void testTopKIndexed() {
+        final int numCols = 2;
+        final int maxSize = 20;
+        // Large enough to have a sort index; the fragments are scanned.
+        final Table table = TestTables.getRepIntTable(40000, numCols);
+        RecordOrder cso = new RecordOrder();
+        cso.append(new ColumnSortOrientation(table.getSchema().getDescription("Column1"), false));
+        cso.append(new ColumnSortOrientation(table.getSchema().getDescription("Column0"), true));
+        SortIndexTest.waitForIndex(table, cso);
+        ParallelDataSet<ITable> fragments = TestTables.makeParallel(table, 5000);
+        AggregateDescription[] agg = new AggregateDescription[] {
+                new AggregateDescription(table.getSchema().getDescription("Column0"),
+                        AggregateDescription.AggregateKind.Sum),
+                new AggregateDescription(table.getSchema().getDescription("Column1"),
+                        AggregateDescription.AggregateKind.Max)
+        };
+        for (RowSnapshot topRow : new RowSnapshot[] { null, new RowSnapshot(table, 123) }) {
+            NextKSketch nk = new NextKSketch(cso, agg, topRow, maxSize);
+            NextKList indexed = nk.create(table);
+            NextKList scanned = fragments.blockingSketch(nk);
+            Assert.assertNotNull(indexed);
+            Assert.assertNotNull(scanned);
+            Assert.assertEquals(maxSize, indexed.rows.getNumOfRows());
+            Assert.assertEquals(scanned.toLongString(maxSize), indexed.toLongString(maxSize));
+            Assert.assertEquals(scanned.startPosition, indexed.startPosition);
+            Assert.assertEquals(scanned.count, indexed.count);
+        }
+    }
+
     @Test
     public void testNextList() {
         ColumnDescription cd = new ColumnDescription("X", ContentsKind.Integer);
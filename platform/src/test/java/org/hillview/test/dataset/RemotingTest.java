@@ -17,11 +17,15 @@
 
 package org.hillview.test.dataset;
 
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.netty.channel.EventLoopGroup;
+import io.grpc.netty.shaded.io.netty.channel.nio.NioEventLoopGroup;
 import org.hillview.dataset.LocalDataSet;
 import org.hillview.dataset.ParallelDataSet;
 import org.hillview.dataset.PartialResultMonoid;
 import org.hillview.dataset.RemoteDataSet;
 import org.hillview.dataset.api.*;
+import org.hillview.dataset.remoting.ChannelPool;
 import org.hillview.dataset.remoting.HillviewServer;
 import org.hillview.maps.FalseMap;
 import org.hillview.sketches.NextKSketch;
@@ -370,6 +374,42 @@ public class RemotingTest extends BaseTest {
         assertEquals(1, count.get());
     }
 
+    @Test
+    public void testChannelPool() throws InterruptedException {
+        final RemoteDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+        final int sum = remoteIds.sketch(new SumSketch())
+                .reduce(0, (s, pr) -> s + Converters.checkNull(pr.deltaValue))
+                .toBlocking().last();
+        assertEquals(49995000, sum);
+        // Another dataset on the same server uses the same channel.
+        final RemoteDataSet<int[]> other = new RemoteDataSet<int[]>(serverAddress, 99);
+        assertTrue(other.getChannelStatistics().contains("requests"));
+
+        EventLoopGroup group = new NioEventLoopGroup(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ChannelPool pool = new ChannelPool(group, executor, 50);
+            HostAndPort first = HostAndPort.fromParts("127.0.0.1", 1300);
+            HostAndPort second = HostAndPort.fromParts("127.0.0.1", 1301);
+            ManagedChannel channel = pool.getChannel(first);
+            Assert.assertSame(channel, pool.getChannel(first));
+            Assert.assertNotSame(channel, pool.getChannel(second));
+            assertEquals(2, pool.size());
+            assertEquals(2, pool.getCreated());
+            Thread.sleep(100);
+            // Both channels have not been used recently.
+            pool.getChannel(second);
+            assertEquals(2, pool.getEvicted());
+            assertTrue(channel.isShutdown());
+            assertEquals(1, pool.size());
+            pool.close();
+            assertEquals(0, pool.size());
+        } finally {
+            group.shutdownGracefully();
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testZip() {
         final IDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
@@ -383,6 +423,23 @@ public class RemotingTest extends BaseTest {
         assertEquals(last.deltaDone, 1.0, 0.001);
     }
 
+    /**
+     * The remote call starts before the subscriber is attached to the reply subject;
+     * fast replies must not be lost.
+     */
+    @Test
+    public void testEarlyReplies() {
+        final IDataSet<int[]> remoteIds = new RemoteDataSet<int[]>(serverAddress);
+        for (int i = 0; i < 100; i++) {
+            final IDataSet<int[]> left = Converters.checkNull(
+                    remoteIds.map(new IncrementMap()).toBlocking().last().deltaValue);
+            final PartialResult<IDataSet<Pair<int[], int[]>>> last =
+                    left.zip(left).toBlocking().last();
+            assertEquals(1.0, last.deltaDone, 0.001);
+            assertNotNull(last.deltaValue);
+        }
+    }
+
     @Test
     public void testIncorrectRemoteIndex() {
         try {
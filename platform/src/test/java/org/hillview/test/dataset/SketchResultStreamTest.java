@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.dataset;
+
+import com.google.protobuf.ByteString;
+import io.grpc.stub.ServerCallStreamObserver;
+import org.hillview.dataset.api.IMonoid;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.dataset.remoting.SketchResultStream;
+import org.hillview.pb.PartialResponse;
+import org.hillview.test.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the flow control of the streams that send sketch results.
+ */
+public class SketchResultStreamTest extends BaseTest {
+    private static class SumMonoid implements IMonoid<Integer> {
+        @Override
+        public Integer zero() {
+            return 0;
+        }
+
+        @Override
+        public Integer add(@Nullable Integer left, @Nullable Integer right) {
+            assert left != null && right != null;
+            return left + right;
+        }
+    }
+
+    /**
+     * A gRPC stream whose readiness is controlled by the test.
+     */
+    private static class TestObserver extends ServerCallStreamObserver<PartialResponse> {
+        final List<String> messages = new ArrayList<String>();
+        boolean ready = false;
+        boolean completed = false;
+        @Nullable
+        Throwable error = null;
+        @Nullable
+        Runnable onReady = null;
+        @Nullable
+        Runnable onCancel = null;
+
+        void setReady(boolean ready) {
+            this.ready = ready;
+            if (ready && this.onReady != null)
+                this.onReady.run();
+        }
+
+        @Override
+        public boolean isCancelled() { return false; }
+        @Override
+        public void setOnCancelHandler(Runnable runnable) { this.onCancel = runnable; }
+        @Override
+        public void setCompression(String s) {}
+        @Override
+        public boolean isReady() { return this.ready; }
+        @Override
+        public void setOnReadyHandler(Runnable runnable) { this.onReady = runnable; }
+        @Override
+        public void disableAutoInboundFlowControl() {}
+        @Override
+        public void request(int i) {}
+        @Override
+        public void setMessageCompression(boolean b) {}
+        @Override
+        public void onNext(PartialResponse value) {
+            this.messages.add(value.getSerializedOp().toStringUtf8());
+        }
+        @Override
+        public void onError(Throwable throwable) { this.error = throwable; }
+        @Override
+        public void onCompleted() { this.completed = true; }
+    }
+
+    private static PartialResponse encode(PartialResult<Integer> pr) {
+        return PartialResponse.newBuilder()
+                .setSerializedOp(ByteString.copyFromUtf8(pr.deltaDone + ":" + pr.deltaValue))
+                .build();
+    }
+
+    private static SketchResultStream<Integer> create(TestObserver observer, List<SketchResultStream<Integer>> closed) {
+        // Messages are sent synchronously, on the caller's thread.
+        return new SketchResultStream<Integer>("test", observer, new SumMonoid(),
+                SketchResultStreamTest::encode, Runnable::run, closed::add);
+    }
+
+    @Test
+    public void testConflation() {
+        TestObserver observer = new TestObserver();
+        List<SketchResultStream<Integer>> closed = new ArrayList<SketchResultStream<Integer>>();
+        SketchResultStream<Integer> stream = create(observer, closed);
+        // At most 4 results are queued; the following ones are added to the last.
+        for (int i = 1; i <= 6; i++)
+            stream.onNext(new PartialResult<Integer>(.125, i));
+        Assert.assertEquals(0, observer.messages.size());
+        Assert.assertEquals(4, stream.getDepth());
+        Assert.assertEquals(2, stream.getConflated());
+
+        observer.setReady(true);
+        Assert.assertEquals(4, observer.messages.size());
+        Assert.assertEquals("0.125:1", observer.messages.get(0));
+        Assert.assertEquals("0.125:3", observer.messages.get(2));
+        Assert.assertEquals("0.375:15", observer.messages.get(3));
+        Assert.assertEquals(0, stream.getDepth());
+
+        stream.onNext(new PartialResult<Integer>(.125, 7));
+        Assert.assertEquals(5, observer.messages.size());
+        Assert.assertEquals("0.125:7", observer.messages.get(4));
+
+        observer.setReady(false);
+        stream.onNext(new PartialResult<Integer>(.125, 8));
+        stream.onCompleted();
+        Assert.assertFalse(observer.completed);
+        Assert.assertTrue(closed.isEmpty());
+        observer.setReady(true);
+        Assert.assertEquals("0.125:8", observer.messages.get(5));
+        Assert.assertTrue(observer.completed);
+        Assert.assertNull(observer.error);
+        Assert.assertEquals(1, closed.size());
+        Assert.assertEquals(8, stream.getReceived());
+        Assert.assertEquals(6, stream.getSent());
+        Assert.assertEquals(4, stream.getMaxDepth());
+    }
+
+    @Test
+    public void testCancel() {
+        TestObserver observer = new TestObserver();
+        List<SketchResultStream<Integer>> closed = new ArrayList<SketchResultStream<Integer>>();
+        SketchResultStream<Integer> stream = create(observer, closed);
+        stream.onNext(new PartialResult<Integer>(.5, 1));
+        Assert.assertNotNull(observer.onCancel);
+        observer.onCancel.run();
+        Assert.assertTrue(stream.isCancelled());
+        Assert.assertEquals(1, closed.size());
+        stream.onNext(new PartialResult<Integer>(.5, 1));
+        stream.onCompleted();
+        observer.setReady(true);
+        Assert.assertTrue(observer.messages.isEmpty());
+        Assert.assertFalse(observer.completed);
+        Assert.assertEquals(0, stream.getDepth());
+        Assert.assertEquals(1, closed.size());
+    }
+}
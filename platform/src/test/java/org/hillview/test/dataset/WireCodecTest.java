@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.dataset;
+
+import com.google.protobuf.ByteString;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.apache.commons.lang3.SerializationUtils;
+import org.hillview.dataset.api.PartialResult;
+import org.hillview.dataset.remoting.ITypeCodec;
+import org.hillview.dataset.remoting.OperationResponse;
+import org.hillview.dataset.remoting.WireCodec;
+import org.hillview.sketches.results.*;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
+import org.hillview.table.SmallTable;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.columns.ObjectArrayColumn;
+import org.hillview.table.rows.RowSnapshot;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the compact codecs used between RemoteDataSet and HillviewServer.
+ */
+public class WireCodecTest extends BaseTest {
+    private static <T extends Serializable> T roundTrip(T value) {
+        ByteString bytes = WireCodec.serialize(value, WireCodec.COMPACT);
+        T result = WireCodec.deserialize(bytes, WireCodec.COMPACT);
+        return Converters.checkNull(result);
+    }
+
+    private static SmallTable createTable() {
+        ObjectArrayColumn s = new ObjectArrayColumn(new ColumnDescription("S", ContentsKind.String), 3);
+        ObjectArrayColumn i = new ObjectArrayColumn(new ColumnDescription("I", ContentsKind.Integer), 3);
+        ObjectArrayColumn d = new ObjectArrayColumn(new ColumnDescription("D", ContentsKind.Date), 3);
+        ObjectArrayColumn u = new ObjectArrayColumn(new ColumnDescription("U", ContentsKind.Duration), 3);
+        ObjectArrayColumn x = new ObjectArrayColumn(new ColumnDescription("X", ContentsKind.Double), 3);
+        s.set(0, "a"); s.set(1, null); s.set(2, "c");
+        i.set(0, -5); i.set(1, 7); i.set(2, null);
+        d.set(0, Instant.ofEpochSecond(100, 5)); d.set(1, null); d.set(2, Instant.ofEpochSecond(-3));
+        u.set(0, Duration.ofMillis(10)); u.set(1, Duration.ofSeconds(-2)); u.set(2, null);
+        x.set(0, 1.5); x.set(1, null); x.set(2, -0.25);
+        List<IColumn> columns = new ArrayList<IColumn>();
+        columns.add(s);
+        columns.add(i);
+        columns.add(d);
+        columns.add(u);
+        columns.add(x);
+        return new SmallTable(columns);
+    }
+
+    @Test
+    public void testHistogram() {
+        Histogram h = new Histogram(new long[] { 0, 1, 1000000000000L, 3 }, 17);
+        Histogram r = roundTrip(h);
+        Assert.assertArrayEquals(h.buckets, r.buckets);
+        Assert.assertEquals(h.getMissingData(), r.getMissingData());
+        Assert.assertNull(r.confidence);
+    }
+
+    @Test
+    public void testHeatmap3D() {
+        Heatmap3D h = new Heatmap3D(2, 3, 4);
+        Heatmap3D r = roundTrip(h);
+        Assert.assertEquals(2, r.bucketCount0);
+        Assert.assertEquals(3, r.bucketCount1);
+        Assert.assertEquals(4, r.bucketCount2);
+        Assert.assertEquals(0, r.getCount(1, 2, 3));
+    }
+
+    @Test
+    public void testTable() {
+        SmallTable table = createTable();
+        SmallTable r = roundTrip(table);
+        Assert.assertEquals(table.getSchema(), r.getSchema());
+        Assert.assertEquals(table.getNumOfRows(), r.getNumOfRows());
+        for (int row = 0; row < table.getNumOfRows(); row++)
+            Assert.assertEquals(new RowSnapshot(table, row), new RowSnapshot(r, row));
+    }
+
+    @Test
+    public void testEmptyTables() {
+        SmallTable full = createTable();
+        List<SmallTable> tables = new ArrayList<SmallTable>();
+        tables.add(new SmallTable());
+        tables.add(new SmallTable(full.getSchema()));
+        tables.add((SmallTable)full.project(new Schema()));
+        for (SmallTable table : tables) {
+            SmallTable java = SerializationUtils.deserialize(SerializationUtils.serialize(table));
+            SmallTable r = roundTrip(table);
+            Assert.assertEquals(java.getSchema(), r.getSchema());
+            Assert.assertEquals(java.getNumOfRows(), r.getNumOfRows());
+            Assert.assertEquals(java.toJson(), r.toJson());
+        }
+    }
+
+    @Test
+    public void testNextKList() {
+        SmallTable table = createTable();
+        IntArrayList counts = new IntArrayList(new int[] { 3, 2, 1 });
+        NextKList list = new NextKList(table, null, counts, 10, 100);
+        PartialResult<NextKList> pr = new PartialResult<NextKList>(0.5, list);
+        PartialResult<NextKList> r = roundTrip(
+                new OperationResponse<PartialResult<NextKList>>(pr)).result;
+        Assert.assertNotNull(r);
+        Assert.assertEquals(0.5, r.deltaDone, 0);
+        NextKList rl = Converters.checkNull(r.deltaValue);
+        Assert.assertEquals(counts, rl.count);
+        Assert.assertEquals(10, rl.startPosition);
+        Assert.assertEquals(100, rl.rowsScanned);
+        Assert.assertNull(rl.aggregates);
+        Assert.assertEquals(list.toString(), rl.toString());
+    }
+
+    @Test
+    public void testFallback() {
+        // ArrayList has no codec, so it falls back to Java serialization.
+        PartialResult<ArrayList<String>> pr = new PartialResult<ArrayList<String>>(new ArrayList<String>());
+        Converters.checkNull(pr.deltaValue).add("x");
+        PartialResult<ArrayList<String>> r = roundTrip(pr);
+        Assert.assertEquals(pr.deltaValue, r.deltaValue);
+        Assert.assertNull(WireCodec.deserialize(WireCodec.serialize(null, WireCodec.COMPACT), WireCodec.COMPACT));
+    }
+
+    static class Point implements Serializable {
+        static final long serialVersionUID = 1;
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    static class PointCodec implements ITypeCodec<Point> {
+        @Override
+        public Class<Point> getEncodedClass() { return Point.class; }
+
+        @Override
+        public void encode(Point value, DataOutputStream out, WireCodec codec) throws IOException {
+            out.writeInt(value.x);
+            out.writeInt(value.y);
+        }
+
+        @Override
+        public Point decode(DataInputStream in, WireCodec codec) throws IOException {
+            int x = in.readInt();
+            return new Point(x, in.readInt());
+        }
+    }
+
+    private static byte[] write(WireCodec codec, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.writeObject(out, value);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Point read(WireCodec codec, byte[] data) throws IOException {
+        return (Point)Converters.checkNull(
+                codec.readObject(new DataInputStream(new ByteArrayInputStream(data))));
+    }
+
+    @Test
+    public void testStableTags() {
+        // Tags are part of the protocol: changing them breaks older peers.
+        ByteString bytes = WireCodec.serialize(new Histogram(new long[] { 1 }, 0), WireCodec.COMPACT);
+        Assert.assertEquals(13, bytes.byteAt(0));
+        bytes = WireCodec.serialize(new SmallTable(), WireCodec.COMPACT);
+        Assert.assertEquals(16, bytes.byteAt(0));
+    }
+
+    @Test
+    public void testOlderPeer() throws IOException {
+        Assert.assertEquals(WireCodec.JAVA_SERIALIZATION, WireCodec.negotiate(WireCodec.JAVA_SERIALIZATION));
+        Assert.assertEquals(WireCodec.LATEST, WireCodec.negotiate(WireCodec.LATEST + 1));
+
+        // A codec added in version 2 is not used when talking to a version 1 peer.
+        WireCodec newer = new WireCodec(2);
+        newer.register(2, 2, new PointCodec());
+        WireCodec older = newer.forVersion(1);
+        Point p = new Point(3, -4);
+
+        byte[] data = write(older, p);
+        // Java serialization tag
+        Assert.assertEquals(1, data[0]);
+        Point r = read(older, data);
+        Assert.assertEquals(-4, r.y);
+        r = read(newer, data);
+        Assert.assertEquals(3, r.x);
+
+        data = write(newer, p);
+        Assert.assertEquals(2, data[0]);
+        Assert.assertEquals(9, data.length);
+        r = read(newer, data);
+        Assert.assertEquals(-4, r.y);
+        try {
+            read(older, data);
+            Assert.fail("Older peer decoded an unknown codec");
+        } catch (IOException ex) {
+            Assert.assertTrue(ex.getMessage().contains("Unknown codec tag"));
+        }
+    }
+}
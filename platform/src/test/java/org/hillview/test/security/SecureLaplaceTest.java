@@ -4,8 +4,17 @@ import org.hillview.dataset.api.Pair;
 import org.hillview.security.SecureLaplace;
 import org.hillview.security.TestKeyLoader;
 import org.hillview.test.BaseTest;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public class SecureLaplaceTest extends BaseTest {
     @Test
     public void LaplaceTest() {
@@ -16,4 +25,96 @@ public class SecureLaplaceTest extends BaseTest {
         double noise = sl.sampleLaplace(-1, scale, idx);
         System.out.println(noise);
     }
+
+    private static List<List<Pair<Integer, Integer>>> buckets(int count, int intervals) {
+        List<List<Pair<Integer, Integer>>> result = new ArrayList<List<Pair<Integer, Integer>>>();
+        for (int i = 0; i < count; i++) {
+            List<Pair<Integer, Integer>> bucket = new ArrayList<Pair<Integer, Integer>>();
+            for (int j = 0; j < intervals; j++)
+                bucket.add(new Pair<Integer, Integer>(i * 100 + j, i * 100 + j + 1));
+            result.add(bucket);
+        }
+        return result;
+    }
+
+    @Test
+    public void batchTest() {
+        TestKeyLoader tkl = new TestKeyLoader();
+        SecureLaplace sl = new SecureLaplace(tkl);
+        double scale = 2;
+        List<List<Pair<Integer, Integer>>> x = buckets(10, 3);
+        List<List<Pair<Integer, Integer>>> y = buckets(7, 2);
+        double[][] cells = sl.cellNoise(4, scale, x, y);
+        // A new instance with the same key produces the same noise.
+        SecureLaplace other = new SecureLaplace(tkl);
+        double sumAbs = 0;
+        int count = 0;
+        for (int i = 0; i < x.size(); i++) {
+            for (int j = 0; j < y.size(); j++) {
+                double expected = 0;
+                for (Pair<Integer, Integer> xi : x.get(i)) {
+                    for (Pair<Integer, Integer> yj : y.get(j)) {
+                        double n = other.sampleLaplace(4, scale, xi, yj);
+                        expected += n;
+                        sumAbs += Math.abs(n);
+                        count++;
+                    }
+                }
+                Assert.assertEquals(expected, cells[i][j], 1e-9);
+            }
+        }
+        // The mean absolute value of Laplace(0, scale) is scale.
+        Assert.assertEquals(scale, sumAbs / count, scale / 4);
+        // Cached values are the same.
+        Assert.assertArrayEquals(cells[3], sl.cellNoise(4, scale, x, y)[3], 0);
+
+        // Shared intervals are only computed once, and get the same noise.
+        List<List<Pair<Integer, Integer>>> cdf = new ArrayList<List<Pair<Integer, Integer>>>();
+        Pair<Integer, Integer> first = new Pair<Integer, Integer>(0, 10);
+        Pair<Integer, Integer> second = new Pair<Integer, Integer>(10, 20);
+        cdf.add(Arrays.asList(first));
+        cdf.add(Arrays.asList(first, second));
+        double[] noise = sl.bucketNoise(5, scale, cdf);
+        Assert.assertEquals(noise[0], sl.sampleLaplace(5, scale, first), 0);
+        Assert.assertEquals(noise[1], noise[0] + other.sampleLaplace(5, scale, second), 1e-9);
+        // One- and two-dimensional indexes are distinct.
+        Assert.assertNotEquals(noise[0], sl.sampleLaplace(5, scale, new Pair<Integer, Integer>(0, 0), first), 0);
+    }
+
+    @Test
+    public void concurrentTest() throws InterruptedException, ExecutionException {
+        TestKeyLoader tkl = new TestKeyLoader();
+        SecureLaplace expected = new SecureLaplace(tkl);
+        SecureLaplace shared = new SecureLaplace(tkl);
+        List<List<Pair<Integer, Integer>>> x = buckets(20, 3);
+        List<List<Pair<Integer, Integer>>> y = buckets(30, 2);
+        double[][] cells = expected.cellNoise(1, 1, x, y);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<double[][]>> results = new ArrayList<Future<double[][]>>();
+            for (int i = 0; i < 16; i++)
+                results.add(executor.submit(() -> shared.cellNoise(1, 1, x, y)));
+            for (Future<double[][]> f : results) {
+                double[][] r = f.get();
+                for (int i = 0; i < cells.length; i++)
+                    Assert.assertArrayEquals(cells[i], r[i], 1e-12);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void stableNoiseTest() {
+        // The noise is a fixed function of the key and the index: changing it
+        // would give fresh noise for queries that were already answered.
+        TestKeyLoader tkl = new TestKeyLoader();
+        for (int i = 0; i < tkl.keyBase.length; i++)
+            tkl.keyBase[i] = (byte)i;
+        SecureLaplace sl = new SecureLaplace(tkl);
+        Pair<Integer, Integer> x = new Pair<Integer, Integer>(10, 11);
+        Pair<Integer, Integer> y = new Pair<Integer, Integer>(-3, 40);
+        Assert.assertEquals(-0.5776238010483272, sl.sampleLaplace(3, 1, x), 0);
+        Assert.assertEquals(0.4407510988669042, sl.sampleLaplace(3, 1, x, y), 0);
+    }
 }
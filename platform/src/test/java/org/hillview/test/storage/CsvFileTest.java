@@ -20,19 +20,25 @@ package org.hillview.test.storage;
 import com.univocity.parsers.csv.CsvFormat;
 import com.univocity.parsers.csv.CsvWriter;
 import com.univocity.parsers.csv.CsvWriterSettings;
+import org.hillview.storage.ColumnarFileCache;
 import org.hillview.storage.CsvFileLoader;
 import org.hillview.storage.CsvFileWriter;
+import org.hillview.storage.FileSetDescription;
+import org.hillview.storage.IFileReference;
 import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
 import org.hillview.table.Table;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
+import org.hillview.table.columns.ConcatenatedColumn;
 import org.hillview.table.columns.StringListColumn;
 import org.hillview.table.columns.IntListColumn;
 import org.hillview.test.BaseTest;
 import org.junit.Assert;
 import org.junit.Test;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -221,6 +227,140 @@ public class CsvFileTest extends BaseTest {
         Assert.assertNotNull(tbl);
         writeReadTable(tbl);
     }
-}
 
+    @Test
+    public void columnarCacheTest() throws IOException {
+        Path cacheFolder = Files.createTempDirectory("hillview");
+        FileSetDescription desc = new FileSetDescription();
+        desc.fileKind = "csv";
+        desc.fileNamePattern = Paths.get(ontimeFolder, csvFile).toString();
+        desc.schemaFile = schemaFile;
+        IFileReference ref = desc.createFileReference(desc.fileNamePattern);
+        ColumnarFileCache cache = ColumnarFileCache.instance;
+        try {
+            cache.setDirectory(cacheFolder.toString());
+            long hits = cache.getHits();
+            ITable parsed = ref.load();
+            File[] cached = cacheFolder.toFile().listFiles();
+            Assert.assertNotNull(cached);
+            Assert.assertEquals(1, cached.length);
+            ITable loaded = ref.load();
+            Assert.assertEquals(hits + 1, cache.getHits());
+            Assert.assertEquals(parsed.getSchema(), loaded.getSchema());
+            Assert.assertEquals(parsed.getNumOfRows(), loaded.getNumOfRows());
+            for (String col : parsed.getSchema().getColumnNames()) {
+                IColumn expected = parsed.getLoadedColumn(col);
+                IColumn actual = loaded.getLoadedColumn(col);
+                for (int i = 0; i < parsed.getNumOfRows(); i++)
+                    Assert.assertEquals(expected.getObject(i), actual.getObject(i));
+            }
 
+            // A different schema is cached separately.
+            desc.schemaFile = null;
+            desc.createFileReference(desc.fileNamePattern).load();
+            cached = cacheFolder.toFile().listFiles();
+            Assert.assertNotNull(cached);
+            Assert.assertEquals(2, cached.length);
+        } finally {
+            cache.setDirectory(null);
+            File[] files = cacheFolder.toFile().listFiles();
+            if (files != null)
+                for (File f : files)
+                    Files.delete(f.toPath());
+            Files.delete(cacheFolder);
+        }
+    }
+
+    private static ITable loadCsv(String file, @Nullable String schema, long chunkSize) {
+        CsvFileLoader.Config config = new CsvFileLoader.Config();
+        config.allowFewerColumns = true;
+        config.hasHeaderRow = true;
+        config.parallelChunkSize = chunkSize;
+        return new CsvFileLoader(file, config, schema).load();
+    }
+
+    private static void compareTables(ITable expected, ITable actual) {
+        Assert.assertEquals(expected.getSchema(), actual.getSchema());
+        Assert.assertEquals(expected.getNumOfRows(), actual.getNumOfRows());
+        for (String col : expected.getSchema().getColumnNames()) {
+            IColumn e = expected.getLoadedColumn(col);
+            IColumn a = actual.getLoadedColumn(col);
+            for (int i = 0; i < expected.getNumOfRows(); i++)
+                Assert.assertEquals(e.getObject(i), a.getObject(i));
+        }
+    }
+
+    @Test
+    public void parallelLoadTest() {
+        String file = Paths.get(ontimeFolder, csvFile).toString();
+        String schema = Paths.get(ontimeFolder, schemaFile).toString();
+        compareTables(loadCsv(file, schema, 0), loadCsv(file, schema, 1000));
+        compareTables(loadCsv(file, null, 0), loadCsv(file, null, 1000));
+    }
+
+    @Test
+    public void parallelLoadQuotedTest() throws IOException {
+        File file = File.createTempFile("hillview", ".csv");
+        try {
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("Name,Count,Value,Empty\n");
+                for (int i = 0; i < 5000; i++) {
+                    String name = i % 3 == 0 ? "\"line\nbreak, \"\"" + i + "\"\"\"" : "plain" + (i % 10);
+                    // The sample of each chunk only contains integers.
+                    String count = i == 4500 ? "1.5" : Integer.toString(i);
+                    String value = i % 7 == 0 ? "" : Double.toString(i / 4.0);
+                    writer.write(name + "," + count + "," + value + ",\n");
+                }
+            }
+            ITable sequential = loadCsv(file.getPath(), null, 0);
+            ITable parallel = loadCsv(file.getPath(), null, 4096);
+            compareTables(sequential, parallel);
+            // Large chunks: the sample does not contain row 4500, so the file is parsed again.
+            compareTables(sequential, loadCsv(file.getPath(), null, 50000));
+            Assert.assertEquals(5000, parallel.getNumOfRows());
+            Assert.assertTrue(parallel.getLoadedColumn("Value") instanceof ConcatenatedColumn);
+            Assert.assertEquals(ContentsKind.Double, parallel.getSchema().getKind("Count"));
+            Assert.assertEquals("line\nbreak, \"3\"", parallel.getLoadedColumn("Name").getString(3));
+        } finally {
+            Files.delete(file.toPath());
+        }
+    }
+
+    /**
+     * The first rows use the month/day/year format, the last rows day-month-year.
+     * All chunks must parse dates with the format guessed from the first value,
+     * as the sequential loader does.
+     */
+    @Test
+    public void parallelLoadDatesTest() throws IOException {
+        File file = File.createTempFile("hillview", ".csv");
+        File schemaFile = File.createTempFile("hillview", ".schema");
+        try {
+            try (Writer writer = new FileWriter(file)) {
+                writer.write("Date,Count\n");
+                for (int i = 0; i < 5000; i++) {
+                    String separator = i < 2500 ? "/" : "-";
+                    writer.write(String.format("%02d%s%02d%s2020,%d\n",
+                            1 + i % 12, separator, 1 + i % 28, separator, i));
+                }
+            }
+            ITable sequential = loadCsv(file.getPath(), null, 0);
+            ITable parallel = loadCsv(file.getPath(), null, 4096);
+            compareTables(sequential, parallel);
+            Assert.assertEquals(ContentsKind.String, parallel.getSchema().getKind("Date"));
+
+            Schema schema = new Schema();
+            schema.append(new ColumnDescription("Date", ContentsKind.Date));
+            schema.append(new ColumnDescription("Count", ContentsKind.Integer));
+            schema.writeToJsonFile(schemaFile.toPath());
+            sequential = loadCsv(file.getPath(), schemaFile.getPath(), 0);
+            parallel = loadCsv(file.getPath(), schemaFile.getPath(), 4096);
+            compareTables(sequential, parallel);
+            // Dates in the day-month-year format cannot be parsed.
+            Assert.assertTrue(parallel.getLoadedColumn("Date").isMissing(4999));
+        } finally {
+            Files.delete(file.toPath());
+            Files.delete(schemaFile.toPath());
+        }
+    }
+}
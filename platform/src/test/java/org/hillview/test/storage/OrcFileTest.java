@@ -24,9 +24,11 @@ import org.apache.orc.OrcFile;
 import org.apache.orc.Reader;
 import org.apache.orc.RecordReader;
 import org.apache.orc.TypeDescription;
+import org.hillview.maps.FilterMap;
 import org.hillview.storage.CsvFileLoader;
 import org.hillview.storage.OrcFileLoader;
 import org.hillview.storage.OrcFileWriter;
+import org.hillview.table.BlockStatistics;
 import org.hillview.table.ColumnDescription;
 import org.hillview.table.Schema;
 import org.hillview.table.Table;
@@ -34,6 +36,8 @@ import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IColumn;
 import org.hillview.table.api.ITable;
 import org.hillview.table.columns.StringArrayColumn;
+import org.hillview.table.filters.ComparisonFilterDescription;
+import org.hillview.table.filters.RangeFilterDescription;
 import org.hillview.test.BaseTest;
 import org.hillview.utils.TestTables;
 import org.junit.Assert;
@@ -186,4 +190,39 @@ public class OrcFileTest extends BaseTest {
         Table ref = TestTables.testRepTable();
         Assert.assertEquals(ref.toLongString(20), table.toLongString(20));
     }
+
+    private static RangeFilterDescription ageRange(double min, double max) {
+        RangeFilterDescription result = new RangeFilterDescription();
+        result.cd = new ColumnDescription("Age", ContentsKind.Integer);
+        result.min = min;
+        result.max = max;
+        return result;
+    }
+
+    @Test
+    public void statisticsFilterTest() {
+        String orcFile = orcFolder + orcOutFile;
+        OrcFileLoader loader = new OrcFileLoader(orcFile, null, true);
+        Table table = (Table)loader.load();
+        List<BlockStatistics> stats = table.getColumnStatistics("Age");
+        Assert.assertNotNull(stats);
+        Assert.assertEquals(1, stats.size());
+        Assert.assertEquals(15, stats.get(0).presentCount);
+        Assert.assertEquals(10, stats.get(0).min, 0);
+        Assert.assertEquals(60, stats.get(0).max, 0);
+
+        // These filters are decided by the statistics, so the columns are not loaded.
+        ITable all = new FilterMap(ageRange(0, 100)).apply(table);
+        Assert.assertEquals(15, all.getNumOfRows());
+        ITable none = new FilterMap(ageRange(70, 80)).apply(table);
+        Assert.assertEquals(0, none.getNumOfRows());
+        ComparisonFilterDescription name = new ComparisonFilterDescription(
+                new ColumnDescription("Name", ContentsKind.String), "Zed", null, "==");
+        Assert.assertEquals(0, new FilterMap(name).apply(table).getNumOfRows());
+        Assert.assertFalse(table.getColumns().get(0).isLoaded());
+        Assert.assertFalse(table.getColumns().get(1).isLoaded());
+
+        ITable some = new FilterMap(ageRange(15, 35)).apply(table);
+        Assert.assertEquals(7, some.getNumOfRows());
+    }
 }
@@ -17,14 +17,34 @@
 
 package org.hillview.test.storage;
 
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.hillview.maps.FilterMap;
 import org.hillview.storage.ParquetFileLoader;
+import org.hillview.table.BlockStatistics;
+import org.hillview.table.ColumnDescription;
 import org.hillview.table.Table;
+import org.hillview.table.api.ContentsKind;
 import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ITable;
+import org.hillview.table.api.ITableFilterDescription;
+import org.hillview.table.filters.ComparisonFilterDescription;
+import org.hillview.table.filters.RangeFilterDescription;
 import org.hillview.test.BaseTest;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 public class ParquetTest extends BaseTest {
     // Not yet checked-in into the repository
     private static final String path = "../data/parquet/" +
@@ -63,4 +83,134 @@ public class ParquetTest extends BaseTest {
         Table tbl = (Table)table;
         Assert.assertFalse(tbl.getColumns().get(1).isLoaded());
     }
+
+    private static final int writtenRows = 10000;
+
+    private static void writeFile(File file) throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType(
+                "message test { optional int32 i; optional double d; optional int64 l; " +
+                        "optional binary s (UTF8); required boolean b; }");
+        SimpleGroupFactory factory = new SimpleGroupFactory(schema);
+        try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(new Path(file.getPath()))
+                .withType(schema)
+                // Small row groups and pages, so that there are several of each
+                .withRowGroupSize(16 * 1024)
+                .withPageSize(1024)
+                .build()) {
+            for (int row = 0; row < writtenRows; row++) {
+                Group g = factory.newGroup();
+                if (row % 7 != 0)
+                    g.add("i", row);
+                g.add("d", row / 2.0);
+                if (row % 5 != 0)
+                    g.add("l", (long)row * 3);
+                if (row % 11 != 0)
+                    g.add("s", "S" + (row % 13));
+                g.add("b", row % 2 == 0);
+                writer.write(g);
+            }
+        }
+    }
+
+    private static void checkTable(ITable table) {
+        Assert.assertEquals(writtenRows, table.getNumOfRows());
+        Assert.assertEquals(ContentsKind.Integer, table.getSchema().getKind("i"));
+        Assert.assertEquals(ContentsKind.Double, table.getSchema().getKind("l"));
+        List<IColumn> cols = table.getLoadedColumns(Arrays.asList("i", "d", "l", "s", "b"));
+        for (int row = 0; row < writtenRows; row++) {
+            Assert.assertEquals(row % 7 == 0, cols.get(0).isMissing(row));
+            if (row % 7 != 0)
+                Assert.assertEquals(row, cols.get(0).getInt(row));
+            Assert.assertEquals(row / 2.0, cols.get(1).getDouble(row), 0);
+            Assert.assertEquals(row % 5 == 0, cols.get(2).isMissing(row));
+            if (row % 5 != 0)
+                Assert.assertEquals(row * 3.0, cols.get(2).getDouble(row), 0);
+            if (row % 11 != 0)
+                Assert.assertEquals("S" + (row % 13), cols.get(3).getString(row));
+            else
+                Assert.assertTrue(cols.get(3).isMissing(row));
+            Assert.assertEquals(row % 2 == 0 ? "true" : "false", cols.get(4).getString(row));
+        }
+    }
+
+    /**
+     * Checks that filtering the lazy table gives the same rows as filtering the eager one.
+     */
+    private static void checkFilter(ITable lazy, ITable eager, ITableFilterDescription filter) {
+        ITable l = new FilterMap(filter).apply(lazy);
+        ITable e = new FilterMap(filter).apply(eager);
+        Assert.assertEquals(e.getNumOfRows(), l.getNumOfRows());
+        IRowIterator li = l.getMembershipSet().getIterator();
+        IRowIterator ei = e.getMembershipSet().getIterator();
+        for (int row = ei.getNextRow(); row >= 0; row = ei.getNextRow())
+            Assert.assertEquals(row, li.getNextRow());
+    }
+
+    @Test
+    public void statisticsFilterTest() throws IOException {
+        File file = File.createTempFile("hillview", ".parquet");
+        Assert.assertTrue(file.delete());
+        File crc = new File(file.getParent(), "." + file.getName() + ".crc");
+        try {
+            writeFile(file);
+            ITable eager = new ParquetFileLoader(file.getPath(), false).load();
+            Table lazy = (Table)new ParquetFileLoader(file.getPath(), true).load();
+            List<BlockStatistics> stats = lazy.getColumnStatistics("d");
+            Assert.assertNotNull(stats);
+            Assert.assertTrue(stats.size() > 3);
+            Assert.assertNull(lazy.getColumnStatistics("s"));
+
+            // A range made of whole row groups is decided without loading the column.
+            RangeFilterDescription range = new RangeFilterDescription();
+            range.cd = new ColumnDescription("d", ContentsKind.Double);
+            range.min = stats.get(1).min;
+            range.max = stats.get(2).max;
+            ITable filtered = new FilterMap(range).apply(lazy);
+            Assert.assertEquals(stats.get(1).rowCount + stats.get(2).rowCount,
+                    filtered.getNumOfRows());
+            Assert.assertFalse(lazy.getColumns().get(1).isLoaded());
+            checkFilter(lazy, eager, range);
+            range.complement = true;
+            checkFilter(lazy, eager, range);
+
+            range = new RangeFilterDescription();
+            range.cd = new ColumnDescription("i", ContentsKind.Integer);
+            range.min = 1000;
+            range.max = 3000.5;
+            checkFilter(lazy, eager, range);
+
+            for (String op : new String[] { "==", "!=", "<", ">", "<=", ">=" }) {
+                checkFilter(lazy, eager, new ComparisonFilterDescription(
+                        new ColumnDescription("d", ContentsKind.Double), null, 1500.0, op));
+                checkFilter(lazy, eager, new ComparisonFilterDescription(
+                        new ColumnDescription("i", ContentsKind.Integer), null, 7000.0, op));
+                checkFilter(lazy, eager, new ComparisonFilterDescription(
+                        new ColumnDescription("l", ContentsKind.Double), null, 300.0, op));
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            //noinspection ResultOfMethodCallIgnored
+            crc.delete();
+        }
+    }
+
+    @Test
+    public void writeAndReadTest() throws IOException {
+        File file = File.createTempFile("hillview", ".parquet");
+        Assert.assertTrue(file.delete());
+        File crc = new File(file.getParent(), "." + file.getName() + ".crc");
+        try {
+            writeFile(file);
+            checkTable(new ParquetFileLoader(file.getPath(), false).load());
+            ITable table = new ParquetFileLoader(file.getPath(), true).load();
+            Assert.assertFalse(((Table)table).getColumns().get(0).isLoaded());
+            checkTable(table);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            //noinspection ResultOfMethodCallIgnored
+            crc.delete();
+        }
+    }
 }
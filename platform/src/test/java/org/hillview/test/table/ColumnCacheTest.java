@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.table;
+
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.Table;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IColumnLoader;
+import org.hillview.table.columns.ColumnCache;
+import org.hillview.table.columns.IntArrayColumn;
+import org.hillview.table.columns.LazyColumn;
+import org.hillview.test.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the cache that unloads lazy columns.
+ */
+public class ColumnCacheTest extends BaseTest {
+    private static final int rows = 1000;
+
+    /**
+     * Loads integer columns where each value is the row index plus the column number.
+     */
+    static class CountingLoader implements IColumnLoader, Serializable {
+        static final long serialVersionUID = 1;
+        int loaded = 0;
+
+        @Override
+        public List<IColumn> loadColumns(List<String> names) {
+            List<IColumn> result = new ArrayList<IColumn>();
+            for (String n : names) {
+                this.loaded++;
+                int[] data = new int[rows];
+                int offset = Integer.parseInt(n.substring(1));
+                for (int i = 0; i < rows; i++)
+                    data[i] = i + offset;
+                result.add(new IntArrayColumn(new ColumnDescription(n, ContentsKind.Integer), data));
+            }
+            return result;
+        }
+    }
+
+    private static int getValue(Table table, String column, int row) {
+        IColumn col = table.getLoadedColumns(Arrays.asList(column)).get(0);
+        return col.getInt(row);
+    }
+
+    @Test
+    public void testEviction() {
+        // Room for two columns of integers.
+        ColumnCache cache = new ColumnCache(10000);
+        CountingLoader loader = new CountingLoader();
+        List<LazyColumn> cols = new ArrayList<LazyColumn>();
+        for (int i = 0; i < 3; i++)
+            cols.add(new LazyColumn(new ColumnDescription("C" + i, ContentsKind.Integer),
+                    rows, loader, cache));
+        Table table = new Table(cols, null, loader);
+
+        Assert.assertEquals(5, getValue(table, "C0", 5));
+        Assert.assertEquals(6, getValue(table, "C1", 5));
+        Assert.assertEquals(2, loader.loaded);
+        Assert.assertEquals(5, getValue(table, "C0", 5));
+        Assert.assertEquals(2, loader.loaded);
+        Assert.assertEquals(1, cache.getHits());
+
+        // C1 is the least recently used.
+        Assert.assertEquals(7, getValue(table, "C2", 5));
+        Assert.assertEquals(3, loader.loaded);
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertTrue(table.getColumn("C0").isLoaded());
+        Assert.assertFalse(table.getColumn("C1").isLoaded());
+        Assert.assertTrue(table.getColumn("C2").isLoaded());
+        Assert.assertEquals(2, cache.getLoadedColumnCount());
+
+        // Reloading C1 evicts C0
+        Assert.assertEquals(10, getValue(table, "C1", 9));
+        Assert.assertEquals(4, loader.loaded);
+        Assert.assertFalse(table.getColumn("C0").isLoaded());
+        // Direct access through the lazy column reloads it as well.
+        Assert.assertEquals(3, table.getColumn("C0").getInt(3));
+        Assert.assertEquals(5, loader.loaded);
+        Assert.assertEquals(5, cache.getMisses());
+        Assert.assertEquals(3, cache.getEvictions());
+        Assert.assertTrue(cache.getUsedBytes() <= 10000);
+
+        cache.setBudget(0);
+        Assert.assertEquals(0, cache.getLoadedColumnCount());
+        Assert.assertEquals(0, cache.getUsedBytes());
+        for (LazyColumn c : cols)
+            Assert.assertFalse(c.isLoaded());
+    }
+
+    @Test
+    public void testRename() {
+        ColumnCache cache = new ColumnCache(10000);
+        CountingLoader loader = new CountingLoader();
+        LazyColumn col = new LazyColumn(new ColumnDescription("C1", ContentsKind.Integer),
+                rows, loader, cache);
+        Assert.assertEquals(1, col.getInt(0));
+        long bytes = cache.getUsedBytes();
+        IColumn renamed = col.rename("R");
+        Assert.assertTrue(renamed.isLoaded());
+        Assert.assertEquals(2, cache.getLoadedColumnCount());
+        Assert.assertEquals(2 * bytes, cache.getUsedBytes());
+        Assert.assertEquals(2, ((LazyColumn)renamed).getData().getInt(1));
+        Assert.assertEquals(1, cache.getHits());
+
+        // The copies are evicted separately, the least recently used first.
+        cache.setBudget(bytes);
+        Assert.assertEquals(1, cache.getLoadedColumnCount());
+        Assert.assertFalse(col.isLoaded());
+        Assert.assertTrue(renamed.isLoaded());
+        cache.setBudget(0);
+        Assert.assertFalse(renamed.isLoaded());
+        Assert.assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+        ColumnCache cache = new ColumnCache(10000);
+        CountingLoader loader = new CountingLoader();
+        LazyColumn col = new LazyColumn(new ColumnDescription("C3", ContentsKind.Integer),
+                rows, loader, cache);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(col);
+        }
+        LazyColumn copy;
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (LazyColumn)in.readObject();
+        }
+        Assert.assertFalse(copy.isLoaded());
+        Assert.assertEquals(8, copy.getInt(5));
+        Assert.assertTrue(copy.isLoaded());
+        Assert.assertEquals(8, copy.getData().getInt(5));
+        // The copy is accounted in the process cache, not in the original one.
+        Assert.assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testCollectedColumns() throws InterruptedException {
+        ColumnCache cache = new ColumnCache(10000);
+        CountingLoader loader = new CountingLoader();
+        LazyColumn col = new LazyColumn(new ColumnDescription("C0", ContentsKind.Integer),
+                rows, loader, cache);
+        Assert.assertEquals(0, col.getInt(0));
+        Assert.assertEquals(1, cache.getLoadedColumnCount());
+        Assert.assertTrue(cache.getUsedBytes() > 0);
+
+        col = null;
+        for (int i = 0; i < 100 && cache.getLoadedColumnCount() > 0; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, cache.getLoadedColumnCount());
+        Assert.assertEquals(0, cache.getUsedBytes());
+        Assert.assertEquals(0, cache.getEvictions());
+    }
+}
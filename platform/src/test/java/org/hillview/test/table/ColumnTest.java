@@ -17,17 +17,39 @@
 
 package org.hillview.test.table;
 
+import org.hillview.sketches.results.StringHistogramBuckets;
 import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.IAppendableColumn;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.IndexComparator;
+import org.hillview.table.columns.BaseListColumn;
+import org.hillview.table.columns.ColumnStorage;
+import org.hillview.table.columns.OffHeapColumn;
+import org.hillview.table.columns.SharedDictionary;
 import org.hillview.table.columns.StringListColumn;
 import org.hillview.table.columns.DoubleListColumn;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.columns.IntArrayColumn;
+import org.hillview.table.columns.SparseColumn;
+import org.hillview.table.membership.FullMembershipSet;
+import org.hillview.table.rows.RowBatch;
 import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 
@@ -134,4 +156,275 @@ public class ColumnTest extends BaseTest {
         Assert.assertEquals(100002, firstCount);
         Assert.assertEquals(col.sizeInRows() - nulls - firstCount, otherCount);
     }
+
+    @Test
+    public void testSparseColumn() {
+        final int size = 1000;
+        SparseColumn ints = new SparseColumn(new ColumnDescription("I", ContentsKind.Integer), size);
+        SparseColumn doubles = new SparseColumn(new ColumnDescription("D", ContentsKind.Double), size);
+        SparseColumn dates = new SparseColumn(new ColumnDescription("T", ContentsKind.Date), size);
+        SparseColumn strings = new SparseColumn(new ColumnDescription("S", ContentsKind.String), size);
+        Instant base = Instant.ofEpochMilli(1000000);
+        // Filled in decreasing order, which makes the hash maps unordered.
+        for (int i = size - 1; i >= 0; i -= 7) {
+            ints.set(i, i);
+            doubles.set(i, i / 2.0);
+            dates.set(i, (Object)base.plusMillis(i));
+            strings.set(i, "S" + i);
+        }
+        ints.setMissing(7 * 3 + 5);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < size; i++) {
+                boolean present = (size - 1 - i) % 7 == 0 && i != 7 * 3 + 5;
+                Assert.assertEquals(!present, ints.isMissing(i));
+                if (present) {
+                    Assert.assertEquals(i, ints.getInt(i));
+                    Assert.assertEquals(i, ints.getObject(i));
+                }
+                if ((size - 1 - i) % 7 == 0) {
+                    Assert.assertEquals(i / 2.0, doubles.getDouble(i), 0);
+                    Assert.assertEquals(base.plusMillis(i), dates.getDate(i));
+                    Assert.assertEquals("S" + i, strings.getString(i));
+                } else {
+                    Assert.assertTrue(doubles.isMissing(i));
+                    Assert.assertNull(dates.getDate(i));
+                    Assert.assertNull(strings.getString(i));
+                }
+            }
+            ints.seal();
+            doubles.seal();
+            dates.seal();
+            strings.seal();
+        }
+        // Batch reads, and random access after sequential access
+        int[] rows = { 5, 6, 999, 992, 2 };
+        double[] values = new double[rows.length];
+        boolean[] missing = new boolean[rows.length];
+        doubles.asDoubles(rows, rows.length, values, missing);
+        Assert.assertArrayEquals(new boolean[] { false, true, false, false, true }, missing);
+        Assert.assertEquals(2.5, values[0], 0);
+        Assert.assertEquals(999 / 2.0, values[2], 0);
+        Assert.assertEquals(496.0, values[3], 0);
+        // A sealed column can still be changed.
+        strings.set(0, "zero");
+        strings.set(6, (String)null);
+        Assert.assertEquals("zero", strings.getString(0));
+        Assert.assertTrue(strings.isMissing(6));
+        IColumn renamed = strings.rename("R");
+        Assert.assertEquals("S12", renamed.getString(12));
+        // The renamed column does not see later changes.
+        strings.set(12, "changed");
+        Assert.assertEquals("S12", renamed.getString(12));
+        Assert.assertEquals("changed", strings.getString(12));
+    }
+
+    @Test
+    public void testSparseColumnConcurrentReads() throws InterruptedException {
+        final int size = 10000;
+        SparseColumn ints = new SparseColumn(new ColumnDescription("I", ContentsKind.Integer), size);
+        for (int i = 0; i < size; i += 3)
+            ints.set(i, i);
+        ints.seal();
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicInteger errors = new AtomicInteger(0);
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                int[] rows = new int[100];
+                double[] values = new double[rows.length];
+                boolean[] missing = new boolean[rows.length];
+                while (!done.get()) {
+                    for (int i = 0; i < size; i += 3)
+                        if (ints.isMissing(i) || ints.getInt(i) != i)
+                            errors.incrementAndGet();
+                    for (int i = 0; i < rows.length; i++)
+                        rows[i] = i * 3;
+                    ints.asDoubles(rows, rows.length, values, missing);
+                    for (int i = 0; i < rows.length; i++)
+                        if (missing[i] || values[i] != i * 3)
+                            errors.incrementAndGet();
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+        // Rows that the readers do not look at are changed, which unseals the column.
+        for (int round = 0; round < 200; round++) {
+            ints.set(1 + 3 * (round % 100), round);
+            ints.seal();
+        }
+        done.set(true);
+        for (Thread reader : readers)
+            reader.join();
+        Assert.assertEquals(0, errors.get());
+    }
+
+    private static void checkSameValues(IColumn expected, IColumn actual) {
+        Assert.assertEquals(expected.sizeInRows(), actual.sizeInRows());
+        Assert.assertEquals(expected.getDescription(), actual.getDescription());
+        for (int i = 0; i < expected.sizeInRows(); i++) {
+            Assert.assertEquals(expected.isMissing(i), actual.isMissing(i));
+            Assert.assertEquals(expected.getObject(i), actual.getObject(i));
+        }
+    }
+
+    @Test
+    public void testOffHeapColumns() throws IOException, ClassNotFoundException {
+        final int size = 3 * BaseListColumn.SegmentSize + 17;
+        Instant base = Instant.ofEpochMilli(1000000);
+        try {
+            for (ColumnStorage.Tier tier : new ColumnStorage.Tier[] {
+                    ColumnStorage.Tier.Direct, ColumnStorage.Tier.Mapped }) {
+                List<IColumn> heap = new ArrayList<IColumn>();
+                List<IColumn> stored = new ArrayList<IColumn>();
+                for (ContentsKind kind : new ContentsKind[] { ContentsKind.Integer,
+                        ContentsKind.Double, ContentsKind.Date, ContentsKind.Duration,
+                        ContentsKind.String }) {
+                    ColumnStorage.setTier(ColumnStorage.Tier.Heap, null);
+                    IAppendableColumn col = BaseListColumn.create(
+                            new ColumnDescription(kind.toString(), kind));
+                    for (int i = 0; i < size; i++) {
+                        if (i % 13 == 3) {
+                            col.appendMissing();
+                            continue;
+                        }
+                        switch (kind) {
+                            case Integer:
+                                col.append(i - 100);
+                                break;
+                            case Double:
+                                col.append(i / 3.0);
+                                break;
+                            case Date:
+                                col.append(base.plusSeconds(i));
+                                break;
+                            case Duration:
+                                col.append(Duration.ofMillis(i));
+                                break;
+                            default:
+                                // More than 256 distinct values, so codes use two bytes.
+                                col.append("S" + (i % 300));
+                                break;
+                        }
+                    }
+                    heap.add(col.seal());
+                    ColumnStorage.setTier(tier, null);
+                    IAppendableColumn copy = BaseListColumn.create(
+                            new ColumnDescription(kind.toString(), kind));
+                    for (int i = 0; i < size; i++)
+                        copy.append(heap.get(heap.size() - 1).getObject(i));
+                    stored.add(copy.seal());
+                    // Sealing twice does not copy the data again.
+                    Assert.assertSame(stored.get(stored.size() - 1), copy.seal());
+                }
+                for (int c = 0; c < heap.size(); c++) {
+                    IColumn off = stored.get(c);
+                    Assert.assertTrue(off instanceof OffHeapColumn);
+                    checkSameValues(heap.get(c), off);
+                    checkSameValues(heap.get(c), off.rename(off.getName()));
+                    Assert.assertEquals(0, heap.get(c).getComparator().compare(5, 5));
+                    Assert.assertEquals(
+                            Integer.signum(heap.get(c).getComparator().compare(4, 5)),
+                            Integer.signum(off.getComparator().compare(4, 5)));
+
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                        out.writeObject(off);
+                    }
+                    try (ObjectInputStream in = new ObjectInputStream(
+                            new ByteArrayInputStream(bytes.toByteArray()))) {
+                        checkSameValues(heap.get(c), (IColumn)in.readObject());
+                    }
+                }
+                IDictionaryColumn strings = (IDictionaryColumn)stored.get(4);
+                // The missing value has a code as well.
+                Assert.assertEquals(301, strings.getDictionarySize());
+                Assert.assertEquals("S7", strings.decode(strings.lookup("S7")));
+                Assert.assertEquals(-1, strings.lookup("absent"));
+
+                int[] rows = { 3, 4, 5, 100, 2 * BaseListColumn.SegmentSize };
+                double[] values = new double[rows.length];
+                boolean[] missing = new boolean[rows.length];
+                stored.get(1).asDoubles(rows, rows.length, values, missing);
+                for (int i = 0; i < rows.length; i++) {
+                    Assert.assertEquals(rows[i] % 13 == 3, missing[i]);
+                    if (!missing[i])
+                        Assert.assertEquals(rows[i] / 3.0, values[i], 0);
+                }
+            }
+        } finally {
+            ColumnStorage.setTier(ColumnStorage.Tier.Heap, null);
+        }
+    }
+
+    @Test
+    public void testSharedDictionary() {
+        ColumnDescription desc = new ColumnDescription("S", ContentsKind.String);
+        final int size = 1000;
+        StringListColumn first = new StringListColumn(desc);
+        StringListColumn second = new StringListColumn(desc);
+        for (int i = 0; i < size; i++) {
+            // Build new string objects, so values are equal but not identical.
+            first.append(i % 10 == 0 ? null : new String("v" + (i % 37)));
+            second.append(new String("v" + ((i * 7) % 41)));
+        }
+        int[] firstIds = first.getSharedIds();
+        int[] secondIds = second.getSharedIds();
+        Assert.assertNotNull(firstIds);
+        Assert.assertNotNull(secondIds);
+        for (int i = 0; i < size; i++) {
+            String f = first.getString(i);
+            if (f == null) {
+                Assert.assertEquals(-1, firstIds[first.getCode(i)]);
+                continue;
+            }
+            int id = firstIds[first.getCode(i)];
+            Assert.assertSame(SharedDictionary.instance.get(id), f);
+            int code = second.lookup(f);
+            if (code >= 0) {
+                // The same value has the same id in both columns
+                Assert.assertEquals(id, secondIds[code]);
+                Assert.assertSame(second.decode(code), f);
+            }
+        }
+
+        IndexComparator comparator = first.getComparator();
+        for (int i = 0; i < 100; i++)
+            for (int j = 0; j < 100; j++)
+                Assert.assertEquals(
+                        Integer.signum(Converters.compareStrings(first.getString(i), first.getString(j))),
+                        Integer.signum(comparator.compare(i, j)));
+
+        // Ranking the codes of a column does not add its values to the shared dictionary.
+        StringListColumn third = new StringListColumn(desc);
+        for (int i = 0; i < size; i++)
+            third.append(i % 11 == 0 ? null : "r" + (i % 53));
+        int sharedSize = SharedDictionary.instance.size();
+        int[] ranks = third.getCodeRanks();
+        Assert.assertEquals(sharedSize, SharedDictionary.instance.size());
+        for (int i = 0; i < size; i++) {
+            int rank = ranks[third.getCode(i)];
+            if (third.isMissing(i))
+                Assert.assertEquals(Integer.MAX_VALUE, rank);
+            for (int j = 0; j < size; j++)
+                Assert.assertEquals(
+                        Integer.signum(Converters.compareStrings(third.getString(i), third.getString(j))),
+                        Integer.signum(Integer.compare(rank, ranks[third.getCode(j)])));
+        }
+
+        StringHistogramBuckets buckets = new StringHistogramBuckets(
+                new String[] { "v1", "v2", "v25", "v3" }, "v4");
+        for (int pass = 0; pass < 2; pass++) {
+            RowBatch batch = new RowBatch(new FullMembershipSet(size).getIterator(), 64);
+            int[] indexes = new int[batch.capacity()];
+            while (batch.next()) {
+                buckets.indexOf(first, batch, indexes);
+                for (int i = 0; i < batch.count; i++) {
+                    String value = first.getString(batch.rows[i]);
+                    int expected = value == null ? StringHistogramBuckets.MISSING : buckets.indexOf(value);
+                    Assert.assertEquals(expected, indexes[i]);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hillview.test.table;
+
+import org.hillview.dataset.LocalDataSet;
+import org.hillview.dataset.api.IDataSet;
+import org.hillview.maps.CreateColumnExpressionMap;
+import org.hillview.maps.FilterMap;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.api.*;
+import org.hillview.table.expressions.Expression;
+import org.hillview.table.expressions.ExpressionParser;
+import org.hillview.table.expressions.ExpressionType;
+import org.hillview.table.expressions.ValueBatch;
+import org.hillview.table.filters.ExpressionFilterDescription;
+import org.hillview.table.rows.RowBatch;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.Converters;
+import org.hillview.utils.DateParsing;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+
+/**
+ * Tests for the expressions used to filter tables and create columns.
+ */
+public class ExpressionTest extends BaseTest {
+    private static ITable map(ITable table, String expression, ColumnDescription outCol) {
+        LocalDataSet<ITable> lds = new LocalDataSet<ITable>(table);
+        CreateColumnExpressionMap map = new CreateColumnExpressionMap(
+                expression, table.getSchema(), null, outCol);
+        IDataSet<ITable> mapped = lds.blockingMap(map);
+        return Converters.checkNull(((LocalDataSet<ITable>)mapped).data);
+    }
+
+    private static ITable filter(ITable table, String expression) {
+        LocalDataSet<ITable> lds = new LocalDataSet<ITable>(table);
+        FilterMap map = new FilterMap(new ExpressionFilterDescription(expression, table.getSchema(), null));
+        IDataSet<ITable> mapped = lds.blockingMap(map);
+        return Converters.checkNull(((LocalDataSet<ITable>)mapped).data);
+    }
+
+    @Test
+    public void testMap() {
+        ITable table = TestTables.testRepTable();
+        ColumnDescription outCol = new ColumnDescription("IsAdult", ContentsKind.String);
+        ITable outTable = map(table, "Age > 18 ? 'adult' : 'minor'", outCol);
+        Assert.assertEquals("Table[3x15]\n" +
+                "Mike,20,adult\n" +
+                "John,30,adult\n" +
+                "Tom,10,minor\n", outTable.toLongString(3));
+
+        outCol = new ColumnDescription("Label", ContentsKind.String);
+        outTable = map(table, "upper(substring(Name, 0, 2)) + \"-\" + (Age * 2)", outCol);
+        Assert.assertEquals("Table[3x15]\n" +
+                "Mike,20,MI-40\n" +
+                "John,30,JO-60\n" +
+                "Tom,10,TO-20\n", outTable.toLongString(3));
+
+        outCol = new ColumnDescription("Half", ContentsKind.Double);
+        outTable = map(table, "Age / 4 + 0.5", outCol);
+        Assert.assertEquals(5.5, outTable.getLoadedColumn("Half").getDouble(0), 0);
+    }
+
+    @Test
+    public void testFilter() {
+        ITable table = TestTables.testRepTable();
+        ITable outTable = filter(table, "Age > 18");
+        Assert.assertEquals("Table[2x11]\n" +
+                "Mike,20\n" +
+                "John,30\n" +
+                "Bill,20\n", outTable.toLongString(3));
+        outTable = filter(table, "startsWith(Name, 'J') && !(Age >= 30) || length(Name) == 3");
+        Assert.assertEquals("Table[2x2]\n" +
+                "Tom,10\n" +
+                "Bob,10\n", outTable.toLongString(3));
+    }
+
+    @Test
+    public void testDate() {
+        ITable table = TestTables.testRepTable();
+        ColumnDescription outCol = new ColumnDescription("Date", ContentsKind.Date);
+        ITable dated = map(table, "Age * 86400000", outCol);
+        IColumn dateColumn = dated.getLoadedColumn("Date");
+        Instant instant = dateColumn.getDate(0);
+        Assert.assertEquals(Converters.toDate(20 * 86400000.0), instant);
+
+        String expectedDate = "1990-01-01";
+        Instant expected = new DateParsing(expectedDate).parse(expectedDate);
+        ColumnDescription yearCol = new ColumnDescription("Year", ContentsKind.Integer);
+        ColumnDescription dateCol = new ColumnDescription("Base", ContentsKind.Date);
+        ITable withDate = map(table, Expression.formatNumber(Converters.toDouble(expected)), dateCol);
+        ITable withYear = map(withDate, "year(Base) + Age - 20", yearCol);
+        Assert.assertEquals(1990, withYear.getLoadedColumn("Year").getInt(0));
+        Assert.assertEquals(1980, withYear.getLoadedColumn("Year").getInt(2));
+    }
+
+    @Test
+    public void testErrors() {
+        ITable table = TestTables.testRepTable();
+        String[] invalid = {
+                "Age + ", "Name > 3", "Salary > 3", "Age && true", "foo(Age)",
+                "length(Age)", "Age > 3 ? 'a' : 2", "'unterminated", "Age > 3 3" };
+        for (String s : invalid) {
+            try {
+                ExpressionParser.parse(s, table.getSchema(), null);
+                Assert.fail("Expected an error for " + s);
+            } catch (RuntimeException ex) {
+                Assert.assertTrue(ex.getMessage().contains("position"));
+            }
+        }
+        try {
+            new ExpressionFilterDescription("Age + 1", table.getSchema(), null);
+            Assert.fail("A filter must be Boolean");
+        } catch (RuntimeException ignored) {}
+
+        // Renamed columns are referred to by their new name.
+        HashMap<String, String> rename = new HashMap<String, String>();
+        rename.put("Age", "Years old");
+        Expression e = ExpressionParser.parse("`Years old` >= 20", table.getSchema(), rename);
+        Assert.assertEquals(ExpressionType.Boolean, e.type);
+    }
+
+    /**
+     * Evaluating on blocks of rows must produce the same result as evaluating one row at a time.
+     */
+    @Test
+    public void testBatchMatchesRows() {
+        ITable table = TestTables.getMissingIntTable(5000, 2);
+        String c0 = table.getSchema().getColumnNames().get(0);
+        String c1 = table.getSchema().getColumnNames().get(1);
+        String[] expressions = {
+                "`" + c0 + "` % 3 == 1 && `" + c1 + "` > 1000",
+                "isMissing(`" + c0 + "`) || `" + c1 + "` < 100",
+                "`" + c0 + "` - `" + c1 + "` * 2 >= -50 || false",
+                "toString(`" + c0 + "`) + 'x' != '7x'",
+                "max(`" + c0 + "`, 2500) <= `" + c1 + "` + 1" };
+        for (String s : expressions) {
+            Expression e = ExpressionParser.parse(s, table.getSchema(), null).bind(table);
+            RowBatch batch = new RowBatch(table.getMembershipSet().getIterator(), 100);
+            ValueBatch values = new ValueBatch(e.type, batch.capacity());
+            int selected = 0;
+            while (batch.next()) {
+                e.evaluate(batch.rows, batch.count, values);
+                for (int i = 0; i < batch.count; i++) {
+                    int row = batch.rows[i];
+                    Assert.assertEquals(s, e.isMissing(row), values.missing[i]);
+                    if (!values.missing[i]) {
+                        boolean value = Converters.checkNull(values.booleans)[i];
+                        Assert.assertEquals(s, e.getBoolean(row), value);
+                        if (value)
+                            selected++;
+                    }
+                }
+            }
+            Assert.assertEquals(selected, filter(table, s).getNumOfRows());
+        }
+    }
+}
@@ -21,15 +21,22 @@ import org.hillview.table.api.IMembershipSet;
 import org.hillview.table.api.IMutableMembershipSet;
 import org.hillview.table.api.IRowIterator;
 import org.hillview.table.api.ISampledRowIterator;
+import org.hillview.table.membership.CompressedMembershipSet;
 import org.hillview.table.membership.DenseMembershipSet;
 import org.hillview.table.membership.EmptyMembershipSet;
 import org.hillview.table.membership.FullMembershipSet;
 import org.hillview.table.membership.MembershipSetFactory;
+import org.hillview.table.membership.RangeMembershipSet;
+import org.hillview.table.membership.SparseMembershipSet;
 import org.hillview.test.BaseTest;
 import org.hillview.utils.IntSet;
+import org.hillview.utils.Randomness;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 /* Tests for the three Membership Classes:
  * FullMembership, LazyMembership, SparseMembership
  */
@@ -155,4 +162,200 @@ public class MembershipTest extends BaseTest {
         Assert.assertTrue( counter > 0.9 * iter.rate() * dms.getSize());
         Assert.assertTrue( counter < 1.1 * iter.rate() * dms.getSize());
     }
+
+    /**
+     * Fills a compressed and a dense set with the same rows; the chunks of
+     * 2^16 rows have different densities and layouts.
+     */
+    private static IMembershipSet[] createCompressed(long seed) {
+        final int max = 6 * 65536;
+        Randomness random = new Randomness(seed);
+        CompressedMembershipSet cms = new CompressedMembershipSet(max);
+        DenseMembershipSet dms = new DenseMembershipSet(max, max);
+        for (int i = 0; i < max; i++) {
+            int chunk = i >>> 16;
+            boolean add;
+            if (chunk == 0)
+                add = random.nextInt(1000) == 0;
+            else if (chunk == 1)
+                add = random.nextBoolean();
+            else if (chunk == 2)
+                add = (i / 100) % 3 == 0;
+            else
+                add = chunk == 5 && random.nextInt(10) == 0;
+            if (add) {
+                cms.add(i);
+                dms.add(i);
+            }
+        }
+        // Out of order and duplicate additions
+        for (int i = 0; i < 2000; i++) {
+            int row = 4 * 65536 + random.nextInt(65536);
+            cms.add(row);
+            dms.add(row);
+        }
+        Assert.assertEquals(dms.getSize(), cms.size());
+        return new IMembershipSet[] { cms.seal(), dms };
+    }
+
+    private static void assertSameMembers(IMembershipSet expected, IMembershipSet actual) {
+        Assert.assertEquals(expected.getSize(), actual.getSize());
+        int[] expectedRows = expected.getRows();
+        Arrays.sort(expectedRows);
+        IRowIterator it = actual.getIterator();
+        int[] rows = new int[1000];
+        int[] actualRows = new int[actual.getSize()];
+        int index = 0;
+        int count;
+        do {
+            count = it.getNextRows(rows);
+            for (int i = 0; i < count; i++) {
+                Assert.assertTrue(actual.isMember(rows[i]));
+                actualRows[index++] = rows[i];
+            }
+        } while (count == rows.length);
+        Arrays.sort(actualRows);
+        Assert.assertArrayEquals(expectedRows, actualRows);
+    }
+
+    @Test
+    public void TestCompressedMembership() {
+        IMembershipSet[] sets = createCompressed(1);
+        IMembershipSet cms = sets[0];
+        IMembershipSet dms = sets[1];
+        assertSameMembers(dms, cms);
+        // Both iterate in increasing order
+        Assert.assertArrayEquals(dms.getRows(), cms.getRows());
+        for (int i = 0; i < cms.getMax(); i++)
+            Assert.assertEquals(dms.isMember(i), cms.isMember(i));
+
+        IMembershipSet[] others = createCompressed(2);
+        IMembershipSet cother = others[0];
+        IMembershipSet dother = others[1];
+        assertSameMembers(dms.intersection(dother), cms.intersection(cother));
+        assertSameMembers(dms.union(dother), cms.union(cother));
+        assertSameMembers(dms.setMinus(dother), cms.setMinus(cother));
+        assertSameMembers(dms.intersection(dother), cms.intersection(dother));
+        assertSameMembers(dms.setMinus(dother), cms.setMinus(dother));
+
+        IMutableMembershipSet mms = MembershipSetFactory.create(1 << 20, 10000);
+        Assert.assertTrue(mms instanceof CompressedMembershipSet);
+    }
+
+    @Test
+    public void TestCompressedSample() {
+        IMembershipSet cms = createCompressed(3)[0];
+        for (int k : new int[] { 40, 10000, cms.getSize() - 100 }) {
+            IMembershipSet sample = cms.sample(k, 12345);
+            Assert.assertEquals(k, sample.getSize());
+            IRowIterator it = sample.getIterator();
+            for (int row = it.getNextRow(); row >= 0; row = it.getNextRow())
+                Assert.assertTrue(cms.isMember(row));
+        }
+
+        double rate = 0.01;
+        ISampledRowIterator iter = cms.getIteratorOverSample(rate, 123, false);
+        Assert.assertEquals(rate, iter.rate(), 0);
+        int counter = 0;
+        int previous = -1;
+        for (int row = iter.getNextRow(); row >= 0; row = iter.getNextRow()) {
+            Assert.assertTrue(row > previous);
+            Assert.assertTrue(cms.isMember(row));
+            previous = row;
+            counter++;
+        }
+        Assert.assertTrue(counter > 0.9 * rate * cms.getSize());
+        Assert.assertTrue(counter < 1.1 * rate * cms.getSize());
+    }
+
+    @Test
+    public void TestRangeMembership() {
+        IMembershipSet rms = new RangeMembershipSet(100, 1100, 2000);
+        Assert.assertEquals(1000, rms.getSize());
+        Assert.assertEquals(2000, rms.getMax());
+        Assert.assertFalse(rms.isMember(99));
+        Assert.assertTrue(rms.isMember(100));
+        Assert.assertTrue(rms.isMember(1099));
+        Assert.assertFalse(rms.isMember(1100));
+        DenseMembershipSet dms = new DenseMembershipSet(2000, 1000);
+        for (int i = 100; i < 1100; i++)
+            dms.add(i);
+        assertSameMembers(dms, rms);
+        assertSameMembers(dms, rms.sample(2000, 0));
+        IMembershipSet sample = rms.sample(100, 0);
+        Assert.assertEquals(100, sample.getSize());
+        assertSameMembers(sample, rms.intersection(sample));
+
+        ISampledRowIterator iter = new RangeMembershipSet(0, 100000, 100000)
+                .getIteratorOverSample(0.01, 123, true);
+        int counter = 0;
+        int previous = -1;
+        for (int row = iter.getNextRow(); row >= 0; row = iter.getNextRow()) {
+            Assert.assertTrue(row > previous);
+            previous = row;
+            counter++;
+        }
+        Assert.assertTrue(counter > 900);
+        Assert.assertTrue(counter < 1100);
+    }
+
+    /**
+     * Checks that the parts are disjoint ranges with the same size that cover the set.
+     */
+    private static void checkSplit(IMembershipSet set, int parts) {
+        List<IMembershipSet> split = set.splitRanges(parts);
+        Assert.assertEquals(parts, split.size());
+        IMutableMembershipSet all = new DenseMembershipSet(set.getMax(), set.getSize());
+        int previous = -1;
+        for (IMembershipSet part : split) {
+            int[] rows = part.getRows();
+            Arrays.sort(rows);
+            if (rows.length > 0) {
+                Assert.assertTrue(rows[0] > previous);
+                previous = rows[rows.length - 1];
+            }
+            for (int row : rows)
+                all.add(row);
+            Assert.assertEquals(set.getMax(), part.getMax());
+        }
+        assertSameMembers(set, all.seal());
+    }
+
+    private static void checkBalanced(List<IMembershipSet> split, int total) {
+        for (IMembershipSet part : split)
+            Assert.assertTrue(Math.abs(part.getSize() - total / split.size()) <= 1);
+    }
+
+    @Test
+    public void TestSplitRanges() {
+        final int max = 100000;
+        FullMembershipSet fms = new FullMembershipSet(max);
+        checkSplit(fms, 7);
+        for (IMembershipSet part : fms.splitRanges(7))
+            Assert.assertTrue(part instanceof RangeMembershipSet);
+        checkBalanced(fms.splitRanges(7), max);
+
+        // All members are in the last rows, so splitting [0, max) in
+        // equal ranges would produce a single non-empty part.
+        DenseMembershipSet dms = new DenseMembershipSet(max, max / 10);
+        SparseMembershipSet sms = new SparseMembershipSet(max, max / 100);
+        for (int i = max - max / 10; i < max; i += 3)
+            dms.add(i);
+        for (int i = max - max / 100; i < max; i++)
+            sms.add(i);
+        checkSplit(dms, 7);
+        checkBalanced(dms.splitRanges(7), dms.getSize());
+        Assert.assertSame(dms.splitRanges(7), dms.splitRanges(7));
+        checkSplit(sms, 7);
+        checkBalanced(sms.splitRanges(7), sms.getSize());
+        Assert.assertSame(sms.splitRanges(7), sms.splitRanges(7));
+        checkSplit(dms, 1);
+        checkSplit(sms, 2000);
+
+        IMembershipSet cms = createCompressed(4)[0];
+        checkSplit(cms, 3);
+        checkSplit(cms, 10);
+        checkSplit(new EmptyMembershipSet(max), 3);
+        checkSplit(new DenseMembershipSet(max, 0), 3);
+    }
 }
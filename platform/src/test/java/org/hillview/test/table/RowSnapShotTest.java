@@ -17,7 +17,9 @@
 
 package org.hillview.test.table;
 
+import org.hillview.dataset.remoting.WireCodec;
 import org.hillview.table.ColumnDescription;
+import org.hillview.table.Schema;
 import org.hillview.table.api.ContentsKind;
 import org.hillview.table.columns.DateListColumn;
 import org.hillview.table.rows.RowSnapshot;
@@ -30,6 +32,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 public class RowSnapShotTest extends BaseTest {
@@ -78,4 +82,43 @@ public class RowSnapShotTest extends BaseTest {
             i = rowIt.getNextRow();
         }
     }
+
+    @Test
+    public void rowSnapshotValuesTest() {
+        Table t = TestTables.testRepTable();
+        Schema schema = t.getSchema();
+        RowSnapshot rs = new RowSnapshot(t, 3);
+        Assert.assertEquals(2, rs.size());
+        Assert.assertEquals("Bill", rs.getString("Name"));
+        Assert.assertEquals(10, rs.getInt("Age"));
+        Assert.assertEquals(10, rs.get("Age"));
+        Assert.assertNull(rs.get("Nope"));
+        Assert.assertTrue(rs.containsKey("Name"));
+        Assert.assertFalse(rs.containsKey("Nope"));
+        Assert.assertEquals(Arrays.asList("Name", "Age"), new ArrayList<String>(rs.keySet()));
+        Assert.assertEquals(Arrays.asList("Bill", 10), new ArrayList<Object>(rs.values()));
+        Assert.assertEquals("[\"Bill\",10]", rs.toJson());
+        // Rows 3 and 4 are both "Bill", but the ages differ.
+        Assert.assertNotEquals(rs, new RowSnapshot(t, 4));
+        Schema names = schema.project(n -> n.equals("Name"));
+        RowSnapshot p3 = new RowSnapshot(rs, names);
+        RowSnapshot p4 = new RowSnapshot(new RowSnapshot(t, 4), names);
+        Assert.assertEquals(p3, p4);
+        Assert.assertEquals(p3.hashCode(), p4.hashCode());
+
+        // The same values with the columns in a different order
+        Schema reversed = new Schema();
+        reversed.append(schema.getDescription("Age"));
+        reversed.append(schema.getDescription("Name"));
+        RowSnapshot r = new RowSnapshot(reversed, new Object[] { 10, "Bill" });
+        Assert.assertEquals(rs, r);
+        Assert.assertEquals(rs.hashCode(), new RowSnapshot(r, schema).hashCode());
+
+        RowSnapshot copy = WireCodec.deserialize(
+                WireCodec.serialize(rs, WireCodec.JAVA_SERIALIZATION), WireCodec.JAVA_SERIALIZATION);
+        Assert.assertNotNull(copy);
+        Assert.assertEquals(rs, copy);
+        Assert.assertEquals(rs.hashCode(), copy.hashCode());
+        Assert.assertEquals(10, copy.getInt("Age"));
+    }
 }
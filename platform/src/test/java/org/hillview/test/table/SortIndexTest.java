@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.table;
+
+import org.hillview.sketches.results.ColumnSortOrientation;
+import org.hillview.table.RecordOrder;
+import org.hillview.table.SortIndex;
+import org.hillview.table.Table;
+import org.hillview.table.api.ITable;
+import org.hillview.table.api.IndexComparator;
+import org.hillview.table.rows.RowSnapshot;
+import org.hillview.test.BaseTest;
+import org.hillview.utils.TestTables;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the sort index of tables.
+ */
+public class SortIndexTest extends BaseTest {
+    private static RecordOrder getOrder(Table table) {
+        RecordOrder order = new RecordOrder();
+        order.append(new ColumnSortOrientation(table.getSchema().getDescription("Column0"), true));
+        order.append(new ColumnSortOrientation(table.getSchema().getDescription("Column1"), false));
+        return order;
+    }
+
+    @Test
+    public void testExternalSort() {
+        Table table = TestTables.getRepIntTable(10000, 2);
+        RecordOrder order = getOrder(table);
+        IndexComparator comparator = order.getIndexComparator(table);
+        SortIndex inMemory = SortIndex.create(table, order, 10000);
+        // 7 runs, the last one shorter
+        SortIndex external = SortIndex.create(table, order, 1500);
+        Assert.assertEquals(table.getNumOfRows(), inMemory.size());
+        Assert.assertEquals(table.getNumOfRows(), external.size());
+        boolean[] seen = new boolean[table.getNumOfRows()];
+        for (int i = 0; i < external.size(); i++) {
+            Assert.assertEquals(0, comparator.compare(inMemory.getRow(i), external.getRow(i)));
+            if (i > 0)
+                Assert.assertTrue(comparator.compare(external.getRow(i - 1), external.getRow(i)) <= 0);
+            Assert.assertFalse(seen[external.getRow(i)]);
+            seen[external.getRow(i)] = true;
+        }
+    }
+
+    @Test
+    public void testSearch() {
+        Table table = TestTables.getRepIntTable(20000, 2);
+        RecordOrder order = getOrder(table);
+        IndexComparator comparator = order.getIndexComparator(table);
+        // The first request scans the table; the index is built after the second one.
+        Assert.assertNull(SortIndex.get(table, order));
+        SortIndex index = waitForIndex(table, order);
+        Assert.assertSame(index, SortIndex.get(table, order));
+
+        RowSnapshot row = new RowSnapshot(table, 17);
+        int first = index.lowerBound(table, order, row, false);
+        int end = index.lowerBound(table, order, row, true);
+        Assert.assertTrue(first < end);
+        Assert.assertEquals(end, index.endOfRun(comparator, first));
+        for (int i = 0; i < index.size(); i++) {
+            int c = comparator.compare(17, index.getRow(i));
+            if (i < first)
+                Assert.assertTrue(c > 0);
+            else if (i < end)
+                Assert.assertEquals(0, c);
+            else
+                Assert.assertTrue(c < 0);
+        }
+
+        // The index of the reverse order is a view of the same index.
+        RecordOrder reverse = order.reverse();
+        SortIndex reversed = SortIndex.get(table, reverse);
+        Assert.assertNotNull(reversed);
+        Assert.assertEquals(index.getRow(0), reversed.getRow(reversed.size() - 1));
+        Assert.assertEquals(index.size() - first,
+                reversed.lowerBound(table, reverse, row, true));
+        Table small = TestTables.getRepIntTable(100, 2);
+        for (int i = 0; i < 3; i++)
+            Assert.assertNull(SortIndex.get(small, order));
+    }
+
+    /**
+     * Request the index of a table until it has been built in the background.
+     */
+    public static SortIndex waitForIndex(ITable table, RecordOrder order) {
+        for (int i = 0; i < 1000; i++) {
+            SortIndex index = SortIndex.get(table, order);
+            if (index != null)
+                return index;
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+        throw new RuntimeException("Sort index was not built");
+    }
+}
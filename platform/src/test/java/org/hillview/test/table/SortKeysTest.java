@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview.test.table;
+
+import org.hillview.sketches.results.ColumnSortOrientation;
+import org.hillview.table.ColumnDescription;
+import org.hillview.table.RecordOrder;
+import org.hillview.table.SmallTable;
+import org.hillview.table.SortKeys;
+import org.hillview.table.api.ContentsKind;
+import org.hillview.table.api.IColumn;
+import org.hillview.table.api.IDictionaryColumn;
+import org.hillview.table.api.IndexComparator;
+import org.hillview.table.columns.DoubleArrayColumn;
+import org.hillview.table.columns.StringArrayColumn;
+import org.hillview.table.columns.StringListColumn;
+import org.hillview.table.rows.VirtualRowSnapshot;
+import org.hillview.test.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for the sort keys extracted from tables.
+ */
+public class SortKeysTest extends BaseTest {
+    private static final double[] doubles = new double[] {
+            -1.5, -0.0, 0.0, 2.5, -1e300, Double.NaN, Double.POSITIVE_INFINITY };
+    private static final String[] strings = new String[] {
+            "a", "B", "b", "ab", "", "xyz" };
+
+    /**
+     * A table with a double column, a string column that is dictionary-encoded and
+     * a string column that is not; about one value in 10 is missing.
+     */
+    private static SmallTable getTable(int size, long seed) {
+        Random random = new Random(seed);
+        DoubleArrayColumn d = new DoubleArrayColumn(
+                new ColumnDescription("D", ContentsKind.Double), size);
+        StringListColumn s = new StringListColumn(
+                new ColumnDescription("S", ContentsKind.String));
+        StringArrayColumn a = new StringArrayColumn(
+                new ColumnDescription("A", ContentsKind.String), size);
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(10) == 0)
+                d.setMissing(i);
+            else
+                d.set(i, doubles[random.nextInt(doubles.length)]);
+            if (random.nextInt(10) == 0)
+                s.appendMissing();
+            else
+                s.append(strings[random.nextInt(strings.length)]);
+            if (random.nextInt(10) == 0)
+                a.setMissing(i);
+            else
+                a.set(i, strings[random.nextInt(strings.length)]);
+        }
+        IColumn sealed = s.seal();
+        Assert.assertTrue(((IDictionaryColumn)sealed).isDictionaryEncoded());
+        return new SmallTable(Arrays.asList(d, sealed, a));
+    }
+
+    private static RecordOrder getOrder(SmallTable table) {
+        RecordOrder order = new RecordOrder();
+        order.append(new ColumnSortOrientation(table.getSchema().getDescription("S"), true));
+        order.append(new ColumnSortOrientation(table.getSchema().getDescription("D"), false));
+        order.append(new ColumnSortOrientation(table.getSchema().getDescription("A"), true));
+        return order;
+    }
+
+    @Test
+    public void testCompare() {
+        SmallTable table = getTable(200, 1);
+        RecordOrder order = getOrder(table);
+        IndexComparator values = order.getIndexComparator(table);
+        IndexComparator keys = SortKeys.extract(table, order).getComparator();
+        for (int i = 0; i < table.getNumOfRows(); i++)
+            for (int j = 0; j < table.getNumOfRows(); j++)
+                Assert.assertEquals(Integer.signum(values.compare(i, j)),
+                        Integer.signum(keys.compare(i, j)));
+
+        int[] sorted = order.getSortedRowOrder(table, table.getMembershipSet());
+        for (int i = 1; i < sorted.length; i++)
+            Assert.assertTrue(values.compare(sorted[i - 1], sorted[i]) <= 0);
+    }
+
+    @Test
+    public void testTwoTables() {
+        SmallTable left = getTable(50, 2);
+        SmallTable right = getTable(60, 3);
+        RecordOrder order = getOrder(left);
+        SortKeys[] keys = SortKeys.extract(order, left, right);
+        VirtualRowSnapshot vl = new VirtualRowSnapshot(left, left.getSchema());
+        VirtualRowSnapshot vr = new VirtualRowSnapshot(right, right.getSchema());
+        for (int i = 0; i < left.getNumOfRows(); i++) {
+            vl.setRow(i);
+            for (int j = 0; j < right.getNumOfRows(); j++) {
+                vr.setRow(j);
+                Assert.assertEquals(Integer.signum(vl.compareTo(vr, order)),
+                        Integer.signum(keys[0].compare(i, keys[1], j)));
+            }
+        }
+    }
+}
@@ -19,20 +19,50 @@ package org.hillview;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.internal.Streams;
+import com.google.gson.stream.JsonWriter;
 import org.hillview.utils.Utilities;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
 /**
  * Represents a reply that is sent from the web server to the web client.
+ * A reply is sent either as a JSON text message, or, if the client accepts it,
+ * as a binary message with the following format:
+ * - requestId: 4 bytes, big endian
+ * - flags: 1 byte; bit 0 is isError, bit 1 is isCompleted
+ * - result: the rest of the message, the UTF-8 encoding of the result, compressed
+ *   with deflate.
+ * The binary format avoids encoding the result JSON as a string inside another JSON
+ * object, and the compression makes large replies much shorter.
  */
 public final class RpcReply {
+    static final byte ERROR_FLAG = 1;
+    static final byte COMPLETED_FLAG = 2;
+
     /**
      * Request that is being answered.
      */
     private final int requestId;
     /**
-     * Actual result: a string encoding a json object.
+     * Result of the request, for error and completion replies.
      */
+    @Nullable
     private final String result;
+    /**
+     * Result produced so far, for normal replies.  It is only converted to
+     * a string when the reply is sent.
+     */
+    @Nullable
+    private final JsonElement data;
     /**
      * True if this reply represents an error that occurred.
      */
@@ -42,6 +72,19 @@ public final class RpcReply {
      */
     private final boolean isCompleted;
 
+    /**
+     * Create a reply to a request; this is one of many replies.
+     * @param requestId  Request that is being replied.
+     * @param data       Result produced so far.
+     */
+    RpcReply(final int requestId, final JsonElement data) {
+        this.requestId = requestId;
+        this.result = null;
+        this.data = data;
+        this.isError = false;
+        this.isCompleted = false;
+    }
+
     /**
      * Create a reply to a request; this is one of many replies.
      * @param requestId  Request that is being replied.
@@ -51,6 +94,7 @@ public final class RpcReply {
     RpcReply(final int requestId, final String result, boolean isError) {
         this.requestId = requestId;
         this.result = result;
+        this.data = null;
         this.isError = isError;
         this.isCompleted = false;
     }
@@ -62,23 +106,61 @@ public final class RpcReply {
     RpcReply(final int requestId) {
         this.requestId = requestId;
         this.result = "0";  // unused
+        this.data = null;
         this.isError = false;
         this.isCompleted = true;
     }
 
+    private String getResult() {
+        if (this.data != null)
+            return this.data.toString();
+        assert this.result != null;
+        return this.result;
+    }
+
     JsonElement toJson() {
         JsonObject result = new JsonObject();
         result.addProperty("requestId", this.requestId);
-        result.addProperty("result", this.result);
+        result.addProperty("result", this.getResult());
         result.addProperty("isError", this.isError);
         result.addProperty("isCompleted", this.isCompleted);
         return result;
     }
 
+    /**
+     * Encode the reply as a binary message.
+     */
+    ByteBuffer toBinary() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(5);
+        header.putInt(this.requestId);
+        header.put((byte)((this.isError ? ERROR_FLAG : 0) | (this.isCompleted ? COMPLETED_FLAG : 0)));
+        bytes.write(header.array());
+        // Large results are mostly numbers; fast compression is good enough.
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            Writer writer = new OutputStreamWriter(
+                    new DeflaterOutputStream(bytes, deflater, 1 << 16), StandardCharsets.UTF_8);
+            if (this.data != null) {
+                // Write the JSON directly, without building a string.
+                JsonWriter jsonWriter = new JsonWriter(writer);
+                jsonWriter.setLenient(true);
+                Streams.write(this.data, jsonWriter);
+                jsonWriter.close();
+            } else {
+                writer.write(this.getResult());
+                writer.close();
+            }
+        } finally {
+            deflater.end();
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
     @Override
     public String toString() {
         return "RpcReply to " + this.requestId + ": " +
                 (this.isError ? "Error" : "Normal") +
-                "Message: " + Utilities.truncateString(this.result);
+                "Message: " + (this.data != null ? "data" : Utilities.truncateString(this.result));
     }
 }
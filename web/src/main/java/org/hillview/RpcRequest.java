@@ -45,6 +45,10 @@ public final class RpcRequest implements IJson {
      */
     @Nullable
     private final String arguments;
+    /**
+     * True if the client accepts replies in the binary format described in RpcReply.
+     */
+    final boolean binaryReplies;
     /**
      * Original encoding of the request as JSON.
      */
@@ -57,6 +61,7 @@ public final class RpcRequest implements IJson {
         this.objectId = new RpcTarget.Id(obj.get("objectId").getAsString());
         this.method = obj.get("method").getAsString();
         this.arguments = obj.get("arguments").getAsString();
+        this.binaryReplies = obj.has("binaryReplies") && obj.get("binaryReplies").getAsBoolean();
     }
 
     /**
@@ -79,12 +84,8 @@ public final class RpcRequest implements IJson {
         return this.objectId + "." + this.method + "()";
     }
 
-    private RpcReply createReply(String json) {
-        return new RpcReply(this.requestId, json, false);
-    }
-
     public RpcReply createReply(JsonElement userResult) {
-        return this.createReply(userResult.toString());
+        return new RpcReply(this.requestId, userResult);
     }
 
     RpcReply createReply(Throwable th) {
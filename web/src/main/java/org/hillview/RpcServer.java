@@ -17,6 +17,7 @@
 
 package org.hillview;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.JsonElement;
 import com.google.gson.internal.Streams;
 import com.google.gson.stream.JsonReader;
@@ -30,6 +31,8 @@ import javax.websocket.*;
 import javax.websocket.server.ServerEndpoint;
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.zip.InflaterInputStream;
@@ -50,16 +53,42 @@ public final class RpcServer {
      * There seems to be a significant bug in RxJava: when onComplete is called,
      * it may kill the consumer thread, even if that thread may not have finished
      * processing the previous onNext.  So we use a different thread to do
-     * the actual message sending.  This thread pool must have exactly 1 thread,
-     * because we want all rpc replies to be sent in the same order as they are prepared.
+     * the actual message sending.  Each session has its own sequential executor,
+     * because we want all rpc replies of a session to be sent in the same order
+     * as they are prepared; a slow client does not delay the replies of other sessions.
+     * The sequential executors run on this shared pool.
      */
-    private static final ExecutorService replyExecutor = Executors.newSingleThreadExecutor();
+    private static final ExecutorService replyPool = Executors.newCachedThreadPool();
+    /**
+     * Keys of the session user properties used by this class.
+     */
+    private static final String REPLY_EXECUTOR = "hillview.replyExecutor";
+    private static final String BINARY_REPLIES = "hillview.binaryReplies";
+
+    /**
+     * Get the executor which sends the replies of a session.
+     */
+    private static Executor getReplyExecutor(Session session) {
+        Map<String, Object> properties = session.getUserProperties();
+        synchronized (properties) {
+            Object executor = properties.get(REPLY_EXECUTOR);
+            if (executor == null) {
+                executor = MoreExecutors.newSequentialExecutor(replyPool);
+                properties.put(REPLY_EXECUTOR, executor);
+            }
+            return (Executor)executor;
+        }
+    }
 
     public static void sendReply(RpcReply reply, Session session) {
-        replyExecutor.execute(() -> {
+        getReplyExecutor(session).execute(() -> {
             try {
-                JsonElement json = reply.toJson();
-                session.getBasicRemote().sendText(json.toString());
+                if (session.getUserProperties().get(BINARY_REPLIES) != null) {
+                    session.getBasicRemote().sendBinary(reply.toBinary());
+                } else {
+                    JsonElement json = reply.toJson();
+                    session.getBasicRemote().sendText(json.toString());
+                }
             } catch (Exception e) {
                 HillviewLogger.instance.error("Could not send reply", e);
             }
@@ -73,9 +102,9 @@ public final class RpcServer {
     }
 
     public static void closeSession(final Session session) {
-        // We use replyExecutor to make sure that the session closing
+        // We use the reply executor to make sure that the session closing
         // is performed after all replies on that session have been sent.
-        replyExecutor.execute(() -> {
+        getReplyExecutor(session).execute(() -> {
             try {
                 if (session.isOpen())
                     session.close();
@@ -117,6 +146,8 @@ public final class RpcServer {
 
         if (RpcObjectManager.instance.getTarget(session) != null)
             throw new RuntimeException("Session already associated with a request!");
+        if (req.binaryReplies)
+            session.getUserProperties().put(BINARY_REPLIES, true);
         RpcRequestContext context = new RpcRequestContext(session);
         RpcServer.execute(req, context);
     }
@@ -25,6 +25,8 @@ import org.hillview.dataset.RemoteDataSet;
 import org.hillview.dataset.api.*;
 import org.hillview.main.Benchmarks;
 import org.hillview.management.ClusterConfig;
+import org.hillview.security.SecureLaplace;
+import org.hillview.security.TestKeyLoader;
 import org.hillview.maps.FindFilesMap;
 import org.hillview.maps.LoadFilesMap;
 import org.hillview.sketches.HeatmapSketch;
@@ -346,6 +348,32 @@ public class DPPerfBenchmarks extends Benchmarks {
         this.benchmarkHeatmap(conf, col0, col1);
     }
 
+    /**
+     * Measures the time to add noise to private heatmaps and histograms;
+     * this does not need any data.
+     */
+    private static void benchmarkNoise() {
+        TestKeyLoader keyLoader = new TestKeyLoader();
+        DoubleColumnQuantization q = new DoubleColumnQuantization(1, 0, 10000);
+        for (int bucketCount : Arrays.asList(10, 50, 100)) {
+            DoubleHistogramBuckets b = new DoubleHistogramBuckets(q.globalMin, q.globalMax, bucketCount);
+            IntervalDecomposition d = new NumericIntervalDecomposition(q, b);
+            Heatmap h = new Heatmap(bucketCount, bucketCount);
+            Histogram histo = new Histogram(bucketCount);
+            ISketch<ITable, Heatmap> pre = new PrecomputedSketch<ITable, Heatmap>(h);  // not really used
+            ISketch<ITable, Histogram> preHisto = new PrecomputedSketch<ITable, Histogram>(histo);
+            // A new SecureLaplace has no cached noise.
+            runNTimes(() -> new DPHeatmapSketch(pre, 0, d, d, 1, new SecureLaplace(keyLoader)).postProcess(h),
+                    runCount, "Noise,Heatmap,cold," + bucketCount, bucketCount * bucketCount);
+            SecureLaplace laplace = new SecureLaplace(keyLoader);
+            runNTimes(() -> new DPHeatmapSketch(pre, 0, d, d, 1, laplace).postProcess(h),
+                    runCount, "Noise,Heatmap,warm," + bucketCount, bucketCount * bucketCount);
+            runNTimes(() -> new DPHistogram(preHisto, 0, d, 1, false, new SecureLaplace(keyLoader))
+                            .postProcess(histo),
+                    runCount, "Noise,Histogram,cold," + bucketCount, bucketCount);
+        }
+    }
+
     public void run(HashSet<String> datasets) {
         assert this.ontimeSchema != null;
         ExperimentConfig conf = new ExperimentConfig();
@@ -415,6 +443,10 @@ public class DPPerfBenchmarks extends Benchmarks {
     public static void main(String[] args) throws SQLException, IOException {
         HillviewLogger.instance.setLogLevel(Level.WARNING);
         HashSet<String> datasets = new HashSet<String>(Arrays.asList(args));
+        if (datasets.contains("Noise")) {
+            benchmarkNoise();
+            return;
+        }
         DPPerfBenchmarks bench = new DPPerfBenchmarks(datasets);
         bench.run(datasets);
     }
@@ -22,7 +22,6 @@ public class DPHeatmapSketch extends PostProcessedSketch<ITable, Heatmap, Heatma
     private SecureLaplace laplace;
 
     double scale;
-    double baseVariance;
 
     IntervalDecomposition dx;
     IntervalDecomposition dy;
@@ -41,39 +40,23 @@ public class DPHeatmapSketch extends PostProcessedSketch<ITable, Heatmap, Heatma
         this.dx = d0;
         this.dy = d1;
         this.scale = PrivacyUtils.computeNoiseScale(this.epsilon, d0, d1);
-        this.baseVariance = PrivacyUtils.laplaceVariance(scale);
     }
 
     /**
-     * Compute noise to add to this bucket using the dyadic decomposition as the PRG seed.
-     * If cdfBuckets is true, computes the noise based on the dyadic decomposition of the interval [0, bucket right leaf]
-     * rather than [bucket left leaf, bucket right leaf].
-     * Stores the noise and the total variance of the variables used to compute the noise in the `noise` output.
-     * Returns the total number of intervals used to compute the noise.
+     * Compute noise for the given rectangle of leaves using the dyadic decomposition of both axes.
+     * Stores the noise and its total variance in the `result` output, and returns the
+     * number of intervals used.  postProcess computes the noise of all cells at once.
      */
-    private int noiseForDecomposition(
-            List<Pair<Integer, Integer>> xIntervals,
-            List<Pair<Integer, Integer>> yIntervals,
-            double scale,
-            double baseVariance,
-            /*out*/Noise result) {
-        result.clear();
-        for (Pair<Integer, Integer> x : xIntervals) {
-            for (Pair<Integer, Integer> y : yIntervals) {
-                result.add(this.laplace.sampleLaplace(this.columnsIndex, scale, x, y), baseVariance);
-            }
-        }
-
-        return xIntervals.size() * yIntervals.size();
-    }
-
     public int noiseForRange(int left, int right, int top, int bot,
                               double scale, double baseVariance, /*out*/Noise result) {
         List<Pair<Integer, Integer>> xIntervals = kadicDecomposition(left, right, IntervalDecomposition.BRANCHING_FACTOR);
         @SuppressWarnings("SuspiciousNameCombination")
         List<Pair<Integer, Integer>> yIntervals = kadicDecomposition(top, bot, IntervalDecomposition.BRANCHING_FACTOR);
-
-        return noiseForDecomposition(xIntervals, yIntervals, scale, baseVariance, result);
+        result.clear();
+        for (Pair<Integer, Integer> x : xIntervals)
+            for (Pair<Integer, Integer> y : yIntervals)
+                result.add(this.laplace.sampleLaplace(this.columnsIndex, scale, x, y), baseVariance);
+        return xIntervals.size() * yIntervals.size();
     }
 
     public double getEpsilon() {
@@ -104,12 +87,12 @@ public class DPHeatmapSketch extends PostProcessedSketch<ITable, Heatmap, Heatma
         for (int i = 0; i < ySize; i++)
             yIntervals.add(this.dy.bucketDecomposition(i, false));
 
-        // Compute the noise.
-        Noise noise = new Noise();
+        // Compute the noise of all cells at once.
+        double[][] noise = this.laplace.cellNoise(this.columnsIndex, this.scale, xIntervals, yIntervals);
         for (int i = 0; i < heatmap.buckets.length; i++) {
             for (int j = 0; j < heatmap.buckets[i].length; j++) {
-                long nIntervals = this.noiseForDecomposition(xIntervals.get(i), yIntervals.get(j), this.scale, this.baseVariance, noise);
-                result.buckets[i][j] = Utilities.toLong(heatmap.buckets[i][j] + noise.getNoise());
+                long nIntervals = xIntervals.get(i).size() * yIntervals.get(j).size();
+                result.buckets[i][j] = Utilities.toLong(heatmap.buckets[i][j] + noise[i][j]);
                 result.confidence[i][j] = Utilities.toInt(
                         PrivacyUtils.laplaceCI(nIntervals, this.scale, PrivacyUtils.DEFAULT_ALPHA).second);
             }
@@ -10,6 +10,7 @@ import org.hillview.targets.DPWrapper;
 import org.hillview.utils.*;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,7 +37,7 @@ public class DPHistogram extends PostProcessedSketch<ITable, Histogram, Histogra
 
     /**
      * Compute noise for the given [left leaf, right leaf) range using the dyadic decomposition.
-     * See also noiseForBucket.
+     * postProcess computes the same noise for all buckets at once.
      */
     public long noiseForRange(int left, int right,
                               double scale, double baseVariance,
@@ -51,27 +52,6 @@ public class DPHistogram extends PostProcessedSketch<ITable, Histogram, Histogra
         return intervals.size();
     }
 
-    /**
-     * Compute noise to add to this bucket using the dyadic decomposition as the PRG seed.
-     * @param bucketIdx: index of the bucket to compute noise for.
-     * @param scale:      scale of laplace distribution used to sample data
-     * @param laplace:    laplace distribution to sample
-     * @param baseVariance:  factor added to variance for each bucket
-     * @param isCdf: If true, computes the noise based on the dyadic decomposition of the interval [0, bucket right leaf]
-     *             rather than [bucket left leaf, bucket right leaf].
-     * @param decomposition: Specifies the dyadic decomposition to use when computing the nodes for this bucket.
-     * Returns the noise and the total variance of the variables used to compute the noise.
-     */
-    @SuppressWarnings("ConstantConditions")
-    long noiseForBucket(int bucketIdx,
-                        double scale, double baseVariance,
-                        boolean isCdf, Noise noise,
-                        SecureLaplace laplace,
-                        IntervalDecomposition decomposition) {
-        Pair<Integer, Integer> range = decomposition.bucketRange(bucketIdx, isCdf);
-        return this.noiseForRange(range.first, range.second, scale, baseVariance, laplace, noise);
-    }
-
     public double getEpsilon() {
         return this.epsilon;
     }
@@ -88,16 +68,24 @@ public class DPHistogram extends PostProcessedSketch<ITable, Histogram, Histogra
     public Histogram postProcess(@Nullable Histogram histogram) {
         HillviewLogger.instance.info("Adding histogram noise with", "epsilon={0}", this.epsilon);
         double scale = PrivacyUtils.computeNoiseScale(this.epsilon, decomposition);
-        double baseVariance = PrivacyUtils.laplaceVariance(scale);
         Converters.checkNull(histogram);
         Histogram result = new Histogram(histogram.buckets.length, true);
         Converters.checkNull(result.confidence);
 
-        Noise noise = new Noise();
+        // Compute the noise of all buckets at once.
+        List<List<Pair<Integer, Integer>>> intervals =
+                new ArrayList<List<Pair<Integer, Integer>>>(histogram.buckets.length);
+        for (int i = 0; i < histogram.buckets.length; i++) {
+            Pair<Integer, Integer> range = this.decomposition.bucketRange(i, this.isCdf);
+            intervals.add(IntervalDecomposition.kadicDecomposition(
+                    Converters.checkNull(range.first), Converters.checkNull(range.second),
+                    IntervalDecomposition.BRANCHING_FACTOR));
+        }
+        double[] bucketNoise = this.laplace.bucketNoise(this.columnIndex, scale, intervals);
         long totalIntervals = 0;
         long previous = 0;
         for (int i = 0; i < histogram.buckets.length; i++) {
-            long nIntervals = this.noiseForBucket(i, scale, baseVariance, isCdf, noise, laplace, decomposition);
+            long nIntervals = intervals.get(i).size();
             long current;
             if (isCdf) {
                 current = previous + histogram.buckets[i];
@@ -105,7 +93,7 @@ public class DPHistogram extends PostProcessedSketch<ITable, Histogram, Histogra
             } else {
                 current = histogram.buckets[i];
             }
-            result.buckets[i] = Utilities.toLong(current + noise.getNoise());
+            result.buckets[i] = Utilities.toLong(current + bucketNoise[i]);
             if (isCdf && i > 0) {
                 // Ensure they are monotonically increasing
                 result.buckets[i] = Math.max(result.buckets[i-1], result.buckets[i]);
@@ -114,7 +102,7 @@ public class DPHistogram extends PostProcessedSketch<ITable, Histogram, Histogra
                     PrivacyUtils.laplaceCI(nIntervals, scale, PrivacyUtils.DEFAULT_ALPHA).second);
             totalIntervals += nIntervals;
         }
-        noise = DPWrapper.computeCountNoise(this.columnIndex, DPWrapper.SpecialBucket.NullCount, epsilon, laplace);
+        Noise noise = DPWrapper.computeCountNoise(this.columnIndex, DPWrapper.SpecialBucket.NullCount, epsilon, laplace);
         result.missingConfidence = Utilities.toInt(
                 PrivacyUtils.laplaceCI(1, 1.0/epsilon, PrivacyUtils.DEFAULT_ALPHA).second);
         HillviewLogger.instance.info("RNG calls", "{0}", totalIntervals);
@@ -802,6 +802,41 @@ public final class TableTarget extends RpcTarget {
         this.runMap(this.table, map, TableTarget::new, request, context);
     }
 
+    @SuppressWarnings("NotNullFieldNotInitialized")
+    static class ExpressionCreateColumnInfo {
+        String expression = "";
+        Schema schema;
+        String outputColumn;
+        ContentsKind outputKind = ContentsKind.None;
+        @Nullable
+        String[] renameMap;
+    }
+
+    @HillviewRpc
+    public void expressionCreateColumn(RpcRequest request, RpcRequestContext context) {
+        ExpressionCreateColumnInfo info = request.parseArgs(ExpressionCreateColumnInfo.class);
+        ColumnDescription desc = new ColumnDescription(info.outputColumn, info.outputKind);
+        CreateColumnExpressionMap map = new CreateColumnExpressionMap(
+                info.expression, info.schema, Utilities.arrayToMap(info.renameMap), desc);
+        this.runMap(this.table, map, TableTarget::new, request, context);
+    }
+
+    @SuppressWarnings("NotNullFieldNotInitialized")
+    static class ExpressionFilterInfo {
+        Schema schema;
+        String expression;
+        @Nullable String[] renameMap;
+    }
+
+    @HillviewRpc
+    public void expressionFilter(RpcRequest request, RpcRequestContext context) {
+        ExpressionFilterInfo filter = request.parseArgs(ExpressionFilterInfo.class);
+        ExpressionFilterDescription desc = new ExpressionFilterDescription(
+                filter.expression, filter.schema, Utilities.arrayToMap(filter.renameMap));
+        FilterMap map = new FilterMap(desc);
+        this.runMap(this.table, map, TableTarget::new, request, context);
+    }
+
     @SuppressWarnings("NotNullFieldNotInitialized")
     static class KVCreateColumnInfo {
         String key = "";
@@ -144,6 +144,7 @@ export class RpcRequest<T> implements ICancellable<T> {
             arguments: argString,
             requestId: this.requestId,
             protoVersion: this.protoVersion,
+            binaryReplies: true,
         };
         const str = JSON.stringify(result);
         console.log(formatDate(new Date()) + " Sending message " + str);
@@ -164,6 +165,22 @@ export class RpcRequest<T> implements ICancellable<T> {
         return false;
     }
 
+    /**
+     * Decode a reply sent as a binary message: a 4-byte request id,
+     * a byte of flags, followed by the deflate-compressed result.
+     */
+    public static decodeBinaryReply(data: ArrayBuffer): RpcReply {
+        const view = new DataView(data);
+        const flags = view.getUint8(4);
+        const result = pako.inflate(new Uint8Array(data, 5), { to: "string" });
+        return {
+            requestId: view.getInt32(0),
+            result,
+            isError: (flags & 1) !== 0,
+            isCompleted: (flags & 2) !== 0,
+        };
+    }
+
     public static simplifyExceptions(errorMessage: string): string {
         let lines = errorMessage.split(/\r?\n/);
         // First look for a HillviewException if there is one
@@ -210,8 +227,15 @@ export class RpcRequest<T> implements ICancellable<T> {
             };
             this.socket.onmessage = (r: MessageEvent) => {
                 // parse json and invoke onReply.onNext
-                console.log(formatDate(new Date()) + " reply received: " + r.data);
-                const reply = JSON.parse(r.data) as RpcReply;
+                let reply: RpcReply;
+                if (r.data instanceof ArrayBuffer) {
+                    reply = RpcRequest.decodeBinaryReply(r.data);
+                    console.log(formatDate(new Date()) + " reply received: " + r.data.byteLength +
+                        " bytes, " + reply.result.length + " characters");
+                } else {
+                    console.log(formatDate(new Date()) + " reply received: " + r.data);
+                    reply = JSON.parse(r.data) as RpcReply;
+                }
                 if (this.completed) {
                     console.log("Message received after rpc completed: " + reply);
                 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2019 VMware Inc. All Rights Reserved.
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hillview;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterInputStream;
+
+public class RpcReplyTest {
+    private static String decompress(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        Reader reader = new InputStreamReader(new InflaterInputStream(
+                new ByteArrayInputStream(data)), StandardCharsets.UTF_8);
+        return new JsonParser().parse(reader).toString();
+    }
+
+    @Test
+    public void testBinaryReply() throws IOException {
+        JsonObject json = new JsonObject();
+        JsonArray counts = new JsonArray();
+        for (int i = 0; i < 1000; i++)
+            counts.add(i % 7);
+        json.add("buckets", counts);
+        json.addProperty("name", "h\u00e9");
+        RpcReply reply = new RpcReply(42, json);
+
+        ByteBuffer binary = reply.toBinary();
+        Assert.assertEquals(42, binary.getInt());
+        Assert.assertEquals(0, binary.get());
+        String text = reply.toJson().toString();
+        Assert.assertTrue(binary.remaining() < text.length() / 4);
+        Assert.assertEquals(json.toString(), decompress(binary));
+
+        ByteBuffer completed = new RpcReply(3).toBinary();
+        Assert.assertEquals(3, completed.getInt());
+        Assert.assertEquals(RpcReply.COMPLETED_FLAG, completed.get());
+
+        ByteBuffer error = new RpcReply(4, "\"failed\"", true).toBinary();
+        Assert.assertEquals(4, error.getInt());
+        Assert.assertEquals(RpcReply.ERROR_FLAG, error.get());
+        JsonElement message = new JsonParser().parse(decompress(error));
+        Assert.assertEquals("failed", message.getAsString());
+    }
+}